@@ -0,0 +1,123 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl;
+
+/**
+ * The columns of a sheet which are to be read.  The cell records of every
+ * other column are skipped when the sheet is read, without being decoded
+ * and without their strings being looked up in the shared string table,
+ * so that sheets with many columns, or long free text in columns which
+ * are not needed, are read more quickly.
+ *
+ * The columns may be given by their indexes, or by the names in a header
+ * row.  When given by name, every cell up to and including the header row
+ * is read, and the columns are chosen from the labels on the header row
+ * once the first cell below it is reached.  Names which do not appear on
+ * the header row are ignored
+ *
+ * A projection may be given for every sheet in a workbook by means of
+ * WorkbookSettings, or for a single sheet when it is streamed
+ */
+public final class ColumnProjection
+{
+  /**
+   * The indexes of the columns, or NULL if the columns are given by name
+   */
+  private int[] columns;
+
+  /**
+   * The names of the columns, or NULL if the columns are given by index
+   */
+  private String[] headers;
+
+  /**
+   * The zero based row holding the names of the columns
+   */
+  private int headerRow;
+
+  /**
+   * Constructs a projection of the columns with the specified indexes
+   *
+   * @param cols the zero based indexes of the columns to read
+   */
+  public ColumnProjection(int[] cols)
+  {
+    columns = cols.clone();
+    headers = null;
+    headerRow = -1;
+  }
+
+  /**
+   * Constructs a projection of the columns whose names appear on the
+   * first row of the sheet
+   *
+   * @param names the names of the columns to read
+   */
+  public ColumnProjection(String[] names)
+  {
+    this(names, 0);
+  }
+
+  /**
+   * Constructs a projection of the columns whose names appear on the
+   * specified row of the sheet
+   *
+   * @param names the names of the columns to read
+   * @param row the zero based row holding the names of the columns
+   */
+  public ColumnProjection(String[] names, int row)
+  {
+    columns = null;
+    headers = names.clone();
+    headerRow = row;
+  }
+
+  /**
+   * Accessor for the indexes of the columns to read
+   *
+   * @return the zero based column indexes, or NULL if the columns are
+   *         given by name
+   */
+  public int[] getColumns()
+  {
+    return columns == null ? null : columns.clone();
+  }
+
+  /**
+   * Accessor for the names of the columns to read
+   *
+   * @return the column names, or NULL if the columns are given by index
+   */
+  public String[] getHeaders()
+  {
+    return headers == null ? null : headers.clone();
+  }
+
+  /**
+   * Accessor for the row holding the names of the columns
+   *
+   * @return the zero based header row, or -1 if the columns are given
+   *         by index
+   */
+  public int getHeaderRow()
+  {
+    return headerRow;
+  }
+}
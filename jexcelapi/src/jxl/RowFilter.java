@@ -0,0 +1,278 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * The rows of a sheet which are to be streamed.  Rows may be limited to a
+ * range, and to those whose cells meet a number of conditions, all of
+ * which must hold.
+ *
+ * When a sheet is streamed with a row filter, the rows before the range
+ * are skipped by means of the row block index in the sheet, where there
+ * is one, rather than by reading through their records, and reading stops
+ * as soon as the range has been passed.  The conditions are tested as each
+ * row is read, so rows which do not meet them are never passed to the row
+ * handler.  The columns tested are always read, even when they are not in
+ * the column projection.
+ *
+ * Formulas in the range which share their definition with a formula above
+ * the range keep their values, but their formula text may not be available
+ */
+public final class RowFilter
+{
+  /**
+   * Condition type for a cell whose contents equal a string
+   */
+  private static final int EQUALS = 0;
+
+  /**
+   * Condition type for a number lying within a range
+   */
+  private static final int NUMBER_RANGE = 1;
+
+  /**
+   * Condition type for a date lying within a range
+   */
+  private static final int DATE_RANGE = 2;
+
+  /**
+   * The first row to stream
+   */
+  private int firstRow;
+
+  /**
+   * The last row to stream
+   */
+  private int lastRow;
+
+  /**
+   * The conditions which the rows must meet
+   */
+  private ArrayList conditions;
+
+  /**
+   * A condition on the cell in one column of a row
+   */
+  private static class Condition
+  {
+    /**
+     * The column of the cell
+     */
+    int column;
+
+    /**
+     * The type of condition
+     */
+    int type;
+
+    /**
+     * The contents the cell must have, for EQUALS
+     */
+    String contents;
+
+    /**
+     * The smallest value allowed, for NUMBER_RANGE and DATE_RANGE
+     */
+    double min;
+
+    /**
+     * The largest value allowed, for NUMBER_RANGE and DATE_RANGE
+     */
+    double max;
+
+    /**
+     * Constructor
+     *
+     * @param col the column of the cell
+     * @param t the type of condition
+     */
+    Condition(int col, int t)
+    {
+      column = col;
+      type = t;
+    }
+  }
+
+  /**
+   * Constructs a filter which passes every row
+   */
+  public RowFilter()
+  {
+    this(0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Constructs a filter which passes the rows in the specified range
+   *
+   * @param first the zero based first row to stream
+   * @param last the zero based last row to stream, inclusive
+   */
+  public RowFilter(int first, int last)
+  {
+    firstRow = Math.max(0, first);
+    lastRow = last;
+    conditions = new ArrayList();
+  }
+
+  /**
+   * Accessor for the first row to stream
+   *
+   * @return the zero based first row
+   */
+  public int getFirstRow()
+  {
+    return firstRow;
+  }
+
+  /**
+   * Accessor for the last row to stream
+   *
+   * @return the zero based last row, inclusive
+   */
+  public int getLastRow()
+  {
+    return lastRow;
+  }
+
+  /**
+   * Only passes rows whose cell in the specified column has the
+   * specified contents
+   *
+   * @param column the zero based column
+   * @param contents the contents, as returned by Cell.getContents
+   */
+  public void addEquals(int column, String contents)
+  {
+    Condition c = new Condition(column, EQUALS);
+    c.contents = contents;
+    conditions.add(c);
+  }
+
+  /**
+   * Only passes rows whose cell in the specified column is a number
+   * lying within the specified range
+   *
+   * @param column the zero based column
+   * @param min the smallest number allowed
+   * @param max the largest number allowed
+   */
+  public void addRange(int column, double min, double max)
+  {
+    Condition c = new Condition(column, NUMBER_RANGE);
+    c.min = min;
+    c.max = max;
+    conditions.add(c);
+  }
+
+  /**
+   * Only passes rows whose cell in the specified column is a date lying
+   * within the specified range.  Dates are read as GMT, so the range
+   * should be given in GMT as well
+   *
+   * @param column the zero based column
+   * @param from the earliest date allowed
+   * @param to the latest date allowed
+   */
+  public void addRange(int column, Date from, Date to)
+  {
+    Condition c = new Condition(column, DATE_RANGE);
+    c.min = from.getTime();
+    c.max = to.getTime();
+    conditions.add(c);
+  }
+
+  /**
+   * Gets the columns tested by the conditions
+   *
+   * @return the zero based columns
+   */
+  public int[] getColumns()
+  {
+    int[] columns = new int[conditions.size()];
+
+    for (int i = 0; i < columns.length; i++)
+    {
+      columns[i] = ((Condition) conditions.get(i)).column;
+    }
+
+    return columns;
+  }
+
+  /**
+   * Determines whether a row meets every condition.  The row range is
+   * not checked
+   *
+   * @param cells the cells on the row, indexed on column
+   * @param numColumns one more than the column of the last cell on the row
+   * @return TRUE if the row meets the conditions, FALSE otherwise
+   */
+  public boolean matches(Cell[] cells, int numColumns)
+  {
+    for (int i = 0; i < conditions.size(); i++)
+    {
+      Condition c = (Condition) conditions.get(i);
+      Cell cell = c.column < numColumns ? cells[c.column] : null;
+
+      if (cell == null)
+      {
+        return false;
+      }
+
+      if (c.type == EQUALS)
+      {
+        if (!c.contents.equals(cell.getContents()))
+        {
+          return false;
+        }
+      }
+      else if (c.type == NUMBER_RANGE)
+      {
+        if (!(cell instanceof NumberCell))
+        {
+          return false;
+        }
+
+        double value = ((NumberCell) cell).getValue();
+        if (!(value >= c.min && value <= c.max))
+        {
+          return false;
+        }
+      }
+      else
+      {
+        if (!(cell instanceof DateCell))
+        {
+          return false;
+        }
+
+        long time = ((DateCell) cell).getDate().getTime();
+        if (time < c.min || time > c.max)
+        {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+}
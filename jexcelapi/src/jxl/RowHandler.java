@@ -0,0 +1,47 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+
+package jxl;
+
+/**
+ * Callback interface used when streaming the contents of a sheet by means
+ * of Workbook.streamSheet.  Rather than building up every cell on the sheet
+ * in memory, the cells are pushed to the handler a row at a time as the
+ * underlying records are read, so that arbitrarily large sheets may be
+ * processed in constant memory
+ */
+public interface RowHandler
+{
+  /**
+   * Invoked for each row which contains at least one cell.  Rows are
+   * delivered in the order in which they occur in the sheet, which is
+   * ascending row order for all well formed workbooks.  Rows containing
+   * no cells are skipped.
+   * The cell array is indexed on column and is reused for every row, so
+   * handlers must copy out anything they wish to retain before returning.
+   * Columns for which the row has no cell are null
+   *
+   * @param row the zero based row number
+   * @param cells the cells on this row, indexed on column
+   * @param numColumns one more than the column of the last cell on the row
+   * @return TRUE to continue reading the sheet, FALSE to stop reading
+   */
+  public boolean handleRow(int row, Cell[] cells, int numColumns);
+}
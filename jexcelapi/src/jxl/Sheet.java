@@ -82,6 +82,49 @@ public interface Sheet
    */
   public Cell[] getColumn(int col);
 
+  /**
+   * Gets the values of the numbers in the specified column, without
+   * creating a cell for each one.  The returned array has an entry for
+   * every row of the sheet
+   *
+   * @param col the column whose numbers are to be returned
+   * @return the number on each row, or NaN where the cell is not a number
+   */
+  public double[] getNumericColumn(int col);
+
+  /**
+   * Gets the dates in the specified column as the number of days since
+   * 01 Jan 1970, without creating a cell for each one.  Dates are read as
+   * GMT, and any time of day is dropped.  The returned array has an entry
+   * for every row of the sheet
+   *
+   * @param col the column whose dates are to be returned
+   * @return the day of the date on each row, or Integer.MIN_VALUE where
+   *         the cell is not a date
+   */
+  public int[] getDateColumnEpochDays(int col);
+
+  /**
+   * Gets the indexes in the workbook's shared string table of the labels
+   * in the specified column, without creating a cell for each one.  Rows
+   * holding the same label have the same index, so labels may be grouped
+   * and compared as integers, and looked up with getSharedString.  The
+   * returned array has an entry for every row of the sheet
+   *
+   * @param col the column whose labels are to be returned
+   * @return the index of the label on each row, or -1 where the cell is
+   *         not a label held in the shared string table
+   */
+  public int[] getSstIndexColumn(int col);
+
+  /**
+   * Gets a label from the workbook's shared string table
+   *
+   * @param index an index returned by getSstIndexColumn
+   * @return the label
+   */
+  public String getSharedString(int index);
+
   /**
    * Gets the name of this sheet
    *
@@ -19,12 +19,12 @@
 
 package jxl;
 
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import jxl.biff.formula.FormulaEvaluator;
 import jxl.read.biff.BiffException;
 import jxl.read.biff.File;
 import jxl.read.biff.PasswordException;
@@ -68,7 +68,9 @@ public abstract class Workbook
   /**
    * Gets the specified sheet within this workbook
    * As described in the accompanying technical notes, each call
-   * to getSheet forces a reread of the sheet (for memory reasons).
+   * to getSheet forces a reread of the sheet (for memory reasons), unless
+   * the sheet is one of those retained as specified by the sheet cache
+   * size and memory budget of the WorkbookSettings.
    * Therefore, do not make unnecessary calls to this method.  Furthermore,
    * do not hold unnecessary references to Sheets in client code, as
    * this will prevent the garbage collector from freeing the memory
@@ -94,6 +96,99 @@ public abstract class Workbook
    */
   public abstract Sheet getSheet(String name);
 
+  /**
+   * Streams the cells of the specified sheet to the row handler a row at
+   * a time, straight from the underlying records.  Unlike getSheet, the
+   * cells are not retained once they have been passed to the handler, so
+   * this is the preferred way of processing very large sheets which only
+   * need to be read through once.  Cell comments and data validations are
+   * not attached to the cells when streaming.  Different sheets of the same
+   * workbook may be streamed concurrently from different threads
+   *
+   * @param index the zero based index of the required sheet
+   * @param handler the handler to receive each row
+   * @exception IndexOutOfBoundException when index refers to a non-existent
+   *            sheet
+   */
+  public abstract void streamSheet(int index, RowHandler handler)
+    throws IndexOutOfBoundsException;
+
+  /**
+   * Streams the cells of the sheet with the specified name to the row
+   * handler a row at a time.  See streamSheet(int, RowHandler)
+   *
+   * @param name the sheet name
+   * @param handler the handler to receive each row
+   * @return TRUE if the sheet was found and streamed, FALSE otherwise
+   */
+  public abstract boolean streamSheet(String name, RowHandler handler);
+
+  /**
+   * Streams the cells of the specified sheet to the row handler a row at
+   * a time, reading only the cells in the specified columns.  See
+   * streamSheet(int, RowHandler).  Rows with no cells in the projected
+   * columns are skipped
+   *
+   * @param index the zero based index of the required sheet
+   * @param handler the handler to receive each row
+   * @param projection the columns to read, or NULL to use the projection
+   *        given in the workbook settings
+   * @exception IndexOutOfBoundException when index refers to a non-existent
+   *            sheet
+   */
+  public abstract void streamSheet(int index, RowHandler handler,
+                                   ColumnProjection projection)
+    throws IndexOutOfBoundsException;
+
+  /**
+   * Streams the cells of the sheet with the specified name to the row
+   * handler a row at a time, reading only the cells in the specified
+   * columns.  See streamSheet(int, RowHandler, ColumnProjection)
+   *
+   * @param name the sheet name
+   * @param handler the handler to receive each row
+   * @param projection the columns to read, or NULL to use the projection
+   *        given in the workbook settings
+   * @return TRUE if the sheet was found and streamed, FALSE otherwise
+   */
+  public abstract boolean streamSheet(String name, RowHandler handler,
+                                      ColumnProjection projection);
+
+  /**
+   * Streams the rows of the specified sheet which pass the row filter to
+   * the row handler a row at a time, reading only the cells in the
+   * specified columns.  See streamSheet(int, RowHandler, ColumnProjection)
+   * and RowFilter
+   *
+   * @param index the zero based index of the required sheet
+   * @param handler the handler to receive each row
+   * @param projection the columns to read, or NULL to use the projection
+   *        given in the workbook settings
+   * @param filter the rows to stream, or NULL to stream every row
+   * @exception IndexOutOfBoundException when index refers to a non-existent
+   *            sheet
+   */
+  public abstract void streamSheet(int index, RowHandler handler,
+                                   ColumnProjection projection,
+                                   RowFilter filter)
+    throws IndexOutOfBoundsException;
+
+  /**
+   * Streams the rows of the sheet with the specified name which pass the
+   * row filter to the row handler a row at a time.  See
+   * streamSheet(int, RowHandler, ColumnProjection, RowFilter)
+   *
+   * @param name the sheet name
+   * @param handler the handler to receive each row
+   * @param projection the columns to read, or NULL to use the projection
+   *        given in the workbook settings
+   * @param filter the rows to stream, or NULL to stream every row
+   * @return TRUE if the sheet was found and streamed, FALSE otherwise
+   */
+  public abstract boolean streamSheet(String name, RowHandler handler,
+                                      ColumnProjection projection,
+                                      RowFilter filter);
+
   /**
    * Accessor for the software version
    *
@@ -168,6 +263,15 @@ public abstract class Workbook
    */
   public abstract boolean isProtected();
 
+  /**
+   * Gets an evaluator for the formulas in this workbook.  The values of
+   * formulas read in are those calculated by Excel, so the evaluator is
+   * used to evaluate new formulas against the contents of the workbook
+   *
+   * @return a formula evaluator
+   */
+  public abstract FormulaEvaluator getFormulaEvaluator();
+
   /**
    * Parses the excel file.
    * If the workbook is password protected a PasswordException is thrown
@@ -210,28 +314,9 @@ public abstract class Workbook
   public static Workbook getWorkbook(java.io.File file, WorkbookSettings ws)
     throws IOException, BiffException
   {
-    FileInputStream fis = new FileInputStream(file);
-
-    // Always close down the input stream, regardless of whether or not the
-    // file can be parsed.  Thanks to Steve Hahn for this
-    File dataFile = null;
-
-    try
-    {
-      dataFile = new File(fis, ws);
-    }
-    catch (IOException e)
-    {
-      fis.close();
-      throw e;
-    }
-    catch (BiffException e)
-    {
-      fis.close();
-      throw e;
-    }
-
-    fis.close();
+    // The file is read through its channel rather than streamed, and is
+    // always closed down regardless of whether or not it can be parsed
+    File dataFile = new File(file, ws);
 
     Workbook workbook = new WorkbookParser(dataFile, ws);
     workbook.parse();
@@ -140,6 +140,91 @@ public final class WorkbookSettings
    */
   private File temporaryFileDuringWriteDirectory;
 
+  /**
+   * The maximum number of sheets read in with getSheet which are retained
+   * in memory at any one time.  When a sheet is requested and this many
+   * sheets are already held, the least recently requested sheet is
+   * cleared.  This may also be set using the system property
+   * jxl.sheetcachesize
+   */
+  private int sheetCacheSize;
+
+  /**
+   * The approximate number of bytes of cell data which may be held by the
+   * sheets retained in memory.  When exceeded, the least recently
+   * requested sheets are cleared until the cache is within budget, although
+   * the sheet most recently requested is always retained.  Zero indicates
+   * no limit.  This may also be set using the system property
+   * jxl.sheetcachebudget
+   */
+  private long sheetCacheMemoryBudget;
+
+  /**
+   * Flag to indicate whether the strings in the shared string table are
+   * only decoded when they are first requested, rather than all being
+   * decoded when the workbook is read.  This may also be set using the
+   * system property jxl.lazysst
+   */
+  private boolean lazySharedStrings;
+
+  /**
+   * The number of rows below the highest row added to a writable sheet
+   * which are held in memory.  Rows further below are written out in
+   * blocks as the sheet is built, and can no longer be changed.  Zero
+   * indicates that every row is held until the workbook is written.  This
+   * may also be set using the system property jxl.streamingwritewindow
+   */
+  private int streamingWriteWindow;
+
+  /**
+   * The maximum number of strings in the shared string table of a writable
+   * workbook.  Zero indicates that there is no limit.  This may also be
+   * set using the system property jxl.maxsharedstrings
+   */
+  private int maximumSharedStrings;
+
+  /**
+   * The number of sheets of a writable workbook which are written out at
+   * once.  This may also be set using the system property jxl.writethreads
+   */
+  private int writeThreads;
+
+  /**
+   * Indicates whether sheets copied from another workbook, and not
+   * subsequently accessed, are written out as the records they were read
+   * from.  This may also be set using the system property
+   * jxl.sheetpassthrough
+   */
+  private boolean sheetPassthrough;
+
+  /**
+   * Indicates whether the contents of each sheet which is searched are
+   * indexed, so that subsequent searches are faster.  This may also be
+   * set using the system property jxl.cellsearchindex
+   */
+  private boolean cellSearchIndex;
+
+  /**
+   * Indicates whether the formulas added to a writable workbook are
+   * evaluated when it is written.  This may also be set using the system
+   * property jxl.formulaevaluation
+   */
+  private boolean formulaEvaluation;
+
+  /**
+   * The maximum number of parsed formulas held by each workbook, so that
+   * cells with the same formula need only be parsed once.  Zero means
+   * that every formula is parsed.  This may also be set using the system
+   * property jxl.formulacachesize
+   */
+  private int formulaCacheSize;
+
+  /**
+   * The columns of each sheet which are read, or NULL if every column
+   * is read
+   */
+  private ColumnProjection columnProjection;
+
   /**
    * The locale.  Normally this is the same as the system locale, but there
    * may be cases (eg. where you are uploading many spreadsheets from foreign
@@ -245,6 +330,8 @@ public final class WorkbookSettings
   private static final int DEFAULT_INITIAL_FILE_SIZE = 5 * 1024 * 1024;
     // 5 megabytes
   private static final int DEFAULT_ARRAY_GROW_SIZE = 1024 * 1024; // 1 megabyte
+  private static final int DEFAULT_SHEET_CACHE_SIZE = 1;
+  private static final int DEFAULT_FORMULA_CACHE_SIZE = 1000;
   
   /**
    * Default constructor
@@ -253,6 +340,9 @@ public final class WorkbookSettings
   {
     initialFileSize = DEFAULT_INITIAL_FILE_SIZE;
     arrayGrowSize = DEFAULT_ARRAY_GROW_SIZE;
+    sheetCacheSize = DEFAULT_SHEET_CACHE_SIZE;
+    sheetCacheMemoryBudget = 0;
+    formulaCacheSize = DEFAULT_FORMULA_CACHE_SIZE;
     localeFunctionNames = new HashMap();
     excelDisplayLanguage = CountryCode.USA.getCode();
     excelRegionalSettings = CountryCode.UK.getCode();
@@ -289,6 +379,23 @@ public final class WorkbookSettings
       {
         temporaryFileDuringWriteDirectory = new File(tempdir);
       }
+
+      lazySharedStrings = Boolean.getBoolean("jxl.lazysst");
+      streamingWriteWindow = Math.max(0, Integer.getInteger
+        ("jxl.streamingwritewindow", 0).intValue());
+      maximumSharedStrings = Math.max(0, Integer.getInteger
+        ("jxl.maxsharedstrings", 0).intValue());
+      writeThreads = Math.max(1, Integer.getInteger
+        ("jxl.writethreads", 1).intValue());
+      sheetPassthrough = Boolean.getBoolean("jxl.sheetpassthrough");
+      cellSearchIndex = Boolean.getBoolean("jxl.cellsearchindex");
+      formulaEvaluation = Boolean.getBoolean("jxl.formulaevaluation");
+      formulaCacheSize = Math.max(0, Integer.getInteger
+        ("jxl.formulacachesize", DEFAULT_FORMULA_CACHE_SIZE).intValue());
+      sheetCacheSize = Math.max(1, Integer.getInteger
+        ("jxl.sheetcachesize", DEFAULT_SHEET_CACHE_SIZE).intValue());
+      sheetCacheMemoryBudget = Math.max(0, Long.getLong
+        ("jxl.sheetcachebudget", 0).longValue());
       
       encoding = System.getProperty("file.encoding");
     }
@@ -746,6 +853,292 @@ public final class WorkbookSettings
     useTemporaryFileDuringWrite = temp;
   }
 
+  /**
+   * Sets the maximum number of sheets retrieved with getSheet which are
+   * retained in memory.  The default of one means that requesting a sheet
+   * clears the sheet previously requested.  Raising this avoids reading
+   * sheets again when several sheets are accessed alternately, at the
+   * expense of memory
+   *
+   * @param size the number of sheets to retain, which must be at least one
+   */
+  public void setSheetCacheSize(int size)
+  {
+    sheetCacheSize = Math.max(1, size);
+  }
+
+  /**
+   * Accessor for the maximum number of sheets retained in memory
+   *
+   * @return the number of sheets retained
+   */
+  public int getSheetCacheSize()
+  {
+    return sheetCacheSize;
+  }
+
+  /**
+   * Sets the approximate number of bytes of cell data which may be held by
+   * the sheets retained in memory.  Sheets are cleared, least recently
+   * requested first, until the total is within this budget.  The sheet
+   * most recently requested is always retained, however large
+   *
+   * @param bytes the memory budget in bytes, or zero for no limit
+   */
+  public void setSheetCacheMemoryBudget(long bytes)
+  {
+    sheetCacheMemoryBudget = Math.max(0, bytes);
+  }
+
+  /**
+   * Accessor for the memory budget of the sheets retained in memory
+   *
+   * @return the memory budget in bytes, or zero if there is no limit
+   */
+  public long getSheetCacheMemoryBudget()
+  {
+    return sheetCacheMemoryBudget;
+  }
+
+  /**
+   * Sets whether the strings in the shared string table are decoded only
+   * when first requested.  When most of the strings in a workbook, such
+   * as long free text notes, are never read, this reduces the time taken
+   * to read the workbook and the memory it occupies.  When most of the
+   * strings are read, the raw data retained for them makes this use more
+   * memory
+   *
+   * @param lazy TRUE to decode strings on demand, FALSE to decode them
+   *             all when the workbook is read
+   */
+  public void setLazySharedStrings(boolean lazy)
+  {
+    lazySharedStrings = lazy;
+  }
+
+  /**
+   * Accessor for whether the strings in the shared string table are
+   * decoded on demand
+   *
+   * @return TRUE if strings are decoded on demand, FALSE otherwise
+   */
+  public boolean getLazySharedStrings()
+  {
+    return lazySharedStrings;
+  }
+
+  /**
+   * Sets the number of rows of each writable sheet which are held in
+   * memory.  When set, rows are expected to be added in ascending order.
+   * Once a row is more than this many rows below the highest row added,
+   * it is written out to a temporary file in a block of 32 rows and
+   * freed, so that large sheets may be generated in constant memory.
+   * Cells may not subsequently be added to rows which have been written
+   * out, nor are those rows affected by column formats or autosizing.
+   * As the format indexes of the cells written out are fixed, identical
+   * formats share an index as they are added instead of being rationalized
+   * when the workbook is written.  The workbook data is also generated in
+   * a temporary file, as if setUseTemporaryFileDuringWrite had been set
+   *
+   * @param rows the number of rows held in memory, or zero to hold
+   *             every row until the workbook is written
+   */
+  public void setStreamingWriteWindow(int rows)
+  {
+    streamingWriteWindow = Math.max(0, rows);
+  }
+
+  /**
+   * Accessor for the number of rows of each writable sheet held in memory
+   *
+   * @return the number of rows held in memory, or zero if every row
+   *         is held until the workbook is written
+   */
+  public int getStreamingWriteWindow()
+  {
+    return streamingWriteWindow;
+  }
+
+  /**
+   * Sets the maximum number of strings held in the shared string table
+   * when a workbook is written.  Once the table is full, labels whose
+   * strings are not already in the table are written with their string
+   * inline in the cell record.  This bounds the memory taken by the table
+   * when there are many distinct labels, such as identifiers, which gain
+   * nothing from being shared.  Strings longer than 255 characters are
+   * always shared
+   *
+   * @param max the maximum number of shared strings, or zero if there
+   *            is no limit
+   */
+  public void setMaximumSharedStrings(int max)
+  {
+    maximumSharedStrings = Math.max(0, max);
+  }
+
+  /**
+   * Accessor for the maximum number of strings held in the shared string
+   * table when a workbook is written
+   *
+   * @return the maximum number of shared strings, or zero if there is
+   *         no limit
+   */
+  public int getMaximumSharedStrings()
+  {
+    return maximumSharedStrings;
+  }
+
+  /**
+   * Sets the number of threads used to write out the sheets of a workbook.
+   * When more than one, each sheet is written out on its own, at the same
+   * time as the others, and the sheets are then added to the workbook in
+   * order.  This makes use of more processors when a workbook has many
+   * sheets, at the cost of holding the sheets being written out in memory,
+   * or in temporary files if setUseTemporaryFileDuringWrite has been set
+   *
+   * @param threads the maximum number of sheets written out at once
+   */
+  public void setWriteThreads(int threads)
+  {
+    writeThreads = Math.max(1, threads);
+  }
+
+  /**
+   * Accessor for the number of threads used to write out the sheets of a
+   * workbook
+   *
+   * @return the maximum number of sheets written out at once
+   */
+  public int getWriteThreads()
+  {
+    return writeThreads;
+  }
+
+  /**
+   * Sets whether the sheets of a workbook being copied are written out
+   * as the records they were read from, rather than being copied cell by
+   * cell.  Only sheets which are never obtained from the writable workbook
+   * are written out this way, with their cell formats and shared strings
+   * renumbered in place; any sheet which is obtained for reading or
+   * modification is copied as usual at that point.  Sheets containing
+   * drawings, comments or charts are always copied as usual.  The records
+   * are taken from the workbook being copied when the copy is written, so
+   * that workbook must not be closed before then
+   *
+   * @param passthrough TRUE to write out unmodified sheets unchanged
+   */
+  public void setSheetPassthrough(boolean passthrough)
+  {
+    sheetPassthrough = passthrough;
+  }
+
+  /**
+   * Accessor for the sheet passthrough setting
+   *
+   * @return TRUE if unmodified sheets are written out unchanged
+   */
+  public boolean getSheetPassthrough()
+  {
+    return sheetPassthrough;
+  }
+
+  /**
+   * Sets whether the cells of a sheet which has been read in are indexed
+   * on their contents the first time the sheet is searched with findCell
+   * or findLabelCell.  Building the index takes about as long as a single
+   * search through the whole sheet, after which each search only looks at
+   * the cells with matching contents, so this is worthwhile when a sheet
+   * is searched many times.  The index is discarded along with the cells
+   *
+   * @param index TRUE to index the cells of sheets which are searched
+   */
+  public void setCellSearchIndex(boolean index)
+  {
+    cellSearchIndex = index;
+  }
+
+  /**
+   * Accessor for the cell search index setting
+   *
+   * @return TRUE if the cells of sheets which are searched are indexed
+   */
+  public boolean getCellSearchIndex()
+  {
+    return cellSearchIndex;
+  }
+
+  /**
+   * Sets whether the formulas added to a writable workbook are evaluated
+   * when it is written, so that the values they hold are correct for
+   * programs which read the values without recalculating.  Formulas
+   * which cannot be evaluated are written without a value as usual, and
+   * Excel still recalculates every formula when the workbook is opened
+   *
+   * @param evaluate TRUE to evaluate formulas when writing
+   */
+  public void setFormulaEvaluation(boolean evaluate)
+  {
+    formulaEvaluation = evaluate;
+  }
+
+  /**
+   * Accessor for the formula evaluation setting
+   *
+   * @return TRUE if formulas are evaluated when writing
+   */
+  public boolean getFormulaEvaluation()
+  {
+    return formulaEvaluation;
+  }
+
+  /**
+   * Sets the maximum number of parsed formulas held by each workbook.
+   * Cells whose formulas have the same tokens when read, or the same text
+   * when added to a writable workbook, share the one parse.  When this
+   * many formulas are held, the least recently used is discarded
+   *
+   * @param size the number of formulas to hold, or zero to parse every
+   *        formula
+   */
+  public void setFormulaCacheSize(int size)
+  {
+    formulaCacheSize = Math.max(0, size);
+  }
+
+  /**
+   * Accessor for the maximum number of parsed formulas held by each
+   * workbook
+   *
+   * @return the number of formulas held
+   */
+  public int getFormulaCacheSize()
+  {
+    return formulaCacheSize;
+  }
+
+  /**
+   * Sets the columns which are read from every sheet of the workbook.
+   * The cells in all other columns are skipped as the sheets are read,
+   * so do not appear in the sheets or in the rows streamed from them.
+   * A different projection may be given when streaming a single sheet
+   *
+   * @param projection the columns to read, or NULL to read every column
+   */
+  public void setColumnProjection(ColumnProjection projection)
+  {
+    columnProjection = projection;
+  }
+
+  /**
+   * Accessor for the columns which are read from every sheet
+   *
+   * @return the columns to read, or NULL if every column is read
+   */
+  public ColumnProjection getColumnProjection()
+  {
+    return columnProjection;
+  }
+
   /**
    * Used in conjunction with the UseTemporaryFileDuringWrite setting to
    * set the target directory for the temporary files.   If this is not set,
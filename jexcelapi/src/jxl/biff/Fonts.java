@@ -21,6 +21,7 @@ package jxl.biff;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 
 import jxl.common.Assert;
@@ -37,6 +38,13 @@ public class Fonts
    */
   private ArrayList fonts;
 
+  /**
+   * The distinct fonts, keyed on themselves so that an identical font added
+   * later may share the index of the first.  NULL unless duplicates are
+   * shared as they are added
+   */
+  private HashMap uniqueFonts;
+
   /**
    * The default number of fonts
    */
@@ -70,11 +78,47 @@ public class Fonts
         pos++;
       }
 
+      // Give a duplicate the index of the identical font added earlier
+      if (uniqueFonts != null)
+      {
+        FontRecord original = (FontRecord) uniqueFonts.get(f);
+        if (original != null)
+        {
+          f.initialize(original.getFontIndex());
+          return;
+        }
+
+        uniqueFonts.put(f, f);
+      }
+
       f.initialize(pos);
       fonts.add(f);
     }
   }
 
+  /**
+   * Sets whether fonts which are identical to ones already added share
+   * the index of the original as they are added
+   *
+   * @param share TRUE to share the indexes of duplicates
+   */
+  void setShareDuplicateFonts(boolean share)
+  {
+    uniqueFonts = null;
+    if (share)
+    {
+      uniqueFonts = new HashMap();
+      for (Iterator i = fonts.iterator(); i.hasNext();)
+      {
+        FontRecord f = (FontRecord) i.next();
+        if (!uniqueFonts.containsKey(f))
+        {
+          uniqueFonts.put(f, f);
+        }
+      }
+    }
+  }
+
   /**
    * Used by FormattingRecord for retrieving the fonts for the
    * hardcoded styles
@@ -133,33 +177,38 @@ public class Fonts
       mapping.setMapping(fr.getFontIndex(), fr.getFontIndex());
     }
 
+    // The fonts kept so far, keyed on themselves so that each font is
+    // compared only against those with the same hash code
+    HashMap kept = new HashMap(fonts.size() * 2);
+    for (int i = 0; i < newfonts.size(); i++)
+    {
+      fr = (FontRecord) newfonts.get(i);
+      if (!kept.containsKey(fr))
+      {
+        kept.put(fr, fr);
+      }
+    }
+
     // Now do the rest
     Iterator it = null;
     FontRecord fr2 = null;
-    boolean duplicate = false;
     for (int i = numDefaultFonts; i < fonts.size(); i++)
     {
       fr = (FontRecord) fonts.get(i);
 
       // Compare to all the fonts currently on the list
-      duplicate = false;
-      it = newfonts.iterator();
-      while (it.hasNext() && !duplicate)
+      fr2 = (FontRecord) kept.get(fr);
+      if (fr2 != null)
       {
-        fr2 = (FontRecord) it.next();
-        if (fr.equals(fr2))
-        {
-          duplicate = true;
-          mapping.setMapping(fr.getFontIndex(),
-                             mapping.getNewIndex(fr2.getFontIndex()));
-          numremoved++;
-        }
+        mapping.setMapping(fr.getFontIndex(),
+                           mapping.getNewIndex(fr2.getFontIndex()));
+        numremoved++;
       }
-
-      if (!duplicate)
+      else
       {
         // Add to the new list
         newfonts.add(fr);
+        kept.put(fr, fr);
         int newindex = fr.getFontIndex() - numremoved;
         Assert.verify(newindex > 4);
         mapping.setMapping(fr.getFontIndex(), newindex);
@@ -305,11 +305,12 @@ public class FormatRecord extends WritableRecordData
   }
 
   /**
-   * Gets the java equivalent number format for the formatString
+   * Gets the java equivalent number format for the formatString.  The
+   * format is created on first use, which may be from several threads
    *
    * @return The java equivalent of the number format for this object
    */
-  public final NumberFormat getNumberFormat()
+  public final synchronized NumberFormat getNumberFormat()
   {
     if (format != null && format instanceof NumberFormat)
     {
@@ -340,11 +341,12 @@ public class FormatRecord extends WritableRecordData
   }
 
   /**
-   * Gets the java equivalent date format for the formatString
+   * Gets the java equivalent date format for the formatString.  The
+   * format is created on first use, which may be from several threads
    *
    * @return The java equivalent of the date format for this object
    */
-  public final DateFormat getDateFormat()
+  public final synchronized DateFormat getDateFormat()
   {
     if (format != null && format instanceof DateFormat)
     {
@@ -59,6 +59,20 @@ public class FormattingRecords
    */
   private ArrayList xfRecords;
 
+  /**
+   * The distinct XF records, keyed on themselves so that an identical
+   * record added later may share the index of the first.  NULL unless
+   * duplicates are shared as they are added
+   */
+  private HashMap uniqueXFRecords;
+
+  /**
+   * The distinct custom number formats, keyed on themselves so that an
+   * identical format added later may share the index of the first.  NULL
+   * unless duplicates are shared as they are added
+   */
+  private HashMap uniqueFormats;
+
   /**
    * The next available index number for custom format records
    */
@@ -121,6 +135,21 @@ public class FormattingRecords
     {
       int pos = xfRecords.size();
       xf.initialize(pos, this, fonts);
+
+      // Give a duplicate the index of the identical record added earlier,
+      // rather than leaving it to be removed by rationalization
+      if (uniqueXFRecords != null)
+      {
+        XFRecord original = (XFRecord) uniqueXFRecords.get(xf);
+        if (original != null)
+        {
+          xf.share(original);
+          return;
+        }
+
+        uniqueXFRecords.put(xf, xf);
+      }
+
       xfRecords.add(xf);
     }
     else
@@ -135,6 +164,56 @@ public class FormattingRecords
     }
   }
 
+  /**
+   * Sets whether XF records and fonts which are identical to ones already
+   * added share the index of the original as they are added.  This is
+   * used when the formats cannot be rationalized before the workbook is
+   * written, because cells have already been written out with their
+   * format indexes
+   *
+   * @param share TRUE to share the indexes of duplicates
+   */
+  public void setShareDuplicateStyles(boolean share)
+  {
+    uniqueXFRecords = null;
+    uniqueFormats = null;
+    if (share)
+    {
+      // As with rationalization, later records may be duplicates of any
+      // record already present, including the fundamental styles
+      uniqueXFRecords = new HashMap();
+      addUniqueXFRecords();
+
+      uniqueFormats = new HashMap();
+      for (Iterator i = formatsList.iterator(); i.hasNext();)
+      {
+        DisplayFormat df = (DisplayFormat) i.next();
+        if (!uniqueFormats.containsKey(df))
+        {
+          uniqueFormats.put(df, df);
+        }
+      }
+    }
+
+    fonts.setShareDuplicateFonts(share);
+  }
+
+  /**
+   * Adds the first of each distinct XF record to the map used to share
+   * the indexes of duplicates
+   */
+  private void addUniqueXFRecords()
+  {
+    for (Iterator i = xfRecords.iterator(); i.hasNext();)
+    {
+      XFRecord xf = (XFRecord) i.next();
+      if (!uniqueXFRecords.containsKey(xf))
+      {
+        uniqueXFRecords.put(xf, xf);
+      }
+    }
+  }
+
   /**
    * Adds a cell format to the hash map, keyed on its index.  If the format
    * record is not initialized, then its index number is determined and its
@@ -157,10 +236,22 @@ public class FormattingRecords
       nextCustomIndexNumber++;
     }
 
-    // Initialize the format record with a custom index number
+    // Initialize the format record with a custom index number, unless
+    // an identical format has already been added, whose index it shares
     if (!fr.isInitialized())
     {
       fr.initialize(nextCustomIndexNumber);
+
+      if (uniqueFormats != null)
+      {
+        DisplayFormat original = (DisplayFormat) uniqueFormats.get(fr);
+        if (original != null)
+        {
+          fr.initialize(original.getFormatIndex());
+          return;
+        }
+      }
+
       nextCustomIndexNumber++;
     }
 
@@ -179,6 +270,11 @@ public class FormattingRecords
     {
       formatsList.add(fr);
       formats.put(new Integer(fr.getFormatIndex()), fr);
+
+      if (uniqueFormats != null && !uniqueFormats.containsKey(fr))
+      {
+        uniqueFormats.put(fr, fr);
+      }
     }
   }
 
@@ -350,6 +446,17 @@ public class FormattingRecords
     return formatsList.size();
   }
 
+  /**
+   * Gets the number of extended formatting records on the list.  Once the
+   * records have been rationalized, this is the number written out
+   *
+   * @return the number of XF records present
+   */
+  public final int getNumberOfXFRecords()
+  {
+    return xfRecords.size();
+  }
+
   /**
    * Rationalizes all the fonts, removing duplicate entries
    *
@@ -407,29 +514,35 @@ public class FormattingRecords
       return mapping;
     }
 
+    // The records kept so far, keyed on themselves so that each record
+    // is compared only against those with the same hash code
+    HashMap kept = new HashMap(xfRecords.size() * 2);
+    for (Iterator it = newrecords.iterator(); it.hasNext();)
+    {
+      XFRecord xf = (XFRecord) it.next();
+      if (!kept.containsKey(xf))
+      {
+        kept.put(xf, xf);
+      }
+    }
+
     // Iterate through the old list
     for (int i = minXFRecords; i < xfRecords.size(); i++)
     {
       XFRecord xf = (XFRecord) xfRecords.get(i);
 
       // Compare against formats already on the list
-      boolean duplicate = false;
-      for (Iterator it = newrecords.iterator();
-           it.hasNext() && !duplicate;)
+      XFRecord xf2 = (XFRecord) kept.get(xf);
+      if (xf2 != null)
       {
-        XFRecord xf2 = (XFRecord) it.next();
-        if (xf2.equals(xf))
-        {
-          duplicate = true;
-          mapping.setMapping(i, mapping.getNewIndex(xf2.getXFIndex()));
-          numremoved++;
-        }
+        mapping.setMapping(i, mapping.getNewIndex(xf2.getXFIndex()));
+        numremoved++;
       }
-
-      // If this format is not a duplicate then add it to the new list
-      if (!duplicate)
+      else
       {
+        // This format is not a duplicate so add it to the new list
         newrecords.add(xf);
+        kept.put(xf, xf);
         mapping.setMapping(i, i - numremoved);
       }
     }
@@ -446,6 +559,13 @@ public class FormattingRecords
     // Set the new list
     xfRecords = newrecords;
 
+    // The hash codes of the records have changed along with their indexes
+    if (uniqueXFRecords != null)
+    {
+      uniqueXFRecords.clear();
+      addUniqueXFRecords();
+    }
+
     return mapping;
   }
 
@@ -463,11 +583,14 @@ public class FormattingRecords
     int numremoved = 0;
     IndexMapping mapping = new IndexMapping(nextCustomIndexNumber);
 
+    // The formats kept so far, keyed on themselves so that each format
+    // is compared only against those with the same format string
+    HashMap kept = new HashMap(formatsList.size() * 2);
+
     // Iterate through the old list
     Iterator i = formatsList.iterator();
     DisplayFormat df = null;
     DisplayFormat df2 = null;
-    boolean duplicate = false;
     while (i.hasNext())
     {
       df = (DisplayFormat) i.next();
@@ -475,24 +598,18 @@ public class FormattingRecords
       Assert.verify(!df.isBuiltIn());
 
       // Compare against formats already on the list
-      Iterator i2 = newformats.iterator();
-      duplicate = false;
-      while (i2.hasNext() && !duplicate)
+      df2 = (DisplayFormat) kept.get(df);
+      if (df2 != null)
       {
-        df2 = (DisplayFormat) i2.next();
-        if (df2.equals(df))
-        {
-          duplicate = true;
-          mapping.setMapping(df.getFormatIndex(),
-                             mapping.getNewIndex(df2.getFormatIndex()));
-          numremoved++;
-        }
+        mapping.setMapping(df.getFormatIndex(),
+                           mapping.getNewIndex(df2.getFormatIndex()));
+        numremoved++;
       }
-
-      // If this format is not a duplicate then add it to the new list
-      if (!duplicate)
+      else
       {
+        // This format is not a duplicate so add it to the new list
         newformats.add(df);
+        kept.put(df, df);
         int indexnum = df.getFormatIndex() - numremoved;
         if (indexnum > maxFormatRecordsIndex)
         {
@@ -77,6 +77,17 @@ public abstract class RecordData
   {
     return code;
   }
+
+  /**
+   * Sets the code.  Used by writable records which may be written out as
+   * more than one type of record
+   *
+   * @param t the type of record
+   */
+  protected final void setType(Type t)
+  {
+    code = t.value;
+  }
 }
 
 
@@ -29,13 +29,17 @@ public final class Type
    */
   public final int value;
   /**
-   * An array of all types
+   * A table of all types, indexed directly by the biff code.  Record codes
+   * are two bytes long, so every code has a slot and looking up a type
+   * does not depend on the number of types registered
    */
-  private static Type[] types = new Type[0];
+  private static Type[] types = new Type[0x10000];
 
   /**
    * Constructor
-   * Sets the biff value and adds this type to the array of all types
+   * Sets the biff value and adds this type to the table of all types.
+   * Where more than one type shares a code, the first one registered
+   * is the one returned by getType
    *
    * @param v the biff code for the type
    */
@@ -43,11 +47,11 @@ public final class Type
   {
     value = v;
 
-    // Add to the list of available types
-    Type[] newTypes = new Type[types.length + 1];
-    System.arraycopy(types, 0, newTypes, 0, types.length);
-    newTypes[types.length] = this;
-    types = newTypes;
+    // Add to the table of available types
+    if (types[v] == null)
+    {
+      types[v] = this;
+    }
   }
 
   private static class ArbitraryType {};
@@ -99,25 +103,23 @@ public final class Type
    */
   public static Type getType(int v)
   {
-    for (int i = 0; i < types.length; i++)
-    {
-      if (types[i].value == v)
-      {
-        return types[i];
-      }
-    }
+    Type t = v >= 0 && v < types.length ? types[v] : null;
 
-    return UNKNOWN;
+    return t != null ? t : UNKNOWN;
   }
 
   /**
    * Used to create an arbitrary record type.  This method is only
-   * used during bespoke debugging process.  The creation of an
-   * arbitrary type does not add it to the static list of known types
+   * used during bespoke debugging process.  If the code is already known
+   * then the registered type is returned, so that it compares identically
+   * with the constants below.  Otherwise the creation of an
+   * arbitrary type does not add it to the static table of known types
    */
   public static Type createType(int v)
   {
-    return new Type(v, arbitrary);
+    Type t = v >= 0 && v < types.length ? types[v] : null;
+
+    return t != null ? t : new Type(v, arbitrary);
   }
 
   /**
@@ -215,9 +215,10 @@ public class XFRecord extends WritableRecordData implements CellFormat
   /**
    * Flag to indicate whether the format information has been initialized.
    * This is false if the xf record has been read in, but true if it
-   * has been written
+   * has been written.  Volatile because cells on different sheets may
+   * trigger the initialization from different threads
    */
-  private boolean formatInfoInitialized;
+  private volatile boolean formatInfoInitialized;
 
   /**
    * Flag to indicate whether this cell was copied.  If it was copied, then
@@ -226,6 +227,12 @@ public class XFRecord extends WritableRecordData implements CellFormat
    */
   private boolean copied;
 
+  /**
+   * An identical record added to the workbook earlier, whose index this
+   * record shares.  NULL if this record has an index of its own
+   */
+  private XFRecord sharedRecord;
+
   /**
    * A handle to the formatting records.  The purpose of this is
    * to read the formatting information back, for the purposes of
@@ -547,6 +554,7 @@ public class XFRecord extends WritableRecordData implements CellFormat
     indentation        = fmt.indentation;
     shrinkToFit        = fmt.shrinkToFit;
     backgroundColour   = fmt.backgroundColour;
+    usedAttributes     = fmt.usedAttributes;
 
     // Deep copy of the font
     font = new FontRecord(fmt.getFont());
@@ -1286,7 +1294,20 @@ public class XFRecord extends WritableRecordData implements CellFormat
    */
   public final int getXFIndex()
   {
-    return xfIndex;
+    return sharedRecord != null ? sharedRecord.getXFIndex() : xfIndex;
+  }
+
+  /**
+   * Shares the index of an identical record added earlier, in place of
+   * adding this record to the workbook.  The index follows that of the
+   * other record when the records are rationalized
+   *
+   * @param xf the identical record
+   */
+  final void share(XFRecord xf)
+  {
+    sharedRecord = xf;
+    xfIndex = xf.getXFIndex();
   }
 
   /**
@@ -1342,7 +1363,7 @@ public class XFRecord extends WritableRecordData implements CellFormat
   /**
    * Initializes the internal format information from the data read in
    */
-  private void initializeFormatInformation()
+  private synchronized void initializeFormatInformation()
   {
     // Initialize the cell format string
     if (formatIndex < BuiltInFormat.builtIns.length &&
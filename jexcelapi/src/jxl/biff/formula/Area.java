@@ -420,4 +420,18 @@ class Area extends Operand implements ParsedThing
   void handleImportedCellReferences()
   {
   }
+
+  /**
+   * Adds this area to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addArea(-1,
+                     columnFirst, columnFirstRelative,
+                     rowFirst, rowFirstRelative,
+                     columnLast, columnLastRelative,
+                     rowLast, rowLastRelative);
+  }
 }
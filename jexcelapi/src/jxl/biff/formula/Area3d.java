@@ -464,6 +464,20 @@ class Area3d extends Operand implements ParsedThing
   {
     setInvalid();
   }
+
+  /**
+   * Adds this area to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addArea(sheet,
+                     columnFirst, columnFirstRelative,
+                     rowFirst, rowFirstRelative,
+                     columnLast, columnLastRelative,
+                     rowLast, rowLastRelative);
+  }
 }
 
 
@@ -0,0 +1,166 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.biff.formula;
+
+import jxl.Sheet;
+
+/**
+ * A reference to a cell or an area of cells, as it appears on the stack
+ * when a formula is evaluated.  References are kept as such until they
+ * are used, as functions treat the cells of a reference differently to
+ * values passed in directly
+ */
+final class AreaValue
+{
+  /**
+   * The sheet
+   */
+  private Sheet sheet;
+
+  /**
+   * The first column
+   */
+  private int firstColumn;
+
+  /**
+   * The first row
+   */
+  private int firstRow;
+
+  /**
+   * The last column
+   */
+  private int lastColumn;
+
+  /**
+   * The last row
+   */
+  private int lastRow;
+
+  /**
+   * Constructor
+   *
+   * @param s the sheet
+   * @param fc the first column
+   * @param fr the first row
+   * @param lc the last column
+   * @param lr the last row
+   */
+  AreaValue(Sheet s, int fc, int fr, int lc, int lr)
+  {
+    sheet = s;
+    firstColumn = Math.min(fc, lc);
+    firstRow = Math.min(fr, lr);
+    lastColumn = Math.max(fc, lc);
+    lastRow = Math.max(fr, lr);
+  }
+
+  /**
+   * Accessor for the sheet
+   *
+   * @return the sheet
+   */
+  Sheet getSheet()
+  {
+    return sheet;
+  }
+
+  /**
+   * Accessor for the first column
+   *
+   * @return the first column
+   */
+  int getFirstColumn()
+  {
+    return firstColumn;
+  }
+
+  /**
+   * Accessor for the first row
+   *
+   * @return the first row
+   */
+  int getFirstRow()
+  {
+    return firstRow;
+  }
+
+  /**
+   * Gets the last column of the area which lies within the sheet, so
+   * that references to whole columns are not examined beyond the last
+   * column in use
+   *
+   * @return the last column in use
+   */
+  int getLastColumnUsed()
+  {
+    return Math.min(lastColumn, sheet.getColumns() - 1);
+  }
+
+  /**
+   * Gets the last row of the area which lies within the sheet
+   *
+   * @return the last row in use
+   */
+  int getLastRowUsed()
+  {
+    return Math.min(lastRow, sheet.getRows() - 1);
+  }
+
+  /**
+   * Determines whether this refers to a single cell
+   *
+   * @return TRUE if this is a single cell
+   */
+  boolean isCell()
+  {
+    return firstColumn == lastColumn && firstRow == lastRow;
+  }
+
+  /**
+   * Gets the value of this reference when it is used as a single value.
+   * An area of one column or one row is intersected with the row or
+   * column of the formula, as Excel does
+   *
+   * @param fe the formula evaluator
+   * @param col the column of the formula
+   * @param row the row of the formula
+   * @return the value
+   */
+  Object getValue(FormulaEvaluator fe, int col, int row)
+  {
+    if (isCell())
+    {
+      return fe.getCellValue(sheet, firstColumn, firstRow);
+    }
+
+    if (firstColumn == lastColumn && row >= firstRow && row <= lastRow)
+    {
+      return fe.getCellValue(sheet, firstColumn, row);
+    }
+
+    if (firstRow == lastRow && col >= firstColumn && col <= lastColumn)
+    {
+      return fe.getCellValue(sheet, col, firstRow);
+    }
+
+    return FormulaErrorCode.VALUE;
+  }
+}
@@ -540,6 +540,31 @@ class Attribute extends Operator implements ParsedThing
       operands[i].handleImportedCellReferences();
     }
   }
+
+  /**
+   * Adds the SUM or IF function represented by this attribute to the
+   * compiled formula
+   *
+   * @param compiler the formula compiler
+   * @exception FormulaException if the attribute cannot be evaluated
+   */
+  void compile(FormulaCompiler compiler) throws FormulaException
+  {
+    if (isSum())
+    {
+      ParseItem[] operands = getOperands();
+      operands[0].compile(compiler);
+      compiler.addFunction(Function.SUM, 1);
+    }
+    else if (isIf())
+    {
+      compiler.addIf(ifConditions.getOperands());
+    }
+    else
+    {
+      super.compile(compiler);
+    }
+  }
 }
 
 
@@ -216,6 +216,19 @@ abstract class BinaryOperator extends Operator implements ParsedThing
     operands[1].handleImportedCellReferences();
   }
 
+  /**
+   * Adds this operator, and its operands, to the compiled formula
+   *
+   * @param compiler the formula compiler
+   * @exception FormulaException if the operator cannot be evaluated
+   */
+  void compile(FormulaCompiler compiler) throws FormulaException
+  {
+    ParseItem[] operands = getOperands();
+    operands[1].compile(compiler);
+    operands[0].compile(compiler);
+    compiler.addOperator(getToken());
+  }
 }
 
 
@@ -94,4 +94,14 @@ class BooleanValue extends Operand implements ParsedThing
   void handleImportedCellReferences()
   {
   }
+
+  /**
+   * Adds this boolean to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addConstant(value ? Boolean.TRUE : Boolean.FALSE);
+  }
 }
@@ -285,5 +285,23 @@ class BuiltInFunction extends Operator implements ParsedThing
   {
     return 3;
   }
+
+  /**
+   * Adds this function, and its arguments, to the compiled formula
+   *
+   * @param compiler the formula compiler
+   * @exception FormulaException if the function cannot be evaluated
+   */
+  void compile(FormulaCompiler compiler) throws FormulaException
+  {
+    ParseItem[] operands = getOperands();
+
+    for (int i = 0; i < operands.length; i++)
+    {
+      operands[i].compile(compiler);
+    }
+
+    compiler.addFunction(function, operands.length);
+  }
 }
 
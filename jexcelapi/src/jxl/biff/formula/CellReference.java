@@ -293,4 +293,14 @@ class CellReference extends Operand implements ParsedThing
   void handleImportedCellReferences()
   {
   }
+
+  /**
+   * Adds this cell reference to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addCellReference(-1, column, columnRelative, row, rowRelative);
+  }
 }
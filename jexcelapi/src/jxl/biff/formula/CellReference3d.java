@@ -326,4 +326,13 @@ class CellReference3d extends Operand implements ParsedThing
     setInvalid();
   }
 
+  /**
+   * Adds this cell reference to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addCellReference(sheet, column, columnRelative, row, rowRelative);
+  }
 }
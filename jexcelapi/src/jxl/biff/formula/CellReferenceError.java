@@ -85,4 +85,14 @@ class CellReferenceError extends Operand implements ParsedThing
   void handleImportedCellReferences()
   {
   }
+
+  /**
+   * Adds the reference error to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addConstant(FormulaErrorCode.REF);
+  }
 }
@@ -0,0 +1,739 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.biff.formula;
+
+import java.util.Arrays;
+
+import jxl.Sheet;
+
+/**
+ * A formula compiled into instructions for a stack machine, in the same
+ * postfix order as the tokens of the formula.  Relative references are
+ * held as offsets from the cell being evaluated, so the same compiled
+ * formula may be evaluated for every cell a formula has been filled into.
+ *
+ * A formula which uses only numbers, cell references and arithmetic may
+ * also be evaluated for a block of rows at a time, with each instruction
+ * working on a column of numbers rather than a single value.  Any row
+ * whose result is not a finite number is then evaluated on its own,
+ * which gives the same result as Excel for text, errors and the like
+ */
+final class CompiledFormula
+{
+  // The instructions, followed by the number of operands each takes
+  static final int CONSTANT = 0;      // index
+  static final int REFERENCE = 1;     // sheet, column, row, flags
+  static final int AREA = 2;          // sheet, columns, rows, flags
+  static final int FUNCTION = 3;      // id, number of arguments
+  static final int IF = 4;            // false position, end position
+  static final int JUMP = 5;          // position
+  static final int ADD = 6;
+  static final int SUBTRACT = 7;
+  static final int MULTIPLY = 8;
+  static final int DIVIDE = 9;
+  static final int POWER = 10;
+  static final int NEGATE = 11;
+  static final int UNARY_PLUS = 12;
+  static final int PERCENT = 13;
+  static final int CONCATENATE = 14;
+  static final int LESS_THAN = 15;
+  static final int LESS_EQUAL = 16;
+  static final int EQUAL = 17;
+  static final int GREATER_EQUAL = 18;
+  static final int GREATER_THAN = 19;
+  static final int NOT_EQUAL = 20;
+
+  // The flags of a reference
+  static final int FIRST_COLUMN_RELATIVE = 1;
+  static final int FIRST_ROW_RELATIVE = 2;
+  static final int LAST_COLUMN_RELATIVE = 4;
+  static final int LAST_ROW_RELATIVE = 8;
+
+  /**
+   * The largest column number
+   */
+  private static final int MAX_COLUMN = 255;
+
+  /**
+   * The largest row number
+   */
+  private static final int MAX_ROW = 65535;
+
+  /**
+   * The instructions
+   */
+  private int[] code;
+
+  /**
+   * The constants
+   */
+  private Object[] constants;
+
+  /**
+   * The external sheet indexes of the sheets referred to
+   */
+  private int[] sheets;
+
+  /**
+   * The largest number of values on the stack
+   */
+  private int stackSize;
+
+  /**
+   * Indicates whether this may be evaluated a column at a time
+   */
+  private boolean vectorisable;
+
+  /**
+   * Constructor
+   *
+   * @param c the instructions
+   * @param cs the constants
+   * @param s the external sheet indexes of the sheets referred to
+   * @param ss the largest number of values on the stack
+   * @param v indicates whether this may be evaluated a column at a time
+   */
+  CompiledFormula(int[] c, Object[] cs, int[] s, int ss, boolean v)
+  {
+    code = c;
+    constants = cs;
+    sheets = s;
+    stackSize = ss;
+    vectorisable = v;
+  }
+
+  /**
+   * Gets the instruction for an operator
+   *
+   * @param t the token of the operator
+   * @return the instruction, or -1 if the operator cannot be evaluated
+   */
+  static int getOperator(Token t)
+  {
+    if (t == Token.ADD)
+    {
+      return ADD;
+    }
+    else if (t == Token.SUBTRACT)
+    {
+      return SUBTRACT;
+    }
+    else if (t == Token.MULTIPLY)
+    {
+      return MULTIPLY;
+    }
+    else if (t == Token.DIVIDE)
+    {
+      return DIVIDE;
+    }
+    else if (t == Token.POWER)
+    {
+      return POWER;
+    }
+    else if (t == Token.UNARY_MINUS)
+    {
+      return NEGATE;
+    }
+    else if (t == Token.UNARY_PLUS)
+    {
+      return UNARY_PLUS;
+    }
+    else if (t == Token.PERCENT)
+    {
+      return PERCENT;
+    }
+    else if (t == Token.CONCAT)
+    {
+      return CONCATENATE;
+    }
+    else if (t == Token.LESS_THAN)
+    {
+      return LESS_THAN;
+    }
+    else if (t == Token.LESS_EQUAL)
+    {
+      return LESS_EQUAL;
+    }
+    else if (t == Token.EQUAL)
+    {
+      return EQUAL;
+    }
+    else if (t == Token.GREATER_EQUAL)
+    {
+      return GREATER_EQUAL;
+    }
+    else if (t == Token.GREATER_THAN)
+    {
+      return GREATER_THAN;
+    }
+    else if (t == Token.NOT_EQUAL)
+    {
+      return NOT_EQUAL;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Determines whether an operator is arithmetic, and so may be evaluated
+   * a column at a time
+   *
+   * @param op the instruction
+   * @return TRUE if the operator is arithmetic
+   */
+  static boolean isArithmetic(int op)
+  {
+    return op >= ADD && op <= PERCENT;
+  }
+
+  /**
+   * Determines whether an operator takes a single operand
+   *
+   * @param op the instruction
+   * @return TRUE if the operator is unary
+   */
+  static boolean isUnary(int op)
+  {
+    return op == NEGATE || op == UNARY_PLUS || op == PERCENT;
+  }
+
+  /**
+   * Gets the length of an instruction and its operands
+   *
+   * @param op the instruction
+   * @return the length
+   */
+  private static int getLength(int op)
+  {
+    switch (op)
+    {
+      case CONSTANT:
+      case JUMP:
+        return 2;
+
+      case FUNCTION:
+      case IF:
+        return 3;
+
+      case REFERENCE:
+        return 5;
+
+      case AREA:
+        return 7;
+
+      default:
+        return 1;
+    }
+  }
+
+  /**
+   * Accessor for the vectorisable flag
+   *
+   * @return TRUE if this may be evaluated a column at a time
+   */
+  boolean isVectorisable()
+  {
+    return vectorisable;
+  }
+
+  /**
+   * Gets the columns of the cells referred to when this is evaluated
+   * in a column
+   *
+   * @param col the column of the formula
+   * @return pairs of the external sheet index, or -1 for the sheet
+   *         containing the formula, and the column referred to
+   */
+  int[] getReferencedColumns(int col)
+  {
+    int[] refs = new int[0];
+
+    for (int pc = 0; pc < code.length; pc += getLength(code[pc]))
+    {
+      if (code[pc] != REFERENCE)
+      {
+        continue;
+      }
+
+      int[] newRefs = new int[refs.length + 2];
+      System.arraycopy(refs, 0, newRefs, 0, refs.length);
+      newRefs[refs.length] = code[pc + 1] == -1 ? -1 : sheets[code[pc + 1]];
+      newRefs[refs.length + 1] = code[pc + 2] +
+        ((code[pc + 4] & FIRST_COLUMN_RELATIVE) != 0 ? col : 0);
+      refs = newRefs;
+    }
+
+    return refs;
+  }
+
+  /**
+   * Evaluates the formula for a cell
+   *
+   * @param fe the formula evaluator
+   * @param sheet the sheet containing the formula
+   * @param col the column of the cell
+   * @param row the row of the cell
+   * @return the value, which is a Double, String, Boolean or
+   *         FormulaErrorCode
+   */
+  Object evaluate(FormulaEvaluator fe, Sheet sheet, int col, int row)
+  {
+    Object[] stack = new Object[stackSize];
+    int sp = 0;
+    int pc = 0;
+
+    while (pc < code.length)
+    {
+      int op = code[pc];
+
+      switch (op)
+      {
+        case CONSTANT:
+          stack[sp++] = constants[code[pc + 1]];
+          pc += 2;
+          break;
+
+        case REFERENCE:
+        {
+          int flags = code[pc + 4];
+          int c = code[pc + 2] +
+            ((flags & FIRST_COLUMN_RELATIVE) != 0 ? col : 0);
+          int r = code[pc + 3] +
+            ((flags & FIRST_ROW_RELATIVE) != 0 ? row : 0);
+
+          stack[sp++] = isValid(c, r) ?
+            (Object) new AreaValue(getSheet(fe, sheet, code[pc + 1]),
+                                   c, r, c, r) :
+            FormulaErrorCode.REF;
+          pc += 5;
+          break;
+        }
+
+        case AREA:
+        {
+          int flags = code[pc + 6];
+          int c1 = code[pc + 2] +
+            ((flags & FIRST_COLUMN_RELATIVE) != 0 ? col : 0);
+          int r1 = code[pc + 3] +
+            ((flags & FIRST_ROW_RELATIVE) != 0 ? row : 0);
+          int c2 = code[pc + 4] +
+            ((flags & LAST_COLUMN_RELATIVE) != 0 ? col : 0);
+          int r2 = code[pc + 5] +
+            ((flags & LAST_ROW_RELATIVE) != 0 ? row : 0);
+
+          stack[sp++] = isValid(c1, r1) && isValid(c2, r2) ?
+            (Object) new AreaValue(getSheet(fe, sheet, code[pc + 1]),
+                                   c1, r1, c2, r2) :
+            FormulaErrorCode.REF;
+          pc += 7;
+          break;
+        }
+
+        case FUNCTION:
+        {
+          int numArgs = code[pc + 2];
+          Object[] args = new Object[numArgs];
+          sp -= numArgs;
+          System.arraycopy(stack, sp, args, 0, numArgs);
+          stack[sp++] =
+            FunctionLibrary.evaluate(code[pc + 1], args, fe, col, row);
+          pc += 3;
+          break;
+        }
+
+        case IF:
+        {
+          Object b = FunctionLibrary.toBoolean
+            (FunctionLibrary.getValue(stack[--sp], fe, col, row));
+          if (b instanceof Boolean)
+          {
+            pc = ((Boolean) b).booleanValue() ? pc + 3 : code[pc + 1];
+          }
+          else
+          {
+            stack[sp++] = b;
+            pc = code[pc + 2];
+          }
+          break;
+        }
+
+        case JUMP:
+          pc = code[pc + 1];
+          break;
+
+        default:
+          if (isUnary(op))
+          {
+            Object a = FunctionLibrary.getValue(stack[sp - 1], fe, col, row);
+            stack[sp - 1] = evaluateUnary(op, a);
+          }
+          else
+          {
+            Object b = FunctionLibrary.getValue(stack[--sp], fe, col, row);
+            Object a = FunctionLibrary.getValue(stack[sp - 1], fe, col, row);
+            stack[sp - 1] = evaluateBinary(op, a, b);
+          }
+          pc++;
+          break;
+      }
+    }
+
+    Object result = FunctionLibrary.getValue(stack[0], fe, col, row);
+    return result == FunctionLibrary.EMPTY ? Double.valueOf(0) : result;
+  }
+
+  /**
+   * Evaluates a unary operator
+   *
+   * @param op the instruction
+   * @param a the operand
+   * @return the result
+   */
+  private static Object evaluateUnary(int op, Object a)
+  {
+    if (op == UNARY_PLUS)
+    {
+      return a;
+    }
+
+    Object n = FunctionLibrary.toNumber(a);
+    if (!(n instanceof Double))
+    {
+      return n;
+    }
+
+    double d = ((Double) n).doubleValue();
+    return Double.valueOf(op == NEGATE ? -d : d / 100);
+  }
+
+  /**
+   * Evaluates a binary operator
+   *
+   * @param op the instruction
+   * @param a the left operand
+   * @param b the right operand
+   * @return the result
+   */
+  private static Object evaluateBinary(int op, Object a, Object b)
+  {
+    if (a instanceof FormulaErrorCode)
+    {
+      return a;
+    }
+
+    if (b instanceof FormulaErrorCode)
+    {
+      return b;
+    }
+
+    if (op == CONCATENATE)
+    {
+      Object s = FunctionLibrary.toText(a);
+      Object t = FunctionLibrary.toText(b);
+      if (!(s instanceof String))
+      {
+        return s;
+      }
+      if (!(t instanceof String))
+      {
+        return t;
+      }
+      StringBuffer buf = new StringBuffer((String) s);
+      buf.append((String) t);
+      return FunctionLibrary.checkString(buf);
+    }
+
+    if (!isArithmetic(op))
+    {
+      int c = FunctionLibrary.compare(a, b);
+      switch (op)
+      {
+        case LESS_THAN:
+          return Boolean.valueOf(c < 0);
+
+        case LESS_EQUAL:
+          return Boolean.valueOf(c <= 0);
+
+        case EQUAL:
+          return Boolean.valueOf(c == 0);
+
+        case GREATER_EQUAL:
+          return Boolean.valueOf(c >= 0);
+
+        case GREATER_THAN:
+          return Boolean.valueOf(c > 0);
+
+        default:
+          return Boolean.valueOf(c != 0);
+      }
+    }
+
+    Object m = FunctionLibrary.toNumber(a);
+    if (!(m instanceof Double))
+    {
+      return m;
+    }
+
+    Object n = FunctionLibrary.toNumber(b);
+    if (!(n instanceof Double))
+    {
+      return n;
+    }
+
+    double x = ((Double) m).doubleValue();
+    double y = ((Double) n).doubleValue();
+
+    switch (op)
+    {
+      case ADD:
+        return FunctionLibrary.checkNumber(x + y);
+
+      case SUBTRACT:
+        return FunctionLibrary.checkNumber(x - y);
+
+      case MULTIPLY:
+        return FunctionLibrary.checkNumber(x * y);
+
+      case DIVIDE:
+        return y == 0 ? (Object) FormulaErrorCode.DIV0 :
+                        FunctionLibrary.checkNumber(x / y);
+
+      default:
+        return FunctionLibrary.power(x, y);
+    }
+  }
+
+  /**
+   * Evaluates the formula for a block of consecutive rows in a column.
+   * This may only be called when the formula is vectorisable.  A result
+   * which is not a finite number means that the row must be evaluated
+   * on its own, as the result is text, an error or similar
+   *
+   * @param fe the formula evaluator
+   * @param sheet the sheet containing the formula
+   * @param col the column of the cells
+   * @param firstRow the first row of the block
+   * @param results the results, one for each row of the block
+   */
+  void evaluateColumn(FormulaEvaluator fe,
+                      Sheet sheet,
+                      int col,
+                      int firstRow,
+                      double[] results)
+  {
+    int n = results.length;
+    double[][] stack = new double[stackSize][];
+    int sp = 0;
+    int pc = 0;
+
+    while (pc < code.length)
+    {
+      int op = code[pc];
+
+      if (op == CONSTANT)
+      {
+        Arrays.fill(getVector(stack, sp++, results),
+                    ((Double) constants[code[pc + 1]]).doubleValue());
+        pc += 2;
+      }
+      else if (op == REFERENCE)
+      {
+        load(fe, sheet, col, firstRow, pc, getVector(stack, sp++, results));
+        pc += 5;
+      }
+      else if (isUnary(op))
+      {
+        double[] a = stack[sp - 1];
+        for (int i = 0; i < n; i++)
+        {
+          a[i] = op == NEGATE ? -a[i] : op == PERCENT ? a[i] / 100 : a[i];
+        }
+        pc++;
+      }
+      else
+      {
+        double[] b = stack[--sp];
+        double[] a = stack[sp - 1];
+        for (int i = 0; i < n; i++)
+        {
+          switch (op)
+          {
+            case ADD:
+              a[i] += b[i];
+              break;
+
+            case SUBTRACT:
+              a[i] -= b[i];
+              break;
+
+            case MULTIPLY:
+              a[i] *= b[i];
+              break;
+
+            case DIVIDE:
+              a[i] /= b[i];
+              break;
+
+            default:
+              // Math.pow does not give an error for the cases Excel does,
+              // so these rows are evaluated on their own
+              a[i] = Double.isNaN(a[i]) || (a[i] == 0 && b[i] <= 0) ?
+                Double.NaN : Math.pow(a[i], b[i]);
+              break;
+          }
+        }
+        pc++;
+      }
+    }
+  }
+
+  /**
+   * Gets the column of numbers at a position on the stack, creating it
+   * the first time the position is used.  The bottom of the stack holds
+   * the results
+   *
+   * @param stack the stack
+   * @param sp the position on the stack
+   * @param results the results
+   * @return the column of numbers
+   */
+  private static double[] getVector(double[][] stack, int sp,
+                                    double[] results)
+  {
+    if (stack[sp] == null)
+    {
+      stack[sp] = sp == 0 ? results : new double[results.length];
+    }
+
+    return stack[sp];
+  }
+
+  /**
+   * Loads the numbers referred to by a cell reference, one for each row
+   * of a block.  Any cell which does not hold a number is loaded as NaN,
+   * as a formula referring to text or a boolean value gives a different
+   * result to one referring to the equivalent number
+   *
+   * @param fe the formula evaluator
+   * @param sheet the sheet containing the formula
+   * @param col the column of the cells
+   * @param firstRow the first row of the block
+   * @param pc the position of the instruction
+   * @param values the numbers
+   */
+  private void load(FormulaEvaluator fe,
+                    Sheet sheet,
+                    int col,
+                    int firstRow,
+                    int pc,
+                    double[] values)
+  {
+    int flags = code[pc + 4];
+    Sheet s = getSheet(fe, sheet, code[pc + 1]);
+    int c = code[pc + 2] + ((flags & FIRST_COLUMN_RELATIVE) != 0 ? col : 0);
+    int r = code[pc + 3];
+
+    if ((flags & FIRST_ROW_RELATIVE) == 0)
+    {
+      // The same cell is used by every row
+      Arrays.fill(values, isValid(c, r) ? fe.getNumber(s, c, r) : Double.NaN);
+      return;
+    }
+
+    r += firstRow;
+    double[] numbers = fe.getNumericColumn(s, c);
+    for (int i = 0; i < values.length; i++, r++)
+    {
+      double d = r >= 0 && r < numbers.length ? numbers[r] : Double.NaN;
+      if (Double.isNaN(d))
+      {
+        d = isValid(c, r) ? fe.getNumber(s, c, r) : Double.NaN;
+      }
+      values[i] = d;
+    }
+  }
+
+  /**
+   * Determines whether a cell lies within the bounds of a sheet
+   *
+   * @param c the column
+   * @param r the row
+   * @return TRUE if the cell may be referred to
+   */
+  private static boolean isValid(int c, int r)
+  {
+    return c >= 0 && c <= MAX_COLUMN && r >= 0 && r <= MAX_ROW;
+  }
+
+  /**
+   * Gets the sheet referred to by an instruction
+   *
+   * @param fe the formula evaluator
+   * @param sheet the sheet containing the formula
+   * @param slot the slot of the sheet, or -1 for the sheet containing the
+   *        formula
+   * @return the sheet
+   */
+  private Sheet getSheet(FormulaEvaluator fe, Sheet sheet, int slot)
+  {
+    return slot == -1 ? sheet : fe.getSheet(sheets[slot]);
+  }
+
+  /**
+   * Compares two compiled formulas, which are equal when they have the
+   * same instructions, as is the case when a formula has been filled
+   * down a column
+   *
+   * @param o the object to compare with
+   * @return TRUE if the formulas are equal
+   */
+  public boolean equals(Object o)
+  {
+    if (o == this)
+    {
+      return true;
+    }
+
+    if (!(o instanceof CompiledFormula))
+    {
+      return false;
+    }
+
+    CompiledFormula cf = (CompiledFormula) o;
+    return Arrays.equals(code, cf.code) &&
+           Arrays.equals(constants, cf.constants) &&
+           Arrays.equals(sheets, cf.sheets);
+  }
+
+  /**
+   * Standard hash code method
+   *
+   * @return the hash code
+   */
+  public int hashCode()
+  {
+    int hash = 17;
+    for (int i = 0; i < code.length; i++)
+    {
+      hash = hash * 31 + code[i];
+    }
+    return hash;
+  }
+}
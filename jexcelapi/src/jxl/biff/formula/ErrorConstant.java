@@ -95,4 +95,14 @@ class ErrorConstant extends Operand implements ParsedThing
   void handleImportedCellReferences()
   {
   }
+
+  /**
+   * Adds this error to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addConstant(error);
+  }
 }
@@ -0,0 +1,322 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the7 Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+
+package jxl.biff.formula;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jxl.Cell;
+import jxl.WorkbookSettings;
+import jxl.biff.WorkbookMethods;
+
+/**
+ * A cache of the formulas parsed within a workbook, so that cells which
+ * contain the same formula share the one parse.  Formulas read in are
+ * keyed on their tokens and formulas added to a writable workbook on
+ * their text.  The members of a shared formula all have the same tokens,
+ * and the references relative to the cell are adjusted when the formula
+ * is asked for.  The cache holds a bounded number of formulas, the least
+ * recently used being discarded first, and may be used by many threads
+ */
+public final class FormulaCache
+{
+  /**
+   * The parsed formulas, ordered from the least to the most recently used
+   */
+  private LinkedHashMap templates;
+
+  /**
+   * The maximum number of formulas held.  Zero means that nothing is held
+   */
+  private int maxSize;
+
+  /**
+   * The number of lookups which found a parsed formula
+   */
+  private long hits;
+
+  /**
+   * The number of lookups which had to parse the formula
+   */
+  private long misses;
+
+  /**
+   * The key for a formula read in, which is the array of tokens
+   */
+  private static final class TokenKey
+  {
+    /**
+     * The tokens
+     */
+    private byte[] tokens;
+
+    /**
+     * The hash code
+     */
+    private int hashCode;
+
+    /**
+     * Constructor
+     *
+     * @param t the tokens
+     */
+    TokenKey(byte[] t)
+    {
+      tokens = t;
+
+      int h = 1;
+      for (int i = 0; i < t.length; i++)
+      {
+        h = 31 * h + t[i];
+      }
+      hashCode = h;
+    }
+
+    /**
+     * Standard hash code method
+     *
+     * @return the hash code
+     */
+    public int hashCode()
+    {
+      return hashCode;
+    }
+
+    /**
+     * Standard equals method
+     *
+     * @param o the object to compare
+     * @return TRUE if the tokens are the same, FALSE otherwise
+     */
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof TokenKey))
+      {
+        return false;
+      }
+
+      TokenKey tk = (TokenKey) o;
+      return hashCode == tk.hashCode &&
+        Arrays.equals(tokens, tk.tokens);
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param size the maximum number of formulas held
+   */
+  public FormulaCache(int size)
+  {
+    maxSize = Math.max(0, size);
+    templates = new LinkedHashMap(16, 0.75f, true)
+    {
+      protected boolean removeEldestEntry(Map.Entry eldest)
+      {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Gets the parsed formula for the tokens, parsing them if they have
+   * not been seen before
+   *
+   * @param tokens the tokens
+   * @param rt the cell containing the formula
+   * @param es a handle to the external sheet
+   * @param nt a handle to the name table
+   * @param ws the workbook settings
+   * @return the parsed formula
+   * @exception FormulaException
+   */
+  public FormulaTemplate getTemplate(byte[] tokens,
+                                     Cell rt,
+                                     ExternalSheet es,
+                                     WorkbookMethods nt,
+                                     WorkbookSettings ws)
+    throws FormulaException
+  {
+    TokenKey key = new TokenKey(tokens);
+    FormulaTemplate ft = lookup(key);
+
+    if (ft == null)
+    {
+      FormulaParser fp = new FormulaParser(tokens, rt, es, nt, ws);
+      fp.parse();
+      ft = new FormulaTemplate(fp, rt);
+      store(key, ft);
+    }
+
+    return ft;
+  }
+
+  /**
+   * Gets the parsed formula for the string, parsing it if it has not been
+   * seen before
+   *
+   * @param formula the formula string
+   * @param es a handle to the external sheet
+   * @param nt a handle to the name table
+   * @param ws the workbook settings
+   * @return the parsed formula
+   * @exception FormulaException
+   */
+  public FormulaTemplate getTemplate(String formula,
+                                     ExternalSheet es,
+                                     WorkbookMethods nt,
+                                     WorkbookSettings ws)
+    throws FormulaException
+  {
+    FormulaTemplate ft = lookup(formula);
+
+    if (ft == null)
+    {
+      FormulaParser fp = new FormulaParser(formula, es, nt, ws);
+      fp.parse();
+      ft = new FormulaTemplate(fp, null);
+      store(formula, ft);
+    }
+
+    return ft;
+  }
+
+  /**
+   * Gets the formula string for the tokens of the specified cell
+   *
+   * @param tokens the tokens
+   * @param rt the cell containing the formula
+   * @param es a handle to the external sheet
+   * @param nt a handle to the name table
+   * @param ws the workbook settings
+   * @return the formula as a string
+   * @exception FormulaException
+   */
+  public String getFormula(byte[] tokens,
+                           Cell rt,
+                           ExternalSheet es,
+                           WorkbookMethods nt,
+                           WorkbookSettings ws)
+    throws FormulaException
+  {
+    return getTemplate(tokens, rt, es, nt, ws).getFormula(rt);
+  }
+
+  /**
+   * Gets the formula bytes for the tokens of the specified cell, in which
+   * any references from a shared formula have been mapped onto ordinary
+   * references
+   *
+   * @param tokens the tokens
+   * @param rt the cell containing the formula
+   * @param es a handle to the external sheet
+   * @param nt a handle to the name table
+   * @param ws the workbook settings
+   * @return the bytes in RPN
+   * @exception FormulaException
+   */
+  public byte[] getBytes(byte[] tokens,
+                         Cell rt,
+                         ExternalSheet es,
+                         WorkbookMethods nt,
+                         WorkbookSettings ws)
+    throws FormulaException
+  {
+    return getTemplate(tokens, rt, es, nt, ws).getBytes(rt);
+  }
+
+  /**
+   * Looks up a parsed formula, counting the hit or miss
+   *
+   * @param key the key
+   * @return the parsed formula, or NULL if it has not been parsed
+   */
+  private synchronized FormulaTemplate lookup(Object key)
+  {
+    FormulaTemplate ft = (FormulaTemplate) templates.get(key);
+
+    if (ft != null)
+    {
+      hits++;
+    }
+    else
+    {
+      misses++;
+    }
+
+    return ft;
+  }
+
+  /**
+   * Holds on to a newly parsed formula
+   *
+   * @param key the key
+   * @param ft the parsed formula
+   */
+  private synchronized void store(Object key, FormulaTemplate ft)
+  {
+    if (maxSize > 0)
+    {
+      templates.put(key, ft);
+    }
+  }
+
+  /**
+   * Discards all the parsed formulas.  Called when the sheets or names in
+   * a writable workbook change in a way which would alter the parse of a
+   * formula already seen
+   */
+  public synchronized void clear()
+  {
+    templates.clear();
+  }
+
+  /**
+   * Accessor for the number of formulas which were found already parsed
+   *
+   * @return the number of cache hits
+   */
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  /**
+   * Accessor for the number of formulas which had to be parsed
+   *
+   * @return the number of cache misses
+   */
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  /**
+   * Accessor for the number of parsed formulas currently held
+   *
+   * @return the number of formulas held
+   */
+  public synchronized int getSize()
+  {
+    return templates.size();
+  }
+}
@@ -0,0 +1,419 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.biff.formula;
+
+import java.util.ArrayList;
+
+/**
+ * Compiles a parse tree into the instructions of a CompiledFormula.  Each
+ * item of the tree adds its own instructions by means of
+ * ParseItem.compile, in the same order as the tokens it writes out.
+ *
+ * Relative cell references are compiled as offsets from the cell the
+ * formula is compiled for, so a formula which has been filled down a
+ * column compiles to the same instructions in every cell
+ */
+class FormulaCompiler
+{
+  /**
+   * The column of the cell containing the formula
+   */
+  private int column;
+
+  /**
+   * The row of the cell containing the formula
+   */
+  private int row;
+
+  /**
+   * The instructions
+   */
+  private int[] code;
+
+  /**
+   * The number of instructions used
+   */
+  private int length;
+
+  /**
+   * The constants used by the formula
+   */
+  private ArrayList constants;
+
+  /**
+   * The external sheet indexes referred to by the formula
+   */
+  private ArrayList sheets;
+
+  /**
+   * The number of values on the stack after the instructions so far
+   */
+  private int depth;
+
+  /**
+   * The largest number of values on the stack
+   */
+  private int maxDepth;
+
+  /**
+   * Indicates whether the formula uses only numbers, cell references and
+   * arithmetic, and so may be evaluated a column at a time
+   */
+  private boolean vectorisable;
+
+  /**
+   * Constructor
+   *
+   * @param c the column of the cell containing the formula
+   * @param r the row of the cell containing the formula
+   */
+  FormulaCompiler(int c, int r)
+  {
+    column = c;
+    row = r;
+    code = new int[16];
+    length = 0;
+    constants = new ArrayList();
+    sheets = new ArrayList();
+    vectorisable = true;
+  }
+
+  /**
+   * Adds a constant
+   *
+   * @param value the value, which is a Double, String, Boolean or
+   *        FormulaErrorCode
+   */
+  void addConstant(Object value)
+  {
+    int index = constants.indexOf(value);
+    if (index == -1)
+    {
+      index = constants.size();
+      constants.add(value);
+    }
+
+    if (!(value instanceof Double))
+    {
+      vectorisable = false;
+    }
+
+    emit(CompiledFormula.CONSTANT, index);
+    push(1);
+  }
+
+  /**
+   * Adds a missing function argument
+   */
+  void addMissingArgument()
+  {
+    addConstant(FunctionLibrary.EMPTY);
+  }
+
+  /**
+   * Adds a reference to a cell
+   *
+   * @param externalSheet the external sheet index, or -1 for the sheet
+   *        containing the formula
+   * @param col the column
+   * @param colRelative indicates whether the column is relative
+   * @param r the row
+   * @param rowRelative indicates whether the row is relative
+   */
+  void addCellReference(int externalSheet,
+                        int col, boolean colRelative,
+                        int r, boolean rowRelative)
+  {
+    int flags = 0;
+
+    if (colRelative)
+    {
+      col -= column;
+      flags |= CompiledFormula.FIRST_COLUMN_RELATIVE;
+    }
+
+    if (rowRelative)
+    {
+      r -= row;
+      flags |= CompiledFormula.FIRST_ROW_RELATIVE;
+    }
+
+    emit(CompiledFormula.REFERENCE, getSheet(externalSheet));
+    emit(col, r, flags);
+    push(1);
+  }
+
+  /**
+   * Adds a reference to an area
+   *
+   * @param externalSheet the external sheet index, or -1 for the sheet
+   *        containing the formula
+   * @param firstCol the first column
+   * @param firstColRelative indicates whether the first column is relative
+   * @param firstRow the first row
+   * @param firstRowRelative indicates whether the first row is relative
+   * @param lastCol the last column
+   * @param lastColRelative indicates whether the last column is relative
+   * @param lastRow the last row
+   * @param lastRowRelative indicates whether the last row is relative
+   */
+  void addArea(int externalSheet,
+               int firstCol, boolean firstColRelative,
+               int firstRow, boolean firstRowRelative,
+               int lastCol, boolean lastColRelative,
+               int lastRow, boolean lastRowRelative)
+  {
+    int flags = 0;
+
+    if (firstColRelative)
+    {
+      firstCol -= column;
+      flags |= CompiledFormula.FIRST_COLUMN_RELATIVE;
+    }
+
+    if (firstRowRelative)
+    {
+      firstRow -= row;
+      flags |= CompiledFormula.FIRST_ROW_RELATIVE;
+    }
+
+    if (lastColRelative)
+    {
+      lastCol -= column;
+      flags |= CompiledFormula.LAST_COLUMN_RELATIVE;
+    }
+
+    if (lastRowRelative)
+    {
+      lastRow -= row;
+      flags |= CompiledFormula.LAST_ROW_RELATIVE;
+    }
+
+    // Areas are only used as function arguments
+    vectorisable = false;
+
+    emit(CompiledFormula.AREA, getSheet(externalSheet));
+    emit(firstCol, firstRow, lastCol);
+    emit(lastRow, flags);
+    push(1);
+  }
+
+  /**
+   * Adds a unary or binary operator
+   *
+   * @param t the token of the operator
+   * @exception FormulaException if the operator cannot be evaluated
+   */
+  void addOperator(Token t) throws FormulaException
+  {
+    int op = CompiledFormula.getOperator(t);
+
+    if (op == -1)
+    {
+      throw new FormulaException(FormulaException.CANNOT_EVALUATE,
+                                 "operator " + t.getCode());
+    }
+
+    if (!CompiledFormula.isArithmetic(op))
+    {
+      vectorisable = false;
+    }
+
+    emit(op);
+
+    if (!CompiledFormula.isUnary(op))
+    {
+      pop(1);
+    }
+  }
+
+  /**
+   * Adds a function
+   *
+   * @param f the function
+   * @param numArgs the number of arguments, which have already been added
+   * @exception FormulaException if the function cannot be evaluated
+   */
+  void addFunction(Function f, int numArgs) throws FormulaException
+  {
+    int id = FunctionLibrary.getId(f);
+
+    if (id == -1)
+    {
+      throw new FormulaException(FormulaException.CANNOT_EVALUATE,
+                                 "function " + f.getCode());
+    }
+
+    vectorisable = false;
+
+    emit(CompiledFormula.FUNCTION, id, numArgs);
+    pop(numArgs);
+    push(1);
+  }
+
+  /**
+   * Adds an IF function.  Only one of the true and false expressions is
+   * evaluated, so the instructions jump over the other
+   *
+   * @param args the condition, the true expression, and optionally the
+   *        false expression
+   * @exception FormulaException if the arguments cannot be evaluated
+   */
+  void addIf(ParseItem[] args) throws FormulaException
+  {
+    if (args.length < 2 || args.length > 3)
+    {
+      throw new FormulaException(FormulaException.INCORRECT_ARGUMENTS);
+    }
+
+    vectorisable = false;
+
+    args[0].compile(this);
+    emit(CompiledFormula.IF, 0, 0);
+    int ifPos = length - 3;
+    pop(1);
+
+    args[1].compile(this);
+    emit(CompiledFormula.JUMP, 0);
+    int jumpPos = length - 2;
+    pop(1);
+
+    code[ifPos + 1] = length;
+    if (args.length == 3)
+    {
+      args[2].compile(this);
+    }
+    else
+    {
+      addConstant(Boolean.FALSE);
+    }
+
+    code[ifPos + 2] = length;
+    code[jumpPos + 1] = length;
+  }
+
+  /**
+   * Gets the compiled formula
+   *
+   * @return the compiled formula
+   */
+  CompiledFormula getCompiledFormula()
+  {
+    int[] c = new int[length];
+    System.arraycopy(code, 0, c, 0, length);
+
+    int[] s = new int[sheets.size()];
+    for (int i = 0; i < s.length; i++)
+    {
+      s[i] = ((Integer) sheets.get(i)).intValue();
+    }
+
+    return new CompiledFormula(c, constants.toArray(), s, maxDepth,
+                               vectorisable);
+  }
+
+  /**
+   * Gets the slot of an external sheet used by this formula
+   *
+   * @param externalSheet the external sheet index, or -1
+   * @return the slot, or -1 for the sheet containing the formula
+   */
+  private int getSheet(int externalSheet)
+  {
+    if (externalSheet == -1)
+    {
+      return -1;
+    }
+
+    Integer key = Integer.valueOf(externalSheet);
+    int slot = sheets.indexOf(key);
+    if (slot == -1)
+    {
+      slot = sheets.size();
+      sheets.add(key);
+    }
+
+    return slot;
+  }
+
+  /**
+   * Notes that values have been pushed onto the stack
+   *
+   * @param n the number of values
+   */
+  private void push(int n)
+  {
+    depth += n;
+    maxDepth = Math.max(maxDepth, depth);
+  }
+
+  /**
+   * Notes that values have been popped off the stack
+   *
+   * @param n the number of values
+   */
+  private void pop(int n)
+  {
+    depth -= n;
+  }
+
+  /**
+   * Adds an instruction
+   *
+   * @param i the instruction
+   */
+  private void emit(int i)
+  {
+    if (length == code.length)
+    {
+      int[] newCode = new int[code.length * 2];
+      System.arraycopy(code, 0, newCode, 0, length);
+      code = newCode;
+    }
+
+    code[length++] = i;
+  }
+
+  /**
+   * Adds an instruction and its operand
+   *
+   * @param i the instruction
+   * @param a the operand
+   */
+  private void emit(int i, int a)
+  {
+    emit(i);
+    emit(a);
+  }
+
+  /**
+   * Adds an instruction and its operands
+   *
+   * @param i the instruction
+   * @param a the first operand
+   * @param b the second operand
+   */
+  private void emit(int i, int a, int b)
+  {
+    emit(i);
+    emit(a);
+    emit(b);
+  }
+}
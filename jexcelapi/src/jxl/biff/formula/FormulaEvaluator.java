@@ -0,0 +1,1046 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.biff.formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import jxl.common.AssertionFailed;
+
+import jxl.BooleanCell;
+import jxl.Cell;
+import jxl.CellType;
+import jxl.DateCell;
+import jxl.ErrorCell;
+import jxl.FormulaCell;
+import jxl.NumberCell;
+import jxl.Sheet;
+import jxl.WorkbookSettings;
+import jxl.biff.FormulaData;
+import jxl.biff.WorkbookMethods;
+
+/**
+ * Evaluates formulas.  Each formula is parsed and compiled once, and the
+ * value of every cell evaluated is remembered, so that a cell referred
+ * to by many formulas is only evaluated once.  Formulas which have been
+ * read in from a spreadsheet already hold the value Excel calculated for
+ * them, and this is used rather than evaluating them again.
+ *
+ * Formulas which have been filled down a column compile to the same
+ * instructions in every cell, and where these use only numbers, cell
+ * references and arithmetic, the whole column is evaluated at once
+ * rather than cell by cell.
+ *
+ * Only the operators and the more common of the built in functions may
+ * be evaluated.  A formula using anything else, such as a named range or
+ * a function from an add in, cannot be evaluated, and neither can any
+ * formula which refers to it.  Chains of references are followed to any
+ * depth, but a formula which refers to itself cannot be evaluated
+ */
+public class FormulaEvaluator
+{
+  /**
+   * The depth of formulas referring to formulas which is evaluated
+   * directly.  Beyond this, the formula is set aside and evaluated
+   * first, so that long chains of references do not use up the stack
+   */
+  private static final int MAX_DEPTH = 200;
+
+  /**
+   * The largest column number
+   */
+  private static final int MAX_COLUMN = 255;
+
+  /**
+   * The largest row number
+   */
+  private static final int MAX_ROW = 65535;
+
+  /**
+   * The number of days between 01 Jan 1900 and 01 Jan 1970
+   */
+  private static final int utcOffsetDays = 25569;
+
+  /**
+   * The number of days between 01 Jan 1904 and 01 Jan 1970
+   */
+  private static final int utcOffsetDays1904 = 24107;
+
+  /**
+   * The first day after Excel's non-existent 29th Feb 1900
+   */
+  private static final int nonLeapDay = 61;
+
+  /**
+   * The number of milliseconds in a day
+   */
+  private static final long msInADay = 24 * 60 * 60 * 1000;
+
+  /**
+   * Marks a cell whose formula is being evaluated
+   */
+  private static final Object IN_PROGRESS = new Object();
+
+  /**
+   * Marks a cell or sheet which cannot be evaluated
+   */
+  private static final Object FAILED = new Object();
+
+  /**
+   * The external sheets of the workbook
+   */
+  private ExternalSheet workbook;
+
+  /**
+   * The name table of the workbook
+   */
+  private WorkbookMethods nameTable;
+
+  /**
+   * The workbook settings
+   */
+  private WorkbookSettings settings;
+
+  /**
+   * Indicates whether the workbook uses the 1904 date system
+   */
+  private boolean nineteenFour;
+
+  /**
+   * The values of the formula cells evaluated, keyed on cell
+   */
+  private HashMap values;
+
+  /**
+   * The compiled formulas, keyed on cell
+   */
+  private HashMap formulas;
+
+  /**
+   * The sheets referred to, keyed on external sheet index
+   */
+  private HashMap sheets;
+
+  /**
+   * The numbers in each column of each sheet referred to
+   */
+  private HashMap numericColumns;
+
+  /**
+   * The depth of formulas being evaluated
+   */
+  private int depth;
+
+  /**
+   * Thrown when a formula cannot be evaluated, or when it refers to a
+   * formula which must be evaluated first
+   */
+  private static class Unresolved extends RuntimeException
+  {
+    /**
+     * The serial version id
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The sheet containing the formula to evaluate first
+     */
+    Sheet sheet;
+
+    /**
+     * The cell containing the formula to evaluate first, or NULL if the
+     * formula cannot be evaluated
+     */
+    Cell cell;
+
+    /**
+     * Constructor
+     *
+     * @param s the sheet
+     * @param c the cell
+     */
+    Unresolved(Sheet s, Cell c)
+    {
+      sheet = s;
+      cell = c;
+    }
+
+    /**
+     * Does not fill in the stack trace, as this is not an error
+     *
+     * @return this
+     */
+    public Throwable fillInStackTrace()
+    {
+      return this;
+    }
+  }
+
+  /**
+   * A block of consecutive cells in a column containing the same formula
+   */
+  private static class Run
+  {
+    /**
+     * The compiled formula
+     */
+    CompiledFormula formula;
+
+    /**
+     * The cells
+     */
+    Cell[] cells;
+
+    /**
+     * Indicates whether the run is being, or has been, evaluated
+     */
+    boolean evaluated;
+
+    /**
+     * Constructor
+     *
+     * @param cf the compiled formula
+     * @param c the cells
+     */
+    Run(CompiledFormula cf, Cell[] c)
+    {
+      formula = cf;
+      cells = c;
+    }
+  }
+
+  /**
+   * Orders cells by column, and then by row
+   */
+  private static class ColumnOrder implements Comparator
+  {
+    /**
+     * Compares two cells
+     *
+     * @param o1 the first cell
+     * @param o2 the second cell
+     * @return the order of the cells
+     */
+    public int compare(Object o1, Object o2)
+    {
+      Cell c1 = (Cell) o1;
+      Cell c2 = (Cell) o2;
+
+      if (c1.getColumn() != c2.getColumn())
+      {
+        return c1.getColumn() - c2.getColumn();
+      }
+
+      return c1.getRow() - c2.getRow();
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param es the external sheets of the workbook
+   * @param nt the name table of the workbook
+   * @param ws the workbook settings
+   * @param nf indicates whether the workbook uses the 1904 date system
+   */
+  public FormulaEvaluator(ExternalSheet es,
+                          WorkbookMethods nt,
+                          WorkbookSettings ws,
+                          boolean nf)
+  {
+    workbook = es;
+    nameTable = nt;
+    settings = ws;
+    nineteenFour = nf;
+    values = new HashMap();
+    formulas = new HashMap();
+    sheets = new HashMap();
+    numericColumns = new HashMap();
+  }
+
+  /**
+   * Forgets all the values evaluated so far.  This must be called once
+   * any cell referred to by a formula has been changed
+   */
+  public void clear()
+  {
+    values.clear();
+    formulas.clear();
+    sheets.clear();
+    numericColumns.clear();
+  }
+
+  /**
+   * Gets the value of a cell, evaluating it if it contains a formula
+   *
+   * @param sheet the sheet
+   * @param col the column
+   * @param row the row
+   * @return the value as a Double, String, Boolean or FormulaErrorCode,
+   *         or NULL if the cell is empty or cannot be evaluated
+   */
+  public Object getValue(Sheet sheet, int col, int row)
+  {
+    if (col < 0 || row < 0 || col > MAX_COLUMN || row > MAX_ROW)
+    {
+      return FormulaErrorCode.REF;
+    }
+
+    if (col >= sheet.getColumns() || row >= sheet.getRows())
+    {
+      return null;
+    }
+
+    return getResult(resolve(sheet, sheet.getCell(col, row)));
+  }
+
+  /**
+   * Evaluates a formula as though it were in the specified cell of
+   * a sheet
+   *
+   * @param sheet the sheet
+   * @param formula the formula, without the leading equals sign
+   * @param col the column
+   * @param row the row
+   * @return the value as a Double, String, Boolean or FormulaErrorCode,
+   *         or NULL if the formula refers to a cell which cannot be
+   *         evaluated
+   * @exception FormulaException if the formula cannot be evaluated
+   */
+  public Object evaluate(Sheet sheet, String formula, int col, int row)
+    throws FormulaException
+  {
+    CompiledFormula cf = compile(formula, col, row);
+    return getResult(evaluate(cf, sheet, col, row));
+  }
+
+  /**
+   * Evaluates a formula for each of a block of rows in a column, as
+   * though it had been filled down the column.  Relative references are
+   * relative to the first row
+   *
+   * @param sheet the sheet
+   * @param formula the formula as it is in the first row, without the
+   *        leading equals sign
+   * @param col the column
+   * @param firstRow the first row
+   * @param lastRow the last row
+   * @return the value for each row, as for evaluate
+   * @exception FormulaException if the formula cannot be evaluated
+   */
+  public Object[] evaluateColumn(Sheet sheet,
+                                 String formula,
+                                 int col,
+                                 int firstRow,
+                                 int lastRow)
+    throws FormulaException
+  {
+    CompiledFormula cf = compile(formula, col, firstRow);
+    double[] numbers = new double[Math.max(0, lastRow - firstRow + 1)];
+    Object[] results = new Object[numbers.length];
+    evaluateColumn(cf, sheet, col, firstRow, numbers, results);
+
+    for (int i = 0; i < results.length; i++)
+    {
+      results[i] = results[i] == null ?
+        Double.valueOf(numbers[i]) : getResult(results[i]);
+    }
+
+    return results;
+  }
+
+  /**
+   * Evaluates a formula for each of a block of rows in a column, as
+   * though it had been filled down the column, where the results are
+   * expected to be numbers
+   *
+   * @param sheet the sheet
+   * @param formula the formula as it is in the first row, without the
+   *        leading equals sign
+   * @param col the column
+   * @param firstRow the first row
+   * @param lastRow the last row
+   * @return the number for each row, or NaN where the result is not a
+   *         number
+   * @exception FormulaException if the formula cannot be evaluated
+   */
+  public double[] evaluateNumericColumn(Sheet sheet,
+                                        String formula,
+                                        int col,
+                                        int firstRow,
+                                        int lastRow)
+    throws FormulaException
+  {
+    CompiledFormula cf = compile(formula, col, firstRow);
+    double[] numbers = new double[Math.max(0, lastRow - firstRow + 1)];
+    Object[] results = new Object[numbers.length];
+    evaluateColumn(cf, sheet, col, firstRow, numbers, results);
+
+    for (int i = 0; i < results.length; i++)
+    {
+      if (results[i] != null)
+      {
+        numbers[i] = Double.NaN;
+      }
+    }
+
+    return numbers;
+  }
+
+  /**
+   * Evaluates the formulas in the cells of a sheet.  Blocks of the same
+   * formula filled down a column are evaluated a column at a time, after
+   * the blocks they refer to.  The values may then be obtained with
+   * getValue
+   *
+   * @param sheet the sheet
+   * @param cells the cells containing the formulas
+   */
+  public void evaluateFormulas(Sheet sheet, Cell[] cells)
+  {
+    Cell[] sorted = new Cell[cells.length];
+    System.arraycopy(cells, 0, sorted, 0, cells.length);
+    Arrays.sort(sorted, new ColumnOrder());
+
+    // Group the cells into runs of the same formula
+    ArrayList runs = new ArrayList();
+    HashMap runsByColumn = new HashMap();
+    int i = 0;
+    while (i < sorted.length)
+    {
+      Cell c = sorted[i];
+      CompiledFormula cf = isEvaluated(c) ? getFormula(c) : null;
+      int j = i + 1;
+
+      if (cf != null && cf.isVectorisable())
+      {
+        while (j < sorted.length &&
+               sorted[j].getColumn() == c.getColumn() &&
+               sorted[j].getRow() == sorted[j - 1].getRow() + 1 &&
+               isEvaluated(sorted[j]) &&
+               cf.equals(getFormula(sorted[j])))
+        {
+          j++;
+        }
+      }
+
+      if (j - i > 1)
+      {
+        Cell[] runCells = new Cell[j - i];
+        System.arraycopy(sorted, i, runCells, 0, runCells.length);
+        Run run = new Run(cf, runCells);
+        runs.add(run);
+
+        Integer key = Integer.valueOf(c.getColumn());
+        ArrayList columnRuns = (ArrayList) runsByColumn.get(key);
+        if (columnRuns == null)
+        {
+          columnRuns = new ArrayList();
+          runsByColumn.put(key, columnRuns);
+        }
+        columnRuns.add(run);
+      }
+
+      i = j;
+    }
+
+    for (int r = 0; r < runs.size(); r++)
+    {
+      evaluateRun(sheet, (Run) runs.get(r), runsByColumn);
+    }
+
+    for (int k = 0; k < cells.length; k++)
+    {
+      resolve(sheet, cells[k]);
+    }
+  }
+
+  /**
+   * Evaluates a run of formulas, after first evaluating the runs in the
+   * columns it refers to
+   *
+   * @param sheet the sheet
+   * @param run the run
+   * @param runsByColumn the runs of the sheet, keyed on column
+   */
+  private void evaluateRun(Sheet sheet, Run run, HashMap runsByColumn)
+  {
+    if (run.evaluated)
+    {
+      return;
+    }
+    run.evaluated = true;
+
+    int column = run.cells[0].getColumn();
+    int firstRow = run.cells[0].getRow();
+    int[] refs = run.formula.getReferencedColumns(column);
+    boolean selfReferencing = false;
+
+    for (int i = 0; i < refs.length; i += 2)
+    {
+      if (refs[i] != -1)
+      {
+        try
+        {
+          if (getSheet(refs[i]) != sheet)
+          {
+            continue;
+          }
+        }
+        catch (Unresolved e)
+        {
+          continue;
+        }
+      }
+
+      if (refs[i + 1] == column)
+      {
+        selfReferencing = true;
+        continue;
+      }
+
+      ArrayList columnRuns =
+        (ArrayList) runsByColumn.get(Integer.valueOf(refs[i + 1]));
+      for (int j = 0; columnRuns != null && j < columnRuns.size(); j++)
+      {
+        evaluateRun(sheet, (Run) columnRuns.get(j), runsByColumn);
+      }
+    }
+
+    // A formula referring to the cells above it in the same column is
+    // evaluated cell by cell, from the top down
+    if (!selfReferencing)
+    {
+      double[] results = new double[run.cells.length];
+      run.formula.evaluateColumn(this, sheet, column, firstRow, results);
+
+      for (int i = 0; i < results.length; i++)
+      {
+        if (!Double.isNaN(results[i]) && !Double.isInfinite(results[i]) &&
+            !values.containsKey(run.cells[i]))
+        {
+          values.put(run.cells[i], Double.valueOf(results[i]));
+        }
+      }
+    }
+
+    for (int i = 0; i < run.cells.length; i++)
+    {
+      resolve(sheet, run.cells[i]);
+    }
+  }
+
+  /**
+   * Evaluates a compiled formula for a block of rows in a column
+   *
+   * @param cf the compiled formula
+   * @param sheet the sheet
+   * @param col the column
+   * @param firstRow the first row
+   * @param numbers the numerical results
+   * @param others the results which are not numbers, or NULL where the
+   *        result is a number
+   */
+  private void evaluateColumn(CompiledFormula cf,
+                              Sheet sheet,
+                              int col,
+                              int firstRow,
+                              double[] numbers,
+                              Object[] others)
+  {
+    if (cf.isVectorisable())
+    {
+      cf.evaluateColumn(this, sheet, col, firstRow, numbers);
+    }
+    else
+    {
+      Arrays.fill(numbers, Double.NaN);
+    }
+
+    for (int i = 0; i < numbers.length; i++)
+    {
+      if (Double.isNaN(numbers[i]) || Double.isInfinite(numbers[i]))
+      {
+        Object v = evaluate(cf, sheet, col, firstRow + i);
+        if (v instanceof Double)
+        {
+          numbers[i] = ((Double) v).doubleValue();
+        }
+        else
+        {
+          others[i] = v;
+        }
+      }
+    }
+  }
+
+  /**
+   * Evaluates a compiled formula, first evaluating any formulas it refers
+   * to which have been set aside
+   *
+   * @param cf the compiled formula
+   * @param sheet the sheet
+   * @param col the column
+   * @param row the row
+   * @return the value, or FAILED
+   */
+  private Object evaluate(CompiledFormula cf, Sheet sheet, int col, int row)
+  {
+    while (true)
+    {
+      try
+      {
+        return cf.evaluate(this, sheet, col, row);
+      }
+      catch (Unresolved e)
+      {
+        if (e.cell == null)
+        {
+          return FAILED;
+        }
+
+        resolve(e.sheet, e.cell);
+      }
+    }
+  }
+
+  /**
+   * Gets the value of a cell, evaluating any formulas which are set aside
+   * along the way before the cells which refer to them
+   *
+   * @param sheet the sheet
+   * @param cell the cell
+   * @return the value, or FAILED
+   */
+  private Object resolve(Sheet sheet, Cell cell)
+  {
+    ArrayList pending = new ArrayList();
+    pending.add(new Unresolved(sheet, cell));
+    Object value = null;
+
+    while (!pending.isEmpty())
+    {
+      Unresolved next = (Unresolved) pending.get(pending.size() - 1);
+      try
+      {
+        value = getValue(next.sheet, next.cell);
+        pending.remove(pending.size() - 1);
+      }
+      catch (Unresolved e)
+      {
+        if (e.cell == null)
+        {
+          value = FAILED;
+          pending.remove(pending.size() - 1);
+        }
+        else if (isPending(pending, e.cell))
+        {
+          // The formula refers to itself through a long chain of cells
+          values.put(e.cell, FAILED);
+        }
+        else
+        {
+          pending.add(e);
+        }
+      }
+    }
+
+    return value;
+  }
+
+  /**
+   * Determines whether a cell has been set aside
+   *
+   * @param pending the cells set aside
+   * @param cell the cell
+   * @return TRUE if the cell is one of those set aside
+   */
+  private static boolean isPending(ArrayList pending, Cell cell)
+  {
+    for (int i = 0; i < pending.size(); i++)
+    {
+      if (((Unresolved) pending.get(i)).cell == cell)
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Gets the value of a cell referred to by a formula
+   *
+   * @param sheet the sheet
+   * @param col the column
+   * @param row the row
+   * @return the value
+   */
+  Object getCellValue(Sheet sheet, int col, int row)
+  {
+    if (col < 0 || row < 0 || col > MAX_COLUMN || row > MAX_ROW)
+    {
+      return FormulaErrorCode.REF;
+    }
+
+    if (col >= sheet.getColumns() || row >= sheet.getRows())
+    {
+      return FunctionLibrary.EMPTY;
+    }
+
+    return getValue(sheet, sheet.getCell(col, row));
+  }
+
+  /**
+   * Gets the number held by a cell referred to by a formula which is
+   * being evaluated a column at a time
+   *
+   * @param sheet the sheet
+   * @param col the column
+   * @param row the row
+   * @return the number, zero if the cell is empty, or NaN if the cell
+   *         holds anything else
+   */
+  double getNumber(Sheet sheet, int col, int row)
+  {
+    if (col >= sheet.getColumns() || row >= sheet.getRows())
+    {
+      return 0;
+    }
+
+    Object v = resolve(sheet, sheet.getCell(col, row));
+    if (v == FunctionLibrary.EMPTY)
+    {
+      return 0;
+    }
+
+    return v instanceof Double ? ((Double) v).doubleValue() : Double.NaN;
+  }
+
+  /**
+   * Gets the numbers in a column of a sheet, which are read once for all
+   * the formulas evaluated
+   *
+   * @param sheet the sheet
+   * @param col the column
+   * @return the number on each row, or NaN where the cell is not a number
+   */
+  double[] getNumericColumn(Sheet sheet, int col)
+  {
+    if (col < 0 || col >= sheet.getColumns())
+    {
+      return new double[0];
+    }
+
+    HashMap columns = (HashMap) numericColumns.get(sheet);
+    if (columns == null)
+    {
+      columns = new HashMap();
+      numericColumns.put(sheet, columns);
+    }
+
+    Integer key = Integer.valueOf(col);
+    double[] numbers = (double[]) columns.get(key);
+    if (numbers == null)
+    {
+      numbers = sheet.getNumericColumn(col);
+      columns.put(key, numbers);
+    }
+
+    return numbers;
+  }
+
+  /**
+   * Gets a sheet referred to by a formula
+   *
+   * @param index the external sheet index
+   * @return the sheet
+   */
+  Sheet getSheet(int index)
+  {
+    Integer key = Integer.valueOf(index);
+    Object sheet = sheets.get(key);
+
+    if (sheet == null)
+    {
+      sheet = FAILED;
+
+      // References to other workbooks, and to more than one sheet, cannot
+      // be evaluated
+      int first = workbook.getExternalSheetIndex(index);
+      if (first >= 0 && first == workbook.getLastExternalSheetIndex(index))
+      {
+        try
+        {
+          Sheet s = nameTable.getReadSheet(first);
+          if (s != null &&
+              s.getName().equals(workbook.getExternalSheetName(index)))
+          {
+            sheet = s;
+          }
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+          // The sheet has been deleted
+        }
+      }
+
+      sheets.put(key, sheet);
+    }
+
+    if (sheet == FAILED)
+    {
+      throw new Unresolved(null, null);
+    }
+
+    return (Sheet) sheet;
+  }
+
+  /**
+   * Gets the value of a cell
+   *
+   * @param sheet the sheet
+   * @param cell the cell
+   * @return the value
+   */
+  private Object getValue(Sheet sheet, Cell cell)
+  {
+    if (isEvaluated(cell))
+    {
+      return evaluateFormula(sheet, cell);
+    }
+
+    CellType type = cell.getType();
+
+    if (type == CellType.LABEL || type == CellType.STRING_FORMULA)
+    {
+      return cell.getContents();
+    }
+
+    if (cell instanceof DateCell)
+    {
+      return Double.valueOf(getDateValue((DateCell) cell));
+    }
+
+    if (cell instanceof NumberCell)
+    {
+      return Double.valueOf(((NumberCell) cell).getValue());
+    }
+
+    if (cell instanceof BooleanCell)
+    {
+      return Boolean.valueOf(((BooleanCell) cell).getValue());
+    }
+
+    if (cell instanceof ErrorCell)
+    {
+      return FormulaErrorCode.getErrorCode(((ErrorCell) cell).getErrorCode());
+    }
+
+    return FunctionLibrary.EMPTY;
+  }
+
+  /**
+   * Determines whether a cell holds a formula which must be evaluated.
+   * Formulas which have been read in already hold their value
+   *
+   * @param cell the cell
+   * @return TRUE if the formula must be evaluated
+   */
+  private static boolean isEvaluated(Cell cell)
+  {
+    return cell instanceof FormulaData && !(cell instanceof FormulaCell);
+  }
+
+  /**
+   * Converts a date to its numerical value in Excel
+   *
+   * @param cell the date cell
+   * @return the numerical value
+   */
+  private double getDateValue(DateCell cell)
+  {
+    double value = (double) cell.getDate().getTime() / (double) msInADay +
+      (nineteenFour ? utcOffsetDays1904 : utcOffsetDays);
+
+    if (cell.isTime())
+    {
+      return value - Math.floor(value);
+    }
+
+    if (!nineteenFour && value < nonLeapDay)
+    {
+      value -= 1;
+    }
+
+    return value;
+  }
+
+  /**
+   * Evaluates the formula in a cell, unless it has already been evaluated
+   *
+   * @param sheet the sheet
+   * @param cell the cell
+   * @return the value
+   */
+  private Object evaluateFormula(Sheet sheet, Cell cell)
+  {
+    Object v = values.get(cell);
+
+    if (v == IN_PROGRESS || v == FAILED)
+    {
+      // A formula which refers to itself cannot be evaluated
+      values.put(cell, FAILED);
+      throw new Unresolved(null, null);
+    }
+
+    if (v != null)
+    {
+      return v;
+    }
+
+    CompiledFormula cf = getFormula(cell);
+    if (cf == null)
+    {
+      values.put(cell, FAILED);
+      throw new Unresolved(null, null);
+    }
+
+    if (depth >= MAX_DEPTH)
+    {
+      throw new Unresolved(sheet, cell);
+    }
+
+    values.put(cell, IN_PROGRESS);
+    depth++;
+    try
+    {
+      v = cf.evaluate(this, sheet, cell.getColumn(), cell.getRow());
+      values.put(cell, v);
+      return v;
+    }
+    catch (Unresolved e)
+    {
+      if (e.cell == null)
+      {
+        values.put(cell, FAILED);
+      }
+      else
+      {
+        values.remove(cell);
+      }
+      throw e;
+    }
+    finally
+    {
+      depth--;
+    }
+  }
+
+  /**
+   * Gets the compiled formula of a cell, compiling it the first time
+   *
+   * @param cell the cell
+   * @return the compiled formula, or NULL if it cannot be evaluated
+   */
+  private CompiledFormula getFormula(Cell cell)
+  {
+    Object cf = formulas.get(cell);
+
+    if (cf == null)
+    {
+      cf = FAILED;
+      try
+      {
+        byte[] data = ((FormulaData) cell).getFormulaData();
+        byte[] tokens = new byte[data.length - 16];
+        System.arraycopy(data, 16, tokens, 0, tokens.length);
+        cf = compile(tokens, cell, cell.getColumn(), cell.getRow());
+      }
+      catch (FormulaException e)
+      {
+        // The formula uses something which cannot be evaluated, so is
+        // written out without a value as usual
+      }
+      catch (AssertionFailed e)
+      {
+        // The formula could not be parsed
+      }
+      formulas.put(cell, cf);
+    }
+
+    return cf == FAILED ? null : (CompiledFormula) cf;
+  }
+
+  /**
+   * Compiles a formula given as a string
+   *
+   * @param formula the formula
+   * @param col the column of the cell the formula is compiled for
+   * @param row the row of the cell the formula is compiled for
+   * @return the compiled formula
+   * @exception FormulaException if the formula cannot be evaluated
+   */
+  private CompiledFormula compile(String formula, int col, int row)
+    throws FormulaException
+  {
+    FormulaParser fp = new FormulaParser(formula, workbook, nameTable,
+                                         settings);
+    fp.parse();
+    return compile(fp.getBytes(), null, col, row);
+  }
+
+  /**
+   * Compiles the tokens of a formula
+   *
+   * @param tokens the tokens
+   * @param cell the cell containing the formula, or NULL
+   * @param col the column of the cell the formula is compiled for
+   * @param row the row of the cell the formula is compiled for
+   * @return the compiled formula
+   * @exception FormulaException if the formula cannot be evaluated
+   */
+  private CompiledFormula compile(byte[] tokens, Cell cell, int col, int row)
+    throws FormulaException
+  {
+    TokenFormulaParser tfp = new TokenFormulaParser(tokens, cell, workbook,
+                                                    nameTable, settings,
+                                                    ParseContext.DEFAULT);
+    tfp.parse();
+
+    FormulaCompiler compiler = new FormulaCompiler(col, row);
+    tfp.getParseTree().compile(compiler);
+    return compiler.getCompiledFormula();
+  }
+
+  /**
+   * Converts a value to the result returned to the caller
+   *
+   * @param v the value
+   * @return the result, or NULL if the value is empty or could not be
+   *         evaluated
+   */
+  private static Object getResult(Object v)
+  {
+    return v == FunctionLibrary.EMPTY || v == FAILED ? null : v;
+  }
+}
@@ -92,6 +92,11 @@ public class FormulaException extends JXLException
   static final FormulaMessage CELL_NAME_NOT_FOUND =
     new FormulaMessage("Could not find named cell");
 
+  /**
+   */
+  static final FormulaMessage CANNOT_EVALUATE =
+    new FormulaMessage("Cannot evaluate");
+
 
   /**
    * Constructs this exception with the specified message
@@ -151,6 +151,23 @@ public class FormulaParser
     parser.adjustRelativeCellReferences(colAdjust, rowAdjust);
   }
 
+  /**
+   * Gets the references in a shared formula which are relative to the
+   * cell containing the formula
+   *
+   * @return the relative references, which is empty for formulas which
+   *         are not shared or which were parsed from a string
+   */
+  ParseItem[] getSharedReferences()
+  {
+    if (!(parser instanceof TokenFormulaParser))
+    {
+      return new ParseItem[0];
+    }
+
+    return ((TokenFormulaParser) parser).getSharedReferences();
+  }
+
   /**
    * Parses the formula into a parse tree
    *
@@ -0,0 +1,217 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the7 Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+
+package jxl.biff.formula;
+
+import jxl.Cell;
+
+/**
+ * A parsed formula held by the formula cache.  The same template is used
+ * for every cell with the same formula, so for a shared formula the
+ * references which are relative to the cell containing the formula are
+ * adjusted to the cell asked for before the formula is rendered.  The
+ * parse tree is only ever touched whilst holding the lock on this object
+ */
+public final class FormulaTemplate
+{
+  /**
+   * The parsed formula
+   */
+  private FormulaParser parser;
+
+  /**
+   * The references which are relative to the cell containing the formula
+   */
+  private ParseItem[] sharedReferences;
+
+  /**
+   * The column which the relative references are currently relative to
+   */
+  private int column;
+
+  /**
+   * The row which the relative references are currently relative to
+   */
+  private int row;
+
+  /**
+   * The formula as a string, once it has been rendered.  Only held when
+   * the formula does not depend on the cell
+   */
+  private String formula;
+
+  /**
+   * The formula bytes, once they have been rendered.  Only held when the
+   * formula does not depend on the cell
+   */
+  private byte[] bytes;
+
+  /**
+   * Constructor
+   *
+   * @param fp the parsed formula
+   * @param c the cell the formula was parsed for, or NULL if it was
+   *        parsed from a string
+   */
+  FormulaTemplate(FormulaParser fp, Cell c)
+  {
+    parser = fp;
+    sharedReferences = fp.getSharedReferences();
+
+    if (c != null)
+    {
+      column = c.getColumn();
+      row = c.getRow();
+    }
+  }
+
+  /**
+   * Determines whether this formula reads differently depending on the
+   * cell which contains it
+   *
+   * @return TRUE if the formula depends on the cell, FALSE otherwise
+   */
+  boolean isRelative()
+  {
+    return sharedReferences.length > 0;
+  }
+
+  /**
+   * Gets the formula as a string
+   *
+   * @return the formula
+   * @exception FormulaException
+   */
+  public synchronized String getFormula() throws FormulaException
+  {
+    return getFormula(column, row);
+  }
+
+  /**
+   * Gets the formula as a string for the specified cell
+   *
+   * @param c the cell containing the formula
+   * @return the formula
+   * @exception FormulaException
+   */
+  public String getFormula(Cell c) throws FormulaException
+  {
+    return getFormula(c.getColumn(), c.getRow());
+  }
+
+  /**
+   * Gets the formula bytes, in which any references from a shared formula
+   * have been mapped onto ordinary references
+   *
+   * @return the bytes in RPN
+   */
+  public synchronized byte[] getBytes()
+  {
+    return getBytes(column, row);
+  }
+
+  /**
+   * Gets the formula bytes for the specified cell
+   *
+   * @param c the cell containing the formula
+   * @return the bytes in RPN
+   */
+  public byte[] getBytes(Cell c)
+  {
+    return getBytes(c.getColumn(), c.getRow());
+  }
+
+  /**
+   * Gets the formula as a string for the specified cell position
+   *
+   * @param c the column
+   * @param r the row
+   * @return the formula
+   * @exception FormulaException
+   */
+  private synchronized String getFormula(int c, int r) 
+    throws FormulaException
+  {
+    if (formula != null)
+    {
+      return formula;
+    }
+
+    relocate(c, r);
+    String f = parser.getFormula();
+
+    if (!isRelative())
+    {
+      formula = f;
+    }
+
+    return f;
+  }
+
+  /**
+   * Gets the formula bytes for the specified cell position.  A copy is
+   * returned, so that the caller may do what it likes with them
+   *
+   * @param c the column
+   * @param r the row
+   * @return the bytes in RPN
+   */
+  private synchronized byte[] getBytes(int c, int r)
+  {
+    if (isRelative())
+    {
+      relocate(c, r);
+      return parser.getBytes();
+    }
+
+    if (bytes == null)
+    {
+      bytes = parser.getBytes();
+    }
+
+    byte[] b = new byte[bytes.length];
+    System.arraycopy(bytes, 0, b, 0, bytes.length);
+    return b;
+  }
+
+  /**
+   * Adjusts the relative references so that they are relative to the
+   * specified cell position
+   *
+   * @param c the column
+   * @param r the row
+   */
+  private void relocate(int c, int r)
+  {
+    if (c == column && r == row)
+    {
+      return;
+    }
+
+    for (int i = 0; i < sharedReferences.length; i++)
+    {
+      sharedReferences[i].adjustRelativeCellReferences(c - column, 
+                                                       r - row);
+    }
+
+    column = c;
+    row = r;
+  }
+}
@@ -0,0 +1,1119 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.biff.formula;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+
+/**
+ * The built in functions which may be evaluated, together with the
+ * conversions between values used by the functions and the operators.
+ * Values are held as a Double, String, Boolean or FormulaErrorCode, with
+ * EMPTY standing for an empty cell or a missing argument
+ */
+final class FunctionLibrary
+{
+  /**
+   * The value of an empty cell or a missing argument
+   */
+  static final Object EMPTY = new Object();
+
+  /**
+   * Zero
+   */
+  private static final Double ZERO = Double.valueOf(0);
+
+  /**
+   * One
+   */
+  private static final Double ONE = Double.valueOf(1);
+
+  /**
+   * The longest string a cell may hold
+   */
+  private static final int MAX_STRING_LENGTH = 32767;
+
+  // The ids of the functions which may be evaluated
+  private static final int SUM = 0;
+  private static final int AVERAGE = 1;
+  private static final int MIN = 2;
+  private static final int MAX = 3;
+  private static final int COUNT = 4;
+  private static final int COUNTA = 5;
+  private static final int PRODUCT = 6;
+  private static final int AND = 7;
+  private static final int OR = 8;
+  private static final int NOT = 9;
+  private static final int ABS = 10;
+  private static final int INT = 11;
+  private static final int SQRT = 12;
+  private static final int EXP = 13;
+  private static final int LN = 14;
+  private static final int LOG10 = 15;
+  private static final int SIGN = 16;
+  private static final int ROUND = 17;
+  private static final int ROUNDUP = 18;
+  private static final int ROUNDDOWN = 19;
+  private static final int MOD = 20;
+  private static final int POWER = 21;
+  private static final int PI = 22;
+  private static final int LEN = 23;
+  private static final int UPPER = 24;
+  private static final int LOWER = 25;
+  private static final int TRIM = 26;
+  private static final int LEFT = 27;
+  private static final int RIGHT = 28;
+  private static final int MID = 29;
+  private static final int CONCATENATE = 30;
+  private static final int EXACT = 31;
+  private static final int REPT = 32;
+  private static final int VALUE = 33;
+  private static final int ISBLANK = 34;
+  private static final int ISNUMBER = 35;
+  private static final int ISTEXT = 36;
+  private static final int ISERROR = 37;
+  private static final int ISNA = 38;
+  private static final int NA = 39;
+  private static final int TRUE = 40;
+  private static final int FALSE = 41;
+  private static final int CHOOSE = 42;
+  private static final int IF = 43;
+
+  /**
+   * The ids of the functions, keyed on function
+   */
+  private static HashMap functions = new HashMap();
+
+  static
+  {
+    add(Function.SUM, SUM);
+    add(Function.AVERAGE, AVERAGE);
+    add(Function.MIN, MIN);
+    add(Function.MAX, MAX);
+    add(Function.COUNT, COUNT);
+    add(Function.COUNTA, COUNTA);
+    add(Function.PRODUCT, PRODUCT);
+    add(Function.AND, AND);
+    add(Function.OR, OR);
+    add(Function.NOT, NOT);
+    add(Function.ABS, ABS);
+    add(Function.INT, INT);
+    add(Function.SQRT, SQRT);
+    add(Function.EXP, EXP);
+    add(Function.LN, LN);
+    add(Function.LOG10, LOG10);
+    add(Function.SIGN, SIGN);
+    add(Function.ROUND, ROUND);
+    add(Function.ROUNDUP, ROUNDUP);
+    add(Function.ROUNDDOWN, ROUNDDOWN);
+    add(Function.MOD, MOD);
+    add(Function.POWER, POWER);
+    add(Function.PI, PI);
+    add(Function.LEN, LEN);
+    add(Function.UPPER, UPPER);
+    add(Function.LOWER, LOWER);
+    add(Function.TRIM, TRIM);
+    add(Function.LEFT, LEFT);
+    add(Function.RIGHT, RIGHT);
+    add(Function.MID, MID);
+    add(Function.CONCATENATE, CONCATENATE);
+    add(Function.EXACT, EXACT);
+    add(Function.REPT, REPT);
+    add(Function.VALUE, VALUE);
+    add(Function.ISBLANK, ISBLANK);
+    add(Function.ISNUMBER, ISNUMBER);
+    add(Function.ISTEXT, ISTEXT);
+    add(Function.ISERROR, ISERROR);
+    add(Function.ISNA, ISNA);
+    add(Function.NA, NA);
+    add(Function.TRUE, TRUE);
+    add(Function.FALSE, FALSE);
+    add(Function.CHOOSE, CHOOSE);
+    add(Function.IF, IF);
+  }
+
+  /**
+   * Private constructor to prevent instantiation
+   */
+  private FunctionLibrary()
+  {
+  }
+
+  /**
+   * Adds a function which may be evaluated
+   *
+   * @param f the function
+   * @param id the id of the function
+   */
+  private static void add(Function f, int id)
+  {
+    functions.put(f, Integer.valueOf(id));
+  }
+
+  /**
+   * Gets the id of a function
+   *
+   * @param f the function
+   * @return the id, or -1 if the function cannot be evaluated
+   */
+  static int getId(Function f)
+  {
+    Integer id = (Integer) functions.get(f);
+    return id == null ? -1 : id.intValue();
+  }
+
+  /**
+   * Evaluates a function.  The arguments may be references, which are
+   * only used as single values where the function requires it
+   *
+   * @param id the id of the function
+   * @param args the arguments
+   * @param fe the formula evaluator
+   * @param col the column of the formula
+   * @param row the row of the formula
+   * @return the result
+   */
+  static Object evaluate(int id,
+                         Object[] args,
+                         FormulaEvaluator fe,
+                         int col,
+                         int row)
+  {
+    switch (id)
+    {
+      case SUM:
+      case AVERAGE:
+      case MIN:
+      case MAX:
+      case COUNT:
+      case COUNTA:
+      case PRODUCT:
+        return aggregate(id, args, fe);
+
+      case AND:
+      case OR:
+        return logical(id, args, fe);
+
+      case NOT:
+      {
+        Object b = toBoolean(getValue(args[0], fe, col, row));
+        if (!(b instanceof Boolean))
+        {
+          return b;
+        }
+        return Boolean.valueOf(!((Boolean) b).booleanValue());
+      }
+
+      case ABS:
+      case INT:
+      case SQRT:
+      case EXP:
+      case LN:
+      case LOG10:
+      case SIGN:
+      {
+        Object n = getNumber(args, 0, fe, col, row);
+        if (!(n instanceof Double))
+        {
+          return n;
+        }
+        return mathFunction(id, ((Double) n).doubleValue());
+      }
+
+      case ROUND:
+      case ROUNDUP:
+      case ROUNDDOWN:
+      {
+        Object n = getNumber(args, 0, fe, col, row);
+        if (!(n instanceof Double))
+        {
+          return n;
+        }
+        Object digits = getNumber(args, 1, fe, col, row);
+        if (!(digits instanceof Double))
+        {
+          return digits;
+        }
+        return round(id, ((Double) n).doubleValue(),
+                     (int) ((Double) digits).doubleValue());
+      }
+
+      case MOD:
+      {
+        Object n = getNumber(args, 0, fe, col, row);
+        if (!(n instanceof Double))
+        {
+          return n;
+        }
+        Object d = getNumber(args, 1, fe, col, row);
+        if (!(d instanceof Double))
+        {
+          return d;
+        }
+        double a = ((Double) n).doubleValue();
+        double b = ((Double) d).doubleValue();
+        if (b == 0)
+        {
+          return FormulaErrorCode.DIV0;
+        }
+        return checkNumber(a - b * Math.floor(a / b));
+      }
+
+      case POWER:
+      {
+        Object n = getNumber(args, 0, fe, col, row);
+        if (!(n instanceof Double))
+        {
+          return n;
+        }
+        Object p = getNumber(args, 1, fe, col, row);
+        if (!(p instanceof Double))
+        {
+          return p;
+        }
+        return power(((Double) n).doubleValue(), ((Double) p).doubleValue());
+      }
+
+      case PI:
+        return Double.valueOf(Math.PI);
+
+      case LEN:
+      case UPPER:
+      case LOWER:
+      case TRIM:
+      {
+        Object t = getText(args, 0, fe, col, row);
+        if (!(t instanceof String))
+        {
+          return t;
+        }
+        String s = (String) t;
+        if (id == LEN)
+        {
+          return Double.valueOf(s.length());
+        }
+        return id == UPPER ? s.toUpperCase() :
+               id == LOWER ? s.toLowerCase() : trim(s);
+      }
+
+      case LEFT:
+      case RIGHT:
+      {
+        Object t = getText(args, 0, fe, col, row);
+        if (!(t instanceof String))
+        {
+          return t;
+        }
+        Object n = args.length > 1 ? getNumber(args, 1, fe, col, row) : ONE;
+        if (!(n instanceof Double))
+        {
+          return n;
+        }
+        String s = (String) t;
+        double chars = ((Double) n).doubleValue();
+        if (chars < 0)
+        {
+          return FormulaErrorCode.VALUE;
+        }
+        int len = (int) Math.min(chars, s.length());
+        return id == LEFT ? s.substring(0, len) :
+                            s.substring(s.length() - len);
+      }
+
+      case MID:
+      {
+        Object t = getText(args, 0, fe, col, row);
+        if (!(t instanceof String))
+        {
+          return t;
+        }
+        Object start = getNumber(args, 1, fe, col, row);
+        if (!(start instanceof Double))
+        {
+          return start;
+        }
+        Object n = getNumber(args, 2, fe, col, row);
+        if (!(n instanceof Double))
+        {
+          return n;
+        }
+        String s = (String) t;
+        double first = ((Double) start).doubleValue();
+        double chars = ((Double) n).doubleValue();
+        if (first < 1 || chars < 0)
+        {
+          return FormulaErrorCode.VALUE;
+        }
+        if (first > s.length())
+        {
+          return "";
+        }
+        int begin = (int) first - 1;
+        int end = (int) Math.min(begin + chars, s.length());
+        return s.substring(begin, end);
+      }
+
+      case CONCATENATE:
+      {
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < args.length; i++)
+        {
+          Object t = getText(args, i, fe, col, row);
+          if (!(t instanceof String))
+          {
+            return t;
+          }
+          buf.append((String) t);
+        }
+        return checkString(buf);
+      }
+
+      case EXACT:
+      {
+        Object a = getText(args, 0, fe, col, row);
+        if (!(a instanceof String))
+        {
+          return a;
+        }
+        Object b = getText(args, 1, fe, col, row);
+        if (!(b instanceof String))
+        {
+          return b;
+        }
+        return Boolean.valueOf(a.equals(b));
+      }
+
+      case REPT:
+      {
+        Object t = getText(args, 0, fe, col, row);
+        if (!(t instanceof String))
+        {
+          return t;
+        }
+        Object n = getNumber(args, 1, fe, col, row);
+        if (!(n instanceof Double))
+        {
+          return n;
+        }
+        String s = (String) t;
+        double times = ((Double) n).doubleValue();
+        if (times < 0 || s.length() * times > MAX_STRING_LENGTH)
+        {
+          return FormulaErrorCode.VALUE;
+        }
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < (int) times; i++)
+        {
+          buf.append(s);
+        }
+        return buf.toString();
+      }
+
+      case VALUE:
+      {
+        Object v = getValue(args[0], fe, col, row);
+        if (v instanceof Boolean)
+        {
+          return FormulaErrorCode.VALUE;
+        }
+        return toNumber(v);
+      }
+
+      case ISBLANK:
+        return Boolean.valueOf(args[0] instanceof AreaValue &&
+                               ((AreaValue) args[0]).isCell() &&
+                               getValue(args[0], fe, col, row) == EMPTY);
+
+      case ISNUMBER:
+        return Boolean.valueOf
+          (getValue(args[0], fe, col, row) instanceof Double);
+
+      case ISTEXT:
+        return Boolean.valueOf
+          (getValue(args[0], fe, col, row) instanceof String);
+
+      case ISERROR:
+        return Boolean.valueOf
+          (getValue(args[0], fe, col, row) instanceof FormulaErrorCode);
+
+      case ISNA:
+        return Boolean.valueOf
+          (getValue(args[0], fe, col, row) == FormulaErrorCode.NA);
+
+      case NA:
+        return FormulaErrorCode.NA;
+
+      case TRUE:
+        return Boolean.TRUE;
+
+      case FALSE:
+        return Boolean.FALSE;
+
+      case CHOOSE:
+      {
+        Object n = getNumber(args, 0, fe, col, row);
+        if (!(n instanceof Double))
+        {
+          return n;
+        }
+        double index = Math.floor(((Double) n).doubleValue());
+        if (index < 1 || index >= args.length)
+        {
+          return FormulaErrorCode.VALUE;
+        }
+        return args[(int) index];
+      }
+
+      case IF:
+      {
+        // Only reached when IF is not compiled as a jump, for example
+        // when it is the argument of another function
+        Object b = toBoolean(getValue(args[0], fe, col, row));
+        if (!(b instanceof Boolean))
+        {
+          return b;
+        }
+        if (((Boolean) b).booleanValue())
+        {
+          return args[1];
+        }
+        return args.length > 2 ? args[2] : Boolean.FALSE;
+      }
+
+      default:
+        return FormulaErrorCode.NAME;
+    }
+  }
+
+  /**
+   * Evaluates one of the functions which combine all the numbers of their
+   * arguments.  The text, boolean values and empty cells of a reference
+   * are ignored, whereas values passed in directly are converted to
+   * numbers
+   *
+   * @param id the id of the function
+   * @param args the arguments
+   * @param fe the formula evaluator
+   * @return the result
+   */
+  private static Object aggregate(int id, Object[] args, FormulaEvaluator fe)
+  {
+    boolean counting = id == COUNT || id == COUNTA;
+    double sum = 0;
+    double product = 1;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    int numbers = 0;
+    int values = 0;
+
+    for (int i = 0; i < args.length; i++)
+    {
+      if (args[i] instanceof AreaValue)
+      {
+        AreaValue a = (AreaValue) args[i];
+        int lastCol = a.getLastColumnUsed();
+        int lastRow = a.getLastRowUsed();
+
+        for (int c = a.getFirstColumn(); c <= lastCol; c++)
+        {
+          for (int r = a.getFirstRow(); r <= lastRow; r++)
+          {
+            Object v = fe.getCellValue(a.getSheet(), c, r);
+            if (v == EMPTY)
+            {
+              continue;
+            }
+
+            values++;
+            if (v instanceof Double)
+            {
+              double d = ((Double) v).doubleValue();
+              sum += d;
+              product *= d;
+              min = Math.min(min, d);
+              max = Math.max(max, d);
+              numbers++;
+            }
+            else if (v instanceof FormulaErrorCode && !counting)
+            {
+              return v;
+            }
+          }
+        }
+      }
+      else
+      {
+        values++;
+        Object v = toNumber(args[i]);
+        if (v instanceof Double)
+        {
+          double d = ((Double) v).doubleValue();
+          sum += d;
+          product *= d;
+          min = Math.min(min, d);
+          max = Math.max(max, d);
+          numbers++;
+        }
+        else if (!counting)
+        {
+          return v;
+        }
+      }
+    }
+
+    switch (id)
+    {
+      case SUM:
+        return checkNumber(sum);
+
+      case AVERAGE:
+        return numbers == 0 ? (Object) FormulaErrorCode.DIV0 :
+                              checkNumber(sum / numbers);
+
+      case MIN:
+        return numbers == 0 ? ZERO : Double.valueOf(min);
+
+      case MAX:
+        return numbers == 0 ? ZERO : Double.valueOf(max);
+
+      case PRODUCT:
+        return numbers == 0 ? ZERO : checkNumber(product);
+
+      case COUNT:
+        return Double.valueOf(numbers);
+
+      default:
+        return Double.valueOf(values);
+    }
+  }
+
+  /**
+   * Evaluates AND or OR.  The text and empty cells of a reference are
+   * ignored
+   *
+   * @param id the id of the function
+   * @param args the arguments
+   * @param fe the formula evaluator
+   * @return the result
+   */
+  private static Object logical(int id, Object[] args, FormulaEvaluator fe)
+  {
+    boolean result = id == AND;
+    boolean found = false;
+
+    for (int i = 0; i < args.length; i++)
+    {
+      if (args[i] instanceof AreaValue)
+      {
+        AreaValue a = (AreaValue) args[i];
+        int lastCol = a.getLastColumnUsed();
+        int lastRow = a.getLastRowUsed();
+
+        for (int c = a.getFirstColumn(); c <= lastCol; c++)
+        {
+          for (int r = a.getFirstRow(); r <= lastRow; r++)
+          {
+            Object v = fe.getCellValue(a.getSheet(), c, r);
+            if (v instanceof FormulaErrorCode)
+            {
+              return v;
+            }
+            if (v instanceof Double || v instanceof Boolean)
+            {
+              boolean b = ((Boolean) toBoolean(v)).booleanValue();
+              result = id == AND ? result && b : result || b;
+              found = true;
+            }
+          }
+        }
+      }
+      else
+      {
+        Object v = toBoolean(args[i]);
+        if (!(v instanceof Boolean))
+        {
+          return v;
+        }
+        boolean b = ((Boolean) v).booleanValue();
+        result = id == AND ? result && b : result || b;
+        found = true;
+      }
+    }
+
+    return found ? (Object) Boolean.valueOf(result) : FormulaErrorCode.VALUE;
+  }
+
+  /**
+   * Evaluates one of the functions of a single number
+   *
+   * @param id the id of the function
+   * @param d the number
+   * @return the result
+   */
+  private static Object mathFunction(int id, double d)
+  {
+    switch (id)
+    {
+      case ABS:
+        return Double.valueOf(Math.abs(d));
+
+      case INT:
+        return Double.valueOf(Math.floor(d));
+
+      case SQRT:
+        return checkNumber(Math.sqrt(d));
+
+      case EXP:
+        return checkNumber(Math.exp(d));
+
+      case LN:
+        return checkNumber(Math.log(d));
+
+      case LOG10:
+        return checkNumber(Math.log(d) / Math.log(10));
+
+      default:
+        return Double.valueOf(d > 0 ? 1 : d < 0 ? -1 : 0);
+    }
+  }
+
+  /**
+   * Rounds a number to a number of decimal places.  The number is rounded
+   * from its shortest decimal representation, so that 2.675 is rounded up
+   * to 2.68 as it is in Excel
+   *
+   * @param id the id of the function
+   * @param d the number
+   * @param digits the number of decimal places, which may be negative
+   * @return the result
+   */
+  private static Object round(int id, double d, int digits)
+  {
+    if (Double.isNaN(d) || Double.isInfinite(d))
+    {
+      return FormulaErrorCode.NUM;
+    }
+
+    RoundingMode mode = id == ROUND ? RoundingMode.HALF_UP :
+                        id == ROUNDUP ? RoundingMode.UP : RoundingMode.DOWN;
+    BigDecimal bd = new BigDecimal(Double.toString(d));
+    return checkNumber(bd.setScale(digits, mode).doubleValue());
+  }
+
+  /**
+   * Raises one number to the power of another
+   *
+   * @param a the number
+   * @param b the power
+   * @return the result
+   */
+  static Object power(double a, double b)
+  {
+    if (a == 0 && b == 0)
+    {
+      return FormulaErrorCode.NUM;
+    }
+
+    if (a == 0 && b < 0)
+    {
+      return FormulaErrorCode.DIV0;
+    }
+
+    return checkNumber(Math.pow(a, b));
+  }
+
+  /**
+   * Removes the leading and trailing spaces from a string, and replaces
+   * each run of spaces within it with a single space
+   *
+   * @param s the string
+   * @return the trimmed string
+   */
+  private static String trim(String s)
+  {
+    StringBuffer buf = new StringBuffer();
+    boolean space = false;
+
+    for (int i = 0; i < s.length(); i++)
+    {
+      char c = s.charAt(i);
+      if (c == ' ')
+      {
+        space = buf.length() > 0;
+        continue;
+      }
+
+      if (space)
+      {
+        buf.append(' ');
+        space = false;
+      }
+      buf.append(c);
+    }
+
+    return buf.toString();
+  }
+
+  /**
+   * Checks that a number is finite
+   *
+   * @param d the number
+   * @return the number, or the #NUM! error
+   */
+  static Object checkNumber(double d)
+  {
+    if (Double.isNaN(d) || Double.isInfinite(d))
+    {
+      return FormulaErrorCode.NUM;
+    }
+
+    return Double.valueOf(d);
+  }
+
+  /**
+   * Checks that a string is not too long to be held in a cell
+   *
+   * @param buf the string
+   * @return the string, or the #VALUE! error
+   */
+  static Object checkString(StringBuffer buf)
+  {
+    if (buf.length() > MAX_STRING_LENGTH)
+    {
+      return FormulaErrorCode.VALUE;
+    }
+
+    return buf.toString();
+  }
+
+  /**
+   * Gets a value, using a reference as a single value
+   *
+   * @param v the value or reference
+   * @param fe the formula evaluator
+   * @param col the column of the formula
+   * @param row the row of the formula
+   * @return the value
+   */
+  static Object getValue(Object v, FormulaEvaluator fe, int col, int row)
+  {
+    return v instanceof AreaValue ?
+      ((AreaValue) v).getValue(fe, col, row) : v;
+  }
+
+  /**
+   * Gets an argument as a number
+   *
+   * @param args the arguments
+   * @param i the index of the argument
+   * @param fe the formula evaluator
+   * @param col the column of the formula
+   * @param row the row of the formula
+   * @return the number, or an error
+   */
+  private static Object getNumber(Object[] args,
+                                  int i,
+                                  FormulaEvaluator fe,
+                                  int col,
+                                  int row)
+  {
+    return toNumber(getValue(args[i], fe, col, row));
+  }
+
+  /**
+   * Gets an argument as a string
+   *
+   * @param args the arguments
+   * @param i the index of the argument
+   * @param fe the formula evaluator
+   * @param col the column of the formula
+   * @param row the row of the formula
+   * @return the string, or an error
+   */
+  private static Object getText(Object[] args,
+                                int i,
+                                FormulaEvaluator fe,
+                                int col,
+                                int row)
+  {
+    return toText(getValue(args[i], fe, col, row));
+  }
+
+  /**
+   * Converts a value to a number
+   *
+   * @param v the value
+   * @return the number, or an error
+   */
+  static Object toNumber(Object v)
+  {
+    if (v instanceof Double || v instanceof FormulaErrorCode)
+    {
+      return v;
+    }
+
+    if (v == EMPTY)
+    {
+      return ZERO;
+    }
+
+    if (v instanceof Boolean)
+    {
+      return ((Boolean) v).booleanValue() ? ONE : ZERO;
+    }
+
+    if (v instanceof String)
+    {
+      return parseNumber((String) v);
+    }
+
+    return FormulaErrorCode.VALUE;
+  }
+
+  /**
+   * Converts a string to a number.  Only plain numbers, optionally
+   * followed by a percent sign, are recognized
+   *
+   * @param s the string
+   * @return the number, or the #VALUE! error
+   */
+  private static Object parseNumber(String s)
+  {
+    s = s.trim();
+    double scale = 1;
+
+    if (s.endsWith("%"))
+    {
+      s = s.substring(0, s.length() - 1).trim();
+      scale = 100;
+    }
+
+    if (s.length() == 0)
+    {
+      return FormulaErrorCode.VALUE;
+    }
+
+    for (int i = 0; i < s.length(); i++)
+    {
+      char c = s.charAt(i);
+      if (!Character.isDigit(c) && c != '.' && c != '-' && c != '+' &&
+          c != 'e' && c != 'E')
+      {
+        return FormulaErrorCode.VALUE;
+      }
+    }
+
+    try
+    {
+      return checkNumber(Double.parseDouble(s) / scale);
+    }
+    catch (NumberFormatException e)
+    {
+      return FormulaErrorCode.VALUE;
+    }
+  }
+
+  /**
+   * Converts a value to a string
+   *
+   * @param v the value
+   * @return the string, or an error
+   */
+  static Object toText(Object v)
+  {
+    if (v instanceof String || v instanceof FormulaErrorCode)
+    {
+      return v;
+    }
+
+    if (v == EMPTY)
+    {
+      return "";
+    }
+
+    if (v instanceof Boolean)
+    {
+      return ((Boolean) v).booleanValue() ? "TRUE" : "FALSE";
+    }
+
+    if (v instanceof Double)
+    {
+      return formatNumber(((Double) v).doubleValue());
+    }
+
+    return FormulaErrorCode.VALUE;
+  }
+
+  /**
+   * Formats a number as it is converted to text by Excel, to at most
+   * fifteen significant figures
+   *
+   * @param d the number
+   * @return the text
+   */
+  private static String formatNumber(double d)
+  {
+    if (d == Math.rint(d) && Math.abs(d) < 1e15)
+    {
+      return Long.toString((long) d);
+    }
+
+    int exponent = (int) Math.floor(Math.log(Math.abs(d)) / Math.log(10));
+    BigDecimal bd = new BigDecimal(Double.toString(d));
+    bd = bd.setScale(Math.max(0, 14 - exponent), RoundingMode.HALF_UP);
+
+    String s = bd.toString();
+    if (s.indexOf('.') != -1 && s.indexOf('E') == -1)
+    {
+      int end = s.length();
+      while (s.charAt(end - 1) == '0')
+      {
+        end--;
+      }
+      if (s.charAt(end - 1) == '.')
+      {
+        end--;
+      }
+      s = s.substring(0, end);
+    }
+
+    return s;
+  }
+
+  /**
+   * Converts a value to a boolean
+   *
+   * @param v the value
+   * @return the boolean, or an error
+   */
+  static Object toBoolean(Object v)
+  {
+    if (v instanceof Boolean || v instanceof FormulaErrorCode)
+    {
+      return v;
+    }
+
+    if (v == EMPTY)
+    {
+      return Boolean.FALSE;
+    }
+
+    if (v instanceof Double)
+    {
+      return Boolean.valueOf(((Double) v).doubleValue() != 0);
+    }
+
+    if (v instanceof String)
+    {
+      String s = (String) v;
+      if (s.equalsIgnoreCase("TRUE"))
+      {
+        return Boolean.TRUE;
+      }
+      if (s.equalsIgnoreCase("FALSE"))
+      {
+        return Boolean.FALSE;
+      }
+    }
+
+    return FormulaErrorCode.VALUE;
+  }
+
+  /**
+   * Compares two values, neither of which is an error.  Numbers come
+   * before strings, which come before boolean values, and strings are
+   * compared without regard to case.  An empty value is compared as
+   * the empty value of the other type
+   *
+   * @param a the first value
+   * @param b the second value
+   * @return a negative number, zero or a positive number as the first
+   *         value is less than, equal to or greater than the second
+   */
+  static int compare(Object a, Object b)
+  {
+    if (a == EMPTY)
+    {
+      a = getEmptyValue(b);
+    }
+
+    if (b == EMPTY)
+    {
+      b = getEmptyValue(a);
+    }
+
+    int ra = getRank(a);
+    int rb = getRank(b);
+    if (ra != rb)
+    {
+      return ra < rb ? -1 : 1;
+    }
+
+    if (a instanceof Double)
+    {
+      double x = ((Double) a).doubleValue();
+      double y = ((Double) b).doubleValue();
+      return x < y ? -1 : x > y ? 1 : 0;
+    }
+
+    if (a instanceof String)
+    {
+      return ((String) a).compareToIgnoreCase((String) b);
+    }
+
+    boolean x = ((Boolean) a).booleanValue();
+    boolean y = ((Boolean) b).booleanValue();
+    return x == y ? 0 : x ? 1 : -1;
+  }
+
+  /**
+   * Gets the value an empty value takes when compared with another
+   *
+   * @param other the other value
+   * @return the empty value of the same type
+   */
+  private static Object getEmptyValue(Object other)
+  {
+    if (other instanceof String)
+    {
+      return "";
+    }
+
+    if (other instanceof Boolean)
+    {
+      return Boolean.FALSE;
+    }
+
+    return ZERO;
+  }
+
+  /**
+   * Gets the order of the type of a value when values of different types
+   * are compared
+   *
+   * @param v the value
+   * @return the rank of the type
+   */
+  private static int getRank(Object v)
+  {
+    return v instanceof Double ? 0 : v instanceof String ? 1 : 2;
+  }
+}
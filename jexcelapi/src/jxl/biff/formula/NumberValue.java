@@ -34,4 +34,14 @@ abstract class NumberValue extends Operand implements ParsedThing
   {
     buf.append(Double.toString(getValue()));
   }
+
+  /**
+   * Adds this number to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addConstant(Double.valueOf(getValue()));
+  }
 }
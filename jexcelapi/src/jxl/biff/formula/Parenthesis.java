@@ -190,4 +190,16 @@ class Parenthesis extends Operator implements ParsedThing
   {
     return 4;
   }
+
+  /**
+   * Adds the expression within the parentheses to the compiled formula
+   *
+   * @param compiler the formula compiler
+   * @exception FormulaException if the expression cannot be evaluated
+   */
+  void compile(FormulaCompiler compiler) throws FormulaException
+  {
+    ParseItem[] operands = getOperands();
+    operands[0].compile(compiler);
+  }
 }
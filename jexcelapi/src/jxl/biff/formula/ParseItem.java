@@ -132,6 +132,22 @@ abstract class ParseItem
    */
   abstract byte[] getBytes();
 
+  /**
+   * Adds the instructions which evaluate this item to the compiled
+   * formula, in the same order as the tokens written out by getBytes.
+   * Items which cannot be evaluated do not override this
+   *
+   * @param compiler the formula compiler
+   * @exception FormulaException if this item cannot be evaluated
+   */
+  void compile(FormulaCompiler compiler) throws FormulaException
+  {
+    StringBuffer buf = new StringBuffer();
+    getString(buf);
+    throw new FormulaException(FormulaException.CANNOT_EVALUATE,
+                               buf.toString());
+  }
+
   /**
    * Adjusts all the relative cell references in this formula by the
    * amount specified.  Used when copying formulas
@@ -151,6 +151,36 @@ class SharedFormulaArea extends Operand implements ParsedThing
     return data;
   }
 
+  /**
+   * Adjusts the relative parts of this area by the amount specified.
+   * Used when the same shared formula is wanted for another cell
+   *
+   * @param colAdjust the amount to add on to the relative columns
+   * @param rowAdjust the amount to add on to the relative rows
+   */
+  public void adjustRelativeCellReferences(int colAdjust, int rowAdjust)
+  {
+    if (columnFirstRelative)
+    {
+      columnFirst += colAdjust;
+    }
+
+    if (rowFirstRelative)
+    {
+      rowFirst += rowAdjust;
+    }
+
+    if (columnLastRelative)
+    {
+      columnLast += colAdjust;
+    }
+
+    if (rowLastRelative)
+    {
+      rowLast += rowAdjust;
+    }
+  }
+
   /**
    * If this formula was on an imported sheet, check that
    * cell references to another sheet are warned appropriately
@@ -160,6 +190,19 @@ class SharedFormulaArea extends Operand implements ParsedThing
   {
   }
 
+  /**
+   * Adds this area to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addArea(-1,
+                     columnFirst, columnFirstRelative,
+                     rowFirst, rowFirstRelative,
+                     columnLast, columnLastRelative,
+                     rowLast, rowLastRelative);
+  }
 }
 
 
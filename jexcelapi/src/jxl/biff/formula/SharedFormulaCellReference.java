@@ -147,6 +147,25 @@ class SharedFormulaCellReference extends Operand implements ParsedThing
     return data;
   }
 
+  /**
+   * Adjusts the relative parts of this reference by the amount specified.
+   * Used when the same shared formula is wanted for another cell
+   *
+   * @param colAdjust the amount to add on to a relative column
+   * @param rowAdjust the amount to add on to a relative row
+   */
+  public void adjustRelativeCellReferences(int colAdjust, int rowAdjust)
+  {
+    if (columnRelative)
+    {
+      column += colAdjust;
+    }
+
+    if (rowRelative)
+    {
+      row += rowAdjust;
+    }
+  }
 
   /**
    * If this formula was on an imported sheet, check that
@@ -156,6 +175,16 @@ class SharedFormulaCellReference extends Operand implements ParsedThing
   void handleImportedCellReferences()
   {
   }
+
+  /**
+   * Adds this cell reference to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addCellReference(-1, column, columnRelative, row, rowRelative);
+  }
 }
 
 
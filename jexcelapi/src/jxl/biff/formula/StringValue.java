@@ -129,5 +129,14 @@ class StringValue extends Operand implements ParsedThing
   {
   }
 
+  /**
+   * Adds this string to the compiled formula
+   *
+   * @param compiler the formula compiler
+   */
+  void compile(FormulaCompiler compiler)
+  {
+    compiler.addConstant(value);
+  }
 }
 
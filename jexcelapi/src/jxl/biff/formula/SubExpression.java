@@ -113,4 +113,22 @@ abstract class SubExpression extends Operand implements ParsedThing
   {
     return subExpression;
   }
+
+  /**
+   * Adds the sub expression to the compiled formula, where it consists
+   * of a single item
+   *
+   * @param compiler the formula compiler
+   * @exception FormulaException if the sub expression cannot be evaluated
+   */
+  void compile(FormulaCompiler compiler) throws FormulaException
+  {
+    if (subExpression == null || subExpression.length != 1)
+    {
+      super.compile(compiler);
+      return;
+    }
+
+    subExpression[0].compile(compiler);
+  }
 }
@@ -19,6 +19,7 @@
 
 package jxl.biff.formula;
 
+import java.util.ArrayList;
 import java.util.Stack;
 
 import jxl.common.Assert;
@@ -85,6 +86,12 @@ class TokenFormulaParser implements Parser
    */
   private ParseContext parseContext;
 
+  /**
+   * The references in a shared formula which are relative to the cell
+   * containing the formula, or NULL if there are none
+   */
+  private ArrayList sharedReferences;
+
   /**
    * Constructor
    */
@@ -184,6 +191,7 @@ class TokenFormulaParser implements Parser
           new SharedFormulaCellReference(relativeTo);
         pos += cr.read(tokenData, pos);
         tokenStack.push(cr);
+        addSharedReference(cr);
       }
       else if (t == Token.REF3D)
       {
@@ -202,6 +210,7 @@ class TokenFormulaParser implements Parser
         SharedFormulaArea a = new SharedFormulaArea(relativeTo);
         pos += a.read(tokenData, pos);
         tokenStack.push(a);
+        addSharedReference(a);
       }
       else if (t == Token.AREA3D)
       {
@@ -462,6 +471,50 @@ class TokenFormulaParser implements Parser
     tokenStack.push(o);
   }
 
+  /**
+   * Accessor for the parse tree, used when evaluating the formula
+   *
+   * @return the root of the parse tree
+   */
+  ParseItem getParseTree()
+  {
+    return root;
+  }
+
+  /**
+   * Notes a reference in a shared formula, which is relative to the cell
+   * containing the formula
+   *
+   * @param pi the reference
+   */
+  private void addSharedReference(ParseItem pi)
+  {
+    if (sharedReferences == null)
+    {
+      sharedReferences = new ArrayList();
+    }
+
+    sharedReferences.add(pi);
+  }
+
+  /**
+   * Gets the references in a shared formula which are relative to the
+   * cell containing the formula.  The formula is only the same for another
+   * cell once these have been adjusted
+   *
+   * @return the relative references, which is empty for an ordinary formula
+   */
+  ParseItem[] getSharedReferences()
+  {
+    if (sharedReferences == null)
+    {
+      return new ParseItem[0];
+    }
+
+    return (ParseItem[]) sharedReferences.toArray
+      (new ParseItem[sharedReferences.size()]);
+  }
+
   /**
    * Gets the formula as a string
    */
@@ -188,5 +188,16 @@ abstract class UnaryOperator extends Operator implements ParsedThing
     operands[0].handleImportedCellReferences();
   }
 
-
+  /**
+   * Adds this operator, and its operand, to the compiled formula
+   *
+   * @param compiler the formula compiler
+   * @exception FormulaException if the operator cannot be evaluated
+   */
+  void compile(FormulaCompiler compiler) throws FormulaException
+  {
+    ParseItem[] operands = getOperands();
+    operands[0].compile(compiler);
+    compiler.addOperator(getToken());
+  }
 }
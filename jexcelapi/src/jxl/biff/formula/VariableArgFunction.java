@@ -343,6 +343,25 @@ class VariableArgFunction extends Operator implements ParsedThing
       }
     }
   }
+
+  /**
+   * Adds this function, and its arguments, to the compiled formula
+   *
+   * @param compiler the formula compiler
+   * @exception FormulaException if the function cannot be evaluated
+   */
+  void compile(FormulaCompiler compiler) throws FormulaException
+  {
+    // Get the data for the operands - in the correct order
+    ParseItem[] operands = getOperands();
+
+    for (int i = 0; i < operands.length; i++)
+    {
+      operands[i].compile(compiler);
+    }
+
+    compiler.addFunction(function, operands.length);
+  }
 }
  
 
@@ -0,0 +1,396 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.csv;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jxl.Workbook;
+
+/**
+ * Exports the sheets of a workbook as comma or tab separated values.
+ * The cells are streamed from the workbook a row at a time, so sheets of
+ * any size are exported in constant memory, and values containing the
+ * delimiter, quotes or line breaks are quoted as described in RFC 4180.
+ *
+ * By default numbers are written out as plain values, and dates in ISO 8601
+ * form, which is what most other programs expect to read.  Alternatively
+ * numbers and dates may be written out as they are displayed by Excel,
+ * which is what Cell.getContents returns.
+ *
+ * Each sheet may be exported to its own file, in which case several sheets
+ * may be exported at once on different threads
+ */
+public class CSVExporter
+{
+  /**
+   * The delimiter for comma separated values
+   */
+  public static final char COMMA = ',';
+
+  /**
+   * The delimiter for tab separated values
+   */
+  public static final char TAB = '\t';
+
+  /**
+   * The characters which may not appear in file names on some systems
+   */
+  private static final String ILLEGAL_FILE_CHARACTERS = "/\\:*?\"<>|";
+
+  /**
+   * The workbook to export
+   */
+  private Workbook workbook;
+
+  /**
+   * The separator between the values on a line
+   */
+  private char delimiter;
+
+  /**
+   * The character set of the output
+   */
+  private Charset charset;
+
+  /**
+   * The separator between lines
+   */
+  private String lineSeparator;
+
+  /**
+   * Indicates whether numbers and dates are written out as they are
+   * displayed
+   */
+  private boolean formatted;
+
+  /**
+   * Indicates whether hidden cells and sheets are left out
+   */
+  private boolean hide;
+
+  /**
+   * Constructor.  The workbook is exported as UTF-8 comma separated
+   * values, with lines separated by CR LF
+   *
+   * @param w the workbook to export
+   */
+  public CSVExporter(Workbook w)
+  {
+    workbook = w;
+    delimiter = COMMA;
+    charset = Charset.forName("UTF-8");
+    lineSeparator = "\r\n";
+    formatted = false;
+    hide = false;
+  }
+
+  /**
+   * Sets the separator between the values on a line, normally COMMA
+   * or TAB
+   *
+   * @param d the delimiter
+   */
+  public void setDelimiter(char d)
+  {
+    delimiter = d;
+  }
+
+  /**
+   * Sets the encoding of the output
+   *
+   * @param encoding the name of the character set
+   * @exception UnsupportedEncodingException
+   */
+  public void setEncoding(String encoding)
+    throws UnsupportedEncodingException
+  {
+    try
+    {
+      charset = Charset.forName(encoding);
+    }
+    catch (IllegalArgumentException e)
+    {
+      throw new UnsupportedEncodingException(encoding);
+    }
+  }
+
+  /**
+   * Sets the separator between lines
+   *
+   * @param ls the line separator
+   */
+  public void setLineSeparator(String ls)
+  {
+    lineSeparator = ls;
+  }
+
+  /**
+   * Sets whether numbers and dates are written out as they are displayed,
+   * rather than as plain values
+   *
+   * @param f TRUE to write out values as they are displayed
+   */
+  public void setFormatted(boolean f)
+  {
+    formatted = f;
+  }
+
+  /**
+   * Sets whether hidden cells are left empty.  When exporting the whole
+   * workbook to a single output, hidden sheets are also left out
+   *
+   * @param h TRUE to leave out hidden cells
+   */
+  public void setHideCells(boolean h)
+  {
+    hide = h;
+  }
+
+  /**
+   * Exports a sheet to an output stream.  The stream is flushed but not
+   * closed
+   *
+   * @param index the zero based index of the sheet
+   * @param out the stream to write to
+   * @exception IOException
+   */
+  public void exportSheet(int index, OutputStream out) throws IOException
+  {
+    CSVWriter writer = createWriter(out);
+    workbook.streamSheet(index, writer);
+    writer.checkException();
+    writer.close();
+    out.flush();
+  }
+
+  /**
+   * Exports every sheet of the workbook to a single output stream.  Each
+   * sheet is preceded by a line holding its name, in the form
+   * *** name ****.  The stream is flushed but not closed
+   *
+   * @param out the stream to write to
+   * @exception IOException
+   */
+  public void exportWorkbook(OutputStream out) throws IOException
+  {
+    CSVWriter writer = createWriter(out);
+    String[] names = workbook.getSheetNames();
+
+    for (int i = 0; i < names.length; i++)
+    {
+      // Finding out whether a sheet is hidden means reading it in, so
+      // this is only done when asked for
+      if (!(hide && workbook.getSheet(i).getSettings().isHidden()))
+      {
+        writer.startSheet("*** " + names[i] + " ****");
+        workbook.streamSheet(i, writer);
+        writer.checkException();
+      }
+    }
+
+    writer.close();
+    out.flush();
+  }
+
+  /**
+   * Exports each sheet of the workbook to its own file in a directory.
+   * The files are named after the sheets, with any characters which may
+   * not be used in file names replaced by underscores, and end in .tsv
+   * when the delimiter is a tab, and .csv otherwise.  Several sheets are
+   * exported at once when more than one thread is used
+   *
+   * @param dir the directory to write the files to
+   * @param threads the number of sheets to export at once
+   * @return the files written, in sheet order
+   * @exception IOException
+   */
+  public File[] exportSheets(File dir, int threads) throws IOException
+  {
+    String[] names = workbook.getSheetNames();
+    String extension = delimiter == TAB ? ".tsv" : ".csv";
+    File[] files = new File[names.length];
+
+    for (int i = 0; i < names.length; i++)
+    {
+      files[i] = new File(dir, getFileName(names[i]) + extension);
+    }
+
+    if (threads <= 1 || names.length <= 1)
+    {
+      for (int i = 0; i < names.length; i++)
+      {
+        exportSheet(i, files[i]);
+      }
+      return files;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool
+      (Math.min(threads, names.length));
+    Future[] futures = new Future[names.length];
+    boolean exported = false;
+
+    try
+    {
+      for (int i = 0; i < names.length; i++)
+      {
+        final int index = i;
+        final File file = files[i];
+        futures[i] = executor.submit(new Callable()
+        {
+          public Object call() throws IOException
+          {
+            exportSheet(index, file);
+            return null;
+          }
+        });
+      }
+
+      for (int i = 0; i < names.length; i++)
+      {
+        waitForSheet(futures[i]);
+      }
+
+      exported = true;
+    }
+    finally
+    {
+      if (!exported)
+      {
+        for (int i = 0; i < futures.length; i++)
+        {
+          if (futures[i] != null)
+          {
+            futures[i].cancel(false);
+          }
+        }
+      }
+
+      executor.shutdown();
+    }
+
+    return files;
+  }
+
+  /**
+   * Exports a sheet to a file
+   *
+   * @param index the zero based index of the sheet
+   * @param file the file to write to
+   * @exception IOException
+   */
+  private void exportSheet(int index, File file) throws IOException
+  {
+    FileOutputStream fos = new FileOutputStream(file);
+
+    try
+    {
+      exportSheet(index, fos);
+    }
+    finally
+    {
+      fos.close();
+    }
+  }
+
+  /**
+   * Creates a writer for an output stream.  File output is written
+   * through the file's own channel
+   *
+   * @param out the stream to write to
+   * @return the writer
+   */
+  private CSVWriter createWriter(OutputStream out)
+  {
+    WritableByteChannel channel = out instanceof FileOutputStream ?
+      ((FileOutputStream) out).getChannel() : Channels.newChannel(out);
+
+    return new CSVWriter(channel, charset, delimiter, lineSeparator,
+                         formatted, hide);
+  }
+
+  /**
+   * Waits for a sheet to be exported, passing on anything thrown
+   * while exporting it
+   *
+   * @param future the task exporting the sheet
+   * @exception IOException
+   */
+  private void waitForSheet(Future future) throws IOException
+  {
+    try
+    {
+      future.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (ExecutionException e)
+    {
+      Throwable t = e.getCause();
+      if (t instanceof IOException)
+      {
+        throw (IOException) t;
+      }
+      else if (t instanceof Error)
+      {
+        throw (Error) t;
+      }
+      throw (RuntimeException) t;
+    }
+  }
+
+  /**
+   * Gets a file name for a sheet
+   *
+   * @param name the sheet name
+   * @return the name with any characters which may not be used in file
+   *         names replaced by underscores
+   */
+  private static String getFileName(String name)
+  {
+    StringBuffer sb = new StringBuffer(name);
+
+    for (int i = 0; i < sb.length(); i++)
+    {
+      char c = sb.charAt(i);
+      if (c < ' ' || ILLEGAL_FILE_CHARACTERS.indexOf(c) != -1)
+      {
+        sb.setCharAt(i, '_');
+      }
+    }
+
+    return sb.toString();
+  }
+}
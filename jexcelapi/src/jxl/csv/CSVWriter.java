@@ -0,0 +1,682 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.DateFormat;
+import java.text.FieldPosition;
+import java.text.Format;
+import java.text.NumberFormat;
+import java.util.IdentityHashMap;
+
+import jxl.BooleanCell;
+import jxl.Cell;
+import jxl.DateCell;
+import jxl.NumberCell;
+import jxl.RowHandler;
+
+/**
+ * Writes the rows streamed from a sheet as delimited text.  Characters
+ * are gathered in a buffer and encoded straight into a large byte buffer,
+ * which is written to the channel whenever it fills, so that no strings
+ * are built up for the rows.  Each writer is used by a single thread, and
+ * keeps its own copies of the formats shared between the cells of a
+ * workbook
+ */
+class CSVWriter implements RowHandler
+{
+  /**
+   * The number of characters gathered before they are encoded
+   */
+  private static final int CHAR_BUFFER_SIZE = 16384;
+
+  /**
+   * The number of bytes encoded before they are written to the channel
+   */
+  private static final int BYTE_BUFFER_SIZE = 262144;
+
+  /**
+   * The number of milliseconds in a day
+   */
+  private static final long MILLIS_PER_DAY = 86400000L;
+
+  /**
+   * The largest whole number written out without going through
+   * Double.toString
+   */
+  private static final double MAX_WHOLE_NUMBER = 1e15;
+
+  /**
+   * The channel to write to
+   */
+  private WritableByteChannel channel;
+
+  /**
+   * The encoder for the character set of the output
+   */
+  private CharsetEncoder encoder;
+
+  /**
+   * The characters waiting to be encoded
+   */
+  private char[] chars;
+
+  /**
+   * The character buffer wrapping chars
+   */
+  private CharBuffer charBuffer;
+
+  /**
+   * The number of characters waiting to be encoded
+   */
+  private int pos;
+
+  /**
+   * The encoded bytes waiting to be written to the channel
+   */
+  private ByteBuffer bytes;
+
+  /**
+   * The separator between the values on a line
+   */
+  private char delimiter;
+
+  /**
+   * The separator between lines
+   */
+  private String lineSeparator;
+
+  /**
+   * Indicates whether numbers and dates are written out as they would
+   * be displayed by Excel, rather than as plain values
+   */
+  private boolean formatted;
+
+  /**
+   * Indicates whether hidden cells are left empty
+   */
+  private boolean hide;
+
+  /**
+   * The next row to be written out.  Rows without any cells are not
+   * streamed, so are written out as empty lines when the next row arrives
+   */
+  private int nextRow;
+
+  /**
+   * The copies of the number and date formats used by this writer, keyed
+   * on the formats shared between the cells
+   */
+  private IdentityHashMap formats;
+
+  /**
+   * The buffer a number or date is formatted into
+   */
+  private StringBuffer formatBuffer;
+
+  /**
+   * The characters of the text being written out
+   */
+  private char[] text;
+
+  /**
+   * The field position passed when formatting
+   */
+  private FieldPosition fieldPosition;
+
+  /**
+   * The digits of a whole number, written out backwards
+   */
+  private char[] digits;
+
+  /**
+   * Anything thrown while writing a row, which has to be passed back
+   * once the sheet has been streamed
+   */
+  private IOException exception;
+
+  /**
+   * Constructor
+   *
+   * @param c the channel to write to
+   * @param cs the character set of the output
+   * @param d the separator between values
+   * @param ls the separator between lines
+   * @param f TRUE to write values as they would be displayed
+   * @param h TRUE to leave hidden cells empty
+   */
+  CSVWriter(WritableByteChannel c, Charset cs, char d, String ls,
+            boolean f, boolean h)
+  {
+    channel = c;
+    encoder = cs.newEncoder();
+    encoder.onMalformedInput(CodingErrorAction.REPLACE);
+    encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+    chars = new char[CHAR_BUFFER_SIZE];
+    charBuffer = CharBuffer.wrap(chars);
+    pos = 0;
+    bytes = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+    delimiter = d;
+    lineSeparator = ls;
+    formatted = f;
+    hide = h;
+    nextRow = 0;
+    formats = new IdentityHashMap();
+    formatBuffer = new StringBuffer();
+    text = new char[256];
+    fieldPosition = new FieldPosition(0);
+    digits = new char[20];
+  }
+
+  /**
+   * Writes out a row streamed from the sheet.  Anything thrown is kept
+   * back until the sheet has been streamed, and reading stops
+   *
+   * @param row the zero based row number
+   * @param cells the cells on this row, indexed on column
+   * @param numColumns one more than the column of the last cell on the row
+   * @return TRUE to continue reading the sheet, FALSE to stop reading
+   */
+  public boolean handleRow(int row, Cell[] cells, int numColumns)
+  {
+    try
+    {
+      while (nextRow < row)
+      {
+        writeLineSeparator();
+        nextRow++;
+      }
+
+      for (int i = 0; i < numColumns; i++)
+      {
+        if (i > 0)
+        {
+          put(delimiter);
+        }
+
+        Cell cell = cells[i];
+        if (cell != null && !(hide && cell.isHidden()))
+        {
+          writeCell(cell);
+        }
+      }
+
+      writeLineSeparator();
+      nextRow = row + 1;
+      return true;
+    }
+    catch (IOException e)
+    {
+      exception = e;
+      return false;
+    }
+  }
+
+  /**
+   * Passes on anything thrown while the rows were written out
+   *
+   * @exception IOException
+   */
+  void checkException() throws IOException
+  {
+    if (exception != null)
+    {
+      throw exception;
+    }
+  }
+
+  /**
+   * Starts writing out another sheet to the same output, so that its
+   * rows are counted from the line after the heading
+   *
+   * @param heading the line written out before the rows of the sheet
+   * @exception IOException
+   */
+  void startSheet(String heading) throws IOException
+  {
+    writeText(heading);
+    writeLineSeparator();
+    nextRow = 0;
+  }
+
+  /**
+   * Writes out a single cell
+   *
+   * @param cell the cell
+   * @exception IOException
+   */
+  private void writeCell(Cell cell) throws IOException
+  {
+    if (cell instanceof DateCell)
+    {
+      DateCell dc = (DateCell) cell;
+
+      if (formatted)
+      {
+        DateFormat df = (DateFormat) getFormat(dc.getDateFormat());
+        formatBuffer.setLength(0);
+        df.format(dc.getDate(), formatBuffer, fieldPosition);
+        writeFormatBuffer();
+      }
+      else
+      {
+        writeDate(dc.getDate().getTime(), dc.isTime());
+      }
+    }
+    else if (cell instanceof NumberCell)
+    {
+      NumberCell nc = (NumberCell) cell;
+      double value = nc.getValue();
+
+      // Formulas which could not be calculated are left empty, as they
+      // are by getContents
+      if (Double.isNaN(value))
+      {
+        return;
+      }
+
+      if (formatted)
+      {
+        NumberFormat nf = (NumberFormat) getFormat(nc.getNumberFormat());
+        formatBuffer.setLength(0);
+        nf.format(value, formatBuffer, fieldPosition);
+        writeFormatBuffer();
+      }
+      else
+      {
+        writeNumber(value);
+      }
+    }
+    else if (cell instanceof BooleanCell && !formatted)
+    {
+      writeText(((BooleanCell) cell).getValue() ? "TRUE" : "FALSE");
+    }
+    else
+    {
+      writeText(cell.getContents());
+    }
+  }
+
+  /**
+   * Gets this writer's own copy of a format shared between cells, so that
+   * the format need not be locked for every cell
+   *
+   * @param format the format shared between cells
+   * @return the copy of the format
+   */
+  private Format getFormat(Format format)
+  {
+    Format copy = (Format) formats.get(format);
+    if (copy == null)
+    {
+      // Take the copy while holding the lock used by the cells
+      synchronized (format)
+      {
+        copy = (Format) format.clone();
+      }
+      formats.put(format, copy);
+    }
+
+    return copy;
+  }
+
+  /**
+   * Writes out a number as a plain value.  Whole numbers are written out
+   * digit by digit, and anything else in the shortest form which reads
+   * back as the same double
+   *
+   * @param value the number
+   * @exception IOException
+   */
+  private void writeNumber(double value) throws IOException
+  {
+    long whole = (long) value;
+
+    if (whole != value || Math.abs(value) >= MAX_WHOLE_NUMBER)
+    {
+      writeText(Double.toString(value));
+      return;
+    }
+
+    if (whole < 0)
+    {
+      put('-');
+      whole = -whole;
+    }
+
+    int n = 0;
+    do
+    {
+      digits[n++] = (char) ('0' + (whole % 10));
+      whole /= 10;
+    }
+    while (whole > 0);
+
+    while (n > 0)
+    {
+      put(digits[--n]);
+    }
+  }
+
+  /**
+   * Writes out a date in ISO 8601 form.  Dates are held in GMT, so the
+   * fields are worked out from the days since 1970 without a calendar.
+   * Times are written as hh:mm:ss, dates at midnight as yyyy-mm-dd and
+   * anything else as yyyy-mm-dd hh:mm:ss
+   *
+   * @param millis the milliseconds since 1970-01-01 GMT
+   * @param time TRUE if the cell only holds a time
+   * @exception IOException
+   */
+  private void writeDate(long millis, boolean time) throws IOException
+  {
+    long days = millis / MILLIS_PER_DAY;
+    long ms = millis % MILLIS_PER_DAY;
+    if (ms < 0)
+    {
+      days--;
+      ms += MILLIS_PER_DAY;
+    }
+
+    if (!time)
+    {
+      // Convert the days to a year, month and day in the proleptic
+      // Gregorian calendar, counting 400 year eras from 0000-03-01
+      long z = days + 719468;
+      long era = (z >= 0 ? z : z - 146096) / 146097;
+      long doe = z - era * 146097;
+      long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+      long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+      long mp = (5 * doy + 2) / 153;
+      int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+      int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+      long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+      if (year < 0)
+      {
+        put('-');
+        year = -year;
+      }
+      putDigits((int) (year / 100), 2);
+      putDigits((int) (year % 100), 2);
+      put('-');
+      putDigits(month, 2);
+      put('-');
+      putDigits(day, 2);
+
+      if (ms == 0)
+      {
+        return;
+      }
+      put(' ');
+    }
+
+    int seconds = (int) (ms / 1000);
+    putDigits(seconds / 3600, 2);
+    put(':');
+    putDigits(seconds / 60 % 60, 2);
+    put(':');
+    putDigits(seconds % 60, 2);
+
+    if (ms % 1000 != 0)
+    {
+      put('.');
+      putDigits((int) (ms % 1000), 3);
+    }
+  }
+
+  /**
+   * Writes out a number padded with leading zeros
+   *
+   * @param value the number, which is not negative
+   * @param width the number of digits
+   * @exception IOException
+   */
+  private void putDigits(int value, int width) throws IOException
+  {
+    for (int i = 0; i < width; i++)
+    {
+      digits[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+
+    for (int i = width - 1; i >= 0; i--)
+    {
+      put(digits[i]);
+    }
+  }
+
+  /**
+   * Writes out some text, quoting it if necessary
+   *
+   * @param s the text
+   * @exception IOException
+   */
+  private void writeText(String s) throws IOException
+  {
+    int len = s.length();
+    char[] t = getText(len);
+    s.getChars(0, len, t, 0);
+    writeText(t, len);
+  }
+
+  /**
+   * Writes out the number or date held in the format buffer, quoting it
+   * if necessary
+   *
+   * @exception IOException
+   */
+  private void writeFormatBuffer() throws IOException
+  {
+    int len = formatBuffer.length();
+    char[] t = getText(len);
+    formatBuffer.getChars(0, len, t, 0);
+    writeText(t, len);
+  }
+
+  /**
+   * Writes out some text, enclosing it in quotes if it contains the
+   * delimiter, a quote or a line break.  Quotes within the text are
+   * doubled, as described in RFC 4180
+   *
+   * @param t the characters of the text
+   * @param len the length of the text
+   * @exception IOException
+   */
+  private void writeText(char[] t, int len) throws IOException
+  {
+    boolean quote = false;
+
+    for (int i = 0; i < len && !quote; i++)
+    {
+      char c = t[i];
+      quote = c == delimiter || c == '"' || c == '\n' || c == '\r';
+    }
+
+    if (!quote)
+    {
+      putChars(t, len);
+      return;
+    }
+
+    put('"');
+    for (int i = 0; i < len; i++)
+    {
+      char c = t[i];
+      if (c == '"')
+      {
+        put('"');
+      }
+      put(c);
+    }
+    put('"');
+  }
+
+  /**
+   * Gets the array the characters of some text are copied into before
+   * they are written out, enlarging it if necessary
+   *
+   * @param len the length of the text
+   * @return the array
+   */
+  private char[] getText(int len)
+  {
+    if (text.length < len)
+    {
+      text = new char[Math.max(len, text.length * 2)];
+    }
+
+    return text;
+  }
+
+  /**
+   * Writes out the line separator
+   *
+   * @exception IOException
+   */
+  private void writeLineSeparator() throws IOException
+  {
+    putString(lineSeparator);
+  }
+
+  /**
+   * Adds a character to the buffer
+   *
+   * @param c the character
+   * @exception IOException
+   */
+  private void put(char c) throws IOException
+  {
+    if (pos == chars.length)
+    {
+      encode(false);
+    }
+    chars[pos++] = c;
+  }
+
+  /**
+   * Adds a string to the buffer
+   *
+   * @param s the string
+   * @exception IOException
+   */
+  private void putString(String s) throws IOException
+  {
+    int len = s.length();
+    char[] t = getText(len);
+    s.getChars(0, len, t, 0);
+    putChars(t, len);
+  }
+
+  /**
+   * Adds characters to the buffer, copying them across in one go where
+   * there is room
+   *
+   * @param t the characters
+   * @param len the number of characters
+   * @exception IOException
+   */
+  private void putChars(char[] t, int len) throws IOException
+  {
+    int start = 0;
+
+    while (start < len)
+    {
+      if (pos == chars.length)
+      {
+        encode(false);
+      }
+
+      int n = Math.min(len - start, chars.length - pos);
+      System.arraycopy(t, start, chars, pos, n);
+      pos += n;
+      start += n;
+    }
+  }
+
+  /**
+   * Encodes the characters in the buffer, writing out the bytes whenever
+   * the byte buffer fills.  A high surrogate at the end of the buffer is
+   * kept back until the rest of the pair arrives
+   *
+   * @param end TRUE if no more characters follow
+   * @exception IOException
+   */
+  private void encode(boolean end) throws IOException
+  {
+    charBuffer.limit(pos);
+    charBuffer.position(0);
+
+    CoderResult result = encoder.encode(charBuffer, bytes, end);
+    while (result.isOverflow())
+    {
+      writeBytes();
+      result = encoder.encode(charBuffer, bytes, end);
+    }
+
+    if (end)
+    {
+      result = encoder.flush(bytes);
+      while (result.isOverflow())
+      {
+        writeBytes();
+        result = encoder.flush(bytes);
+      }
+    }
+
+    int remaining = charBuffer.remaining();
+    System.arraycopy(chars, charBuffer.position(), chars, 0, remaining);
+    pos = remaining;
+  }
+
+  /**
+   * Writes the encoded bytes out to the channel
+   *
+   * @exception IOException
+   */
+  private void writeBytes() throws IOException
+  {
+    bytes.flip();
+    while (bytes.hasRemaining())
+    {
+      channel.write(bytes);
+    }
+    bytes.clear();
+  }
+
+  /**
+   * Encodes and writes out everything held in the buffers.  The writer
+   * cannot be used afterwards
+   *
+   * @exception IOException
+   */
+  void close() throws IOException
+  {
+    encode(true);
+    writeBytes();
+  }
+}
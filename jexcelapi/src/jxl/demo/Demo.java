@@ -28,6 +28,7 @@ import jxl.common.Logger;
 import jxl.Cell;
 import jxl.Range;
 import jxl.Workbook;
+import jxl.csv.CSVExporter;
 
 /**
  * The main demo class which interprets the command line switches in order
@@ -38,6 +39,7 @@ public class Demo
 {
   private static final int CSVFormat = 13;
   private static final int XMLFormat = 14;
+  private static final int TSVFormat = 15;
 
   /**
    * The logger
@@ -50,7 +52,7 @@ public class Demo
   private static void displayHelp()
   {
       System.err.println
-        ("Command format:  Demo [-unicode] [-csv] [-hide] excelfile");
+        ("Command format:  Demo [-unicode] [-csv|-tsv] [-hide] excelfile");
       System.err.println("                 Demo -xml [-format]  excelfile");
       System.err.println("                 Demo -readwrite|-rw excelfile output");
       System.err.println("                 Demo -biffdump | -bd | -wa | -write | -formulas | -features | -escher | -escherdg excelfile");
@@ -199,6 +201,10 @@ public class Demo
         {
           format = CSVFormat;
         }
+        else if (args[i].equals("-tsv"))
+        {
+          format = TSVFormat;
+        }
         else if (args[i].equals("-format"))
         {
           formatInfo = true;
@@ -210,7 +216,7 @@ public class Demo
         else
         {
           System.err.println
-            ("Command format:  CSV [-unicode] [-xml|-csv] excelfile");
+            ("Command format:  CSV [-unicode] [-xml|-csv|-tsv] excelfile");
           System.exit(1);
         }
       }
@@ -281,6 +287,11 @@ public class Demo
         {  
           CSV csv = new CSV(w, System.out, encoding, hideCells);
         }
+        else if (format == TSVFormat)
+        {
+          CSV csv = new CSV(w, System.out, encoding, hideCells,
+                            CSVExporter.TAB);
+        }
         else if (format == XMLFormat)
         {
           XML xml = new XML(w, System.out, encoding, formatInfo);
@@ -24,7 +24,6 @@ import jxl.biff.FormulaData;
 import jxl.biff.WorkbookMethods;
 import jxl.biff.formula.ExternalSheet;
 import jxl.biff.formula.FormulaException;
-import jxl.biff.formula.FormulaParser;
 
 /**
  * A base class for shared formula records
@@ -91,11 +90,9 @@ public abstract class BaseSharedFormulaRecord extends CellValue
   {
     if (formulaString == null)
     {
-      FormulaParser fp = new FormulaParser
-        (tokens, this, externalSheet, nameTable,
-         getSheet().getWorkbook().getSettings());
-      fp.parse();
-      formulaString = fp.getFormula();
+      WorkbookParser w = getSheet().getWorkbook();
+      formulaString = w.getFormulaCache().getFormula
+        (tokens, this, externalSheet, nameTable, w.getSettings());
     }
 
     return formulaString;
@@ -29,7 +29,6 @@ import jxl.biff.FormulaData;
 import jxl.biff.WorkbookMethods;
 import jxl.biff.formula.ExternalSheet;
 import jxl.biff.formula.FormulaException;
-import jxl.biff.formula.FormulaParser;
 
 /**
  * A boolean formula's last calculated value
@@ -154,11 +153,9 @@ class BooleanFormulaRecord extends CellValue
     {
       byte[] tokens = new byte[data.length - 22];
       System.arraycopy(data, 22, tokens, 0, tokens.length);
-      FormulaParser fp = new FormulaParser
-        (tokens, this, externalSheet, nameTable,
-         getSheet().getWorkbook().getSettings());
-      fp.parse();
-      formulaString = fp.getFormula();
+      WorkbookParser w = getSheet().getWorkbook();
+      formulaString = w.getFormulaCache().getFormula
+        (tokens, this, externalSheet, nameTable, w.getSettings());
     }
 
     return formulaString;
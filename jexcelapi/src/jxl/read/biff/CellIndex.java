@@ -0,0 +1,429 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.read.biff;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import jxl.Cell;
+import jxl.CellType;
+import jxl.LabelCell;
+
+/**
+ * An index of the contents of the cells of a sheet which has been read in,
+ * used to find cells by their contents without examining every cell on
+ * each search.  The index is built the first time a sheet is searched.
+ *
+ * Labels held in the shared string table are gathered by their index in
+ * the table, so each string is only looked up once however many cells
+ * hold it, and a regular expression is only matched once against each
+ * distinct string on the sheet.  The contents of every other cell are
+ * obtained from the cell as usual.
+ *
+ * The searches return the same cells as those of CellFinder, which
+ * examines the sheet cell by cell
+ */
+final class CellIndex
+{
+  /**
+   * The sheet
+   */
+  private SheetImpl sheet;
+
+  /**
+   * The number of columns in the sheet, used to combine the row and
+   * column of a cell into a single position
+   */
+  private int numCols;
+
+  /**
+   * The positions of the labels and string formulas, keyed on contents
+   */
+  private HashMap labels;
+
+  /**
+   * The positions of all other cells, keyed on contents
+   */
+  private HashMap others;
+
+  /**
+   * The positions of the cells with some contents, in row order
+   */
+  private static class Positions
+  {
+    /**
+     * The positions, each of which is row * numCols + column
+     */
+    int[] values;
+
+    /**
+     * The number of positions
+     */
+    int size;
+
+    /**
+     * Constructor
+     */
+    Positions()
+    {
+      values = new int[1];
+      size = 0;
+    }
+
+    /**
+     * Adds a position
+     *
+     * @param pos the position
+     */
+    void add(int pos)
+    {
+      if (size == values.length)
+      {
+        int[] newValues = new int[size * 2];
+        System.arraycopy(values, 0, newValues, 0, size);
+        values = newValues;
+      }
+      values[size++] = pos;
+    }
+
+    /**
+     * Adds all the positions of another set of positions, keeping the
+     * positions in row order
+     *
+     * @param p the positions to add
+     */
+    void addAll(Positions p)
+    {
+      for (int i = 0; i < p.size; i++)
+      {
+        add(p.values[i]);
+      }
+      Arrays.sort(values, 0, size);
+    }
+  }
+
+  /**
+   * Constructor.  Builds the index
+   *
+   * @param s the sheet
+   * @param cells the cells of the sheet
+   * @param rows the number of rows in the sheet
+   * @param cols the number of columns in the sheet
+   */
+  CellIndex(SheetImpl s, SheetCells cells, int rows, int cols)
+  {
+    sheet = s;
+    numCols = cols;
+    labels = new HashMap();
+    others = new HashMap();
+
+    // Gather the shared strings by their index in the table, so that each
+    // is only looked up once
+    HashMap sharedLabels = new HashMap();
+
+    for (int row = 0; row < rows; row++)
+    {
+      int width = Math.min(cells.getRowWidth(row), cols);
+
+      for (int col = 0; col < width; col++)
+      {
+        if (!cells.contains(row, col))
+        {
+          continue;
+        }
+
+        int pos = row * cols + col;
+        int sst = cells.getLabelIndex(row, col);
+
+        if (sst != -1)
+        {
+          getPositions(sharedLabels, Integer.valueOf(sst)).add(pos);
+          continue;
+        }
+
+        Cell c = cells.getCell(row, col);
+        CellType type = c.getType();
+
+        if (type == CellType.EMPTY)
+        {
+          continue;
+        }
+
+        HashMap map = type == CellType.LABEL ||
+                      type == CellType.STRING_FORMULA ? labels : others;
+        getPositions(map, c.getContents()).add(pos);
+      }
+    }
+
+    for (Iterator i = sharedLabels.entrySet().iterator(); i.hasNext();)
+    {
+      Map.Entry entry = (Map.Entry) i.next();
+      String contents =
+        sheet.getSharedString(((Integer) entry.getKey()).intValue());
+      Positions p = (Positions) entry.getValue();
+
+      // The same string may appear more than once in the table, or be
+      // held by a label outside the table
+      Positions existing = (Positions) labels.get(contents);
+      if (existing == null)
+      {
+        labels.put(contents, p);
+      }
+      else
+      {
+        existing.addAll(p);
+      }
+    }
+  }
+
+  /**
+   * Gets the positions for a key, adding them if not already present
+   *
+   * @param map the map holding the positions
+   * @param key the key
+   * @return the positions
+   */
+  private static Positions getPositions(HashMap map, Object key)
+  {
+    Positions p = (Positions) map.get(key);
+    if (p == null)
+    {
+      p = new Positions();
+      map.put(key, p);
+    }
+    return p;
+  }
+
+  /**
+   * Gets the first cell, searching row by row, whose contents match the
+   * string passed in.  Empty cells are not indexed, so the empty string
+   * only finds labels and formulas whose contents are empty
+   *
+   * @param contents the string to match
+   * @return the cell, or NULL if not found
+   */
+  Cell findCell(String contents)
+  {
+    Positions l = (Positions) labels.get(contents);
+    Positions o = (Positions) others.get(contents);
+
+    int pos = Integer.MAX_VALUE;
+    if (l != null)
+    {
+      pos = l.values[0];
+    }
+    if (o != null)
+    {
+      pos = Math.min(pos, o.values[0]);
+    }
+
+    return pos == Integer.MAX_VALUE ? null : getCell(pos);
+  }
+
+  /**
+   * Gets the first label or string formula, searching row by row, whose
+   * contents match the string passed in
+   *
+   * @param contents the string to match
+   * @return the cell, or NULL if not found
+   */
+  LabelCell findLabelCell(String contents)
+  {
+    Positions l = (Positions) labels.get(contents);
+    return l == null ? null : (LabelCell) getCell(l.values[0]);
+  }
+
+  /**
+   * Gets the first cell within a range, searching column by column,
+   * whose contents match the string passed in
+   *
+   * @param contents the string to match
+   * @param firstCol the first column within the range
+   * @param firstRow the first row of the range
+   * @param lastCol the last column within the range
+   * @param lastRow the last row within the range
+   * @param reverse indicates whether to search backwards from the end of
+   *        the range
+   * @return the cell, or NULL if not found
+   */
+  Cell findCell(String contents,
+                int firstCol,
+                int firstRow,
+                int lastCol,
+                int lastRow,
+                boolean reverse)
+  {
+    int best = -1;
+    best = findInRange((Positions) labels.get(contents), best,
+                       firstCol, firstRow, lastCol, lastRow, reverse);
+    best = findInRange((Positions) others.get(contents), best,
+                       firstCol, firstRow, lastCol, lastRow, reverse);
+
+    return best == -1 ? null : getCell(best);
+  }
+
+  /**
+   * Gets the first cell within a range, searching column by column,
+   * whose contents match the regular expression passed in.  The
+   * expression is matched against each distinct string on the sheet
+   * rather than against each cell
+   *
+   * @param pattern the regular expression to match
+   * @param firstCol the first column within the range
+   * @param firstRow the first row of the range
+   * @param lastCol the last column within the range
+   * @param lastRow the last row within the range
+   * @param reverse indicates whether to search backwards from the end of
+   *        the range
+   * @return the cell, or NULL if not found
+   */
+  Cell findCell(Pattern pattern,
+                int firstCol,
+                int firstRow,
+                int lastCol,
+                int lastRow,
+                boolean reverse)
+  {
+    int best = -1;
+    best = findInRange(labels, pattern, best,
+                       firstCol, firstRow, lastCol, lastRow, reverse);
+    best = findInRange(others, pattern, best,
+                       firstCol, firstRow, lastCol, lastRow, reverse);
+
+    return best == -1 ? null : getCell(best);
+  }
+
+  /**
+   * Finds the first position within a range, searching column by column,
+   * of the cells whose contents match a regular expression
+   *
+   * @param map the positions of the cells, keyed on contents
+   * @param pattern the regular expression to match
+   * @param best the best position found so far, or -1
+   * @param firstCol the first column within the range
+   * @param firstRow the first row of the range
+   * @param lastCol the last column within the range
+   * @param lastRow the last row within the range
+   * @param reverse indicates whether to search backwards
+   * @return the best position, or -1 if none has been found
+   */
+  private int findInRange(HashMap map,
+                          Pattern pattern,
+                          int best,
+                          int firstCol,
+                          int firstRow,
+                          int lastCol,
+                          int lastRow,
+                          boolean reverse)
+  {
+    for (Iterator i = map.entrySet().iterator(); i.hasNext();)
+    {
+      Map.Entry entry = (Map.Entry) i.next();
+      if (pattern.matcher((String) entry.getKey()).matches())
+      {
+        best = findInRange((Positions) entry.getValue(), best,
+                           firstCol, firstRow, lastCol, lastRow, reverse);
+      }
+    }
+
+    return best;
+  }
+
+  /**
+   * Finds the first position within a range, searching column by column
+   *
+   * @param p the positions to search, or NULL
+   * @param best the best position found so far, or -1
+   * @param firstCol the first column within the range
+   * @param firstRow the first row of the range
+   * @param lastCol the last column within the range
+   * @param lastRow the last row within the range
+   * @param reverse indicates whether to search backwards
+   * @return the best position, or -1 if none has been found
+   */
+  private int findInRange(Positions p,
+                          int best,
+                          int firstCol,
+                          int firstRow,
+                          int lastCol,
+                          int lastRow,
+                          boolean reverse)
+  {
+    if (p == null)
+    {
+      return best;
+    }
+
+    for (int i = 0; i < p.size; i++)
+    {
+      int pos = p.values[i];
+      int row = pos / numCols;
+      int col = pos % numCols;
+
+      if (row < firstRow || row > lastRow || col < firstCol || col > lastCol)
+      {
+        continue;
+      }
+
+      if (best == -1 || isBefore(pos, best, reverse))
+      {
+        best = pos;
+      }
+    }
+
+    return best;
+  }
+
+  /**
+   * Determines whether one position comes before another when searching
+   * column by column
+   *
+   * @param pos1 the first position
+   * @param pos2 the second position
+   * @param reverse indicates whether the search is backwards
+   * @return TRUE if the first position is found first
+   */
+  private boolean isBefore(int pos1, int pos2, boolean reverse)
+  {
+    int col1 = pos1 % numCols;
+    int col2 = pos2 % numCols;
+
+    if (col1 != col2)
+    {
+      return reverse ? col1 > col2 : col1 < col2;
+    }
+
+    return reverse ? pos1 > pos2 : pos1 < pos2;
+  }
+
+  /**
+   * Gets the cell at a position
+   *
+   * @param pos the position
+   * @return the cell
+   */
+  private Cell getCell(int pos)
+  {
+    return sheet.getCell(pos % numCols, pos / numCols);
+  }
+}
@@ -24,7 +24,6 @@ import jxl.common.Logger;
 import jxl.Cell;
 import jxl.CellFeatures;
 import jxl.biff.FormattingRecords;
-import jxl.biff.IntegerHelper;
 import jxl.biff.RecordData;
 import jxl.biff.XFRecord;
 import jxl.format.CellFormat;
@@ -91,10 +90,10 @@ public abstract class CellValue extends RecordData
   protected CellValue(Record t, FormattingRecords fr, SheetImpl si)
   {
     super(t);
-    byte[] data = getRecord().getData();
-    row     = IntegerHelper.getInt(data[0], data[1]);
-    column  = IntegerHelper.getInt(data[2], data[3]);
-    xfIndex = IntegerHelper.getInt(data[4], data[5]);
+    Record r = getRecord();
+    row     = r.getShort(0);
+    column  = r.getShort(2);
+    xfIndex = r.getShort(4);
     sheet = si;
     formattingRecords = fr;
     initialized = false;
@@ -19,6 +19,8 @@
 
 package jxl.read.biff;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Iterator;
 
@@ -26,7 +28,6 @@ import jxl.common.Logger;
 
 import jxl.WorkbookSettings;
 import jxl.biff.BaseCompoundFile;
-import jxl.biff.IntegerHelper;
 
 /**
  * Reads in and defrags an OLE compound compound file
@@ -41,9 +42,10 @@ public final class CompoundFile extends BaseCompoundFile
 
   /**
    * The original OLE stream, organized into blocks, which can
-   * appear at any physical location in the file
+   * appear at any physical location in the file.  This is a wrapper
+   * around the in-memory array or the buffer the file was read into
    */
-  private byte[] data;
+  private ByteBuffer data;
   /**
    * The number of blocks it takes to store the big block depot
    */
@@ -103,46 +105,46 @@ public final class CompoundFile extends BaseCompoundFile
    * @exception BiffException
    */
   public CompoundFile(byte[] d, WorkbookSettings ws) throws BiffException
+  {
+    this(ByteBuffer.wrap(d), ws);
+  }
+
+  /**
+   * Initializes the compound file from a buffer holding the excel file.
+   * The blocks are read in place, so the only copy made is that of the
+   * stream subsequently requested
+   *
+   * @param d the raw data of the ole stream
+   * @param ws the workbook settings
+   * @exception BiffException
+   */
+  public CompoundFile(ByteBuffer d, WorkbookSettings ws) throws BiffException
   {
     super();
-    data = d;
+    data = d.duplicate();
+    data.order(ByteOrder.LITTLE_ENDIAN);
     settings = ws;
 
     // First verify the OLE identifier
+    if (data.limit() < BIG_BLOCK_SIZE)
+    {
+      throw new BiffException(BiffException.unrecognizedOLEFile);
+    }
+
     for (int i = 0; i < IDENTIFIER.length; i++)
     {
-      if (data[i] != IDENTIFIER[i])
+      if (data.get(i) != IDENTIFIER[i])
       {
         throw new BiffException(BiffException.unrecognizedOLEFile);
       }
     }
 
     propertySets = new ArrayList();
-    numBigBlockDepotBlocks = IntegerHelper.getInt
-      (data[NUM_BIG_BLOCK_DEPOT_BLOCKS_POS],
-       data[NUM_BIG_BLOCK_DEPOT_BLOCKS_POS + 1],
-       data[NUM_BIG_BLOCK_DEPOT_BLOCKS_POS + 2],
-       data[NUM_BIG_BLOCK_DEPOT_BLOCKS_POS + 3]);
-    sbdStartBlock = IntegerHelper.getInt
-      (data[SMALL_BLOCK_DEPOT_BLOCK_POS],
-       data[SMALL_BLOCK_DEPOT_BLOCK_POS + 1],
-       data[SMALL_BLOCK_DEPOT_BLOCK_POS + 2],
-       data[SMALL_BLOCK_DEPOT_BLOCK_POS + 3]);
-    rootStartBlock = IntegerHelper.getInt
-      (data[ROOT_START_BLOCK_POS],
-       data[ROOT_START_BLOCK_POS + 1],
-       data[ROOT_START_BLOCK_POS + 2],
-       data[ROOT_START_BLOCK_POS + 3]);
-    extensionBlock = IntegerHelper.getInt
-      (data[EXTENSION_BLOCK_POS],
-       data[EXTENSION_BLOCK_POS + 1],
-       data[EXTENSION_BLOCK_POS + 2],
-       data[EXTENSION_BLOCK_POS + 3]);
-    numExtensionBlocks = IntegerHelper.getInt
-      (data[NUM_EXTENSION_BLOCK_POS],
-       data[NUM_EXTENSION_BLOCK_POS + 1],
-       data[NUM_EXTENSION_BLOCK_POS + 2],
-       data[NUM_EXTENSION_BLOCK_POS + 3]);
+    numBigBlockDepotBlocks = data.getInt(NUM_BIG_BLOCK_DEPOT_BLOCKS_POS);
+    sbdStartBlock = data.getInt(SMALL_BLOCK_DEPOT_BLOCK_POS);
+    rootStartBlock = data.getInt(ROOT_START_BLOCK_POS);
+    extensionBlock = data.getInt(EXTENSION_BLOCK_POS);
+    numExtensionBlocks = data.getInt(NUM_EXTENSION_BLOCK_POS);
 
     bigBlockDepotBlocks = new int[numBigBlockDepotBlocks];
 
@@ -157,8 +159,7 @@ public final class CompoundFile extends BaseCompoundFile
 
     for (int i = 0; i < bbdBlocks; i++)
     {
-      bigBlockDepotBlocks[i] = IntegerHelper.getInt
-        (d[pos], d[pos + 1], d[pos + 2], d[pos + 3]);
+      bigBlockDepotBlocks[i] = data.getInt(pos);
       pos += 4;
     }
 
@@ -170,16 +171,14 @@ public final class CompoundFile extends BaseCompoundFile
 
       for (int i = bbdBlocks; i < bbdBlocks + blocksToRead; i++)
       {
-        bigBlockDepotBlocks[i] = IntegerHelper.getInt
-          (d[pos], d[pos + 1], d[pos + 2], d[pos + 3]);
+        bigBlockDepotBlocks[i] = data.getInt(pos);
         pos += 4;
       }
 
       bbdBlocks += blocksToRead;
       if (bbdBlocks < numBigBlockDepotBlocks)
       {
-        extensionBlock = IntegerHelper.getInt
-          (d[pos], d[pos + 1], d[pos + 2], d[pos + 3]);
+        extensionBlock = data.getInt(pos);
       }
     }
 
@@ -205,8 +204,7 @@ public final class CompoundFile extends BaseCompoundFile
 
       for (int j = 0; j < BIG_BLOCK_SIZE / 4; j++)
       {
-        bigBlockChain[index] = IntegerHelper.getInt
-          (data[pos], data[pos + 1], data[pos + 2], data[pos + 3]);
+        bigBlockChain[index] = data.getInt(pos);
         pos += 4;
         index++;
       }
@@ -243,8 +241,7 @@ public final class CompoundFile extends BaseCompoundFile
 
       for (int j = 0; j < BIG_BLOCK_SIZE / 4; j++)
       {
-        smallBlockChain[index] = IntegerHelper.getInt
-          (data[pos], data[pos + 1], data[pos + 2], data[pos + 3]);
+        smallBlockChain[index] = data.getInt(pos);
         pos += 4;
         index++;
       }
@@ -487,8 +484,7 @@ public final class CompoundFile extends BaseCompoundFile
     while (block != -2 && count < numBlocks)
     {
       pos = (block + 1) * BIG_BLOCK_SIZE;
-      System.arraycopy(data, pos, streamData,
-                       count * BIG_BLOCK_SIZE, BIG_BLOCK_SIZE);
+      readBlock(pos, streamData, count * BIG_BLOCK_SIZE);
       count++;
       block = bigBlockChain[block];
     }
@@ -568,8 +564,7 @@ public final class CompoundFile extends BaseCompoundFile
       entry = new byte[oldEntry.length + BIG_BLOCK_SIZE];
       System.arraycopy(oldEntry, 0, entry, 0, oldEntry.length);
       pos = (block + 1) * BIG_BLOCK_SIZE;
-      System.arraycopy(data, pos, entry,
-                       oldEntry.length, BIG_BLOCK_SIZE);
+      readBlock(pos, entry, oldEntry.length);
       if (bigBlockChain[block] == block)
       {
         throw new BiffException(BiffException.corruptFileFormat);
@@ -587,6 +582,27 @@ public final class CompoundFile extends BaseCompoundFile
     return entry;
   }
 
+  /**
+   * Copies a single big block from the underlying data into the array.
+   * If the block is not wholly present (ie. the file has been truncated),
+   * the remainder of the block is left zeroed
+   *
+   * @param pos the position of the block in the underlying data
+   * @param dest the array to copy into
+   * @param destPos the position in the array
+   */
+  private void readBlock(int pos, byte[] dest, int destPos)
+  {
+    if (pos >= data.limit())
+    {
+      return;
+    }
+
+    ByteBuffer src = data.duplicate();
+    src.position(pos);
+    src.get(dest, destPos, Math.min(BIG_BLOCK_SIZE, src.remaining()));
+  }
+
   /**
    * Gets the number of property sets
    * @return the number of property sets
@@ -170,19 +170,36 @@ class DateRecord implements DateCell, CellFeaturesAccessor
       time = false;
     }
 
+    // Get rid of any timezone adjustments - we are not interested
+    // in automatic adjustments.  The format is shared between cells, and
+    // may be used from several threads at once
+    synchronized (format)
+    {
+      format.setTimeZone(gmtZone);
+    }
+
+    date = new Date(getUTCTime(numValue, nf));
+  }
+
+  /**
+   * Converts the numerical value of a date cell into milliseconds since
+   * 01 Jan 1970 GMT
+   *
+   * @param numValue the number of days since 01 Jan 1900 (or 1904)
+   * @param nf flag indicating whether the 1904 date system is in use
+   * @return the number of milliseconds since 01 Jan 1970
+   */
+  static long getUTCTime(double numValue, boolean nf)
+  {
     // Work round a bug in excel.  Excel seems to think there is a date
     // called the 29th Feb, 1900 - but in actual fact this was not a leap year.
     // Therefore for values less than 61 in the 1900 date system,
     // add one to the numeric value
-    if (!nf && !time && numValue < nonLeapDay)
+    if (!nf && Math.abs(numValue) >= 1 && numValue < nonLeapDay)
     {
       numValue += 1;
     }
 
-    // Get rid of any timezone adjustments - we are not interested
-    // in automatic adjustments
-    format.setTimeZone(gmtZone);
-
     // Convert this to the number of days since 01 Jan 1970
     int offsetDays = nf ? utcOffsetDays1904 : utcOffsetDays;
     double utcDays = numValue - offsetDays;
@@ -190,9 +207,7 @@ class DateRecord implements DateCell, CellFeaturesAccessor
     // Convert this into utc by multiplying by the number of milliseconds
     // in a day.  Use the round function prior to ms conversion due
     // to a rounding feature of Excel (contributed by Jurgen
-    long utcValue = Math.round(utcDays * secondsInADay) * msInASecond;
-
-    date = new Date(utcValue);
+    return Math.round(utcDays * secondsInADay) * msInASecond;
   }
 
   /**
@@ -233,7 +248,10 @@ class DateRecord implements DateCell, CellFeaturesAccessor
    */
   public String getContents()
   {
-    return format.format(date);
+    synchronized (format)
+    {
+      return format.format(date);
+    }
   }
 
   /**
@@ -30,7 +30,6 @@ import jxl.biff.WorkbookMethods;
 import jxl.biff.formula.ExternalSheet;
 import jxl.biff.formula.FormulaErrorCode;
 import jxl.biff.formula.FormulaException;
-import jxl.biff.formula.FormulaParser;
 
 /**
  * An error resulting from the calculation of a formula
@@ -162,11 +161,9 @@ class ErrorFormulaRecord extends CellValue
     {
       byte[] tokens = new byte[data.length - 22];
       System.arraycopy(data, 22, tokens, 0, tokens.length);
-      FormulaParser fp = new FormulaParser
-        (tokens, this, externalSheet, nameTable,
-         getSheet().getWorkbook().getSettings());
-      fp.parse();
-      formulaString = fp.getFormula();
+      WorkbookParser w = getSheet().getWorkbook();
+      formulaString = w.getFormulaCache().getFormula
+        (tokens, this, externalSheet, nameTable, w.getSettings());
     }
 
     return formulaString;
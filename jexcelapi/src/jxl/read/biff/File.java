@@ -19,10 +19,13 @@
 
 package jxl.read.biff;
 
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import jxl.common.Logger;
 
@@ -124,7 +127,68 @@ public class File
       throw new BiffException(BiffException.excelFileNotFound);
     }
 
-    CompoundFile cf = new CompoundFile(d, ws);
+    readWorkbookStream(new CompoundFile(d, ws));
+  }
+
+  /**
+   * Constructs a file by reading the excel file through its channel.  The
+   * size of the file is known up front, so it is read straight into an
+   * array of that size, rather than into one which grows as it is read.
+   * The file is not mapped, so nothing holds on to it once it has been
+   * read, and it may be overwritten straight away (eg. when a workbook
+   * is copied onto itself)
+   *
+   * @param f the excel file
+   * @param ws the workbook settings
+   * @exception IOException
+   * @exception BiffException
+   */
+  public File(java.io.File f, WorkbookSettings ws)
+    throws IOException, BiffException
+  {
+    workbookSettings = ws;
+
+    FileInputStream fis = new FileInputStream(f);
+    byte[] d = null;
+
+    // Always close down the channel, regardless of whether or not the
+    // file can be read
+    try
+    {
+      FileChannel channel = fis.getChannel();
+
+      if (channel.size() == 0)
+      {
+        throw new BiffException(BiffException.excelFileNotFound);
+      }
+
+      d = new byte[(int) channel.size()];
+      ByteBuffer buffer = ByteBuffer.wrap(d);
+
+      // Anything beyond the end of a file which shrinks while it is being
+      // read is left as zeros
+      int bytesRead = 0;
+      while (buffer.hasRemaining() && bytesRead != -1)
+      {
+        bytesRead = channel.read(buffer);
+      }
+    }
+    finally
+    {
+      fis.close();
+    }
+
+    readWorkbookStream(new CompoundFile(d, ws));
+  }
+
+  /**
+   * Extracts the workbook stream from the compound file
+   *
+   * @param cf the compound file
+   * @exception BiffException
+   */
+  private void readWorkbookStream(CompoundFile cf) throws BiffException
+  {
     try
     {
       data = cf.getStream("workbook");
@@ -158,6 +222,20 @@ public class File
 
   }
 
+  /**
+   * Constructs a file which shares the data of the one passed in, but has
+   * its own position within it, so that several sheets may be read from
+   * the same workbook stream at once
+   *
+   * @param f the file whose data is to be shared
+   */
+  File(File f)
+  {
+    data = f.data;
+    workbookSettings = f.workbookSettings;
+    compoundFile = f.compoundFile;
+  }
+
   /**
    * Constructs a file from already defragged binary data.  Useful for
    * displaying subportions of excel streams.  This is only used during
@@ -22,7 +22,6 @@ package jxl.read.biff;
 import jxl.CellType;
 import jxl.LabelCell;
 import jxl.biff.FormattingRecords;
-import jxl.biff.IntegerHelper;
 
 /**
  * A label which is stored in the shared string table
@@ -34,13 +33,18 @@ class LabelSSTRecord extends CellValue implements LabelCell
    */
   private int index;
   /**
-   * The label
+   * The label, looked up the first time it is requested
    */
   private String string;
+  /**
+   * The shared string table
+   */
+  private SSTRecord sharedStrings;
 
   /**
-   * Constructor.  Retrieves the index from the raw data and looks it up
-   * in the shared string table
+   * Constructor.  Retrieves the index from the raw data.  The label is
+   * looked up in the shared string table when first requested, so that
+   * labels which are never read need not be decoded
    *
    * @param stringTable the shared string table
    * @param t the raw data
@@ -51,9 +55,8 @@ class LabelSSTRecord extends CellValue implements LabelCell
                         SheetImpl si)
   {
     super(t, fr, si);
-    byte[] data = getRecord().getData();
-    index = IntegerHelper.getInt(data[6], data[7], data[8], data[9]);
-    string = stringTable.getString(index);
+    index = getRecord().getInt(6);
+    sharedStrings = stringTable;
   }
 
   /**
@@ -63,6 +66,11 @@ class LabelSSTRecord extends CellValue implements LabelCell
    */
   public String getString()
   {
+    if (string == null)
+    {
+      string = sharedStrings.getString(index);
+    }
+
     return string;
   }
 
@@ -73,7 +81,17 @@ class LabelSSTRecord extends CellValue implements LabelCell
    */
   public String getContents()
   {
-    return string;
+    return getString();
+  }
+
+  /**
+   * Gets the index of the label in the shared string table
+   *
+   * @return the index into the shared string table
+   */
+  final int getIndex()
+  {
+    return index;
   }
 
   /**
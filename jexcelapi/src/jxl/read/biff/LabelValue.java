@@ -0,0 +1,213 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.read.biff;
+
+import jxl.CellFeatures;
+import jxl.CellType;
+import jxl.LabelCell;
+import jxl.biff.FormattingRecords;
+import jxl.format.CellFormat;
+
+/**
+ * A label cell value, initialized indirectly from the compact cell storage
+ * of the sheet rather than directly from the binary data
+ */
+class LabelValue implements LabelCell, CellFeaturesAccessor
+{
+  /**
+   * The row containing this label
+   */
+  private int row;
+
+  /**
+   * The column containing this label
+   */
+  private int column;
+
+  /**
+   * The label
+   */
+  private String string;
+
+  /**
+   * The raw cell format
+   */
+  private CellFormat cellFormat;
+
+  /**
+   * The cell features
+   */
+  private CellFeatures features;
+
+  /**
+   * The index to the XF Record
+   */
+  private int xfIndex;
+
+  /**
+   * A handle to the formatting records
+   */
+  private FormattingRecords formattingRecords;
+
+  /**
+   * A flag to indicate whether this object's formatting things have
+   * been initialized
+   */
+  private boolean initialized;
+
+  /**
+   * A handle to the sheet
+   */
+  private SheetImpl sheet;
+
+  /**
+   * Constructs this label
+   *
+   * @param r the zero based row
+   * @param c the zero base column
+   * @param s the label
+   * @param xfi the xf index
+   * @param fr the formatting records
+   * @param si the sheet
+   */
+  public LabelValue(int r, int c, String s,
+                    int xfi,
+                    FormattingRecords fr,
+                    SheetImpl si)
+  {
+    row = r;
+    column = c;
+    string = s;
+    xfIndex = xfi;
+    formattingRecords = fr;
+    sheet = si;
+    initialized = false;
+  }
+
+  /**
+   * Accessor for the row
+   *
+   * @return the zero based row
+   */
+  public final int getRow()
+  {
+    return row;
+  }
+
+  /**
+   * Accessor for the column
+   *
+   * @return the zero based column
+   */
+  public final int getColumn()
+  {
+    return column;
+  }
+
+  /**
+   * Gets the label
+   *
+   * @return the label
+   */
+  public String getString()
+  {
+    return string;
+  }
+
+  /**
+   * Accessor for the contents as a string
+   *
+   * @return the label
+   */
+  public String getContents()
+  {
+    return string;
+  }
+
+  /**
+   * Accessor for the cell type
+   *
+   * @return the cell type
+   */
+  public CellType getType()
+  {
+    return CellType.LABEL;
+  }
+
+  /**
+   * Gets the cell format
+   *
+   * @return the cell format
+   */
+  public CellFormat getCellFormat()
+  {
+    if (!initialized)
+    {
+      cellFormat = formattingRecords.getXFRecord(xfIndex);
+      initialized = true;
+    }
+
+    return cellFormat;
+  }
+
+  /**
+   * Determines whether or not this cell has been hidden
+   *
+   * @return TRUE if this cell has been hidden, FALSE otherwise
+   */
+  public boolean isHidden()
+  {
+    ColumnInfoRecord cir = sheet.getColumnInfo(column);
+
+    if (cir != null && (cir.getWidth() == 0 || cir.getHidden()))
+    {
+      return true;
+    }
+
+    RowRecord rr = sheet.getRowInfo(row);
+
+    if (rr != null && (rr.getRowHeight() == 0 || rr.isCollapsed()))
+    {
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Accessor for the cell features
+   *
+   * @return the cell features or NULL if this cell doesn't have any
+   */
+  public CellFeatures getCellFeatures()
+  {
+    return features;
+  }
+
+  /**
+   * Sets the cell features
+   *
+   * @param cf the cell features
+   */
+  public void setCellFeatures(CellFeatures cf)
+  {
+    features = cf;
+  }
+}
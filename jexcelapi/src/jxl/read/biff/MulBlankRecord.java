@@ -21,7 +21,6 @@ package jxl.read.biff;
 
 import jxl.common.Logger;
 
-import jxl.biff.IntegerHelper;
 import jxl.biff.RecordData;
 
 /**
@@ -63,28 +62,28 @@ class MulBlankRecord extends RecordData
   public MulBlankRecord(Record t)
   {
     super(t);
-    byte[] data = getRecord().getData();
-    int length = getRecord().getLength();
-    row = IntegerHelper.getInt(data[0], data[1]);
-    colFirst = IntegerHelper.getInt(data[2], data[3]);
-    colLast = IntegerHelper.getInt(data[length - 2], data[length - 1]);
+    Record r = getRecord();
+    int length = r.getLength();
+    row = r.getShort(0);
+    colFirst = r.getShort(2);
+    colLast = r.getShort(length - 2);
     numblanks = colLast - colFirst + 1;
     xfIndices = new int[numblanks];
 
-    readBlanks(data);
+    readBlanks(r);
   }
 
   /**
    * Reads the blanks from the raw data
    *
-   * @param data the raw data
+   * @param r the record
    */
-  private void readBlanks(byte[] data)
+  private void readBlanks(Record r)
   {
     int pos = 4;
     for (int i = 0; i < numblanks; i++)
     {
-      xfIndices[i] = IntegerHelper.getInt(data[pos], data[pos + 1]);
+      xfIndices[i] = r.getShort(pos);
       pos += 2;
     }
   }
@@ -21,7 +21,6 @@ package jxl.read.biff;
 
 import jxl.common.Logger;
 
-import jxl.biff.IntegerHelper;
 import jxl.biff.RecordData;
 
 /**
@@ -67,32 +66,31 @@ class MulRKRecord extends RecordData
   public MulRKRecord(Record t)
   {
     super(t);
-    byte[] data = getRecord().getData();
-    int length = getRecord().getLength();
-    row = IntegerHelper.getInt(data[0], data[1]);
-    colFirst = IntegerHelper.getInt(data[2], data[3]);
-    colLast = IntegerHelper.getInt(data[length - 2], data[length - 1]);
+    Record r = getRecord();
+    int length = r.getLength();
+    row = r.getShort(0);
+    colFirst = r.getShort(2);
+    colLast = r.getShort(length - 2);
     numrks = colLast - colFirst + 1;
     rknumbers = new int[numrks];
     xfIndices = new int[numrks];
 
-    readRks(data);
+    readRks(r);
   }
 
   /**
    * Reads the rks from the raw data
    *
-   * @param data the raw data
+   * @param r the record
    */
-  private void readRks(byte[] data)
+  private void readRks(Record r)
   {
     int pos = 4;
     int rk;
     for (int i = 0; i < numrks; i++)
     {
-      xfIndices[i] = IntegerHelper.getInt(data[pos], data[pos + 1]);
-      rk = IntegerHelper.getInt
-        (data[pos + 2], data[pos + 3], data[pos + 4], data[pos + 5]);
+      xfIndices[i] = r.getShort(pos);
+      rk = r.getInt(pos + 2);
       rknumbers[i] = rk;
       pos += 6;
     }
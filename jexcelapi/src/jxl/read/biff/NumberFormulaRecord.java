@@ -33,7 +33,6 @@ import jxl.biff.FormulaData;
 import jxl.biff.WorkbookMethods;
 import jxl.biff.formula.ExternalSheet;
 import jxl.biff.formula.FormulaException;
-import jxl.biff.formula.FormulaParser;
 
 /**
  * A formula's last calculated value
@@ -128,7 +127,17 @@ class NumberFormulaRecord extends CellValue
    */
   public String getContents()
   {
-    return !Double.isNaN(value) ? format.format(value) : "";
+    if (Double.isNaN(value))
+    {
+      return "";
+    }
+
+    // The format is shared between cells, and may be used from
+    // several threads at once
+    synchronized (format)
+    {
+      return format.format(value);
+    }
   }
 
   /**
@@ -173,11 +182,9 @@ class NumberFormulaRecord extends CellValue
     {
       byte[] tokens = new byte[data.length - 22];
       System.arraycopy(data, 22, tokens, 0, tokens.length);
-      FormulaParser fp = new FormulaParser
-        (tokens, this, externalSheet, nameTable,
-         getSheet().getWorkbook().getSettings());
-      fp.parse();
-      formulaString = fp.getFormula();
+      WorkbookParser w = getSheet().getWorkbook();
+      formulaString = w.getFormulaCache().getFormula
+        (tokens, this, externalSheet, nameTable, w.getSettings());
     }
 
     return formulaString;
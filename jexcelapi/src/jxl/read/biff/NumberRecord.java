@@ -26,7 +26,6 @@ import jxl.common.Logger;
 
 import jxl.CellType;
 import jxl.NumberCell;
-import jxl.biff.DoubleHelper;
 import jxl.biff.FormattingRecords;
 
 /**
@@ -65,9 +64,7 @@ class NumberRecord extends CellValue implements NumberCell
   public NumberRecord(Record t, FormattingRecords fr, SheetImpl si)
   {
     super(t, fr, si);
-    byte[] data = getRecord().getData();
-
-    value = DoubleHelper.getIEEEDouble(data, 6);
+    value = getRecord().getDouble(6);
 
     // Now get the number format
     format = fr.getNumberFormat(getXFIndex());
@@ -94,7 +91,12 @@ class NumberRecord extends CellValue implements NumberCell
    */
   public String getContents()
   {
-    return format.format(value);
+    // The format is shared between cells, and may be used from
+    // several threads at once
+    synchronized (format)
+    {
+      return format.format(value);
+    }
   }
 
   /**
@@ -165,7 +165,12 @@ class NumberValue implements NumberCell, CellFeaturesAccessor
    */
   public String getContents()
   {
-    return format.format(value);
+    // The format is shared between cells, and may be used from
+    // several threads at once
+    synchronized (format)
+    {
+      return format.format(value);
+    }
   }
 
   /**
@@ -203,7 +208,7 @@ class NumberValue implements NumberCell, CellFeaturesAccessor
   {
     ColumnInfoRecord cir = sheet.getColumnInfo(column);
 
-    if (cir != null && cir.getWidth() == 0)
+    if (cir != null && (cir.getWidth() == 0 || cir.getHidden()))
     {
       return true;
     }
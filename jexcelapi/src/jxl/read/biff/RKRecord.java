@@ -27,7 +27,6 @@ import jxl.common.Logger;
 import jxl.CellType;
 import jxl.NumberCell;
 import jxl.biff.FormattingRecords;
-import jxl.biff.IntegerHelper;
 
 /**
  * An individual RK record
@@ -64,8 +63,7 @@ class RKRecord extends CellValue implements NumberCell
   public RKRecord(Record t, FormattingRecords fr, SheetImpl si)
   {
     super(t, fr, si);
-    byte[] data = getRecord().getData();
-    int rknum = IntegerHelper.getInt(data[6], data[7], data[8], data[9]);
+    int rknum = getRecord().getInt(6);
     value = RKHelper.getDouble(rknum);
 
     // Now get the number format
@@ -93,7 +91,12 @@ class RKRecord extends CellValue implements NumberCell
    */
   public String getContents()
   {
-    return format.format(value);
+    // The format is shared between cells, and may be used from
+    // several threads at once
+    synchronized (format)
+    {
+      return format.format(value);
+    }
   }
 
   /**
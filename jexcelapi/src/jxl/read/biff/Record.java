@@ -23,6 +23,7 @@ import java.util.ArrayList;
 
 import jxl.common.Logger;
 
+import jxl.biff.DoubleHelper;
 import jxl.biff.IntegerHelper;
 import jxl.biff.Type;
 
@@ -67,6 +68,20 @@ public final class Record
    */
   private ArrayList continueRecords;
 
+  /**
+   * The number of continue records whose data has been appended to the
+   * data of this record
+   */
+  private int continueRecordsRead;
+
+  /**
+   * The array from which the accessors read the data of this record.
+   * This is the data of the whole file, so that reading a value does not
+   * require the record to be copied, until any continue records are
+   * appended, after which it is the copied data
+   */
+  private byte[] view;
+
   /**
    * Constructor
    *
@@ -83,6 +98,7 @@ public final class Record
     dataPos = f.getPos();
     file.skip(length);
     type = Type.getType(code);
+    view = d;
   }
 
   /**
@@ -106,7 +122,9 @@ public final class Record
   }
 
   /**
-   * Gets the data portion of the record
+   * Gets the data portion of the record.  This copies the data, so
+   * where only a few values are required the accessors such as getInt
+   * should be used instead
    *
    * @return the data portion of the record
    */
@@ -117,14 +135,16 @@ public final class Record
       data = file.read(dataPos, length);
     }
 
-    // copy in any data from the continue records
-    if (continueRecords != null)
+    // copy in the data from any continue records not already appended
+    if (continueRecords != null &&
+        continueRecordsRead < continueRecords.size())
     {
       int size = 0;
-      byte[][] contData = new byte[continueRecords.size()][];
-      for (int i = 0; i < continueRecords.size(); i++)
+      int numContinueRecords = continueRecords.size() - continueRecordsRead;
+      byte[][] contData = new byte[numContinueRecords][];
+      for (int i = 0; i < numContinueRecords; i++)
       {
-        Record r = (Record) continueRecords.get(i);
+        Record r = (Record) continueRecords.get(continueRecordsRead + i);
         contData[i] = r.getData();
         byte[] d2 = contData[i];
         size += d2.length;
@@ -141,11 +161,87 @@ public final class Record
       }
 
       data = d3;
+      continueRecordsRead = continueRecords.size();
+      view = data;
     }
 
     return data;
   }
 
+  /**
+   * Gets the position within the view of a value in the data portion of
+   * this record, appending the data of any continue records first
+   *
+   * @param pos the position of the value within the data
+   * @param size the size of the value in bytes
+   * @return the position of the value within the view
+   */
+  private int getViewPos(int pos, int size)
+  {
+    if (continueRecords != null)
+    {
+      getData();
+    }
+
+    boolean copied = view == data;
+    if (pos < 0 || pos + size > (copied ? data.length : length))
+    {
+      throw new ArrayIndexOutOfBoundsException(pos + size - 1);
+    }
+
+    return copied ? pos : dataPos + pos;
+  }
+
+  /**
+   * Gets a byte from the data portion of the record without copying it
+   *
+   * @param pos the position within the data
+   * @return the byte
+   */
+  public byte getByte(int pos)
+  {
+    return view[getViewPos(pos, 1)];
+  }
+
+  /**
+   * Gets a two byte unsigned integer from the data portion of the record
+   * without copying it
+   *
+   * @param pos the position within the data
+   * @return the integer
+   */
+  public int getShort(int pos)
+  {
+    int p = getViewPos(pos, 2);
+    return IntegerHelper.getInt(view[p], view[p + 1]);
+  }
+
+  /**
+   * Gets a four byte integer from the data portion of the record without
+   * copying it
+   *
+   * @param pos the position within the data
+   * @return the integer
+   */
+  public int getInt(int pos)
+  {
+    int p = getViewPos(pos, 4);
+    return IntegerHelper.getInt(view[p], view[p + 1],
+                                view[p + 2], view[p + 3]);
+  }
+
+  /**
+   * Gets an IEEE double from the data portion of the record without
+   * copying it
+   *
+   * @param pos the position within the data
+   * @return the double
+   */
+  public double getDouble(int pos)
+  {
+    return DoubleHelper.getIEEEDouble(view, getViewPos(pos, 8));
+  }
+
   /**
    * The excel 97 code
    *
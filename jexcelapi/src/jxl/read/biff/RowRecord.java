@@ -21,7 +21,6 @@ package jxl.read.biff;
 
 import jxl.common.Logger;
 
-import jxl.biff.IntegerHelper;
 import jxl.biff.RecordData;
 
 /**
@@ -83,12 +82,11 @@ public class RowRecord extends RecordData
   {
     super(t);
 
-    byte[] data = getRecord().getData();
-    rowNumber = IntegerHelper.getInt(data[0], data[1]);
-    rowHeight = IntegerHelper.getInt(data[6], data[7]);
+    Record r = getRecord();
+    rowNumber = r.getShort(0);
+    rowHeight = r.getShort(6);
 
-    int options = IntegerHelper.getInt(data[12], data[13],
-                                       data[14], data[15]);
+    int options = r.getInt(12);
     outlineLevel = (options & 0x7);
     groupStart = (options & 0x10) != 0;
     collapsed = (options & 0x20) != 0;
@@ -19,6 +19,8 @@
 
 package jxl.read.biff;
 
+import java.util.Arrays;
+
 import jxl.common.Assert;
 
 import jxl.WorkbookSettings;
@@ -48,6 +50,23 @@ class SSTRecord extends RecordData
    */
   private int[] continuationBreaks;
 
+  /**
+   * The raw data of the table, including the continuations.  Only
+   * retained when the strings are decoded on demand
+   */
+  private byte[] data;
+
+  /**
+   * The position within the raw data of each string.  Only present when
+   * the strings are decoded on demand
+   */
+  private int[] offsets;
+
+  /**
+   * The workbook settings, used when decoding the strings
+   */
+  private WorkbookSettings settings;
+
   /**
    * A holder for a byte array
    */
@@ -120,19 +139,60 @@ class SSTRecord extends RecordData
                                          data[6], data[7]);
 
     strings = new String[uniqueStrings];
-    readStrings(data, 8, ws);
+    settings = ws;
+
+    // When decoding on demand, only the position of each string is
+    // found now, and the raw data is kept to decode from later
+    if (ws.getLazySharedStrings())
+    {
+      this.data = data;
+      offsets = new int[uniqueStrings];
+    }
+
+    readStrings(data, 8);
   }
 
   /**
-   * Reads in all the strings from the raw data
+   * Reads in all the strings from the raw data, or finds the position of
+   * each string when they are decoded on demand
    *
    * @param data the raw data
    * @param offset the offset
-   * @param ws the workbook settings
    */
-  private void readStrings(byte[] data, int offset, WorkbookSettings ws)
+  private void readStrings(byte[] data, int offset)
   {
     int pos = offset;
+
+    for (int i = 0; i < uniqueStrings; i++)
+    {
+      if (offsets != null)
+      {
+        offsets[i] = pos;
+      }
+
+      pos = readString(data, pos, i, offsets == null);
+
+      if (pos > data.length)
+      {
+        Assert.verify(false, "pos exceeds record length");
+      }
+    }
+  }
+
+  /**
+   * Reads in a string from the raw data.  A string which spans a
+   * continuation break is always decoded, as the number of bytes it
+   * occupies depends upon the encoding of each part
+   *
+   * @param data the raw data
+   * @param pos the position of the string
+   * @param index the index of the string
+   * @param decode TRUE if the string is to be decoded, FALSE if it is
+   *               only to be skipped over
+   * @return the position following the string
+   */
+  private int readString(byte[] data, int pos, int index, boolean decode)
+  {
     int numChars;
     byte optionFlags;
     String s = null;
@@ -142,38 +202,40 @@ class SSTRecord extends RecordData
     int formattingRuns = 0;
     int extendedRunLength = 0;
 
-    for (int i = 0; i < uniqueStrings; i++)
-    {
-      // Read in the number of characters
-      numChars = IntegerHelper.getInt(data[pos], data[pos + 1]);
-      pos += 2;
-      optionFlags = data[pos];
-      pos++;
+    // Read in the number of characters
+    numChars = IntegerHelper.getInt(data[pos], data[pos + 1]);
+    pos += 2;
+    optionFlags = data[pos];
+    pos++;
 
-      // See if it is an extended string
-      extendedString = ((optionFlags & 0x04) != 0);
+    // See if it is an extended string
+    extendedString = ((optionFlags & 0x04) != 0);
 
-      // See if string contains formatting information
-      richString = ((optionFlags & 0x08) != 0);
+    // See if string contains formatting information
+    richString = ((optionFlags & 0x08) != 0);
 
-      if (richString)
-      {
-        // Read in the crun
-        formattingRuns = IntegerHelper.getInt(data[pos], data[pos + 1]);
-        pos += 2;
-      }
+    if (richString)
+    {
+      // Read in the crun
+      formattingRuns = IntegerHelper.getInt(data[pos], data[pos + 1]);
+      pos += 2;
+    }
 
-      if (extendedString)
-      {
-        // Read in cchExtRst
-        extendedRunLength = IntegerHelper.getInt
-          (data[pos], data[pos + 1], data[pos + 2], data[pos + 3]);
-        pos += 4;
-      }
+    if (extendedString)
+    {
+      // Read in cchExtRst
+      extendedRunLength = IntegerHelper.getInt
+        (data[pos], data[pos + 1], data[pos + 2], data[pos + 3]);
+      pos += 4;
+    }
+
+    // See if string is ASCII (compressed) or unicode
+    asciiEncoding = ((optionFlags & 0x01) == 0);
 
-      // See if string is ASCII (compressed) or unicode
-      asciiEncoding = ((optionFlags & 0x01) == 0);
+    int length = asciiEncoding ? numChars : numChars * 2;
 
+    if (decode || getContinuationBreak(pos, length) != -1)
+    {
       ByteArrayHolder bah = new ByteArrayHolder();
       BooleanHolder   bh = new BooleanHolder();
       bh.value = asciiEncoding;
@@ -182,32 +244,66 @@ class SSTRecord extends RecordData
 
       if (asciiEncoding)
       {
-        s = StringHelper.getString(bah.bytes, numChars, 0, ws);
+        s = StringHelper.getString(bah.bytes, numChars, 0, settings);
       }
       else
       {
         s = StringHelper.getUnicodeString(bah.bytes, numChars, 0);
       }
 
-      strings[i] = s;
+      strings[index] = s;
+    }
+    else
+    {
+      pos += length;
+    }
 
-      // For rich strings, skip over the formatting runs
-      if (richString)
-      {
-        pos += 4 * formattingRuns;
-      }
+    // For rich strings, skip over the formatting runs
+    if (richString)
+    {
+      pos += 4 * formattingRuns;
+    }
 
-      // For extended strings, skip over the extended string data
-      if (extendedString)
-      {
-        pos += extendedRunLength;
-      }
+    // For extended strings, skip over the extended string data
+    if (extendedString)
+    {
+      pos += extendedRunLength;
+    }
 
-      if (pos > data.length)
-      {
-        Assert.verify(false, "pos exceeds record length");
-      }
+    return pos;
+  }
+
+  /**
+   * Finds the continuation break, if any, spanned by the specified
+   * characters
+   *
+   * @param pos the position of the characters
+   * @param length the number of bytes the characters occupy
+   * @return the index of the continuation break spanned, or -1 if the
+   *         characters do not span a break
+   */
+  private int getContinuationBreak(int pos, int length)
+  {
+    // The breaks are in ascending order, so the only one which may be
+    // spanned is the first at or after the position
+    int i = Arrays.binarySearch(continuationBreaks, pos);
+    if (i < 0)
+    {
+      i = -i - 1;
     }
+
+    // Empty continuations give repeated breaks, so find the first
+    while (i > 0 && continuationBreaks[i - 1] == pos)
+    {
+      i--;
+    }
+
+    if (i < continuationBreaks.length && pos + length > continuationBreaks[i])
+    {
+      return i;
+    }
+
+    return -1;
   }
 
   /**
@@ -227,9 +323,6 @@ class SSTRecord extends RecordData
                        BooleanHolder ascii,
                        int numChars)
   {
-    int i = 0;
-    boolean spansBreak = false;
-
     if (ascii.value)
     {
       bah.bytes = new byte[numChars];
@@ -239,20 +332,11 @@ class SSTRecord extends RecordData
       bah.bytes = new byte[numChars * 2];
     }
 
-    while (i < continuationBreaks.length && !spansBreak)
-    {
-      spansBreak = pos <= continuationBreaks[i] &&
-                   (pos + bah.bytes.length > continuationBreaks[i]);
-
-      if (!spansBreak)
-      {
-        i++;
-      }
-    }
+    int i = getContinuationBreak(pos, bah.bytes.length);
 
     // If it doesn't span a break simply do an array copy into the
     // destination array and finish
-    if (!spansBreak)
+    if (i == -1)
     {
       System.arraycopy(source, pos, bah.bytes, 0, bah.bytes.length);
       return bah.bytes.length;
@@ -415,6 +499,16 @@ class SSTRecord extends RecordData
     return bytesRead;
   }
 
+  /**
+   * Gets the number of unique strings in the table
+   *
+   * @return the number of strings
+   */
+  int getNumberOfStrings()
+  {
+    return uniqueStrings;
+  }
+
   /**
    * Gets the string at the specified position
    *
@@ -424,7 +518,18 @@ class SSTRecord extends RecordData
   public String getString(int index)
   {
     Assert.verify(index < uniqueStrings);
-    return strings[index];
+
+    // When decoding on demand, decode the string the first time it is
+    // requested.  Should two threads do so at once, each simply decodes
+    // an identical string
+    String s = strings[index];
+    if (s == null && offsets != null)
+    {
+      readString(data, offsets[index], index, true);
+      s = strings[index];
+    }
+
+    return s;
   }
 }
 
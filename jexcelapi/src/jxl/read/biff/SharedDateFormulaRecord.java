@@ -31,7 +31,6 @@ import jxl.biff.FormattingRecords;
 import jxl.biff.FormulaData;
 import jxl.biff.IntegerHelper;
 import jxl.biff.formula.FormulaException;
-import jxl.biff.formula.FormulaParser;
 
 /**
  * A number formula record, manufactured out of the Shared Formula
@@ -122,12 +121,10 @@ public class SharedDateFormulaRecord extends BaseSharedFormulaRecord
 
     // Get the tokens, taking into account the mapping from shared
     // formula specific values into normal values
-    FormulaParser fp = new FormulaParser
-      (getTokens(), this,
-       getExternalSheet(), getNameTable(),
-       getSheet().getWorkbook().getSettings());
-    fp.parse();
-    byte[] rpnTokens = fp.getBytes();
+    WorkbookParser w = getSheet().getWorkbook();
+    byte[] rpnTokens = w.getFormulaCache().getBytes
+      (getTokens(), this, getExternalSheet(), getNameTable(),
+       w.getSettings());
 
     byte[] data = new byte[rpnTokens.length + 22];
 
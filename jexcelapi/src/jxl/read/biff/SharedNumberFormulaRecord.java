@@ -35,7 +35,6 @@ import jxl.biff.IntegerHelper;
 import jxl.biff.WorkbookMethods;
 import jxl.biff.formula.ExternalSheet;
 import jxl.biff.formula.FormulaException;
-import jxl.biff.formula.FormulaParser;
 
 /**
  * A number formula record, manufactured out of the Shared Formula
@@ -124,7 +123,17 @@ public class SharedNumberFormulaRecord extends BaseSharedFormulaRecord
    */
   public String getContents()
   {
-    return !Double.isNaN(value) ? format.format(value) : "";
+    if (Double.isNaN(value))
+    {
+      return "";
+    }
+
+    // The format is shared between cells, and may be used from
+    // several threads at once
+    synchronized (format)
+    {
+      return format.format(value);
+    }
   }
 
   /**
@@ -153,12 +162,10 @@ public class SharedNumberFormulaRecord extends BaseSharedFormulaRecord
 
     // Get the tokens, taking into account the mapping from shared
     // formula specific values into normal values
-    FormulaParser fp = new FormulaParser
-      (getTokens(), this,
-       getExternalSheet(), getNameTable(),
-       getSheet().getWorkbook().getSettings());
-    fp.parse();
-    byte[] rpnTokens = fp.getBytes();
+    WorkbookParser w = getSheet().getWorkbook();
+    byte[] rpnTokens = w.getFormulaCache().getBytes
+      (getTokens(), this, getExternalSheet(), getNameTable(),
+       w.getSettings());
 
     byte[] data = new byte[rpnTokens.length + 22];
 
@@ -34,7 +34,6 @@ import jxl.biff.Type;
 import jxl.biff.WorkbookMethods;
 import jxl.biff.formula.ExternalSheet;
 import jxl.biff.formula.FormulaException;
-import jxl.biff.formula.FormulaParser;
 
 /**
  * A string formula record, manufactured out of the Shared Formula
@@ -218,12 +217,10 @@ public class SharedStringFormulaRecord extends BaseSharedFormulaRecord
 
     // Get the tokens, taking into account the mapping from shared
     // formula specific values into normal values
-    FormulaParser fp = new FormulaParser
-      (getTokens(), this,
-       getExternalSheet(), getNameTable(),
-       getSheet().getWorkbook().getSettings());
-    fp.parse();
-    byte[] rpnTokens = fp.getBytes();
+    WorkbookParser w = getSheet().getWorkbook();
+    byte[] rpnTokens = w.getFormulaCache().getBytes
+      (getTokens(), this, getExternalSheet(), getNameTable(),
+       w.getSettings());
 
     byte[] data = new byte[rpnTokens.length + 22];
 
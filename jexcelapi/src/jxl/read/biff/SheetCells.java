@@ -0,0 +1,602 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.read.biff;
+
+import jxl.Cell;
+import jxl.DateCell;
+import jxl.NumberCell;
+import jxl.biff.FormattingRecords;
+
+/**
+ * The cells of a sheet which has been read in.  Rather than holding a
+ * cell object at each position of a grid sized by the dimension record,
+ * the cells are held row by row, and only rows which contain cells are
+ * allocated.  Each row is only as wide as its rightmost cell.
+ *
+ * Plain numbers, dates and shared string labels, which make up the bulk
+ * of most sheets, are held as primitives and a Cell object is only
+ * created for them when requested.  All other cells are held as the
+ * objects which were read in.  A primitive cell which has been given
+ * cell features keeps its primitive value alongside the cell object, so
+ * that it may still be read as a primitive
+ */
+final class SheetCells
+{
+  /**
+   * Indicates there is no cell at the position
+   */
+  private static final byte EMPTY = 0;
+
+  /**
+   * Indicates a number, whose value is held
+   */
+  private static final byte NUMBER = 1;
+
+  /**
+   * Indicates a date, whose numerical value is held
+   */
+  private static final byte DATE = 2;
+
+  /**
+   * Indicates a label, whose index in the shared string table is held
+   */
+  private static final byte LABEL = 3;
+
+  /**
+   * Indicates a cell object, which is held in its entirety
+   */
+  private static final byte OBJECT = 4;
+
+  /**
+   * The kind of cell at each position of each row.  A null entry means
+   * the row contains no cells
+   */
+  private byte[][] kinds;
+
+  /**
+   * The xf index of each of the primitive cells
+   */
+  private short[][] xfIndices;
+
+  /**
+   * The numerical values of the primitive cells.  For labels, this is
+   * the index into the shared string table
+   */
+  private double[][] values;
+
+  /**
+   * The cell objects.  The array for a row is only allocated when the row
+   * contains a cell which is not held as a primitive, or a primitive cell
+   * which has been retained
+   */
+  private Cell[][] objects;
+
+  /**
+   * The shared strings, used to look up labels
+   */
+  private SSTRecord sharedStrings;
+
+  /**
+   * The formatting records
+   */
+  private FormattingRecords formattingRecords;
+
+  /**
+   * Flag indicating whether the 1904 date system is in use
+   */
+  private boolean nineteenFour;
+
+  /**
+   * The sheet containing these cells
+   */
+  private SheetImpl sheet;
+
+  /**
+   * The number of milliseconds in a day
+   */
+  private static final double msInADay = 24 * 60 * 60 * 1000;
+
+  /**
+   * Constructor
+   *
+   * @param sst the shared string table
+   * @param fr the formatting records
+   * @param nf the 1904 date system flag
+   * @param si the sheet
+   */
+  SheetCells(SSTRecord sst,
+             FormattingRecords fr,
+             boolean nf,
+             SheetImpl si)
+  {
+    sharedStrings = sst;
+    formattingRecords = fr;
+    nineteenFour = nf;
+    sheet = si;
+
+    kinds = new byte[0][];
+    xfIndices = new short[0][];
+    values = new double[0][];
+    objects = new Cell[0][];
+  }
+
+  /**
+   * Ensures there is room for at least the specified number of rows
+   *
+   * @param rows the number of rows
+   */
+  void ensureRows(int rows)
+  {
+    if (rows <= kinds.length)
+    {
+      return;
+    }
+
+    byte[][] newKinds = new byte[rows][];
+    System.arraycopy(kinds, 0, newKinds, 0, kinds.length);
+    kinds = newKinds;
+
+    short[][] newXfIndices = new short[rows][];
+    System.arraycopy(xfIndices, 0, newXfIndices, 0, xfIndices.length);
+    xfIndices = newXfIndices;
+
+    double[][] newValues = new double[rows][];
+    System.arraycopy(values, 0, newValues, 0, values.length);
+    values = newValues;
+
+    Cell[][] newObjects = new Cell[rows][];
+    System.arraycopy(objects, 0, newObjects, 0, objects.length);
+    objects = newObjects;
+  }
+
+  /**
+   * Ensures the specified row is allocated and is wide enough to hold
+   * the specified column.  Rows are grown by doubling, and trimmed
+   * back once the sheet has been read
+   *
+   * @param row the row
+   * @param col the column
+   */
+  private void ensureColumn(int row, int col)
+  {
+    ensureRows(row + 1);
+
+    byte[] k = kinds[row];
+    if (k != null && col < k.length)
+    {
+      return;
+    }
+
+    int width = k == null ? Math.max(col + 1, 4) :
+                            Math.max(col + 1, k.length * 2);
+    resizeRow(row, width);
+  }
+
+  /**
+   * Resizes all the arrays of the specified row
+   *
+   * @param row the row
+   * @param width the new width
+   */
+  private void resizeRow(int row, int width)
+  {
+    byte[] k = kinds[row];
+    int len = k == null ? 0 : Math.min(k.length, width);
+
+    byte[] newKinds = new byte[width];
+    short[] newXfIndices = new short[width];
+    double[] newValues = new double[width];
+
+    if (k != null)
+    {
+      System.arraycopy(k, 0, newKinds, 0, len);
+      System.arraycopy(xfIndices[row], 0, newXfIndices, 0, len);
+      System.arraycopy(values[row], 0, newValues, 0, len);
+    }
+
+    kinds[row] = newKinds;
+    xfIndices[row] = newXfIndices;
+    values[row] = newValues;
+
+    if (objects[row] != null)
+    {
+      Cell[] newObjects = new Cell[width];
+      System.arraycopy(objects[row], 0, newObjects, 0, len);
+      objects[row] = newObjects;
+    }
+  }
+
+  /**
+   * Adds a primitive cell
+   *
+   * @param row the row
+   * @param col the column
+   * @param kind the kind of cell
+   * @param xfIndex the xf index
+   * @param value the value
+   */
+  private void setPrimitive(int row, int col, byte kind,
+                            int xfIndex, double value)
+  {
+    ensureColumn(row, col);
+    kinds[row][col] = kind;
+    xfIndices[row][col] = (short) xfIndex;
+    values[row][col] = value;
+
+    if (objects[row] != null)
+    {
+      objects[row][col] = null;
+    }
+  }
+
+  /**
+   * Adds a number
+   *
+   * @param row the row
+   * @param col the column
+   * @param xfIndex the xf index
+   * @param value the value
+   * @param date TRUE if the format of the number indicates a date
+   */
+  void setNumber(int row, int col, int xfIndex, double value, boolean date)
+  {
+    setPrimitive(row, col, date ? DATE : NUMBER, xfIndex, value);
+  }
+
+  /**
+   * Adds a label from the shared string table
+   *
+   * @param row the row
+   * @param col the column
+   * @param xfIndex the xf index
+   * @param index the index of the label in the shared string table
+   */
+  void setLabel(int row, int col, int xfIndex, int index)
+  {
+    setPrimitive(row, col, LABEL, xfIndex, index);
+  }
+
+  /**
+   * Adds a cell object
+   *
+   * @param cell the cell
+   */
+  void setCell(Cell cell)
+  {
+    int row = cell.getRow();
+    int col = cell.getColumn();
+
+    ensureColumn(row, col);
+    if (objects[row] == null)
+    {
+      objects[row] = new Cell[kinds[row].length];
+    }
+
+    kinds[row][col] = OBJECT;
+    objects[row][col] = cell;
+  }
+
+  /**
+   * Determines whether there is a cell at the specified position
+   *
+   * @param row the row
+   * @param col the column
+   * @return TRUE if there is a cell, FALSE otherwise
+   */
+  boolean contains(int row, int col)
+  {
+    if (row >= kinds.length || kinds[row] == null || col >= kinds[row].length)
+    {
+      return false;
+    }
+
+    return kinds[row][col] != EMPTY;
+  }
+
+  /**
+   * Gets the cell at the specified position.  Cells held as primitives
+   * are created afresh on each call, so any changes made to them are
+   * not retained.  See retainCell
+   *
+   * @param row the row
+   * @param col the column
+   * @return the cell, or NULL if there is no cell at the position
+   */
+  Cell getCell(int row, int col)
+  {
+    if (!contains(row, col))
+    {
+      return null;
+    }
+
+    if (objects[row] != null && objects[row][col] != null)
+    {
+      return objects[row][col];
+    }
+
+    byte kind = kinds[row][col];
+
+    int xfIndex = xfIndices[row][col] & 0xffff;
+    double value = values[row][col];
+
+    if (kind == LABEL)
+    {
+      return new LabelValue(row, col,
+                            sharedStrings.getString((int) value),
+                            xfIndex, formattingRecords, sheet);
+    }
+
+    NumberValue nv = new NumberValue(row, col, value, xfIndex,
+                                     formattingRecords, sheet);
+
+    if (kind == DATE)
+    {
+      return new DateRecord(nv, xfIndex, formattingRecords,
+                            nineteenFour, sheet);
+    }
+
+    nv.setNumberFormat(formattingRecords.getNumberFormat(xfIndex));
+    return nv;
+  }
+
+  /**
+   * Gets the cell at the specified position, creating a cell object for
+   * it if it is held as a primitive, so that any changes subsequently
+   * made to it (such as attaching cell features) are retained
+   *
+   * @param row the row
+   * @param col the column
+   * @return the cell, or NULL if there is no cell at the position
+   */
+  Cell retainCell(int row, int col)
+  {
+    Cell c = getCell(row, col);
+
+    if (c != null && kinds[row][col] != OBJECT)
+    {
+      if (objects[row] == null)
+      {
+        objects[row] = new Cell[kinds[row].length];
+      }
+      objects[row][col] = c;
+    }
+
+    return c;
+  }
+
+  /**
+   * Gets the index in the shared string table of the label at the
+   * specified position
+   *
+   * @param row the row
+   * @param col the column
+   * @return the index of the label, or -1 if the cell is not a label held
+   *         in the shared string table
+   */
+  int getLabelIndex(int row, int col)
+  {
+    return contains(row, col) && kinds[row][col] == LABEL ?
+      (int) values[row][col] : -1;
+  }
+
+  /**
+   * Gets the values of the numbers in a column.  Numbers held as
+   * primitives are read directly, without creating cell objects
+   *
+   * @param col the column
+   * @param rows the number of rows in the sheet
+   * @return the value of the number on each row, or NaN where the cell
+   *         is not a number
+   */
+  double[] getNumberColumn(int col, int rows)
+  {
+    double[] column = new double[rows];
+
+    for (int row = 0; row < rows; row++)
+    {
+      column[row] = Double.NaN;
+
+      if (!contains(row, col))
+      {
+        continue;
+      }
+
+      byte kind = kinds[row][col];
+
+      if (kind == NUMBER)
+      {
+        column[row] = values[row][col];
+      }
+      else if (kind == OBJECT)
+      {
+        Cell c = objects[row][col];
+        if (c instanceof NumberCell)
+        {
+          column[row] = ((NumberCell) c).getValue();
+        }
+      }
+    }
+
+    return column;
+  }
+
+  /**
+   * Gets the dates in a column as the number of days since 01 Jan 1970.
+   * Dates held as primitives are converted directly from their numerical
+   * value, without creating cell objects
+   *
+   * @param col the column
+   * @param rows the number of rows in the sheet
+   * @return the day of the date on each row, or Integer.MIN_VALUE where
+   *         the cell is not a date
+   */
+  int[] getDateColumn(int col, int rows)
+  {
+    int[] column = new int[rows];
+
+    for (int row = 0; row < rows; row++)
+    {
+      column[row] = Integer.MIN_VALUE;
+
+      if (!contains(row, col))
+      {
+        continue;
+      }
+
+      byte kind = kinds[row][col];
+      long time;
+
+      if (kind == DATE)
+      {
+        time = DateRecord.getUTCTime(values[row][col], nineteenFour);
+      }
+      else if (kind == OBJECT && objects[row][col] instanceof DateCell)
+      {
+        time = ((DateCell) objects[row][col]).getDate().getTime();
+      }
+      else
+      {
+        continue;
+      }
+
+      column[row] = (int) Math.floor(time / msInADay);
+    }
+
+    return column;
+  }
+
+  /**
+   * Gets the indexes in the shared string table of the labels in a column
+   *
+   * @param col the column
+   * @param rows the number of rows in the sheet
+   * @return the index of the label on each row, or -1 where the cell is
+   *         not a label held in the shared string table
+   */
+  int[] getLabelColumn(int col, int rows)
+  {
+    int[] column = new int[rows];
+
+    for (int row = 0; row < rows; row++)
+    {
+      column[row] = -1;
+
+      if (contains(row, col) && kinds[row][col] == LABEL)
+      {
+        column[row] = (int) values[row][col];
+      }
+    }
+
+    return column;
+  }
+
+  /**
+   * Gets the number of columns in the row up to and including the
+   * rightmost cell
+   *
+   * @param row the row
+   * @return the width of the row
+   */
+  int getRowWidth(int row)
+  {
+    byte[] k = kinds[row];
+
+    if (k == null)
+    {
+      return 0;
+    }
+
+    int col = k.length - 1;
+    while (col >= 0 && k[col] == EMPTY)
+    {
+      col--;
+    }
+
+    return col + 1;
+  }
+
+  /**
+   * Gets an estimate of the number of bytes occupied by these cells.  Each
+   * position of a row takes a byte for its kind, two for its xf index and
+   * eight for its value, and cell objects are assumed to take a further
+   * 64 bytes each
+   *
+   * @return the approximate size in bytes
+   */
+  long getSize()
+  {
+    long size = 0;
+
+    for (int row = 0; row < kinds.length; row++)
+    {
+      if (kinds[row] == null)
+      {
+        continue;
+      }
+
+      size += kinds[row].length * 11;
+
+      if (objects[row] != null)
+      {
+        Cell[] o = objects[row];
+        size += o.length * 4;
+
+        for (int col = 0; col < o.length; col++)
+        {
+          if (o[col] != null)
+          {
+            size += 64;
+          }
+        }
+      }
+    }
+
+    return size;
+  }
+
+  /**
+   * Trims any unused space from the end of each row.  Called once all
+   * the cells have been read in
+   */
+  void trim()
+  {
+    for (int row = 0; row < kinds.length; row++)
+    {
+      if (kinds[row] == null)
+      {
+        continue;
+      }
+
+      int width = getRowWidth(row);
+
+      if (width == 0)
+      {
+        kinds[row] = null;
+        xfIndices[row] = null;
+        values[row] = null;
+        objects[row] = null;
+      }
+      else if (width < kinds[row].length)
+      {
+        resizeRow(row, width);
+      }
+    }
+  }
+}
@@ -27,12 +27,15 @@ import jxl.common.Logger;
 import jxl.common.Assert;
 
 import jxl.Cell;
+import jxl.ColumnProjection;
 import jxl.CellType;
 import jxl.CellView;
 import jxl.Hyperlink;
 import jxl.Image;
 import jxl.LabelCell;
 import jxl.Range;
+import jxl.RowFilter;
+import jxl.RowHandler;
 import jxl.Sheet;
 import jxl.SheetSettings;
 import jxl.WorkbookSettings;
@@ -109,13 +112,24 @@ public class SheetImpl implements Sheet
   /**
    * The cells
    */
-  private Cell[][] cells;
+  private SheetCells cells;
+
+  /**
+   * The index of the contents of the cells, or NULL if the sheet has not
+   * been searched or the cells are not indexed
+   */
+  private CellIndex cellIndex;
 
   /**
    * The start position in the stream of this sheet
    */
   private int startPosition;
 
+  /**
+   * The position in the stream after the EOF record of this sheet
+   */
+  private int endPosition;
+
   /**
    * The list of specified (ie. non default) column widths
    */
@@ -322,6 +336,8 @@ public class SheetImpl implements Sheet
         bofs++;
       }
     }
+
+    endPosition = f.getPos();
   }
 
   /**
@@ -353,15 +369,15 @@ public class SheetImpl implements Sheet
       readSheet();
     }
 
-    Cell c = cells[row][column];
-
-    if (c == null)
+    if (row < 0 || row >= numRows || column < 0 || column >= numCols)
     {
-      c = new EmptyCell(column, row);
-      cells[row][column] = c;
+      throw new ArrayIndexOutOfBoundsException
+        (CellReferenceHelper.getCellReference(column, row));
     }
 
-    return c;
+    Cell c = cells.getCell(row, column);
+
+    return c != null ? c : new EmptyCell(column, row);
   }
 
   /**
@@ -375,6 +391,14 @@ public class SheetImpl implements Sheet
    */
   public Cell findCell(String contents)
   {
+    // Empty cells are not indexed, so searching for empty contents is
+    // done cell by cell
+    CellIndex index = getCellIndex();
+    if (index != null && contents.length() > 0)
+    {
+      return index.findCell(contents);
+    }
+
     CellFinder cellFinder = new CellFinder(this);
     return cellFinder.findCell(contents);
   }
@@ -400,6 +424,17 @@ public class SheetImpl implements Sheet
                        int lastRow, 
                        boolean reverse)
   {
+    CellIndex index = getCellIndex();
+    if (index != null)
+    {
+      return index.findCell(contents,
+                            firstCol,
+                            firstRow,
+                            lastCol,
+                            lastRow,
+                            reverse);
+    }
+
     CellFinder cellFinder = new CellFinder(this);
     return cellFinder.findCell(contents,
                                firstCol, 
@@ -430,6 +465,17 @@ public class SheetImpl implements Sheet
                        int lastRow, 
                        boolean reverse)
   {
+    CellIndex index = getCellIndex();
+    if (index != null)
+    {
+      return index.findCell(pattern,
+                            firstCol,
+                            firstRow,
+                            lastCol,
+                            lastRow,
+                            reverse);
+    }
+
     CellFinder cellFinder = new CellFinder(this);
     return cellFinder.findCell(pattern,
                                firstCol, 
@@ -453,10 +499,44 @@ public class SheetImpl implements Sheet
    */
   public LabelCell findLabelCell(String contents)
   {
+    CellIndex index = getCellIndex();
+    if (index != null)
+    {
+      return index.findLabelCell(contents);
+    }
+
     CellFinder cellFinder = new CellFinder(this);
     return cellFinder.findLabelCell(contents);
   }
 
+  /**
+   * Gets the index of the contents of the cells, building it the first
+   * time the sheet is searched
+   *
+   * @return the index, or NULL if the cells are not indexed
+   */
+  private CellIndex getCellIndex()
+  {
+    if (!workbookSettings.getCellSearchIndex())
+    {
+      return null;
+    }
+
+    // just in case this has been cleared, but something else holds
+    // a reference to it
+    if (cells == null)
+    {
+      readSheet();
+    }
+
+    if (cellIndex == null)
+    {
+      cellIndex = new CellIndex(this, cells, numRows, numCols);
+    }
+
+    return cellIndex;
+  }
+
   /**
    * Returns the number of rows in this sheet
    *
@@ -508,19 +588,7 @@ public class SheetImpl implements Sheet
     }
 
     // Find the last non-null cell
-    boolean found = false;
-    int col = numCols - 1;
-    while (col >= 0 && !found)
-    {
-      if (cells[row][col] != null)
-      {
-        found = true;
-      }
-      else
-      {
-        col--;
-      }
-    }
+    int col = cells.getRowWidth(row) - 1;
 
     // Only create entries for non-null cells
     Cell[] c = new Cell[col + 1];
@@ -553,7 +621,7 @@ public class SheetImpl implements Sheet
     int row = numRows - 1;
     while (row >= 0 && !found)
     {
-      if (cells[row][col] != null)
+      if (cells.contains(row, col))
       {
         found = true;
       }
@@ -573,6 +641,75 @@ public class SheetImpl implements Sheet
     return c;
   }
 
+  /**
+   * Gets the values of the numbers in the specified column
+   *
+   * @param col the column whose numbers are to be returned
+   * @return the number on each row, or NaN where the cell is not a number
+   */
+  public double[] getNumericColumn(int col)
+  {
+    // just in case this has been cleared, but something else holds
+    // a reference to it
+    if (cells == null)
+    {
+      readSheet();
+    }
+
+    return cells.getNumberColumn(col, numRows);
+  }
+
+  /**
+   * Gets the dates in the specified column as the number of days since
+   * 01 Jan 1970
+   *
+   * @param col the column whose dates are to be returned
+   * @return the day of the date on each row, or Integer.MIN_VALUE where
+   *         the cell is not a date
+   */
+  public int[] getDateColumnEpochDays(int col)
+  {
+    // just in case this has been cleared, but something else holds
+    // a reference to it
+    if (cells == null)
+    {
+      readSheet();
+    }
+
+    return cells.getDateColumn(col, numRows);
+  }
+
+  /**
+   * Gets the indexes in the shared string table of the labels in the
+   * specified column
+   *
+   * @param col the column whose labels are to be returned
+   * @return the index of the label on each row, or -1 where the cell is
+   *         not a label held in the shared string table
+   */
+  public int[] getSstIndexColumn(int col)
+  {
+    // just in case this has been cleared, but something else holds
+    // a reference to it
+    if (cells == null)
+    {
+      readSheet();
+    }
+
+    return cells.getLabelColumn(col, numRows);
+  }
+
+  /**
+   * Gets a label from the shared string table
+   *
+   * @param index an index returned by getSstIndexColumn
+   * @return the label
+   */
+  public String getSharedString(int index)
+  {
+    return sharedStrings.getString(index);
+  }
+
   /**
    * Gets the name of this sheet
    *
@@ -676,6 +813,7 @@ public class SheetImpl implements Sheet
   final void clear()
   {
     cells = null;
+    cellIndex = null;
     mergedCells = null;
     columnInfosArray.clear();
     sharedFormulas.clear();
@@ -688,6 +826,42 @@ public class SheetImpl implements Sheet
     }
   }
 
+  /**
+   * Gets the position in the workbook stream of the BOF record of this
+   * sheet.  Used when copying sheets which are written out unchanged
+   *
+   * @return the position of the BOF record
+   */
+  public int getRawPosition()
+  {
+    return sheetBof.isChart() ? startPosition :
+      startPosition - (sheetBof.getLength() + 4);
+  }
+
+  /**
+   * Gets the records of this sheet as they appear in the workbook stream,
+   * from the BOF record to the EOF record inclusive, without reading in
+   * the cells.  Used when copying sheets which are written out unchanged
+   *
+   * @return a copy of the records
+   */
+  public byte[] getRawRecords()
+  {
+    int pos = getRawPosition();
+    return excelFile.read(pos, endPosition - pos);
+  }
+
+  /**
+   * Gets an estimate of the memory occupied by the cells of this sheet
+   *
+   * @return the approximate size in bytes, or zero if the sheet has not
+   *         been read in
+   */
+  final long getCellsSize()
+  {
+    return cells != null ? cells.getSize() : 0;
+  }
+
   /**
    * Reads in the contents of this sheet
    */
@@ -700,7 +874,6 @@ public class SheetImpl implements Sheet
     {
       numRows = 0;
       numCols = 0;
-      cells = new Cell[0][0];
       //      return;
     }
 
@@ -719,6 +892,7 @@ public class SheetImpl implements Sheet
     numRows = reader.getNumRows();
     numCols = reader.getNumCols();
     cells = reader.getCells();
+    cellIndex = null;
     rowProperties = reader.getRowProperties();
     columnInfosArray = reader.getColumnInfosArray();
     hyperlinks = reader.getHyperlinks();
@@ -799,6 +973,47 @@ public class SheetImpl implements Sheet
     }
   }
 
+  /**
+   * Streams the cells of this sheet to the row handler without building
+   * up the cells array.  None of the state of this sheet is modified, so
+   * it is safe to stream a sheet which has already been read in.  The
+   * sheet is read using its own position in the workbook data, so sheets
+   * may be streamed concurrently from different threads
+   *
+   * @param rh the handler to receive each row
+   * @param cp the columns to read, or NULL to use the projection given
+   *           in the workbook settings
+   * @param rf the rows to stream, or NULL to stream every row
+   */
+  final void streamSheet(RowHandler rh, ColumnProjection cp, RowFilter rf)
+  {
+    // Charts do not contain any cells
+    if (!sheetBof.isWorksheet())
+    {
+      return;
+    }
+
+    SheetReader reader = new SheetReader(new File(excelFile),
+                                         sharedStrings,
+                                         formattingRecords,
+                                         sheetBof,
+                                         workbookBof,
+                                         nineteenFour,
+                                         workbook,
+                                         startPosition,
+                                         this);
+    reader.setRowHandler(rh);
+    if (cp != null)
+    {
+      reader.setColumnProjection(cp);
+    }
+    if (rf != null)
+    {
+      reader.setRowFilter(rf);
+    }
+    reader.read();
+  }
+
   /**
    * Gets the hyperlinks on this sheet
    *
@@ -20,6 +20,7 @@
 package jxl.read.biff;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 
@@ -30,9 +31,12 @@ import jxl.Cell;
 import jxl.CellFeatures;
 import jxl.CellReferenceHelper;
 import jxl.CellType;
-import jxl.DateCell;
+import jxl.ColumnProjection;
 import jxl.HeaderFooter;
+import jxl.NumberCell;
 import jxl.Range;
+import jxl.RowFilter;
+import jxl.RowHandler;
 import jxl.SheetSettings;
 import jxl.WorkbookSettings;
 import jxl.biff.AutoFilter;
@@ -117,7 +121,7 @@ final class SheetReader
   /**
    * The cells
    */
-  private Cell[][] cells;
+  private SheetCells cells;
 
   /**
    * Any cells which are out of the defined bounds
@@ -145,6 +149,13 @@ final class SheetReader
    */
   private ArrayList sharedFormulas;
 
+  /**
+   * The shared formula group which the most recent member belonged to.
+   * Members of the same group tend to follow one another, so this group
+   * is tried first
+   */
+  private SharedFormulaRecord lastSharedFormula;
+
   /**
    * A list of hyperlinks on this page
    */
@@ -235,6 +246,14 @@ final class SheetReader
    */
   private WorkbookSettings workbookSettings;
 
+  /**
+   * Indicates whether drawings, comments and charts are to be ignored.
+   * These are always ignored when streaming, as they are not handed over
+   * to the row handler and would otherwise be added to the drawing group
+   * of the workbook
+   */
+  private boolean drawingsDisabled;
+
   /**
    * A handle to the workbook which contains this sheet.  Some of the records
    * need this in order to reference external sheets
@@ -246,6 +265,71 @@ final class SheetReader
    */
   private SheetImpl sheet;
 
+  /**
+   * The handler to which the cells are pushed when the sheet is being
+   * streamed.  When this is NULL, the cells are read into the cells array
+   */
+  private RowHandler rowHandler;
+
+  /**
+   * The cells of the row currently being streamed, indexed on column.  This
+   * array is reused for every row
+   */
+  private Cell[] rowBuffer;
+
+  /**
+   * The row number of the cells in the row buffer, or -1 if it is empty
+   */
+  private int bufferedRow;
+
+  /**
+   * The number of columns in use in the row buffer
+   */
+  private int bufferedColumns;
+
+  /**
+   * Indicates whether the row handler has asked for streaming to stop
+   */
+  private boolean streamingStopped;
+
+  /**
+   * The columns to read, indexed on column, or NULL if every column is
+   * read
+   */
+  private boolean[] projectedColumns;
+
+  /**
+   * The names of the columns to read while they are being looked for on
+   * the header row, or NULL once the columns are known
+   */
+  private String[] projectedHeaders;
+
+  /**
+   * Indicates which of the column names have been found on the header row
+   */
+  private boolean[] headersFound;
+
+  /**
+   * The row holding the names of the columns to read
+   */
+  private int headerRow;
+
+  /**
+   * The conditions which streamed rows must meet, or NULL if every row
+   * is streamed
+   */
+  private RowFilter rowFilter;
+
+  /**
+   * The first row whose cells are read
+   */
+  private int firstRow;
+
+  /**
+   * The last row whose cells are read
+   */
+  private int lastRow;
+
   /**
    * Constructor
    *
@@ -289,6 +373,294 @@ final class SheetReader
     sheet = sh;
     settings = new SheetSettings(sh);
     workbookSettings = workbook.getSettings();
+    drawingsDisabled = workbookSettings.getDrawingsDisabled();
+    bufferedRow = -1;
+    firstRow = 0;
+    lastRow = Integer.MAX_VALUE;
+    cells = new SheetCells(sst, fr, nf, sh);
+
+    if (workbookSettings.getColumnProjection() != null)
+    {
+      setColumnProjection(workbookSettings.getColumnProjection());
+    }
+  }
+
+  /**
+   * Streams the cells to the specified handler a row at a time, rather
+   * than reading them into the cells array.  Must be called before read()
+   *
+   * @param rh the row handler
+   */
+  final void setRowHandler(RowHandler rh)
+  {
+    rowHandler = rh;
+    rowBuffer = new Cell[0];
+    drawingsDisabled = true;
+  }
+
+  /**
+   * Reads only the cells in the specified columns, in place of any
+   * projection given in the workbook settings.  Must be called before
+   * read()
+   *
+   * @param cp the columns to read
+   */
+  final void setColumnProjection(ColumnProjection cp)
+  {
+    int[] cols = cp.getColumns();
+
+    if (cols != null)
+    {
+      int max = -1;
+      for (int i = 0; i < cols.length; i++)
+      {
+        max = Math.max(max, cols[i]);
+      }
+
+      projectedColumns = new boolean[max + 1];
+      for (int i = 0; i < cols.length; i++)
+      {
+        if (cols[i] >= 0)
+        {
+          projectedColumns[cols[i]] = true;
+        }
+      }
+      projectedHeaders = null;
+    }
+    else
+    {
+      // The columns are filled in as the names are found on the header row
+      projectedColumns = new boolean[0];
+      projectedHeaders = cp.getHeaders();
+      headersFound = new boolean[projectedHeaders.length];
+      headerRow = cp.getHeaderRow();
+    }
+  }
+
+  /**
+   * Streams only the rows which pass the filter.  Must be called after
+   * any column projection has been set, and before read()
+   *
+   * @param rf the rows to stream
+   */
+  final void setRowFilter(RowFilter rf)
+  {
+    rowFilter = rf;
+    firstRow = rf.getFirstRow();
+    lastRow = rf.getLastRow();
+
+    // The columns tested are always read
+    if (projectedColumns != null)
+    {
+      int[] cols = rf.getColumns();
+      for (int i = 0; i < cols.length; i++)
+      {
+        projectColumn(cols[i]);
+      }
+    }
+  }
+
+  /**
+   * Adds a column to those read
+   *
+   * @param col the column
+   */
+  private void projectColumn(int col)
+  {
+    if (col >= projectedColumns.length)
+    {
+      boolean[] newColumns = new boolean[col + 1];
+      System.arraycopy(projectedColumns, 0, newColumns, 0,
+                       projectedColumns.length);
+      projectedColumns = newColumns;
+    }
+    projectedColumns[col] = true;
+  }
+
+  /**
+   * Determines whether the cell at the specified position is to be read.
+   * Cells are always read up to and including the header row, and the
+   * first cell below it fixes the columns to be read.  Cells appear in
+   * row order, so once a cell beyond the last row wanted turns up, the
+   * rows read so far are handed over and reading stops
+   *
+   * @param row the row
+   * @param col the column
+   * @return TRUE if the cell is to be read, FALSE if it is to be skipped
+   */
+  private boolean isWanted(int row, int col)
+  {
+    if (row < firstRow)
+    {
+      return false;
+    }
+
+    if (row > lastRow)
+    {
+      flushRow();
+      streamingStopped = true;
+      return false;
+    }
+
+    if (projectedColumns == null)
+    {
+      return true;
+    }
+
+    if (projectedHeaders != null)
+    {
+      if (row <= headerRow)
+      {
+        return true;
+      }
+
+      resolveHeaders();
+    }
+
+    return col < projectedColumns.length && projectedColumns[col];
+  }
+
+  /**
+   * Checks a label read in for the name of a column to be read, if it is
+   * on the header row
+   *
+   * @param row the row of the label
+   * @param col the column of the label
+   * @param s the label
+   */
+  private void matchHeader(int row, int col, String s)
+  {
+    if (projectedHeaders == null || row != headerRow)
+    {
+      return;
+    }
+
+    s = s.trim();
+    for (int i = 0; i < projectedHeaders.length; i++)
+    {
+      if (!headersFound[i] && projectedHeaders[i].equals(s))
+      {
+        headersFound[i] = true;
+        projectColumn(col);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Fixes the columns to be read once the header row has been passed,
+   * warning of any names which were not found on it
+   */
+  private void resolveHeaders()
+  {
+    for (int i = 0; i < projectedHeaders.length; i++)
+    {
+      if (!headersFound[i])
+      {
+        logger.warn("Column " + projectedHeaders[i] + " not found on row " +
+                    (headerRow + 1) + " of sheet " + sheet.getName());
+      }
+    }
+
+    projectedHeaders = null;
+    headersFound = null;
+  }
+
+  /**
+   * Moves to the row block holding the specified row, using the positions
+   * of the DBCELL records given in the INDEX record.  The first row of
+   * each block is found from its first ROW record, so the block is found
+   * with a binary search.  If the index cannot be relied upon, the sheet
+   * is read through from the current position instead
+   *
+   * @param index the INDEX record
+   * @param row the row to move to
+   */
+  private void seekRow(Record index, int row)
+  {
+    int indexEnd = excelFile.getPos();
+
+    // The index gives the row after the last row, so if this is passed
+    // there is nothing to read
+    if (row >= index.getInt(8))
+    {
+      streamingStopped = true;
+      return;
+    }
+
+    int blocks = (index.getLength() - 16) / 4;
+    int pos = -1;
+    int lo = 0;
+    int hi = blocks - 1;
+
+    while (lo <= hi)
+    {
+      int mid = (lo + hi) >>> 1;
+      int rowPos = getRowBlockPosition(index, mid, indexEnd);
+
+      if (rowPos == -1)
+      {
+        excelFile.setPos(indexEnd);
+        return;
+      }
+
+      excelFile.setPos(rowPos);
+      if (excelFile.next().getShort(0) <= row)
+      {
+        pos = rowPos;
+        lo = mid + 1;
+      }
+      else
+      {
+        hi = mid - 1;
+      }
+    }
+
+    excelFile.setPos(pos != -1 ? pos : indexEnd);
+  }
+
+  /**
+   * Gets the position of the first ROW record of a row block
+   *
+   * @param index the INDEX record
+   * @param block the number of the row block
+   * @param indexEnd the position after the INDEX record
+   * @return the position of the ROW record, or -1 if the DBCELL record
+   *         for the block, or the ROW record it refers to, is not found
+   */
+  private int getRowBlockPosition(Record index, int block, int indexEnd)
+  {
+    int dbCellPos = index.getInt(16 + block * 4);
+    if (dbCellPos < indexEnd)
+    {
+      return -1;
+    }
+
+    excelFile.setPos(dbCellPos);
+    if (!excelFile.hasNext())
+    {
+      return -1;
+    }
+
+    Record dbCell = excelFile.next();
+    if (dbCell.getType() != Type.DBCELL || dbCell.getLength() < 4)
+    {
+      return -1;
+    }
+
+    int rowPos = dbCellPos - dbCell.getInt(0);
+    if (rowPos < indexEnd || rowPos >= dbCellPos)
+    {
+      return -1;
+    }
+
+    excelFile.setPos(rowPos);
+    if (excelFile.next().getType() != Type.ROW)
+    {
+      return -1;
+    }
+
+    return rowPos;
   }
 
   /**
@@ -298,19 +670,24 @@ final class SheetReader
    */
   private void addCell(Cell cell)
   {
+    // Cells which are not read straight from their records, such as those
+    // in shared formulas, are only checked here
+    if (!isWanted(cell.getRow(), cell.getColumn()))
+    {
+      return;
+    }
+
+    if (rowHandler != null)
+    {
+      bufferCell(cell);
+      return;
+    }
+
     // Sometimes multiple cells (eg. MULBLANK) can exceed the
     // column/row boundaries.  Ignore these
-    if (cell.getRow() < numRows && cell.getColumn() < numCols)
+    if (isInBounds(cell.getRow(), cell.getColumn()))
     {
-      if (cells[cell.getRow()][cell.getColumn()] != null)
-      {
-        StringBuffer sb = new StringBuffer();
-        CellReferenceHelper.getCellReference
-          (cell.getColumn(), cell.getRow(), sb);
-        logger.warn("Cell " + sb.toString() +
-                    " already contains data");
-      }
-      cells[cell.getRow()][cell.getColumn()] = cell;
+      cells.setCell(cell);
     }
     else
     {
@@ -325,6 +702,153 @@ final class SheetReader
     }
   }
 
+  /**
+   * Determines whether the cell position lies within the bounds given by
+   * the dimension record, warning if it is already occupied
+   *
+   * @param row the row
+   * @param col the column
+   * @return TRUE if the position is within the bounds, FALSE otherwise
+   */
+  private boolean isInBounds(int row, int col)
+  {
+    if (row >= numRows || col >= numCols)
+    {
+      return false;
+    }
+
+    if (cells.contains(row, col))
+    {
+      StringBuffer sb = new StringBuffer();
+      CellReferenceHelper.getCellReference(col, row, sb);
+      logger.warn("Cell " + sb.toString() +
+                  " already contains data");
+    }
+
+    return true;
+  }
+
+  /**
+   * Adds a number cell just read in, as a date if its format indicates
+   * so.  Used where the number cannot be held in the compact form
+   *
+   * @param nc the number
+   * @param xfIndex the xf index of the number
+   */
+  private void addNumber(NumberCell nc, int xfIndex)
+  {
+    if (formattingRecords.isDate(xfIndex))
+    {
+      addCell(new DateRecord(nc, xfIndex, formattingRecords,
+                             nineteenFour, sheet));
+    }
+    else
+    {
+      addCell(nc);
+    }
+  }
+
+  /**
+   * Holds a number read straight from its record in the compact form,
+   * without creating a cell object for it.  This is not possible when
+   * the cells are being streamed, or when the number lies outside the
+   * bounds of the dimension record, in which case the caller must add it
+   * as a cell object instead
+   *
+   * @param row the row
+   * @param col the column
+   * @param xfIndex the xf index of the number
+   * @param value the value
+   * @return TRUE if the number was held, FALSE otherwise
+   */
+  private boolean setNumber(int row, int col, int xfIndex, double value)
+  {
+    if (rowHandler != null || !isInBounds(row, col))
+    {
+      return false;
+    }
+
+    cells.setNumber(row, col, xfIndex, value,
+                    formattingRecords.isDate(xfIndex));
+    return true;
+  }
+
+  /**
+   * Holds a label from the shared string table read straight from its
+   * record in the compact form, without creating a cell object for it.
+   * See setNumber
+   *
+   * @param row the row
+   * @param col the column
+   * @param xfIndex the xf index of the label
+   * @param index the index of the label in the shared string table
+   * @return TRUE if the label was held, FALSE otherwise
+   */
+  private boolean setLabel(int row, int col, int xfIndex, int index)
+  {
+    if (rowHandler != null || !isInBounds(row, col))
+    {
+      return false;
+    }
+
+    cells.setLabel(row, col, xfIndex, index);
+    return true;
+  }
+
+  /**
+   * Adds the cell to the row buffer when streaming.  Cell records appear
+   * in row order, so when a cell for a different row turns up the row
+   * currently in the buffer is complete and is handed over
+   *
+   * @param cell the cell to add
+   */
+  private void bufferCell(Cell cell)
+  {
+    if (streamingStopped)
+    {
+      return;
+    }
+
+    if (cell.getRow() != bufferedRow)
+    {
+      flushRow();
+      bufferedRow = cell.getRow();
+    }
+
+    int col = cell.getColumn();
+    if (col >= rowBuffer.length)
+    {
+      Cell[] newBuffer = new Cell[Math.max(col + 1, numCols)];
+      System.arraycopy(rowBuffer, 0, newBuffer, 0, rowBuffer.length);
+      rowBuffer = newBuffer;
+    }
+
+    rowBuffer[col] = cell;
+    bufferedColumns = Math.max(bufferedColumns, col + 1);
+  }
+
+  /**
+   * Passes the row currently in the buffer to the row handler, and then
+   * empties the buffer ready for the next row
+   */
+  private void flushRow()
+  {
+    if (bufferedRow == -1 || streamingStopped)
+    {
+      return;
+    }
+
+    if ((rowFilter == null || rowFilter.matches(rowBuffer, bufferedColumns)) &&
+        !rowHandler.handleRow(bufferedRow, rowBuffer, bufferedColumns))
+    {
+      streamingStopped = true;
+    }
+
+    Arrays.fill(rowBuffer, 0, bufferedColumns, null);
+    bufferedColumns = 0;
+    bufferedRow = -1;
+  }
+
   /**
    * Reads in the contents of this sheet
    */
@@ -370,7 +894,7 @@ final class SheetReader
     // A handle to a continue record read in
     ContinueRecord continueRecord = null;
 
-    while (cont)
+    while (cont && !streamingStopped)
     {
       r = excelFile.next();
       Type type = r.getType();
@@ -405,29 +929,53 @@ final class SheetReader
         }
         numRows = dr.getNumberOfRows();
         numCols = dr.getNumberOfColumns();
-        cells = new Cell[numRows][numCols];
+
+        cells.ensureRows(numRows);
       }
-      else if (type == Type.LABELSST)
+      else if (type == Type.INDEX)
       {
-        LabelSSTRecord label = new LabelSSTRecord(r,
-                                                  sharedStrings,
-                                                  formattingRecords,
-                                                  sheet);
-        addCell(label);
+        // Go straight to the row block holding the first row wanted,
+        // which may be the header row naming the columns to read
+        int row = firstRow;
+        if (projectedHeaders != null)
+        {
+          row = Math.min(row, headerRow);
+        }
+
+        if (rowHandler != null && row > 0 && workbookBof.isBiff8())
+        {
+          seekRow(r, row);
+        }
       }
-      else if (type == Type.RK || type == Type.RK2)
+      else if (type == Type.LABELSST)
       {
-        RKRecord rkr = new RKRecord(r, formattingRecords, sheet);
+        if (projectedHeaders != null)
+        {
+          matchHeader(r.getShort(0), r.getShort(2),
+                      sharedStrings.getString(r.getInt(6)));
+        }
 
-        if (formattingRecords.isDate(rkr.getXFIndex()))
+        // Read the values straight from the record where possible, rather
+        // than creating a cell object only to discard it
+        if (isWanted(r.getShort(0), r.getShort(2)) &&
+            !setLabel(r.getShort(0), r.getShort(2), r.getShort(4),
+                      r.getInt(6)))
         {
-          DateCell dc = new DateRecord
-            (rkr, rkr.getXFIndex(), formattingRecords, nineteenFour, sheet);
-          addCell(dc);
+          LabelSSTRecord label = new LabelSSTRecord(r,
+                                                    sharedStrings,
+                                                    formattingRecords,
+                                                    sheet);
+          addCell(label);
         }
-        else
+      }
+      else if (type == Type.RK || type == Type.RK2)
+      {
+        if (isWanted(r.getShort(0), r.getShort(2)) &&
+            !setNumber(r.getShort(0), r.getShort(2), r.getShort(4),
+                       RKHelper.getDouble(r.getInt(6))))
         {
-          addCell(rkr);
+          RKRecord rkr = new RKRecord(r, formattingRecords, sheet);
+          addNumber(rkr, rkr.getXFIndex());
         }
       }
       else if (type == Type.HLINK)
@@ -464,63 +1012,56 @@ final class SheetReader
         int ixf = 0;
         for (int i = 0; i < num; i++)
         {
-          ixf = mulrk.getXFIndex(i);
-
-          NumberValue nv = new NumberValue
-            (mulrk.getRow(),
-             mulrk.getFirstColumn() + i,
-             RKHelper.getDouble(mulrk.getRKNumber(i)),
-             ixf,
-             formattingRecords,
-             sheet);
-
-
-          if (formattingRecords.isDate(ixf))
+          if (!isWanted(mulrk.getRow(), mulrk.getFirstColumn() + i))
           {
-            DateCell dc = new DateRecord(nv, 
-                                         ixf, 
-                                         formattingRecords,
-                                         nineteenFour, 
-                                         sheet);
-            addCell(dc);
+            continue;
           }
-          else
+
+          ixf = mulrk.getXFIndex(i);
+          double value = RKHelper.getDouble(mulrk.getRKNumber(i));
+
+          if (!setNumber(mulrk.getRow(), mulrk.getFirstColumn() + i,
+                         ixf, value))
           {
+            NumberValue nv = new NumberValue
+              (mulrk.getRow(),
+               mulrk.getFirstColumn() + i,
+               value,
+               ixf,
+               formattingRecords,
+               sheet);
+
             nv.setNumberFormat(formattingRecords.getNumberFormat(ixf));
-            addCell(nv);
+            addNumber(nv, ixf);
           }
         }
       }
       else if (type == Type.NUMBER)
       {
-        NumberRecord nr = new NumberRecord(r, formattingRecords, sheet);
-
-        if (formattingRecords.isDate(nr.getXFIndex()))
+        if (isWanted(r.getShort(0), r.getShort(2)) &&
+            !setNumber(r.getShort(0), r.getShort(2), r.getShort(4),
+                       r.getDouble(6)))
         {
-          DateCell dc = new DateRecord(nr,
-                                       nr.getXFIndex(),
-                                       formattingRecords,
-                                       nineteenFour, sheet);
-          addCell(dc);
-        }
-        else
-        {
-          addCell(nr);
+          NumberRecord nr = new NumberRecord(r, formattingRecords, sheet);
+          addNumber(nr, nr.getXFIndex());
         }
       }
       else if (type == Type.BOOLERR)
       {
-        BooleanRecord br = new BooleanRecord(r, formattingRecords, sheet);
-
-        if (br.isError())
-        {
-          ErrorRecord er = new ErrorRecord(br.getRecord(), formattingRecords,
-                                           sheet);
-          addCell(er);
-        }
-        else
+        if (isWanted(r.getShort(0), r.getShort(2)))
         {
-          addCell(br);
+          BooleanRecord br = new BooleanRecord(r, formattingRecords, sheet);
+
+          if (br.isError())
+          {
+            ErrorRecord er = new ErrorRecord(br.getRecord(),
+                                             formattingRecords, sheet);
+            addCell(er);
+          }
+          else
+          {
+            addCell(br);
+          }
         }
       }
       else if (type == Type.PRINTGRIDLINES)
@@ -569,7 +1110,7 @@ final class SheetReader
       }
       else if (type == Type.NOTE)
       {
-        if (!workbookSettings.getDrawingsDisabled())
+        if (!drawingsDisabled)
         {
           NoteRecord nr = new NoteRecord(r);
 
@@ -607,6 +1148,8 @@ final class SheetReader
       }
       else if (type == Type.SHAREDFORMULA)
       {
+        boolean templateRead = sharedFormula != null;
+
         if (sharedFormula == null)
         {
           logger.warn("Shared template formula is null - " +
@@ -623,8 +1166,24 @@ final class SheetReader
         SharedFormulaRecord sfr = new SharedFormulaRecord
           (r, sharedFormula, workbook, workbook, sheet);
         sharedFormulas.add(sfr);
+
+        // Hand over the template formula now.  The tokens are held by the
+        // group, and are shared by the template and all its members
+        if (templateRead)
+        {
+          addCell(sfr.getTemplateCell(formattingRecords, nineteenFour));
+        }
         sharedFormula = null;
       }
+      else if ((type == Type.FORMULA || type == Type.FORMULA2) &&
+               !isWanted(r.getShort(0), r.getShort(2)) &&
+               (r.getShort(14) & 0x08) == 0)
+      {
+        // Formulas which are part of a shared formula are still read in,
+        // as the shared formula records depend on them, and any STRING
+        // record holding the value is ignored when it turns up
+        ;
+      }
       else if (type == Type.FORMULA || type == Type.FORMULA2)
       {
         FormulaRecord fr = new FormulaRecord(r,
@@ -641,10 +1200,17 @@ final class SheetReader
           sharedFormula = (BaseSharedFormulaRecord) fr.getFormula();
 
           // See if it fits in any of the shared formulas
-          sharedFormulaAdded = addToSharedFormulas(sharedFormula);
+          SharedFormulaRecord sfr = addToSharedFormulas(sharedFormula);
+          sharedFormulaAdded = sfr != null;
 
           if (sharedFormulaAdded)
           {
+            // Hand over the member now, rather than holding on to it until
+            // the end of the sheet
+            addCell(sfr.getFormula(sharedFormula, 
+                                   formattingRecords, 
+                                   nineteenFour));
+
             sharedFormula = prevSharedFormula;
           }
 
@@ -705,6 +1271,7 @@ final class SheetReader
           lr = new LabelRecord(r, formattingRecords, sheet, workbookSettings,
                                LabelRecord.biff7);
         }
+        matchHeader(lr.getRow(), lr.getColumn(), lr.getString());
         addCell(lr);
       }
       else if (type == Type.RSTRING)
@@ -716,6 +1283,7 @@ final class SheetReader
         lr = new RStringRecord(r, formattingRecords,
                                sheet, workbookSettings,
                                RStringRecord.biff7);
+        matchHeader(lr.getRow(), lr.getColumn(), lr.getString());
         addCell(lr);
       }
       else if (type == Type.NAME)
@@ -743,7 +1311,8 @@ final class SheetReader
       }
       else if (type == Type.BLANK)
       {
-        if (!workbookSettings.getIgnoreBlanks())
+        if (!workbookSettings.getIgnoreBlanks() &&
+            isWanted(r.getShort(0), r.getShort(2)))
         {
           BlankCell bc = new BlankCell(r, formattingRecords, sheet);
           addCell(bc);
@@ -760,6 +1329,11 @@ final class SheetReader
 
           for (int i = 0; i < num; i++)
           {
+            if (!isWanted(mulblank.getRow(), mulblank.getFirstColumn() + i))
+            {
+              continue;
+            }
+
             int ixf = mulblank.getXFIndex(i);
 
             MulBlankCell mbc = new MulBlankCell
@@ -970,7 +1544,10 @@ final class SheetReader
       }
       else if (type == Type.DVAL)
       {
-        if (!workbookSettings.getCellValidationDisabled())
+        // Data validations are not attached to streamed cells, and the
+        // drawings they refer to are not read in when streaming
+        if (!workbookSettings.getCellValidationDisabled() &&
+            rowHandler == null)
         {
           DataValidityListRecord dvlr = new DataValidityListRecord(r);
           if (dvlr.getObjectId() == -1)
@@ -1019,7 +1596,8 @@ final class SheetReader
       }
       else if (type == Type.DV)
       {
-        if (!workbookSettings.getCellValidationDisabled())
+        if (!workbookSettings.getCellValidationDisabled() &&
+            rowHandler == null)
         {
           DataValiditySettingsRecord dvsr = 
             new DataValiditySettingsRecord(r, 
@@ -1045,7 +1623,7 @@ final class SheetReader
       {
         objRecord = new ObjRecord(r);
 
-        if (!workbookSettings.getDrawingsDisabled())
+        if (!drawingsDisabled)
         {
           // sometimes excel writes out continue records instead of drawing
           // records, so forcibly hack the stashed continue record into
@@ -1069,7 +1647,7 @@ final class SheetReader
       }
       else if (type == Type.MSODRAWING)
       {
-        if (!workbookSettings.getDrawingsDisabled())
+        if (!drawingsDisabled)
         {
           if (msoRecord != null)
           {
@@ -1136,7 +1714,7 @@ final class SheetReader
               drawingData = new DrawingData();
             }
           
-            if (!workbookSettings.getDrawingsDisabled())
+            if (!drawingsDisabled)
             {
               Chart chart = new Chart(msoRecord, objRecord, drawingData,
                                       startpos, excelFile.getPos(),
@@ -1177,19 +1755,11 @@ final class SheetReader
       handleOutOfBoundsCells();
     }
 
-    // Add all the shared formulas to the sheet as individual formulas
-    Iterator i = sharedFormulas.iterator();
-
-    while (i.hasNext())
+    // Warn of any column names not found when there were no rows below
+    // the header row
+    if (projectedHeaders != null)
     {
-      SharedFormulaRecord sfr = (SharedFormulaRecord) i.next();
-
-      Cell[] sfnr = sfr.getFormulas(formattingRecords, nineteenFour);
-
-      for (int sf = 0; sf < sfnr.length; sf++)
-      {
-        addCell(sfnr[sf]);
-      }
+      resolveHeaders();
     }
 
     // If the last base shared formula wasn't added to the sheet, then
@@ -1199,6 +1769,17 @@ final class SheetReader
       addCell(revertSharedFormula(sharedFormula));
     }
 
+    // Hand over the final row, or release any space left over at the end
+    // of the rows read in
+    if (rowHandler != null)
+    {
+      flushRow();
+    }
+    else
+    {
+      cells.trim();
+    }
+
     // If there is a stray msoDrawing record, then flag to the drawing group
     // that one has been omitted
     if (msoRecord != null && workbook.getDrawingGroup() != null)
@@ -1218,25 +1799,34 @@ final class SheetReader
    * groups
    *
    * @param fr the candidate shared formula
-   * @return TRUE if the formula was added, FALSE otherwise
+   * @return the shared formula group the formula was added to, or NULL
+   *         if it does not belong to any group
    */
-  private boolean addToSharedFormulas(BaseSharedFormulaRecord fr)
+  private SharedFormulaRecord addToSharedFormulas(BaseSharedFormulaRecord fr)
   {
-    boolean added = false;
-    SharedFormulaRecord sfr = null;
+    if (lastSharedFormula != null && lastSharedFormula.contains(fr))
+    {
+      return lastSharedFormula;
+    }
 
-    for (int i=0, size=sharedFormulas.size(); i<size && !added; ++i) 
+    for (int i=0, size=sharedFormulas.size(); i<size; ++i) 
     {
-      sfr = (SharedFormulaRecord ) sharedFormulas.get(i);
-      added = sfr.add(fr);
+      SharedFormulaRecord sfr = (SharedFormulaRecord) sharedFormulas.get(i);
+      if (sfr.contains(fr))
+      {
+        lastSharedFormula = sfr;
+        return sfr;
+      }
     }
 
-    return added;
+    return null;
   }
 
   /**
    * Reverts the shared formula passed in to an ordinary formula and adds
-   * it to the list
+   * it to the list.  The value of a string formula has already been read
+   * in by the shared formula, so there is no need to go back in the file
+   * for its STRING record
    *
    * @param f the formula
    * @return the new formula
@@ -1244,49 +1834,55 @@ final class SheetReader
    */
   private Cell revertSharedFormula(BaseSharedFormulaRecord f) 
   {
-    // String formulas look for a STRING record soon after the formula
-    // occurred.  Temporarily the position in the excel file back
-    // to the point immediately after the formula record
-    int pos = excelFile.getPos();
-    excelFile.setPos(f.getFilePos());
-
-    FormulaRecord fr = new FormulaRecord(f.getRecord(),
-                                         excelFile,
-                                         formattingRecords,
-                                         workbook,
-                                         workbook,
-                                         FormulaRecord.ignoreSharedFormula,
-                                         sheet,
-                                         workbookSettings);
+    CellValue cell = null;
 
-    try
+    if (f.getType() == CellType.STRING_FORMULA)
     {
-    Cell cell = fr.getFormula();
+      cell = new StringFormulaRecord(f.getRecord(),
+                                     f.getContents(),
+                                     formattingRecords,
+                                     workbook,
+                                     workbook,
+                                     sheet);
+    }
+    else
+    {
+      // None of the other formula types look beyond their own record, so
+      // the position in the excel file is left alone
+      FormulaRecord fr = new FormulaRecord(f.getRecord(),
+                                           excelFile,
+                                           formattingRecords,
+                                           workbook,
+                                           workbook,
+                                           FormulaRecord.ignoreSharedFormula,
+                                           sheet,
+                                           workbookSettings);
+      cell = fr.getFormula();
+    }
 
-    // See if the formula evaluates to date
-    if (fr.getFormula().getType() == CellType.NUMBER_FORMULA)
+    try
     {
-      NumberFormulaRecord nfr = (NumberFormulaRecord) fr.getFormula();
-      if (formattingRecords.isDate(fr.getXFIndex()))
+      // See if the formula evaluates to date
+      if (cell.getType() == CellType.NUMBER_FORMULA &&
+          formattingRecords.isDate(cell.getXFIndex()))
       {
-        cell = new DateFormulaRecord(nfr,
+        return new DateFormulaRecord((NumberFormulaRecord) cell,
                                      formattingRecords,
                                      workbook,
                                      workbook,
                                      nineteenFour,
                                      sheet);
       }
-    }
 
-    excelFile.setPos(pos);
-    return cell;
+      return cell;
     }
     catch (FormulaException e)
     {
       // Something has gone wrong trying to read the formula data eg. it
       // might be unsupported biff7 data
       logger.warn
-        (CellReferenceHelper.getCellReference(fr.getColumn(), fr.getRow()) + 
+        (CellReferenceHelper.getCellReference(cell.getColumn(), 
+                                              cell.getRow()) + 
          " " + e.getMessage());
 
       return null;
@@ -1319,7 +1915,7 @@ final class SheetReader
    *
    * @return the cells
    */
-  final Cell[][] getCells()
+  final SheetCells getCells()
   {
     return cells;
   }
@@ -1489,7 +2085,13 @@ final class SheetReader
                               double width,
                               double height)
   {
-    Cell c = cells[row][col];
+    // When streaming, the cell has already been handed over
+    if (rowHandler != null)
+    {
+      return;
+    }
+
+    Cell c = cells.retainCell(row, col);
     if (c == null)
     {
       logger.warn("Cell at " + CellReferenceHelper.getCellReference(col, row) +
@@ -1543,16 +2145,17 @@ final class SheetReader
                                  int row2,
                                  DataValiditySettingsRecord dvsr)
   {
+    // When streaming, the cells have already been handed over
+    if (rowHandler != null)
+    {
+      return;
+    }
+
     for (int row = row1; row <= row2; row++)
     {
       for (int col = col1; col <= col2; col++)
       {
-        Cell c = null;
-
-        if (cells.length > row && cells[row].length > col)
-        {
-          c = cells[row][col];
-        }
+        Cell c = cells.retainCell(row, col);
 
         if (c == null)
         {
@@ -1881,31 +2484,9 @@ final class SheetReader
     // on entire rows or columns - in which case it would blow out any
     // existing dimensions
 
-    // Resize the columns, if necessary
-    if (resizedCols > numCols)
-    {
-      for (int r = 0 ; r < numRows ; r++)
-      {
-        Cell[] newRow = new Cell[resizedCols];
-        Cell[] oldRow = cells[r];
-        System.arraycopy(oldRow, 0, newRow, 0, oldRow.length);
-        cells[r] = newRow;
-      }
-    }
-
-    // Resize the rows, if necessary
-    if (resizedRows > numRows)
-    {
-      Cell[][] newCells = new Cell[resizedRows][];
-      System.arraycopy(cells, 0, newCells, 0, cells.length);
-      cells = newCells;
-
-      // Create the new rows
-      for (int i = numRows; i < resizedRows; i++)
-      {
-        newCells[i] = new Cell[resizedCols];
-      }
-    }
+    // Only the rows need to be made room for, as each row is as wide
+    // as its rightmost cell
+    cells.ensureRows(resizedRows);
 
     numRows = resizedRows;
     numCols = resizedCols;
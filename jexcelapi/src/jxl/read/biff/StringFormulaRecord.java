@@ -35,7 +35,6 @@ import jxl.biff.Type;
 import jxl.biff.WorkbookMethods;
 import jxl.biff.formula.ExternalSheet;
 import jxl.biff.formula.FormulaException;
-import jxl.biff.formula.FormulaParser;
 
 /**
  * A string formula's last calculated value
@@ -155,6 +154,34 @@ class StringFormulaRecord extends CellValue
     value = "";
   }
 
+  /**
+   * Constructs this string formula from a value which has already been
+   * read in, such as that of a shared formula which is being reverted
+   * to an ordinary formula
+   *
+   * @param t the record
+   * @param v the value
+   * @param fr the formatting records
+   * @param es the external sheet
+   * @param nt the workbook
+   * @param si the sheet impl
+   */
+  StringFormulaRecord(Record t,
+                      String v,
+                      FormattingRecords fr,
+                      ExternalSheet es,
+                      WorkbookMethods nt,
+                      SheetImpl si)
+  {
+    super(t, fr, si);
+
+    externalSheet = es;
+    nameTable = nt;
+
+    data = getRecord().getData();
+    value = v;
+  }
+
 
   /**
    * Reads in the string
@@ -277,11 +304,9 @@ class StringFormulaRecord extends CellValue
     {
       byte[] tokens = new byte[data.length - 22];
       System.arraycopy(data, 22, tokens, 0, tokens.length);
-      FormulaParser fp = new FormulaParser
-        (tokens, this, externalSheet, nameTable,
-         getSheet().getWorkbook().getSettings());
-      fp.parse();
-      formulaString = fp.getFormula();
+      WorkbookParser w = getSheet().getWorkbook();
+      formulaString = w.getFormulaCache().getFormula
+        (tokens, this, externalSheet, nameTable, w.getSettings());
     }
 
     return formulaString;
@@ -22,12 +22,16 @@ package jxl.read.biff;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 import jxl.common.Assert;
 import jxl.common.Logger;
 
 import jxl.Cell;
+import jxl.ColumnProjection;
 import jxl.Range;
+import jxl.RowFilter;
+import jxl.RowHandler;
 import jxl.Sheet;
 import jxl.Workbook;
 import jxl.WorkbookSettings;
@@ -51,6 +55,8 @@ import jxl.biff.drawing.DrawingGroup;
 import jxl.biff.drawing.MsoDrawingGroupRecord;
 import jxl.biff.drawing.Origin;
 import jxl.biff.formula.ExternalSheet;
+import jxl.biff.formula.FormulaCache;
+import jxl.biff.formula.FormulaEvaluator;
 
 /**
  * Parses the biff file passed in, and builds up an internal representation of
@@ -99,14 +105,37 @@ public class WorkbookParser extends Workbook
   private ArrayList sheets;
 
   /**
-   * The last sheet accessed
+   * The sheets which have been read in and retained, keyed on their index
+   * and ordered from the least to the most recently requested
    */
-  private SheetImpl lastSheet;
+  private LinkedHashMap sheetCache;
 
   /**
-   * The index of the last sheet retrieved
+   * The estimated size in bytes of each of the retained sheets, keyed on
+   * the sheet index
    */
-  private int lastSheetIndex;
+  private HashMap sheetCacheSizes;
+
+  /**
+   * The total estimated size in bytes of the retained sheets
+   */
+  private long sheetCacheBytes;
+
+  /**
+   * The number of sheet requests satisfied by a retained sheet
+   */
+  private int sheetCacheHits;
+
+  /**
+   * The number of sheet requests which required the sheet to be read in
+   */
+  private int sheetCacheMisses;
+
+  /**
+   * The number of retained sheets which have been cleared to make room
+   * for others
+   */
+  private int sheetCacheEvictions;
 
   /**
    * The named records found in this workbook
@@ -176,6 +205,11 @@ public class WorkbookParser extends Workbook
 
   private ArrayList xctRecords;
 
+  /**
+   * The formulas parsed so far, shared by the cells with the same tokens
+   */
+  private FormulaCache formulaCache;
+
   /**
    * Constructs this object from the raw excel data
    *
@@ -192,11 +226,13 @@ public class WorkbookParser extends Workbook
     sheets = new ArrayList(10);
     supbooks = new ArrayList(10);
     namedRecords = new HashMap();
-    lastSheetIndex = -1;
+    sheetCache = new LinkedHashMap(16, 0.75f, true);
+    sheetCacheSizes = new HashMap();
     wbProtected = false;
     containsMacros = false;
     settings = s;
     xctRecords = new ArrayList(10);
+    formulaCache = new FormulaCache(s.getFormulaCacheSize());
   }
 
  /**
@@ -233,30 +269,98 @@ public class WorkbookParser extends Workbook
    */
   public Sheet getSheet(int index)
   {
-    // First see if the last sheet index is the same as this sheet index.
-    // If so, then the same sheet is being re-requested, so simply
-    // return it instead of rereading it
-    if ((lastSheet != null) && lastSheetIndex == index)
+    // First see if this sheet has been read in and retained.  If so,
+    // simply return it instead of rereading it
+    Integer key = Integer.valueOf(index);
+    SheetImpl sheet = (SheetImpl) sheetCache.get(key);
+
+    if (sheet != null)
     {
-      return lastSheet;
+      sheetCacheHits++;
+      return sheet;
     }
 
-    // Flush out all of the cached data in the last sheet
-    if (lastSheet != null)
+    sheetCacheMisses++;
+    sheet = (SheetImpl) sheets.get(index);
+
+    // Flush out the least recently used sheets to make room for this one
+    // before reading it in
+    while (sheetCache.size() >= settings.getSheetCacheSize())
     {
-      lastSheet.clear();
+      evictSheet();
+    }
 
-      if (!settings.getGCDisabled())
-      {
-        System.gc();
-      }
+    sheet.readSheet();
+
+    long size = sheet.getCellsSize();
+    sheetCache.put(key, sheet);
+    sheetCacheSizes.put(key, Long.valueOf(size));
+    sheetCacheBytes += size;
+
+    // Now the size of this sheet is known, flush out further sheets
+    // until the retained sheets are within the memory budget
+    long budget = settings.getSheetCacheMemoryBudget();
+    while (budget > 0 && sheetCacheBytes > budget && sheetCache.size() > 1)
+    {
+      evictSheet();
     }
 
-    lastSheet = (SheetImpl) sheets.get(index);
-    lastSheetIndex = index;
-    lastSheet.readSheet();
+    return sheet;
+  }
+
+  /**
+   * Clears the least recently requested of the retained sheets
+   */
+  private void evictSheet()
+  {
+    Iterator i = sheetCache.keySet().iterator();
+    Integer key = (Integer) i.next();
+    SheetImpl sheet = (SheetImpl) sheetCache.get(key);
+    sheetCache.remove(key);
+
+    Long size = (Long) sheetCacheSizes.remove(key);
+    sheetCacheBytes -= size.longValue();
+    sheetCacheEvictions++;
+
+    sheet.clear();
 
-    return lastSheet;
+    if (!settings.getGCDisabled())
+    {
+      System.gc();
+    }
+  }
+
+  /**
+   * Accessor for the number of sheet requests which were satisfied by a
+   * sheet retained in memory
+   *
+   * @return the number of sheet cache hits
+   */
+  public int getSheetCacheHits()
+  {
+    return sheetCacheHits;
+  }
+
+  /**
+   * Accessor for the number of sheet requests which required the sheet
+   * to be read in
+   *
+   * @return the number of sheet cache misses
+   */
+  public int getSheetCacheMisses()
+  {
+    return sheetCacheMisses;
+  }
+
+  /**
+   * Accessor for the number of retained sheets which have been cleared
+   * to make room for other sheets
+   *
+   * @return the number of sheet cache evictions
+   */
+  public int getSheetCacheEvictions()
+  {
+    return sheetCacheEvictions;
   }
 
   /**
@@ -266,6 +370,134 @@ public class WorkbookParser extends Workbook
    * @return The sheet with the specified name, or null if it is not found
    */
   public Sheet getSheet(String name)
+  {
+    int pos = getSheetIndex(name);
+
+    return pos != -1 ? getSheet(pos) : null;
+  }
+
+  /**
+   * Streams the cells of the specified sheet to the row handler.  The
+   * sheet is not retained in the sheet cache, so any sheets previously
+   * retrieved with getSheet remain intact
+   *
+   * @param index the zero based index of the required sheet
+   * @param handler the handler to receive each row
+   */
+  public void streamSheet(int index, RowHandler handler)
+  {
+    streamSheet(index, handler, null);
+  }
+
+  /**
+   * Streams the cells of the sheet with the specified name to the row
+   * handler
+   *
+   * @param name the sheet name
+   * @param handler the handler to receive each row
+   * @return TRUE if the sheet was found, FALSE otherwise
+   */
+  public boolean streamSheet(String name, RowHandler handler)
+  {
+    int pos = getSheetIndex(name);
+
+    if (pos == -1)
+    {
+      return false;
+    }
+
+    streamSheet(pos, handler);
+    return true;
+  }
+
+  /**
+   * Streams the cells in the projected columns of the specified sheet to
+   * the row handler
+   *
+   * @param index the zero based index of the sheet
+   * @param handler the handler to receive each row
+   * @param projection the columns to read, or NULL to use the projection
+   *        given in the workbook settings
+   */
+  public void streamSheet(int index, RowHandler handler,
+                          ColumnProjection projection)
+  {
+    streamSheet(index, handler, projection, null);
+  }
+
+  /**
+   * Streams the cells in the projected columns of the sheet with the
+   * specified name to the row handler
+   *
+   * @param name the sheet name
+   * @param handler the handler to receive each row
+   * @param projection the columns to read, or NULL to use the projection
+   *        given in the workbook settings
+   * @return TRUE if the sheet was found, FALSE otherwise
+   */
+  public boolean streamSheet(String name, RowHandler handler,
+                             ColumnProjection projection)
+  {
+    int pos = getSheetIndex(name);
+
+    if (pos == -1)
+    {
+      return false;
+    }
+
+    streamSheet(pos, handler, projection);
+    return true;
+  }
+
+  /**
+   * Streams the rows of the specified sheet which pass the row filter to
+   * the row handler
+   *
+   * @param index the zero based index of the sheet
+   * @param handler the handler to receive each row
+   * @param projection the columns to read, or NULL to use the projection
+   *        given in the workbook settings
+   * @param filter the rows to stream, or NULL to stream every row
+   */
+  public void streamSheet(int index, RowHandler handler,
+                          ColumnProjection projection, RowFilter filter)
+  {
+    SheetImpl sheet = (SheetImpl) sheets.get(index);
+    sheet.streamSheet(handler, projection, filter);
+  }
+
+  /**
+   * Streams the rows of the sheet with the specified name which pass the
+   * row filter to the row handler
+   *
+   * @param name the sheet name
+   * @param handler the handler to receive each row
+   * @param projection the columns to read, or NULL to use the projection
+   *        given in the workbook settings
+   * @param filter the rows to stream, or NULL to stream every row
+   * @return TRUE if the sheet was found, FALSE otherwise
+   */
+  public boolean streamSheet(String name, RowHandler handler,
+                             ColumnProjection projection, RowFilter filter)
+  {
+    int pos = getSheetIndex(name);
+
+    if (pos == -1)
+    {
+      return false;
+    }
+
+    streamSheet(pos, handler, projection, filter);
+    return true;
+  }
+
+  /**
+   * Gets the index of the sheet with the specified name
+   *
+   * @param name the sheet name
+   * @return the zero based index of the sheet, or -1 if it is not found
+   */
+  private int getSheetIndex(String name)
   {
     // Iterate through the boundsheet records
     int pos = 0;
@@ -287,7 +519,7 @@ public class WorkbookParser extends Workbook
       }
     }
 
-    return found ? getSheet(pos) : null;
+    return found ? pos : -1;
   }
 
   /**
@@ -497,6 +729,42 @@ public class WorkbookParser extends Workbook
     return "[UNKNOWN]";
   }
 
+  /**
+   * Gets the specified sheet without reading in its cells.  Used when
+   * copying sheets which are written out unchanged
+   *
+   * @param index the zero based index of the sheet
+   * @return the sheet
+   */
+  public SheetImpl getRawSheet(int index)
+  {
+    return (SheetImpl) sheets.get(index);
+  }
+
+  /**
+   * Determines whether the specified sheet is hidden, without reading in
+   * its cells.  Used when copying sheets which are written out unchanged
+   *
+   * @param index the zero based index of the sheet
+   * @return TRUE if the sheet is hidden
+   */
+  public boolean isRawSheetHidden(int index)
+  {
+    BoundsheetRecord br = (BoundsheetRecord) boundsheets.get(index);
+    return br.isHidden();
+  }
+
+  /**
+   * Gets the number of strings in the shared string table.  Used when
+   * copying sheets which are written out unchanged
+   *
+   * @return the number of shared strings
+   */
+  public int getNumberOfSharedStrings()
+  {
+    return sharedStrings == null ? 0 : sharedStrings.getNumberOfStrings();
+  }
+
   /**
    * Returns the number of sheets in this workbook
    *
@@ -513,10 +781,13 @@ public class WorkbookParser extends Workbook
    */
   public void close()
   {
-    if (lastSheet != null)
+    for (Iterator i = sheetCache.values().iterator(); i.hasNext();)
     {
-      lastSheet.clear();
+      ((SheetImpl) i.next()).clear();
     }
+    sheetCache.clear();
+    sheetCacheSizes.clear();
+    sheetCacheBytes = 0;
     excelFile.clear();
 
     if (!settings.getGCDisabled())
@@ -1125,6 +1396,27 @@ public class WorkbookParser extends Workbook
     return wbProtected;
   }
 
+  /**
+   * Gets an evaluator for the formulas in this workbook
+   *
+   * @return a formula evaluator
+   */
+  public FormulaEvaluator getFormulaEvaluator()
+  {
+    return new FormulaEvaluator(this, this, settings, nineteenFour);
+  }
+
+  /**
+   * Accessor for the formulas parsed so far.  Also gives the number of
+   * formulas which were found already parsed
+   *
+   * @return the formula cache
+   */
+  public FormulaCache getFormulaCache()
+  {
+    return formulaCache;
+  }
+
   /**
    * Accessor for the settings
    *
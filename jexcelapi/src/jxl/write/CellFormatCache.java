@@ -0,0 +1,91 @@
+/*********************************************************************
+*
+*      Copyright (C) 2001 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.write;
+
+import java.util.HashMap;
+
+import jxl.format.CellFormat;
+import jxl.format.Colour;
+
+/**
+ * A cache of cell formats which differ from a template format only in their
+ * background colour.  When cells are coloured according to their data,
+ * a single format is created for each colour and shared by every cell of
+ * that colour, rather than a new format being created for each cell.
+ * This keeps the number of formats in the workbook within Excel's limits,
+ * and avoids the cost of removing the duplicates when the workbook is
+ * written
+ */
+public class CellFormatCache
+{
+  /**
+   * The format which the cached formats are copied from
+   */
+  private CellFormat template;
+
+  /**
+   * The formats created so far, keyed on their background colour
+   */
+  private HashMap formats;
+
+  /**
+   * Constructor
+   *
+   * @param template the format which each cached format copies, apart
+   *                 from its background colour
+   */
+  public CellFormatCache(CellFormat template)
+  {
+    this.template = template;
+    formats = new HashMap();
+  }
+
+  /**
+   * Gets the format with the specified background colour, creating it the
+   * first time the colour is requested
+   *
+   * @param background the background colour
+   * @return the format with the background colour
+   * @exception WriteException
+   */
+  public WritableCellFormat getFormat(Colour background) throws WriteException
+  {
+    WritableCellFormat format = (WritableCellFormat) formats.get(background);
+
+    if (format == null)
+    {
+      format = new WritableCellFormat(template);
+      format.setBackground(background);
+      formats.put(background, format);
+    }
+
+    return format;
+  }
+
+  /**
+   * Gets the number of distinct formats created by this cache
+   *
+   * @return the number of formats
+   */
+  public int getSize()
+  {
+    return formats.size();
+  }
+}
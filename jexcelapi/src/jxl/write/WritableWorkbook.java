@@ -24,6 +24,7 @@ import java.io.IOException;
 import jxl.Range;
 import jxl.Sheet;
 import jxl.Workbook;
+import jxl.biff.formula.FormulaEvaluator;
 import jxl.format.Colour;
 import jxl.format.UnderlineStyle;
 
@@ -224,6 +225,17 @@ public abstract class WritableWorkbook
    */
   public abstract void setColourRGB(Colour c, int r, int g, int b);
 
+  /**
+   * Gets the number of extended format (XF) records in this workbook,
+   * including the built in styles.  Excel limits the number of distinct
+   * cell formats in a workbook, so this may be used to check that formats
+   * are being reused.  Once the workbook has been written, this is the
+   * number of XF records in the output
+   *
+   * @return the number of XF records
+   */
+  public abstract int getNumberOfXFRecords();
+
   /**
    * This method can be used to create a writable clone of some other
    * workbook
@@ -307,4 +319,13 @@ public abstract class WritableWorkbook
    */
   public abstract void setOutputFile(java.io.File fileName)
     throws IOException;
+
+  /**
+   * Gets an evaluator for the formulas in this workbook.  The evaluator
+   * remembers the values it has evaluated, so it must be cleared if any
+   * cells are changed after it has been used
+   *
+   * @return a formula evaluator
+   */
+  public abstract FormulaEvaluator getFormulaEvaluator();
 }
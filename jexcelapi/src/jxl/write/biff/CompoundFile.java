@@ -19,8 +19,11 @@
 
 package jxl.write.biff;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -55,6 +58,12 @@ final class CompoundFile extends BaseCompoundFile
    * The stream to which the jumbled up data is written to
    */
   private OutputStream out;
+  /**
+   * The channel of the output stream, when writing to a file.  If this
+   * is non-null, all the data is written through the channel rather than
+   * the stream
+   */
+  private FileChannel channel;
   /**
    * The organized biff records which form the actual excel data
    */
@@ -189,6 +198,11 @@ final class CompoundFile extends BaseCompoundFile
    */
   private byte[] bigBlockDepot;
 
+  /**
+   * Blank data used to pad out the streams
+   */
+  private static final byte[] PADDING = new byte[SMALL_BLOCK_THRESHOLD];
+
 
   /**
    * Constructor
@@ -239,6 +253,13 @@ final class CompoundFile extends BaseCompoundFile
     
     out = os;
 
+    // When writing to a file, write directly to its channel so that
+    // data held in a temporary file may be transferred without copying
+    if (os instanceof FileOutputStream)
+    {
+      channel = ((FileOutputStream) os).getChannel();
+    }
+
 
     // Do the calculations
     excelDataBlocks = requiredSize/BIG_BLOCK_SIZE;
@@ -485,10 +506,8 @@ final class CompoundFile extends BaseCompoundFile
         int numBlocks = getBigBlocksRequired(data.length);
         int requiredSize = numBlocks * BIG_BLOCK_SIZE;
 
-        out.write(data, 0, data.length);
-      
-        byte[] padding = new byte[requiredSize - data.length];
-        out.write(padding, 0, padding.length);
+        write(data, 0, data.length);
+        writePadding(requiredSize - data.length);
       }
     }
   }
@@ -502,10 +521,16 @@ final class CompoundFile extends BaseCompoundFile
    */
   private void writeExcelData() throws IOException
   {
-    excelData.writeData(out);
+    if (channel != null)
+    {
+      excelData.writeData(channel);
+    }
+    else
+    {
+      excelData.writeData(out);
+    }
 
-    byte[] padding = new byte[requiredSize - size];
-    out.write(padding);
+    writePadding(requiredSize - size);
   }
 
   /**
@@ -515,10 +540,8 @@ final class CompoundFile extends BaseCompoundFile
    */
   private void writeDocumentSummaryData() throws IOException
   {
-    byte[] padding = new byte[SMALL_BLOCK_THRESHOLD];
-
     // Write out the summary information
-    out.write(padding);
+    writePadding(SMALL_BLOCK_THRESHOLD);
   }
 
   /**
@@ -528,10 +551,8 @@ final class CompoundFile extends BaseCompoundFile
    */
   private void writeSummaryData() throws IOException
   {
-    byte[] padding = new byte[SMALL_BLOCK_THRESHOLD];
-
     // Write out the summary information
-    out.write(padding);
+    writePadding(SMALL_BLOCK_THRESHOLD);
   }
 
   /**
@@ -612,7 +633,7 @@ final class CompoundFile extends BaseCompoundFile
       headerBlock[i] = (byte) 0xff;
     }
 
-    out.write(headerBlock);
+    write(headerBlock);
 
     // Write out the extension blocks
     pos = 0;
@@ -647,7 +668,7 @@ final class CompoundFile extends BaseCompoundFile
         extensionBlockData[i] = (byte) 0xff;
       }
 
-      out.write(extensionBlockData);
+      write(extensionBlockData);
     }
   }
 
@@ -662,10 +683,10 @@ final class CompoundFile extends BaseCompoundFile
     if (bbdPos >= BIG_BLOCK_SIZE)
     {
       // Write out the extension block.  This will simply be the next block
-      out.write(bigBlockDepot);
+      write(bigBlockDepot);
       
-      // Create a new block
-      bigBlockDepot = new byte[BIG_BLOCK_SIZE];
+      // Start the next block.  Every entry of the block is overwritten,
+      // so the array is reused
       bbdPos = 0;
     }
   }
@@ -770,7 +791,7 @@ final class CompoundFile extends BaseCompoundFile
       }
     }
 
-    out.write(smallBlockDepotChain);
+    write(smallBlockDepotChain);
   }
 
   /**
@@ -803,7 +824,7 @@ final class CompoundFile extends BaseCompoundFile
       }
     }
 
-    out.write(smallBlockDepot);
+    write(smallBlockDepot);
   }
 
   /**
@@ -891,7 +912,58 @@ final class CompoundFile extends BaseCompoundFile
       {
         bigBlockDepot[i] = (byte) 0xff;
       }
-      out.write(bigBlockDepot);
+      write(bigBlockDepot);
+    }
+  }
+
+  /**
+   * Writes the data to the output, through the file channel if there is one
+   *
+   * @param data the data to write
+   * @exception IOException
+   */
+  private void write(byte[] data) throws IOException
+  {
+    write(data, 0, data.length);
+  }
+
+  /**
+   * Writes the data to the output, through the file channel if there is one
+   *
+   * @param data the data to write
+   * @param offset the offset of the data within the array
+   * @param length the number of bytes to write
+   * @exception IOException
+   */
+  private void write(byte[] data, int offset, int length) throws IOException
+  {
+    if (channel != null)
+    {
+      ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+      while (buffer.hasRemaining())
+      {
+        channel.write(buffer);
+      }
+    }
+    else
+    {
+      out.write(data, offset, length);
+    }
+  }
+
+  /**
+   * Writes out the specified number of blank bytes
+   *
+   * @param length the number of bytes to write
+   * @exception IOException
+   */
+  private void writePadding(int length) throws IOException
+  {
+    while (length > 0)
+    {
+      int len = Math.min(length, PADDING.length);
+      write(PADDING, 0, len);
+      length -= len;
     }
   }
 
@@ -1109,7 +1181,7 @@ final class CompoundFile extends BaseCompoundFile
     // Write out the additional property sets
     if (additionalPropertySets == null)
     {
-      out.write(propertySetStorage);
+      write(propertySetStorage);
       return;
     }
     
@@ -1155,6 +1227,6 @@ final class CompoundFile extends BaseCompoundFile
       }
     }
 
-    out.write(propertySetStorage);
+    write(propertySetStorage);
   }
 }
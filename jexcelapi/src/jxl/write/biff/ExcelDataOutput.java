@@ -21,6 +21,7 @@ package jxl.write.biff;
 
 import java.io.OutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 /**
  * Interface to abstract away an in-memory output or a temporary file
@@ -35,6 +36,15 @@ interface ExcelDataOutput
    */
   public void write(byte[] bytes) throws IOException;
 
+  /**
+   * Appends part of the bytes to the end of the output
+   *
+   * @param bytes the data to write to the end of the array
+   * @param offset the offset of the data within the array
+   * @param length the number of bytes to write
+   */
+  public void write(byte[] bytes, int offset, int length) throws IOException;
+
   /**
    * Gets the current position within the file
    *
@@ -55,6 +65,11 @@ interface ExcelDataOutput
    */
   public void writeData(OutputStream out) throws IOException;
 
+  /**
+   * Writes the data to the file channel
+   */
+  public void writeData(FileChannel out) throws IOException;
+
   /**
    * Called when the final compound file has been written
    */
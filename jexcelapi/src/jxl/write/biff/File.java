@@ -85,10 +85,35 @@ public final class File
     readCompoundFile = rcf;
     createDataOutput();
   }
+
+  /**
+   * Constructor for a file which holds records temporarily, before they
+   * are appended to the file being written.  The records are held in a
+   * temporary file if the workbook data is, otherwise in memory
+   *
+   * @param ws the configuration settings for this workbook
+   */
+  File(WorkbookSettings ws) throws IOException
+  {
+    workbookSettings = ws;
+
+    if (ws.getUseTemporaryFileDuringWrite() ||
+        ws.getStreamingWriteWindow() > 0)
+    {
+      data = new FileDataOutput(ws.getTemporaryFileDuringWriteDirectory());
+    }
+    else
+    {
+      // Start small, as there may be many of these at once
+      data = new MemoryDataOutput(ws.getArrayGrowSize(), 
+                                  ws.getArrayGrowSize());
+    }
+  }
   
   private void createDataOutput() throws IOException
   {
-    if (workbookSettings.getUseTemporaryFileDuringWrite())
+    if (workbookSettings.getUseTemporaryFileDuringWrite() ||
+        workbookSettings.getStreamingWriteWindow() > 0)
     {
       data = new FileDataOutput
         (workbookSettings.getTemporaryFileDuringWriteDirectory());
@@ -149,6 +174,66 @@ public final class File
     data.write(bytes);
   }
 
+  /**
+   * Adds record data which has been encoded directly, such as the shared
+   * string table, to the memory allocated for this File.  The data
+   * includes the record headers
+   *
+   * @exception IOException
+   * @param bytes the record data
+   * @param length the number of bytes of record data
+   */
+  void write(byte[] bytes, int length) throws IOException
+  {
+    data.write(bytes, 0, length);
+  }
+
+  /**
+   * Appends all the data written to another file, such as the rows of a
+   * sheet which were written out while the sheet was being generated
+   *
+   * @exception IOException
+   * @param f the file whose data is to be appended
+   */
+  void write(File f) throws IOException
+  {
+    if (data instanceof FileDataOutput)
+    {
+      // Transfer the data straight into the temporary file
+      f.data.writeData(((FileDataOutput) data).getChannel());
+      return;
+    }
+
+    f.data.writeData(new OutputStream()
+    {
+      public void write(int b) throws IOException
+      {
+        data.write(new byte[] {(byte) b});
+      }
+
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+        data.write(b, off, len);
+      }
+    });
+  }
+
+  /**
+   * Discards the data held by a file which is not written out as a
+   * compound file itself, such as the rows of a sheet written out while
+   * the sheet was being generated
+   *
+   * @exception IOException
+   */
+  void discard() throws IOException
+  {
+    if (data != null)
+    {
+      data.close();
+      data = null;
+    }
+  }
+
   /**
    * Gets the current position within the file
    * 
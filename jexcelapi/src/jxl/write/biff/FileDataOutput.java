@@ -23,6 +23,7 @@ import java.io.OutputStream;
 import java.io.IOException;
 import java.io.File;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 import jxl.common.Logger;
 
@@ -69,6 +70,18 @@ class FileDataOutput implements ExcelDataOutput
     data.write(bytes);
   }
 
+  /**
+   * Writes part of the bytes to the end of the file
+   *
+   * @param bytes the data to write to the end of the file
+   * @param offset the offset of the data within the array
+   * @param length the number of bytes to write
+   */
+  public void write(byte[] bytes, int offset, int length) throws IOException
+  {
+    data.write(bytes, offset, length);
+  }
+
   /**
    * Gets the current position within the file
    *
@@ -109,6 +122,32 @@ class FileDataOutput implements ExcelDataOutput
 		}
   }
 
+  /**
+   * Writes the data to the file channel.  The data is transferred
+   * directly from the temporary file, without being copied into memory
+   */
+  public void writeData(FileChannel out) throws IOException
+  {
+    FileChannel in = data.getChannel();
+    long length = data.getFilePointer();
+    long transferred = 0;
+    while (transferred < length)
+    {
+      transferred += in.transferTo(transferred, length - transferred, out);
+    }
+  }
+
+  /**
+   * Gets the channel of the temporary file.  Data written to the channel
+   * is appended to the excel data
+   *
+   * @return the channel of the temporary file
+   */
+  FileChannel getChannel()
+  {
+    return data.getChannel();
+  }
+
   /**
    * Called when the final compound file has been written
    */
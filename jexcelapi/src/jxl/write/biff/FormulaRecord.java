@@ -27,13 +27,16 @@ import jxl.CellType;
 import jxl.Sheet;
 import jxl.WorkbookSettings;
 import jxl.biff.FormattingRecords;
+import jxl.biff.DoubleHelper;
 import jxl.biff.FormulaData;
 import jxl.biff.IntegerHelper;
 import jxl.biff.Type;
 import jxl.biff.WorkbookMethods;
 import jxl.biff.formula.ExternalSheet;
+import jxl.biff.formula.FormulaErrorCode;
 import jxl.biff.formula.FormulaException;
 import jxl.biff.formula.FormulaParser;
+import jxl.biff.formula.FormulaTemplate;
 import jxl.format.CellFormat;
 import jxl.write.WritableCell;
 
@@ -54,7 +57,8 @@ public class FormulaRecord extends CellValue implements FormulaData
   private String formulaToParse;
 
   /**
-   * The formula parser
+   * The formula parser.  When the formula was found in the workbook's
+   * formula cache, this is NULL until the cell references need adjusting
    */
   private FormulaParser parser;
 
@@ -74,6 +78,12 @@ public class FormulaRecord extends CellValue implements FormulaData
    */
   private CellValue copiedFrom;
 
+  /**
+   * The value of the formula, as evaluated before the workbook is written,
+   * or NULL if it has not been evaluated
+   */
+  private Object value;
+
   /**
    * Constructor
    * 
@@ -153,13 +163,13 @@ public class FormulaRecord extends CellValue implements FormulaData
       return;
     }
 
-    parser = new FormulaParser(formulaToParse, es, nt, ws);
-
     try
     {
-      parser.parse();
-      formulaString = parser.getFormula();
-      formulaBytes = parser.getBytes();
+      // Cells with the same formula text share the one parse
+      FormulaTemplate ft = getSheet().getWorkbook().getFormulaCache().
+        getTemplate(formulaToParse, es, nt, ws);
+      formulaString = ft.getFormula();
+      formulaBytes = ft.getBytes();
     }
     catch (FormulaException e)
     {
@@ -227,6 +237,46 @@ public class FormulaRecord extends CellValue implements FormulaData
     }
   }
 
+  /**
+   * Gets the parse tree of this formula, so that its cell references may
+   * be adjusted.  A formula found in the formula cache is only parsed
+   * for itself when this is first needed
+   *
+   * @return the formula parser
+   */
+  private FormulaParser getParser()
+  {
+    if (parser != null)
+    {
+      return parser;
+    }
+
+    WritableWorkbookImpl w = getSheet().getWorkbook();
+    try
+    {
+      parser = new FormulaParser(formulaToParse, w, w, 
+                                 getSheet().getWorkbookSettings());
+      parser.parse();
+    }
+    catch (FormulaException e)
+    {
+      // The workbook has changed since the formula was added (eg. the
+      // sheet it refers to has been renamed), so parse the bytes instead
+      try
+      {
+        parser = new FormulaParser(formulaBytes, this, w, w, 
+                                   getSheet().getWorkbookSettings());
+        parser.parse();
+      }
+      catch (FormulaException e2)
+      {
+        logger.error("", e2);
+      }
+    }
+
+    return parser;
+  }
+
   /**
    * Called when the cell is added to the worksheet.  Overrides the
    * method in the base class in order to get a handle to the
@@ -300,12 +350,65 @@ public class FormulaRecord extends CellValue implements FormulaData
     // Set the recalculate on load bit
     data[8] |= 0x02;
 
+    if (value instanceof Double)
+    {
+      DoubleHelper.getIEEEBytes(((Double) value).doubleValue(), data, 0);
+    }
+    else if (value != null)
+    {
+      // Any other result is marked by 0xffff in the last two bytes, with
+      // the type of the result in the first byte.  The text of a string
+      // result follows in a STRING record
+      data[6] = (byte) 0xff;
+      data[7] = (byte) 0xff;
+
+      if (value instanceof String)
+      {
+        data[0] = (byte) (((String) value).length() == 0 ? 3 : 0);
+      }
+      else if (value instanceof Boolean)
+      {
+        data[0] = 1;
+        data[2] = (byte) (((Boolean) value).booleanValue() ? 1 : 0);
+      }
+      else
+      {
+        data[0] = 2;
+        data[2] = (byte) ((FormulaErrorCode) value).getCode();
+      }
+    }
+
     // Set the length of the rpn array
     IntegerHelper.getTwoBytes(formulaBytes.length, data, 14);
 
     return data;
   }
 
+  /**
+   * Sets the value of the formula, as evaluated before the workbook is
+   * written.  Excel still recalculates the formula when the workbook is
+   * opened
+   *
+   * @param v the value as a Double, String, Boolean or FormulaErrorCode,
+   *        or NULL if the formula could not be evaluated
+   */
+  void setEvaluatedValue(Object v)
+  {
+    value = v;
+  }
+
+  /**
+   * Gets the text of the value of the formula, which is written out in
+   * a STRING record following the formula
+   *
+   * @return the text, or NULL if the value is not a non-empty string
+   */
+  String getEvaluatedString()
+  {
+    return value instanceof String && ((String) value).length() > 0 ?
+      (String) value : null;
+  }
+
   /**
    * A dummy implementation to keep the compiler quiet.  This object needs
    * to be instantiated from ReadFormulaRecord
@@ -330,8 +433,9 @@ public class FormulaRecord extends CellValue implements FormulaData
    */
   void columnInserted(Sheet s, int sheetIndex, int col)
   {
-    parser.columnInserted(sheetIndex, col, s == getSheet());
-    formulaBytes = parser.getBytes();
+    FormulaParser fp = getParser();
+    fp.columnInserted(sheetIndex, col, s == getSheet());
+    formulaBytes = fp.getBytes();
   }
 
   /**
@@ -344,8 +448,9 @@ public class FormulaRecord extends CellValue implements FormulaData
    */
   void columnRemoved(Sheet s, int sheetIndex, int col)
   {
-    parser.columnRemoved(sheetIndex, col, s == getSheet());
-    formulaBytes = parser.getBytes();
+    FormulaParser fp = getParser();
+    fp.columnRemoved(sheetIndex, col, s == getSheet());
+    formulaBytes = fp.getBytes();
   }
 
   /**
@@ -358,8 +463,9 @@ public class FormulaRecord extends CellValue implements FormulaData
    */
   void rowInserted(Sheet s, int sheetIndex, int row)
   {
-    parser.rowInserted(sheetIndex, row, s == getSheet());
-    formulaBytes = parser.getBytes();
+    FormulaParser fp = getParser();
+    fp.rowInserted(sheetIndex, row, s == getSheet());
+    formulaBytes = fp.getBytes();
   }
 
   /**
@@ -372,7 +478,8 @@ public class FormulaRecord extends CellValue implements FormulaData
    */
   void rowRemoved(Sheet s, int sheetIndex, int row)
   {
-    parser.rowRemoved(sheetIndex, row, s == getSheet());
-    formulaBytes = parser.getBytes();
+    FormulaParser fp = getParser();
+    fp.rowRemoved(sheetIndex, row, s == getSheet());
+    formulaBytes = fp.getBytes();
   }
 }
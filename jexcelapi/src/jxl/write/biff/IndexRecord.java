@@ -101,4 +101,21 @@ class IndexRecord extends WritableRecordData
   {
     IntegerHelper.getFourBytes(pos - bofPosition, data, 12);
   }
+
+  /**
+   * Moves all the positions held by this record.  Used when the sheet has
+   * been written out on its own, and is then appended to the workbook
+   *
+   * @param offset the amount to add to each position
+   */
+  void movePositions(int offset)
+  {
+    for (int pos = 12; pos < dataPos; pos += 4)
+    {
+      IntegerHelper.getFourBytes
+        (IntegerHelper.getInt(data[pos], data[pos + 1], 
+                              data[pos + 2], data[pos + 3]) + offset,
+         data, pos);
+    }
+  }
 }
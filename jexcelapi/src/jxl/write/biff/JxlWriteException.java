@@ -59,6 +59,12 @@ public class JxlWriteException extends WriteException
   static WriteMessage copyPropertySets =
     new WriteMessage("Error encounted when copying additional property sets");
 
+  static WriteMessage rowWritten =
+    new WriteMessage("Row has already been written out");
+
+  static WriteMessage rowsNotStreamed =
+    new WriteMessage("Error encountered when writing out rows");
+
   /**
    * Constructs this exception with the specified message
    * 
@@ -26,6 +26,7 @@ import jxl.CellType;
 import jxl.LabelCell;
 import jxl.biff.FormattingRecords;
 import jxl.biff.IntegerHelper;
+import jxl.biff.StringHelper;
 import jxl.biff.Type;
 import jxl.format.CellFormat;
 
@@ -50,7 +51,8 @@ public abstract class LabelRecord extends CellValue
   private SharedStrings sharedStrings;
 
   /**
-   * The index of the string in the shared string table
+   * The index of the string in the shared string table, or -1 if the
+   * string is written inline
    */
   private int index;
 
@@ -139,6 +141,19 @@ public abstract class LabelRecord extends CellValue
   public byte[] getData()
   {
     byte[] celldata = super.getData();
+
+    if (index == -1)
+    {
+      // The string is written inline, as uncompressed unicode
+      byte[] data = new byte[celldata.length + 3 + contents.length() * 2];
+      System.arraycopy(celldata, 0, data, 0, celldata.length);
+      IntegerHelper.getTwoBytes(contents.length(), data, celldata.length);
+      data[celldata.length + 2] = 0x01;
+      StringHelper.getUnicodeBytes(contents, data, celldata.length + 3);
+
+      return data;
+    }
+
     byte[] data = new byte[celldata.length + 4];
     System.arraycopy(celldata, 0, data, 0, celldata.length);
     IntegerHelper.getFourBytes(index, data, celldata.length);
@@ -169,6 +184,16 @@ public abstract class LabelRecord extends CellValue
     return contents;
   }
 
+  /**
+   * Gets the index of the label in the shared string table
+   *
+   * @return the index, or -1 if the label is written inline
+   */
+  int getIndex()
+  {
+    return index;
+  }
+
   /**
    * Sets the string contents of this cell
    * 
@@ -193,12 +218,7 @@ public abstract class LabelRecord extends CellValue
     Assert.verify(sharedStrings != null);
 
     // Initalize the shared string index
-    index = sharedStrings.getIndex(contents);
-
-    // Use the sharedStrings reference instead of this object's own
-    // handle - this means that the bespoke copy becomes eligible for
-    // garbage collection
-    contents = sharedStrings.get(index);
+    shareContents();
   }
 
   /**
@@ -217,8 +237,26 @@ public abstract class LabelRecord extends CellValue
 
     sharedStrings = ss;
 
+    shareContents();
+  }
+
+  /**
+   * Adds the contents of this cell to the shared string table, and stores
+   * its shared string index.  If the table is full, the contents are
+   * written inline in a label record instead
+   */
+  private void shareContents()
+  {
     index = sharedStrings.getIndex(contents);
 
+    if (index == -1)
+    {
+      setType(Type.LABEL);
+      return;
+    }
+
+    setType(Type.LABELSST);
+
     // Use the sharedStrings reference instead of this object's own
     // handle - this means that the bespoke copy becomes eligible for
     // garbage collection
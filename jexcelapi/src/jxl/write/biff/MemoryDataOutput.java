@@ -21,6 +21,8 @@ package jxl.write.biff;
 
 import java.io.OutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import jxl.common.Logger;
 
@@ -66,7 +68,20 @@ class MemoryDataOutput implements ExcelDataOutput
    */
   public void write(byte[] bytes)
   {
-    while (pos + bytes.length > data.length)
+    write(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Writes part of the bytes to the end of the array, growing the array
+   * as needs dictate
+   *
+   * @param bytes the data to write to the end of the array
+   * @param offset the offset of the data within the array
+   * @param length the number of bytes to write
+   */
+  public void write(byte[] bytes, int offset, int length)
+  {
+    while (pos + length > data.length)
     {
       // Grow the array
       byte[] newdata = new byte[data.length + growSize];
@@ -74,8 +89,8 @@ class MemoryDataOutput implements ExcelDataOutput
       data = newdata;
     }
 
-    System.arraycopy(bytes, 0, data, pos, bytes.length);
-    pos += bytes.length;
+    System.arraycopy(bytes, offset, data, pos, length);
+    pos += length;
   }
 
   /**
@@ -107,6 +122,18 @@ class MemoryDataOutput implements ExcelDataOutput
     out.write(data, 0, pos);
   }
 
+  /**
+   * Writes the data to the file channel
+   */
+  public void writeData(FileChannel out) throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.wrap(data, 0, pos);
+    while (buffer.hasRemaining())
+    {
+      out.write(buffer);
+    }
+  }
+
   /**
    * Called when the final compound file has been written.  No cleanup is
    * necessary for in-memory file generation
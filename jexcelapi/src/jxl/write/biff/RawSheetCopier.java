@@ -0,0 +1,393 @@
+/*********************************************************************
+*
+*      Copyright (C) 2002 Andrew Khan
+*
+* This library is free software; you can redistribute it and/or
+* modify it under the terms of the GNU Lesser General Public
+* License as published by the Free Software Foundation; either
+* version 2.1 of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+***************************************************************************/
+
+package jxl.write.biff;
+
+import java.io.IOException;
+
+import jxl.Sheet;
+import jxl.biff.IndexMapping;
+import jxl.biff.IntegerHelper;
+import jxl.biff.Type;
+import jxl.read.biff.SheetImpl;
+import jxl.read.biff.WorkbookParser;
+
+/**
+ * Copies a sheet from a workbook which has been read in by writing out
+ * the records it was read from, rather than copying it cell by cell.
+ * The writable workbook shares the formatting records of the workbook
+ * being copied, so the only changes needed to the records are to the
+ * indexes of the cell formats, once these have been rationalized, to the
+ * indexes of the shared strings, which are held in a new table, and to
+ * the positions of the row blocks in the index record.  None of these
+ * change the length of any record.
+ *
+ * Sheets containing drawings, comments or charts refer to the drawing
+ * group of the workbook, which is rebuilt when the workbook is written,
+ * and rich text refers to fonts, which are rationalized, so these sheets
+ * are copied cell by cell instead
+ */
+class RawSheetCopier
+{
+  /**
+   * The BIFF8 version number, as given in the BOF record
+   */
+  private static final int BIFF8 = 0x600;
+
+  /**
+   * The substream type of a worksheet, as given in the BOF record
+   */
+  private static final int WORKSHEET = 0x10;
+
+  /**
+   * The flag in a ROW record indicating that the row has a cell format
+   */
+  private static final int ROW_FORMATTED = 0x80;
+
+  /**
+   * The flag in a WINDOW2 record indicating that the sheet is selected
+   */
+  private static final int SELECTED = 0x200;
+
+  /**
+   * The workbook being copied
+   */
+  private WorkbookParser workbook;
+
+  /**
+   * The index of the sheet in the workbook being copied
+   */
+  private int index;
+
+  /**
+   * The sheet being copied, whose cells are not read in
+   */
+  private SheetImpl sheet;
+
+  /**
+   * The shared strings of the writable workbook
+   */
+  private SharedStrings sharedStrings;
+
+  /**
+   * The index in the writable workbook's shared strings of each string
+   * of the workbook being copied, or -1 if the string has not been added.
+   * Shared by all the sheets copied from the workbook
+   */
+  private int[] stringMapping;
+
+  /**
+   * The mapping of the cell formats, or NULL if they have not been
+   * rationalized
+   */
+  private IndexMapping xfMapping;
+
+  /**
+   * Indicates whether the sheet is selected
+   */
+  private boolean selected;
+
+  /**
+   * Constructor
+   *
+   * @param wp the workbook being copied
+   * @param i the index of the sheet to copy
+   * @param ss the shared strings of the writable workbook
+   * @param sm the mapping of the shared strings of the workbook
+   */
+  public RawSheetCopier(WorkbookParser wp, int i, SharedStrings ss, int[] sm)
+  {
+    workbook = wp;
+    index = i;
+    sheet = wp.getRawSheet(i);
+    sharedStrings = ss;
+    stringMapping = sm;
+  }
+
+  /**
+   * Accessor for the name of the sheet being copied
+   *
+   * @return the sheet name
+   */
+  String getName()
+  {
+    return sheet.getName();
+  }
+
+  /**
+   * Accessor for the hidden flag of the sheet being copied
+   *
+   * @return TRUE if the sheet is hidden
+   */
+  boolean isHidden()
+  {
+    // The sheet's settings are only there once it has been read in, so
+    // the flag is taken from its bound sheet record instead
+    return workbook.isRawSheetHidden(index);
+  }
+
+  /**
+   * Checks the records of the sheet, and adds the strings used by the sheet
+   * to the shared strings of the writable workbook.  If this fails, the
+   * sheet must be copied cell by cell instead
+   *
+   * @return TRUE if the sheet can be copied, FALSE otherwise
+   */
+  boolean copySheet()
+  {
+    byte[] data = sheet.getRawRecords();
+
+    if (!checkRecords(data))
+    {
+      return false;
+    }
+
+    int pos = 0;
+    while (pos + 4 <= data.length)
+    {
+      int code = IntegerHelper.getInt(data[pos], data[pos + 1]);
+      int length = IntegerHelper.getInt(data[pos + 2], data[pos + 3]);
+      pos += 4;
+
+      if (code == Type.LABELSST.value)
+      {
+        int sst = IntegerHelper.getInt(data[pos + 6], data[pos + 7],
+                                       data[pos + 8], data[pos + 9]);
+
+        if (stringMapping[sst] == -1)
+        {
+          // The table is full, so the string would have to be written
+          // inline, which changes the length of the record
+          int newIndex = sharedStrings.getIndex(sheet.getSharedString(sst));
+          if (newIndex == -1)
+          {
+            return false;
+          }
+
+          stringMapping[sst] = newIndex;
+        }
+      }
+
+      pos += length;
+    }
+
+    return true;
+  }
+
+  /**
+   * Checks that the sheet is a BIFF8 worksheet which does not contain
+   * any records which prevent it being written out unchanged, and notes
+   * whether it is selected
+   *
+   * @param data the records of the sheet
+   * @return TRUE if the sheet can be written out unchanged
+   */
+  private boolean checkRecords(byte[] data)
+  {
+    if (data.length < 8 ||
+        IntegerHelper.getInt(data[0], data[1]) != Type.BOF.value ||
+        IntegerHelper.getInt(data[4], data[5]) != BIFF8 ||
+        IntegerHelper.getInt(data[6], data[7]) != WORKSHEET)
+    {
+      return false;
+    }
+
+    int pos = 0;
+    int bofs = 0;
+    while (pos + 4 <= data.length)
+    {
+      int code = IntegerHelper.getInt(data[pos], data[pos + 1]);
+      int length = IntegerHelper.getInt(data[pos + 2], data[pos + 3]);
+      pos += 4;
+
+      if (code == Type.BOF.value)
+      {
+        // Any further BOF record starts an embedded chart
+        bofs++;
+        if (bofs > 1)
+        {
+          return false;
+        }
+      }
+      else if (code == Type.MSODRAWING.value ||
+               code == Type.OBJ.value ||
+               code == Type.TXO.value ||
+               code == Type.NOTE.value ||
+               code == Type.RSTRING.value)
+      {
+        return false;
+      }
+      else if (code == Type.WINDOW2.value)
+      {
+        selected = (IntegerHelper.getInt(data[pos], data[pos + 1]) &
+                    SELECTED) != 0;
+      }
+
+      pos += length;
+    }
+
+    return true;
+  }
+
+  /**
+   * Accessor for the selected flag of the sheet
+   *
+   * @return TRUE if the sheet is selected
+   */
+  boolean isSelected()
+  {
+    return selected;
+  }
+
+  /**
+   * Reads in the sheet being copied, so that it may be copied cell by cell
+   * after all
+   *
+   * @return the sheet
+   */
+  Sheet getSheet()
+  {
+    return workbook.getSheet(index);
+  }
+
+  /**
+   * Sets the mapping of the cell formats once they have been rationalized
+   *
+   * @param xfm the cell format mapping
+   */
+  void rationalize(IndexMapping xfm)
+  {
+    xfMapping = xfm;
+  }
+
+  /**
+   * Writes out the records of the sheet, renumbering the cell formats
+   * and shared strings, and moving the positions held in the index record
+   * to the sheet's position in the workbook
+   *
+   * @param outputFile the file to write to
+   * @exception IOException
+   */
+  void write(File outputFile) throws IOException
+  {
+    byte[] data = sheet.getRawRecords();
+    int offset = outputFile.getPos() - sheet.getRawPosition();
+
+    int pos = 0;
+    while (pos + 4 <= data.length)
+    {
+      int code = IntegerHelper.getInt(data[pos], data[pos + 1]);
+      int length = IntegerHelper.getInt(data[pos + 2], data[pos + 3]);
+      pos += 4;
+
+      if (code == Type.LABELSST.value)
+      {
+        setXFIndex(data, pos + 4);
+        int sst = IntegerHelper.getInt(data[pos + 6], data[pos + 7],
+                                       data[pos + 8], data[pos + 9]);
+        IntegerHelper.getFourBytes(stringMapping[sst], data, pos + 6);
+      }
+      else if (code == Type.NUMBER.value ||
+               code == Type.RK.value ||
+               code == Type.RK2.value ||
+               code == Type.BLANK.value ||
+               code == Type.BOOLERR.value ||
+               code == Type.LABEL.value ||
+               code == Type.FORMULA.value ||
+               code == Type.FORMULA2.value)
+      {
+        setXFIndex(data, pos + 4);
+      }
+      else if (code == Type.MULRK.value)
+      {
+        // Each cell is an xf index followed by an rk value
+        for (int i = pos + 4; i + 6 <= pos + length - 2; i += 6)
+        {
+          setXFIndex(data, i);
+        }
+      }
+      else if (code == Type.MULBLANK.value)
+      {
+        for (int i = pos + 4; i + 2 <= pos + length - 2; i += 2)
+        {
+          setXFIndex(data, i);
+        }
+      }
+      else if (code == Type.ROW.value)
+      {
+        if ((IntegerHelper.getInt(data[pos + 12], data[pos + 13]) &
+             ROW_FORMATTED) != 0)
+        {
+          // The xf index takes up the bottom 12 bits
+          int value = IntegerHelper.getInt(data[pos + 14], data[pos + 15]);
+          IntegerHelper.getTwoBytes
+            ((value & 0xf000) | (getXFIndex(value & 0xfff) & 0xfff),
+             data, pos + 14);
+        }
+      }
+      else if (code == Type.COLINFO.value)
+      {
+        setXFIndex(data, pos + 6);
+      }
+      else if (code == Type.INDEX.value)
+      {
+        // The position of the DEFCOLWIDTH record, followed by the
+        // positions of the DBCELL records
+        for (int i = pos + 12; i + 4 <= pos + length; i += 4)
+        {
+          int value = IntegerHelper.getInt(data[i], data[i + 1],
+                                           data[i + 2], data[i + 3]);
+          IntegerHelper.getFourBytes(value + offset, data, i);
+        }
+      }
+
+      pos += length;
+    }
+
+    outputFile.write(data, data.length);
+  }
+
+  /**
+   * Renumbers the xf index at the specified position
+   *
+   * @param data the records
+   * @param pos the position of the xf index
+   */
+  private void setXFIndex(byte[] data, int pos)
+  {
+    if (xfMapping == null)
+    {
+      return;
+    }
+
+    int xfIndex = IntegerHelper.getInt(data[pos], data[pos + 1]);
+    IntegerHelper.getTwoBytes(getXFIndex(xfIndex), data, pos);
+  }
+
+  /**
+   * Gets the new number of a cell format
+   *
+   * @param xfIndex the xf index in the workbook being copied
+   * @return the xf index in the writable workbook
+   */
+  private int getXFIndex(int xfIndex)
+  {
+    return xfMapping == null ? xfIndex : xfMapping.getNewIndex(xfIndex);
+  }
+}
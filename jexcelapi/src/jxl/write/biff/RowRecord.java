@@ -348,6 +348,13 @@ class RowRecord extends WritableRecordData
             StringRecord sr = new StringRecord(cells[i].getContents());
             outputFile.write(sr);
           }
+          else if (cells[i] instanceof FormulaRecord &&
+                   ((FormulaRecord) cells[i]).getEvaluatedString() != null)
+          {
+            StringRecord sr = new StringRecord
+              (((FormulaRecord) cells[i]).getEvaluatedString());
+            outputFile.write(sr);
+          }
         }
       }
       else
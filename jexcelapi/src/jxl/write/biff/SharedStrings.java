@@ -20,63 +20,153 @@
 package jxl.write.biff;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
+
+import jxl.biff.IntegerHelper;
+import jxl.biff.Type;
 
 /**
  * The list of available shared strings.  This class contains
- * the labels used for the entire spreadsheet
+ * the labels used for the entire spreadsheet.  The strings are held in
+ * the order they were added, and found through an open addressing hash
+ * table of their indexes, so looking up a string does not create any
+ * objects
  */
 class SharedStrings
 {
   /**
-   * All the strings in the spreadsheet, keyed on the string itself
+   * The longest string which may be written inline in a label record,
+   * rather than being added to the shared string table
+   */
+  static final int MAX_INLINE_LENGTH = 255;
+
+  /**
+   * Marks an empty slot in the hash table
+   */
+  private static final int EMPTY = -1;
+
+  /**
+   * The maximum length of a record, including the header
+   */
+  private static final int MAX_RECORD_LENGTH = 8228;
+
+  /**
+   * All the strings in the spreadsheet, in the order they were added
+   */
+  private String[] strings;
+
+  /**
+   * The number of strings in the table
+   */
+  private int size;
+
+  /**
+   * The hash table of string indexes.  This is always at most half full
    */
-  private HashMap strings;
+  private int[] slots;
 
   /**
-   * Contains the same strings, held in a list
+   * The mask applied to a hash code to give a slot in the hash table
    */
-  private ArrayList stringList;
+  private int mask;
 
   /**
    * The total occurrence of strings in the workbook
    */
   private int totalOccurrences;
 
+  /**
+   * The maximum number of strings in the table.  Once the table is full,
+   * new strings are not added.  Zero indicates that there is no limit
+   */
+  private int maximumStrings;
+
+  /**
+   * The record being written out
+   */
+  private byte[] record;
+
+  /**
+   * The position within the record being written out
+   */
+  private int recordPos;
+
+  /**
+   * The type of the record being written out
+   */
+  private Type recordType;
+
   /**
    * Constructor
    */
   public SharedStrings()
   {
-    strings = new HashMap(100);
-    stringList = new ArrayList(100);
+    this(0);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param max the maximum number of strings in the table, or zero if
+   *            there is no limit
+   */
+  public SharedStrings(int max)
+  {
+    strings = new String[128];
+    slots = new int[256];
+    mask = slots.length - 1;
+    Arrays.fill(slots, EMPTY);
+    size = 0;
     totalOccurrences = 0;
+    maximumStrings = max;
   }
 
   /**
    * Gets the index for the string passed in.  If the string is already
    * present, then returns the index of that string, otherwise
-   * creates a new key-index mapping
+   * creates a new key-index mapping.  If the table is already full and
+   * the string is short enough to be written inline in its label record,
+   * then the string is not added
    *
    * @param s the string whose index we want
-   * @return the index of the string
+   * @return the index of the string, or -1 if the string should be
+   *         written inline
    */
   public int getIndex(String s)
   {
-    Integer i = (Integer) strings.get(s);
+    int slot = hash(s.hashCode()) & mask;
+    while (slots[slot] != EMPTY)
+    {
+      if (strings[slots[slot]].equals(s))
+      {
+        totalOccurrences++;
+        return slots[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
 
-    if (i == null)
+    if (maximumStrings > 0 && size >= maximumStrings &&
+        s.length() <= MAX_INLINE_LENGTH)
     {
-      i = new Integer(strings.size());
-      strings.put(s, i);
-      stringList.add(s);
+      return -1;
+    }
+
+    if (size == strings.length)
+    {
+      grow();
+      slot = hash(s.hashCode()) & mask;
+      while (slots[slot] != EMPTY)
+      {
+        slot = (slot + 1) & mask;
+      }
     }
 
+    int i = size++;
+    strings[i] = s;
+    slots[slot] = i;
     totalOccurrences++;
 
-    return i.intValue();
+    return i;
   }
 
   /**
@@ -87,11 +177,50 @@ class SharedStrings
    */
   public String get(int i)
   {
-    return (String) stringList.get(i);
+    return strings[i];
   }
 
   /**
-   * Writes out the shared string table
+   * Spreads the hash codes of similar strings, such as those which differ
+   * only in their last character, across the hash table
+   *
+   * @param h the hash code of the string
+   * @return the spread hash code
+   */
+  private static int hash(int h)
+  {
+    h *= 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Doubles the room for strings, and rebuilds the hash table
+   */
+  private void grow()
+  {
+    String[] newStrings = new String[strings.length * 2];
+    System.arraycopy(strings, 0, newStrings, 0, size);
+    strings = newStrings;
+
+    slots = new int[strings.length * 2];
+    mask = slots.length - 1;
+    Arrays.fill(slots, EMPTY);
+
+    for (int i = 0; i < size; i++)
+    {
+      int slot = hash(strings[i].hashCode()) & mask;
+      while (slots[slot] != EMPTY)
+      {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = i;
+    }
+  }
+
+  /**
+   * Writes out the shared string table.  The strings are encoded straight
+   * into an SST record and as many continue records as are needed, each
+   * record being written out as soon as it is full
    *
    * @param outputFile the binary output file
    * @exception IOException
@@ -100,88 +229,91 @@ class SharedStrings
   {
     // Thanks to Guenther for contributing the ExtSST implementation portion
     // of this method
-    int charsLeft = 0;
-    String curString = null;
-    SSTRecord sst = new SSTRecord(totalOccurrences, stringList.size());
-    ExtendedSSTRecord extsst = new ExtendedSSTRecord(stringList.size());
+    ExtendedSSTRecord extsst = new ExtendedSSTRecord(size);
     int bucketSize = extsst.getNumberOfStringsPerBucket();
 
-    Iterator i = stringList.iterator();
-    int stringIndex = 0;
-    while (i.hasNext() && charsLeft == 0)
+    record = new byte[MAX_RECORD_LENGTH];
+    recordType = Type.SST;
+    IntegerHelper.getFourBytes(totalOccurrences, record, 4);
+    IntegerHelper.getFourBytes(size, record, 8);
+    recordPos = 12;
+
+    for (int i = 0; i < size; i++)
     {
-      curString = (String) i.next();
-      // offset + header bytes
-      int relativePosition = sst.getOffset() + 4;
-      charsLeft = sst.add(curString);
-      if ((stringIndex % bucketSize) == 0) {
-        extsst.addString(outputFile.getPos(), relativePosition);
+      String s = strings[i];
+
+      // A string must start with at least its first character in the
+      // current record, otherwise it starts in a new continue record
+      if (recordPos >= MAX_RECORD_LENGTH - 5)
+      {
+        writeRecord(outputFile);
       }
-      stringIndex++;
-    }
-    outputFile.write(sst);
 
-    if (charsLeft != 0 || i.hasNext())
-    {
-      // Add the remainder of the string to the continue record
-      SSTContinueRecord cont = createContinueRecord(curString,
-                                                    charsLeft,
-                                                    outputFile);
+      if ((i % bucketSize) == 0)
+      {
+        extsst.addString(outputFile.getPos(), recordPos);
+      }
+
+      IntegerHelper.getTwoBytes(s.length(), record, recordPos);
+      record[recordPos + 2] = 0x01;
+      recordPos += 3;
 
-      // Carry on looping through the array until all the strings are done
-      while (i.hasNext())
+      // Split the string across as many continue records as needed.  Each
+      // continue record starts with the unicode indicator
+      int pos = 0;
+      int available = (MAX_RECORD_LENGTH - recordPos) / 2;
+      while (s.length() - pos > available)
       {
-        curString = (String) i.next();
-        int relativePosition = cont.getOffset() + 4;
-        charsLeft = cont.add(curString);
-        if ((stringIndex % bucketSize) == 0) {
-          extsst.addString(outputFile.getPos(), relativePosition);
-        }
-        stringIndex++;
-
-        if (charsLeft != 0)
-        {
-          outputFile.write(cont);
-          cont = createContinueRecord(curString, charsLeft, outputFile);
-        }
+        putChars(s, pos, pos + available);
+        pos += available;
+        writeRecord(outputFile);
+
+        record[recordPos] = 0x01;
+        recordPos++;
+        available = (MAX_RECORD_LENGTH - recordPos) / 2;
       }
 
-      outputFile.write(cont);
+      putChars(s, pos, s.length());
     }
 
+    writeRecord(outputFile);
+    record = null;
+
     outputFile.write(extsst);
   }
 
   /**
-   * Creates and returns a continue record using the left over bits and
-   * pieces
+   * Copies the characters of a string into the record being written out,
+   * as uncompressed unicode
+   *
+   * @param s the string
+   * @param start the index of the first character to copy
+   * @param end the index after the last character to copy
    */
-  private SSTContinueRecord createContinueRecord
-    (String curString, int charsLeft, File outputFile) throws IOException
+  private void putChars(String s, int start, int end)
   {
-    // Set up the remainder of the string in the continue record
-    SSTContinueRecord cont = null;
-    while (charsLeft != 0)
+    for (int i = start; i < end; i++)
     {
-      cont = new SSTContinueRecord();
-
-      if (charsLeft == curString.length()  || curString.length() == 0)
-      {
-        charsLeft = cont.setFirstString(curString, true);
-      }
-      else
-      {
-        charsLeft = cont.setFirstString
-          (curString.substring(curString.length() - charsLeft), false);
-      }
-
-      if (charsLeft != 0)
-      {
-        outputFile.write(cont);
-        cont = new SSTContinueRecord();
-      }
+      char c = s.charAt(i);
+      record[recordPos] = (byte) c;
+      record[recordPos + 1] = (byte) (c >> 8);
+      recordPos += 2;
     }
+  }
+
+  /**
+   * Writes out the record being built up, and starts a continue record
+   *
+   * @param outputFile the binary output file
+   * @exception IOException
+   */
+  private void writeRecord(File outputFile) throws IOException
+  {
+    IntegerHelper.getTwoBytes(recordType.value, record, 0);
+    IntegerHelper.getTwoBytes(recordPos - 4, record, 2);
+    outputFile.write(record, recordPos);
 
-    return cont;
+    recordType = Type.CONTINUE;
+    recordPos = 4;
   }
 }
@@ -269,10 +269,11 @@ class SheetCopier
         numRows = Math.max(numRows, rowprops[i].getRowNumber() + 1);
       }
     }
-    catch (RowsExceededException e)
+    catch (JxlWriteException e)
     {
       // Handle the rows exceeded exception - this cannot occur since
-      // the sheet we are copying from will have a valid number of rows
+      // the sheet we are copying from will have a valid number of rows,
+      // and no rows are written out while the sheet is being copied
       Assert.verify(false);
     }
 
@@ -614,10 +615,11 @@ class SheetCopier
         numRows = Math.max(numRows, rowprops[i].getRowNumber() + 1);
       }
     }
-    catch (RowsExceededException e)
+    catch (JxlWriteException e)
     {
       // Handle the rows exceeded exception - this cannot occur since
-      // the sheet we are copying from will have a valid number of rows
+      // the sheet we are copying from will have a valid number of rows,
+      // and no rows are written out while the sheet is being copied
       Assert.verify(false);
     }
 
@@ -181,6 +181,33 @@ final class SheetWriter
    */
   private WritableSheetImpl sheet;
 
+  /**
+   * The blocks of rows written out while the sheet was being generated,
+   * when streaming.  NULL if no rows have been written out
+   */
+  private File rowSpool;
+
+  /**
+   * The positions within the row spool of the DBCell record of each block
+   */
+  private ArrayList spooledBlockPositions;
+
+  /**
+   * The sheet, when it has been written out on its own to be appended to
+   * the workbook later.  NULL otherwise
+   */
+  private File sheetBuffer;
+
+  /**
+   * The index record of the sheet last written out
+   */
+  private IndexRecord indexRecord;
+
+  /**
+   * The position of the index record of the sheet last written out
+   */
+  private int indexPos;
+
 
   /**
    * Creates a new <code>SheetWriter</code> instance.
@@ -211,6 +238,8 @@ final class SheetWriter
   {
     Assert.verify(rows != null);
 
+    indexRecord = null;
+
     // This worksheet consists of just one chart, so write it and return
     if (chartOnly)
     {
@@ -228,11 +257,11 @@ final class SheetWriter
       numBlocks++;
     }
 
-    int indexPos = outputFile.getPos();
+    indexPos = outputFile.getPos();
    
     // Write the index record out now in order to serve as a place holder
     // The bof passed in is the bof of the workbook, not this sheet
-    IndexRecord indexRecord = new IndexRecord(0, numRows, numBlocks);
+    indexRecord = new IndexRecord(0, numRows, numBlocks);
     outputFile.write(indexRecord);
 
     if (settings.getAutomaticFormulaCalculation())
@@ -449,45 +478,32 @@ final class SheetWriter
     DimensionRecord dr = new DimensionRecord(numRows, numCols);
     outputFile.write(dr);
 
-    // Write out all the rows, in blocks of 32
-    for (int block = 0; block < numBlocks; block++)
+    // Append the blocks of rows written out while the sheet was being
+    // generated.  The offsets within each block are relative, so only
+    // the block positions held by the index record need adjusting
+    int block = 0;
+    if (rowSpool != null)
     {
-      DBCellRecord dbcell = new DBCellRecord(outputFile.getPos());
+      int spoolPos = outputFile.getPos();
+      outputFile.write(rowSpool);
 
-      int blockRows = Math.min(32, numRows - block * 32);
-      boolean firstRow = true;
-
-      // First write out all the row records
-      for (int i = block * 32; i < block * 32 + blockRows; i++)
+      for (Iterator i = spooledBlockPositions.iterator(); i.hasNext() ; )
       {
-        if (rows[i] != null)
-        {
-          rows[i].write(outputFile);
-          if (firstRow)
-          {
-            dbcell.setCellOffset(outputFile.getPos());
-            firstRow = false;
-          }
-        }
+        int pos = ((Integer) i.next()).intValue();
+        indexRecord.addBlockPosition(spoolPos + pos);
       }
 
-      // Now write out all the cells
-      for (int i = block * 32; i < block * 32 + blockRows; i++)
-      {
-        if (rows[i] != null)
-        {
-          dbcell.addCellRowPosition(outputFile.getPos());
-          rows[i].writeCells(outputFile);
-        }
-      }
+      block = spooledBlockPositions.size();
+    }
 
-      // Now set the current file position in the index record
-      indexRecord.addBlockPosition(outputFile.getPos());
-      
-      // Set the position of the file pointer and write out the DBCell
-      // record
-      dbcell.setPosition(outputFile.getPos());
-      outputFile.write(dbcell);
+    // Write out the remaining rows, in blocks of 32
+    for ( ; block < numBlocks; block++)
+    {
+      int pos = writeBlock(outputFile, block * 32,
+                           Math.min(32, numRows - block * 32));
+
+      // Now set the position of the DBCell record in the index record
+      indexRecord.addBlockPosition(pos);
     }
     
     // Do the drawings and charts if enabled
@@ -599,6 +615,156 @@ final class SheetWriter
     outputFile.setData(indexRecord.getData(), indexPos+4);
   }
 
+  /**
+   * Writes out a block of rows, followed by the DBCell record which
+   * indexes them
+   *
+   * @param f the file to write to
+   * @param firstRow the first row of the block
+   * @param blockRows the number of rows in the block
+   * @return the position of the DBCell record
+   * @exception IOException
+   */
+  private int writeBlock(File f, int firstRow, int blockRows)
+    throws IOException
+  {
+    DBCellRecord dbcell = new DBCellRecord(f.getPos());
+
+    boolean firstRowWritten = false;
+
+    // First write out all the row records
+    for (int i = firstRow; i < firstRow + blockRows; i++)
+    {
+      if (rows[i] != null)
+      {
+        rows[i].write(f);
+        if (!firstRowWritten)
+        {
+          dbcell.setCellOffset(f.getPos());
+          firstRowWritten = true;
+        }
+      }
+    }
+
+    // Now write out all the cells
+    for (int i = firstRow; i < firstRow + blockRows; i++)
+    {
+      if (rows[i] != null)
+      {
+        dbcell.addCellRowPosition(f.getPos());
+        rows[i].writeCells(f);
+      }
+    }
+
+    // Set the position of the file pointer and write out the DBCell
+    // record
+    int pos = f.getPos();
+    dbcell.setPosition(pos);
+    f.write(dbcell);
+
+    return pos;
+  }
+
+  /**
+   * Writes out blocks of rows ahead of the rest of the sheet, to a
+   * temporary file which is appended to the sheet when it is written.
+   * Used when the sheet is streamed, so that the rows may be freed
+   *
+   * @param rws the rows of the sheet
+   * @param blocks the number of blocks of 32 rows, starting with the
+   *               first block not yet written out
+   * @exception IOException
+   */
+  void spoolRows(RowRecord[] rws, int blocks) throws IOException
+  {
+    if (rowSpool == null)
+    {
+      rowSpool = new File(workbookSettings);
+      spooledBlockPositions = new ArrayList();
+    }
+
+    rows = rws;
+    int firstBlock = spooledBlockPositions.size();
+    for (int block = firstBlock; block < firstBlock + blocks; block++)
+    {
+      int pos = writeBlock(rowSpool, block * 32, 32);
+      spooledBlockPositions.add(Integer.valueOf(pos));
+    }
+  }
+
+  /**
+   * Writes out this sheet on its own, rather than to the workbook, so that
+   * several sheets may be written out at once.  The positions held by the
+   * sheet are relative to the start of the sheet, until the sheet is
+   * appended to the workbook by appendSheet
+   *
+   * @exception IOException
+   */
+  void writeSheet() throws IOException
+  {
+    File workbookFile = outputFile;
+    sheetBuffer = new File(workbookSettings);
+    outputFile = sheetBuffer;
+
+    try
+    {
+      write();
+    }
+    finally
+    {
+      outputFile = workbookFile;
+    }
+  }
+
+  /**
+   * Appends the sheet written out by writeSheet to the workbook, moving
+   * the positions held by the index record to the sheet's position in the
+   * workbook
+   *
+   * @exception IOException
+   */
+  void appendSheet() throws IOException
+  {
+    if (indexRecord != null)
+    {
+      indexRecord.movePositions(outputFile.getPos());
+      sheetBuffer.setData(indexRecord.getData(), indexPos + 4);
+    }
+
+    outputFile.write(sheetBuffer);
+    discardSheet();
+  }
+
+  /**
+   * Discards the sheet written out by writeSheet, if it has not been
+   * appended to the workbook
+   *
+   * @exception IOException
+   */
+  void discardSheet() throws IOException
+  {
+    if (sheetBuffer != null)
+    {
+      sheetBuffer.discard();
+      sheetBuffer = null;
+    }
+  }
+
+  /**
+   * Discards the rows written out while the sheet was being generated,
+   * once the workbook has been closed
+   *
+   * @exception IOException
+   */
+  void discardSpooledRows() throws IOException
+  {
+    if (rowSpool != null)
+    {
+      rowSpool.discard();
+      rowSpool = null;
+    }
+  }
+
   /**
    * Gets the header.  Called when copying sheets
    *
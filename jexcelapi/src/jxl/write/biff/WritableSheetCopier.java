@@ -278,10 +278,11 @@ class WritableSheetCopier
         }
       }
     }
-    catch (RowsExceededException e)
+    catch (JxlWriteException e)
     {
       // Handle the rows exceeded exception - this cannot occur since
-      // the sheet we are copying from will have a valid number of rows
+      // the sheet we are copying from will have a valid number of rows,
+      // and no rows are written out while the sheet is being copied
       Assert.verify(false);
     }
 
@@ -63,6 +63,7 @@ import jxl.biff.drawing.Chart;
 import jxl.biff.drawing.ComboBox;
 import jxl.biff.drawing.Drawing;
 import jxl.biff.drawing.DrawingGroupObject;
+import jxl.biff.formula.FormulaEvaluator;
 import jxl.format.CellFormat;
 import jxl.format.Font;
 import jxl.format.PageOrientation;
@@ -139,6 +140,19 @@ class WritableSheetImpl implements WritableSheet
    */
   private int numRows;
 
+  /**
+   * The number of rows at the top of the sheet which have been written
+   * out while streaming, and so are no longer held
+   */
+  private int streamedRows;
+
+  /**
+   * Indicates that the sheet is being filled by a sheet copier.  No rows
+   * are written out while streaming until the copy is complete, as the
+   * row settings are only applied once all the cells have been copied
+   */
+  private boolean copying;
+
   /**
    * The number of columns.  This is a count of the maximum column number + 1
    */
@@ -232,6 +246,12 @@ class WritableSheetImpl implements WritableSheet
    */
   private SheetWriter sheetWriter;
 
+  /**
+   * Writes out the records of the sheet this sheet was copied from, or
+   * NULL if this sheet is written out from its cells
+   */
+  private RawSheetCopier rawCopier;
+
   /**
    * The settings for the workbook
    */
@@ -268,6 +288,11 @@ class WritableSheetImpl implements WritableSheet
    */
   private static final String[] imageTypes = new String[] {"png"};
 
+  /**
+   * The number of milliseconds in a day
+   */
+  private static final double msInADay = 24 * 60 * 60 * 1000;
+
   /**
    * The comparator for column info record
    */
@@ -600,6 +625,96 @@ class WritableSheetImpl implements WritableSheet
     return cells;
   }
 
+  /**
+   * Gets the values of the numbers in the specified column
+   *
+   * @param col the column whose numbers are to be returned
+   * @return the number on each row, or NaN where the cell is not a number
+   */
+  public double[] getNumericColumn(int col)
+  {
+    double[] column = new double[numRows];
+
+    for (int i = 0; i < numRows; i++)
+    {
+      Cell c = getColumnCell(col, i);
+      column[i] = c instanceof NumberCell ? 
+        ((NumberCell) c).getValue() : Double.NaN;
+    }
+
+    return column;
+  }
+
+  /**
+   * Gets the dates in the specified column as the number of days since
+   * 01 Jan 1970
+   *
+   * @param col the column whose dates are to be returned
+   * @return the day of the date on each row, or Integer.MIN_VALUE where
+   *         the cell is not a date
+   */
+  public int[] getDateColumnEpochDays(int col)
+  {
+    int[] column = new int[numRows];
+
+    for (int i = 0; i < numRows; i++)
+    {
+      Cell c = getColumnCell(col, i);
+      column[i] = c instanceof DateCell ? 
+        (int) Math.floor(((DateCell) c).getDate().getTime() / msInADay) :
+        Integer.MIN_VALUE;
+    }
+
+    return column;
+  }
+
+  /**
+   * Gets the indexes in the shared string table of the labels in the
+   * specified column
+   *
+   * @param col the column whose labels are to be returned
+   * @return the index of the label on each row, or -1 where the cell is
+   *         not a label held in the shared string table
+   */
+  public int[] getSstIndexColumn(int col)
+  {
+    int[] column = new int[numRows];
+
+    for (int i = 0; i < numRows; i++)
+    {
+      Cell c = getColumnCell(col, i);
+      column[i] = c instanceof LabelRecord ? 
+        ((LabelRecord) c).getIndex() : -1;
+    }
+
+    return column;
+  }
+
+  /**
+   * Gets a label from the shared string table
+   *
+   * @param index an index returned by getSstIndexColumn
+   * @return the label
+   */
+  public String getSharedString(int index)
+  {
+    return sharedStrings.get(index);
+  }
+
+  /**
+   * Gets the cell at the specified position for the column accessors,
+   * without creating an empty cell where there is none
+   *
+   * @param col the column
+   * @param row the row
+   * @return the cell, or NULL if there is no cell at the position
+   */
+  private Cell getColumnCell(int col, int row)
+  {
+    return row < rows.length && rows[row] != null ? 
+      rows[row].getCell(col) : null;
+  }
+
   /**
    * Gets the name of this sheet
    * 
@@ -623,6 +738,13 @@ class WritableSheetImpl implements WritableSheet
       return;
     }
 
+    if (row < streamedRows)
+    {
+      logger.warn("Cannot insert row " + (row + 1) + 
+                  " because it has already been written out");
+      return;
+    }
+
     // Create a new array to hold the new rows.  Grow it if need be
     RowRecord[] oldRows = rows;
 
@@ -728,6 +850,13 @@ class WritableSheetImpl implements WritableSheet
       return;
     }
 
+    if (streamedRows > 0)
+    {
+      logger.warn("Cannot insert a column because rows have already " +
+                  "been written out");
+      return;
+    }
+
     // Iterate through all the row records adding in the column
     for (int i = 0 ; i < numRows ; i++)
     {
@@ -845,6 +974,13 @@ class WritableSheetImpl implements WritableSheet
       return;
     }
 
+    if (streamedRows > 0)
+    {
+      logger.warn("Cannot remove a column because rows have already " +
+                  "been written out");
+      return;
+    }
+
     // Iterate through all the row records removing the column
     for (int i = 0 ; i < numRows ; i++)
     {
@@ -999,6 +1135,13 @@ class WritableSheetImpl implements WritableSheet
       return;
     }
 
+    if (row < streamedRows)
+    {
+      logger.warn("Cannot remove row " + (row + 1) + 
+                  " because it has already been written out");
+      return;
+    }
+
     // Create a new array to hold the new rows.  Grow it if need be
     RowRecord[] oldRows = rows;
 
@@ -1148,6 +1291,11 @@ class WritableSheetImpl implements WritableSheet
     }
 
     int row = cell.getRow();
+    if (row < streamedRows)
+    {
+      throw new JxlWriteException(JxlWriteException.rowWritten);
+    }
+
     RowRecord rowrec = getRowRecord(row);
 
     CellValue curcell = rowrec.getCell(cv.getColumn());
@@ -1197,6 +1345,62 @@ class WritableSheetImpl implements WritableSheet
     // Indicate this cell is now part of a worksheet, so that it can't be
     // added anywhere else
     cv.setCellDetails(formatRecords, sharedStrings, this);
+
+    if (workbookSettings.getStreamingWriteWindow() > 0)
+    {
+      streamRows(row);
+    }
+  }
+
+  /**
+   * Writes out the blocks of 32 rows which lie entirely outside the
+   * window of rows held in memory, and frees them.  Called when streaming
+   * after a cell has been added
+   *
+   * @param row the row to which a cell has just been added
+   * @exception WriteException
+   */
+  private void streamRows(int row) throws WriteException
+  {
+    if (copying)
+    {
+      return;
+    }
+
+    int window = workbookSettings.getStreamingWriteWindow();
+    int blocks = (row - window + 1) / 32 - streamedRows / 32;
+
+    if (blocks <= 0)
+    {
+      return;
+    }
+
+    try
+    {
+      sheetWriter.spoolRows(rows, blocks);
+    }
+    catch (IOException e)
+    {
+      logger.error("Error writing out rows", e);
+      throw new JxlWriteException(JxlWriteException.rowsNotStreamed);
+    }
+
+    for (int i = streamedRows; i < streamedRows + blocks * 32; i++)
+    {
+      rows[i] = null;
+    }
+    streamedRows += blocks * 32;
+  }
+
+  /**
+   * Discards any rows written out while streaming, once the workbook
+   * has been closed
+   *
+   * @exception IOException
+   */
+  void discardStreamedRows() throws IOException
+  {
+    sheetWriter.discardSpooledRows();
   }
 
   /** 
@@ -1206,8 +1410,29 @@ class WritableSheetImpl implements WritableSheet
    * @param row the row number we are interested in
    * @return the row record at the specified row
    * @exception RowsExceededException
+   * @exception JxlWriteException if the row has been written out
+   */
+  RowRecord getRowRecord(int row) throws JxlWriteException
+  {
+    // Rows which have been written out while streaming are not held, so
+    // they can no longer be changed
+    if (row < streamedRows)
+    {
+      throw new JxlWriteException(JxlWriteException.rowWritten);
+    }
+
+    return getHeldRowRecord(row);
+  }
+
+  /** 
+   * Gets the row record at the specified row number, which has not been
+   * written out, growing the array as needs dictate
+   * 
+   * @param row the row number we are interested in
+   * @return the row record at the specified row
+   * @exception RowsExceededException
    */
-  RowRecord getRowRecord(int row) throws RowsExceededException
+  private RowRecord getHeldRowRecord(int row) throws RowsExceededException
   {
     if (row >= numRowsPerSheet)
     {
@@ -1290,6 +1515,10 @@ class WritableSheetImpl implements WritableSheet
   public void setName(String n)
   {
     name = n;
+
+    // Formulas referring to this sheet by name would now be parsed
+    // differently
+    workbook.getFormulaCache().clear();
   }
 
   /**
@@ -1487,7 +1716,16 @@ class WritableSheetImpl implements WritableSheet
    */
   public void setRowView(int row, CellView view) throws RowsExceededException
   {
-    RowRecord rowrec = getRowRecord(row);
+    // A row which has been written out while streaming can no longer be
+    // changed, but this cannot be reported through the exceptions declared
+    if (row < streamedRows)
+    {
+      logger.warn("Row " + (row + 1) + " has already been written out - " +
+                  "its view is not set");
+      return;
+    }
+
+    RowRecord rowrec = getHeldRowRecord(row);
 
     XFRecord xfr =  (XFRecord) view.getFormat();
 
@@ -1526,6 +1764,68 @@ class WritableSheetImpl implements WritableSheet
    * @exception IOException 
    */
   public void write() throws IOException
+  {
+    if (rawCopier != null)
+    {
+      rawCopier.write(outputFile);
+      return;
+    }
+
+    prepareSheetWriter();
+    sheetWriter.write();
+  }
+
+  /**
+   * Writes out this sheet on its own, so that it may be written at the
+   * same time as other sheets.  The sheet is subsequently added to the
+   * workbook by appendSheet
+   *
+   * @exception IOException
+   */
+  void writeSheet() throws IOException
+  {
+    // Records which are written out unchanged are copied straight into
+    // the workbook when the sheet is appended
+    if (rawCopier != null)
+    {
+      return;
+    }
+
+    prepareSheetWriter();
+    sheetWriter.writeSheet();
+  }
+
+  /**
+   * Adds the sheet written out by writeSheet to the workbook
+   *
+   * @exception IOException
+   */
+  void appendSheet() throws IOException
+  {
+    if (rawCopier != null)
+    {
+      rawCopier.write(outputFile);
+      return;
+    }
+
+    sheetWriter.appendSheet();
+  }
+
+  /**
+   * Discards the sheet written out by writeSheet, when the workbook could
+   * not be written
+   *
+   * @exception IOException
+   */
+  void discardSheet() throws IOException
+  {
+    sheetWriter.discardSheet();
+  }
+
+  /**
+   * Passes the contents of this sheet to the sheet writer
+   */
+  private void prepareSheetWriter()
   {
     boolean dmod = drawingsModified;
     if (workbook.getDrawingGroup() != null)
@@ -1554,8 +1854,6 @@ class WritableSheetImpl implements WritableSheet
     sheetWriter.setDataValidation(dataValidation, validatedCells);
     sheetWriter.setConditionalFormats(conditionalFormats);
     sheetWriter.setAutoFilter(autoFilter);
-    
-    sheetWriter.write();
   }
 
   /**
@@ -1581,7 +1879,15 @@ class WritableSheetImpl implements WritableSheet
     si.setConditionalFormats(conditionalFormats);
     si.setValidatedCells(validatedCells);
 
-    si.copySheet();
+    copying = true;
+    try
+    {
+      si.copySheet();
+    }
+    finally
+    {
+      copying = false;
+    }
 
     dataValidation = si.getDataValidation();
     comboBox = si.getComboBox();
@@ -1594,6 +1900,44 @@ class WritableSheetImpl implements WritableSheet
     maxColumnOutlineLevel = si.getMaxColumnOutlineLevel();
   }
 
+  /**
+   * Copies a sheet by writing out the records it was read from, rather
+   * than copying its cells
+   *
+   * @param rsc the copier for the sheet
+   * @return TRUE if the sheet is written out unchanged, FALSE if it must
+   *         be copied cell by cell instead
+   */
+  boolean copyRaw(RawSheetCopier rsc)
+  {
+    if (!rsc.copySheet())
+    {
+      return false;
+    }
+
+    rawCopier = rsc;
+    settings.setHidden(rsc.isHidden());
+    settings.setSelected(rsc.isSelected());
+    return true;
+  }
+
+  /**
+   * Copies the cells of a sheet which was to be written out unchanged,
+   * now that the sheet is being accessed.  Does nothing if the sheet
+   * has already been copied cell by cell
+   */
+  void copyCells()
+  {
+    if (rawCopier == null)
+    {
+      return;
+    }
+
+    RawSheetCopier rsc = rawCopier;
+    rawCopier = null;
+    copy(rsc.getSheet());
+  }
+
   /**
    * Copies the specified sheet, row by row and cell by cell
    * 
@@ -1619,7 +1963,15 @@ class WritableSheetImpl implements WritableSheet
     sc.setHyperlinks(si.hyperlinks, hyperlinks);
     sc.setValidatedCells(validatedCells);
 
-    sc.copySheet();
+    copying = true;
+    try
+    {
+      sc.copySheet();
+    }
+    finally
+    {
+      copying = false;
+    }
 
     dataValidation = sc.getDataValidation();
     plsRecord = sc.getPLSRecord();
@@ -2199,6 +2551,54 @@ class WritableSheetImpl implements WritableSheet
     sheetWriter.checkMergedBorders();
   }
 
+  /**
+   * Evaluates the formulas which have been added to this sheet, so that
+   * they are written out with their values.  Formulas copied from a
+   * workbook which has been read in already hold their values, and rows
+   * which have already been streamed out are not evaluated
+   *
+   * @param fe the formula evaluator of the workbook
+   */
+  void evaluateFormulas(FormulaEvaluator fe)
+  {
+    if (rawCopier != null)
+    {
+      return;
+    }
+
+    ArrayList formulas = new ArrayList();
+    for (int i = 0; i < rows.length; i++)
+    {
+      if (rows[i] == null)
+      {
+        continue;
+      }
+
+      for (int j = 0; j < rows[i].getMaxColumn(); j++)
+      {
+        CellValue c = rows[i].getCell(j);
+        if (c instanceof FormulaRecord)
+        {
+          formulas.add(c);
+        }
+      }
+    }
+
+    if (formulas.isEmpty())
+    {
+      return;
+    }
+
+    Cell[] cells = (Cell[]) formulas.toArray(new Cell[formulas.size()]);
+    fe.evaluateFormulas(this, cells);
+
+    for (int i = 0; i < cells.length; i++)
+    {
+      ((FormulaRecord) cells[i]).setEvaluatedValue
+        (fe.getValue(this, cells[i].getColumn(), cells[i].getRow()));
+    }
+  }
+
   /**
    * Accessor for the workspace options
    *
@@ -2219,6 +2619,12 @@ class WritableSheetImpl implements WritableSheet
                    IndexMapping fontMapping, 
                    IndexMapping formatMapping)
   {
+    if (rawCopier != null)
+    {
+      rawCopier.rationalize(xfMapping);
+      return;
+    }
+
     // Rationalize the column formats
     for (Iterator i = columnFormats.iterator() ; i.hasNext() ;)
     {
@@ -2331,9 +2737,10 @@ class WritableSheetImpl implements WritableSheet
       }
       return cv;
     }
-    catch (RowsExceededException e)
+    catch (JxlWriteException e)
     {
-      // Simple return the default
+      // The row is beyond the maximum or has been written out while
+      // streaming, so simply return the default
       cv.setDimension(settings.getDefaultRowHeight());
       cv.setSize(settings.getDefaultRowHeight());
       return cv;
@@ -2696,7 +3103,15 @@ class WritableSheetImpl implements WritableSheet
     si.setImages(images);
     si.setValidatedCells(validatedCells);
 
-    si.importSheet();
+    copying = true;
+    try
+    {
+      si.importSheet();
+    }
+    finally
+    {
+      copying = false;
+    }
 
     dataValidation = si.getDataValidation();
     comboBox = si.getComboBox();
@@ -21,10 +21,17 @@ package jxl.write.biff;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import jxl.common.Assert;
 import jxl.common.Logger;
@@ -48,6 +55,8 @@ import jxl.biff.drawing.DrawingGroup;
 import jxl.biff.drawing.DrawingGroupObject;
 import jxl.biff.drawing.Origin;
 import jxl.biff.formula.ExternalSheet;
+import jxl.biff.formula.FormulaCache;
+import jxl.biff.formula.FormulaEvaluator;
 import jxl.format.Colour;
 import jxl.format.RGB;
 import jxl.read.biff.WorkbookParser;
@@ -130,6 +139,11 @@ public class WritableWorkbookImpl extends WritableWorkbook
    */
   private ArrayList rcirCells;
 
+  /**
+   * The formulas parsed so far, shared by the cells with the same formula
+   */
+  private FormulaCache formulaCache;
+
   /**
    * The drawing group
    */
@@ -182,13 +196,14 @@ public class WritableWorkbookImpl extends WritableWorkbook
     super();
     outputFile = new File(os, ws, null);
     sheets = new ArrayList();
-    sharedStrings = new SharedStrings();
+    sharedStrings = new SharedStrings(ws.getMaximumSharedStrings());
     nameRecords = new HashMap();
     closeStream = cs;
     wbProtected = false;
     containsMacros = false;
     settings = ws;
     rcirCells = new ArrayList();
+    formulaCache = new FormulaCache(ws.getFormulaCacheSize());
     styles = new Styles();
 
     // Reset the statically declared styles.  These are no longer needed
@@ -212,6 +227,10 @@ public class WritableWorkbookImpl extends WritableWorkbook
     WritableFormattingRecords wfr = new WritableFormattingRecords(fonts, 
                                                                   styles);
     formatRecords = wfr;
+
+    // Identical formats share an index from when they are first used, so
+    // that the format records hold no duplicates to be rationalized
+    formatRecords.setShareDuplicateStyles(true);
   }
 
   /**
@@ -249,13 +268,15 @@ public class WritableWorkbookImpl extends WritableWorkbook
 
     closeStream = cs;
     sheets = new ArrayList();
-    sharedStrings = new SharedStrings();
+    sharedStrings = new SharedStrings(ws.getMaximumSharedStrings());
     nameRecords = new HashMap();
     fonts = wp.getFonts();
     formatRecords = wp.getFormattingRecords();
+    formatRecords.setShareDuplicateStyles(true);
     wbProtected = false;
     settings = ws;
     rcirCells = new ArrayList();
+    formulaCache = new FormulaCache(ws.getFormulaCacheSize());
     styles = new Styles();
     outputFile = new File(os, ws, wp.getCompoundFile());
 
@@ -379,7 +400,7 @@ public class WritableWorkbookImpl extends WritableWorkbook
 
     for (int i = 0 ; i < sheetNames.length ; i++)
     {
-      sheetNames[i] = getSheet(i).getName();
+      sheetNames[i] = ((WritableSheet) sheets.get(i)).getName();
     }
 
     return sheetNames;
@@ -405,7 +426,12 @@ public class WritableWorkbookImpl extends WritableWorkbook
    */
   public WritableSheet getSheet(int index)
   {
-    return (WritableSheet) sheets.get(index);
+    WritableSheetImpl ws = (WritableSheetImpl) sheets.get(index);
+
+    // A sheet being copied unchanged must be copied cell by cell once it
+    // is accessed
+    ws.copyCells();
+    return ws;
   }
 
   /**
@@ -428,6 +454,7 @@ public class WritableWorkbookImpl extends WritableWorkbook
       if (s.getName().equals(name))
       {
         found = true;
+        ((WritableSheetImpl) s).copyCells();
       }
     }
 
@@ -454,6 +481,12 @@ public class WritableWorkbookImpl extends WritableWorkbook
   public void close() throws IOException, JxlWriteException
   {
     outputFile.close(closeStream);
+
+    // Discard any rows written out while the sheets were streamed
+    for (int i = 0; i < sheets.size(); i++)
+    {
+      ((WritableSheetImpl) sheets.get(i)).discardStreamedRows();
+    }
   }
 
   /**
@@ -470,6 +503,27 @@ public class WritableWorkbookImpl extends WritableWorkbook
     outputFile.setOutputFile(fos);
   }
 
+  /**
+   * Gets an evaluator for the formulas in this workbook
+   *
+   * @return a formula evaluator
+   */
+  public FormulaEvaluator getFormulaEvaluator()
+  {
+    return new FormulaEvaluator(this, this, settings, false);
+  }
+
+  /**
+   * Accessor for the formulas parsed so far.  Also gives the number of
+   * formulas which were found already parsed
+   *
+   * @return the formula cache
+   */
+  public FormulaCache getFormulaCache()
+  {
+    return formulaCache;
+  }
+
 
   /**
    * The internal method implementation for creating new sheets
@@ -568,6 +622,9 @@ public class WritableWorkbookImpl extends WritableWorkbook
       externSheet.sheetRemoved(pos);
     }
 
+    // Formulas referring to sheets by name would now be parsed differently
+    formulaCache.clear();
+
     if (supbooks != null && supbooks.size() > 0)
     {
       SupbookRecord supbook = (SupbookRecord) supbooks.get(0);
@@ -615,8 +672,10 @@ public class WritableWorkbookImpl extends WritableWorkbook
     toIndex   = Math.max(toIndex, 0);
     toIndex   = Math.min(toIndex, sheets.size() - 1);
 
-    WritableSheet sheet= (WritableSheet)sheets.remove(fromIndex);
+    WritableSheetImpl sheet = (WritableSheetImpl) sheets.remove(fromIndex);
     sheets.add(toIndex, sheet);
+    sheet.copyCells();
+    formulaCache.clear();
     
     return sheet;
   }
@@ -635,7 +694,7 @@ public class WritableWorkbookImpl extends WritableWorkbook
     WritableSheetImpl wsi = null;
     for (int i = 0; i < getNumberOfSheets(); i++)
     {
-      wsi = (WritableSheetImpl) getSheet(i);
+      wsi = (WritableSheetImpl) sheets.get(i);
 
       // Check the merged records.  This has to be done before the
       // globals are written out because some more XF formats might be created
@@ -695,8 +754,22 @@ public class WritableWorkbookImpl extends WritableWorkbook
       }
     }
     
-    // Rationalize all the XF and number formats
-    if (!settings.getRationalizationDisabled())
+    // Evaluate the formulas added to the sheets, so that they are written
+    // out with their values
+    if (settings.getFormulaEvaluation())
+    {
+      FormulaEvaluator fe = getFormulaEvaluator();
+      for (int i = 0; i < getNumberOfSheets(); i++)
+      {
+        ((WritableSheetImpl) sheets.get(i)).evaluateFormulas(fe);
+      }
+    }
+
+    // Rationalize all the XF and number formats.  Rows which have been
+    // written out while streaming refer to the formats by index, so when
+    // streaming the formats are only made unique as they are added
+    if (!settings.getRationalizationDisabled() &&
+        settings.getStreamingWriteWindow() == 0)
     {
       rationalize();
     }
@@ -781,7 +854,7 @@ public class WritableWorkbookImpl extends WritableWorkbook
     int selectedSheetIndex = 0;
     for (int i = 0 ; i < getNumberOfSheets() && !sheetSelected ; i++)
     {
-      wsheet = (WritableSheetImpl) getSheet(i);
+      wsheet = (WritableSheetImpl) sheets.get(i);
       if (wsheet.getSettings().isSelected())
       {
         sheetSelected = true;
@@ -791,7 +864,7 @@ public class WritableWorkbookImpl extends WritableWorkbook
 
     if (!sheetSelected)
     {
-      wsheet = (WritableSheetImpl) getSheet(0);
+      wsheet = (WritableSheetImpl) sheets.get(0);
       wsheet.getSettings().setSelected(true);
       selectedSheetIndex = 0;
     }
@@ -841,7 +914,7 @@ public class WritableWorkbookImpl extends WritableWorkbook
     for (int i = 0; i < getNumberOfSheets(); i++)
     {
       boundsheetPos[i] = outputFile.getPos();
-      sheet = getSheet(i);
+      sheet = (Sheet) sheets.get(i);
       BoundsheetRecord br = new BoundsheetRecord(sheet.getName());
       if (sheet.getSettings().isHidden())
       {
@@ -936,6 +1009,12 @@ public class WritableWorkbookImpl extends WritableWorkbook
     EOFRecord eof = new EOFRecord();
     outputFile.write(eof);
 
+    // Write out several sheets at once, if configured to do so
+    if (settings.getWriteThreads() > 1 && getNumberOfSheets() > 1)
+    {
+      writeSheets(boundsheetPos);
+      return;
+    }
 
     // Write out the sheets
     for (int i = 0; i < getNumberOfSheets(); i++)
@@ -946,11 +1025,152 @@ public class WritableWorkbookImpl extends WritableWorkbook
         (IntegerHelper.getFourBytes(outputFile.getPos()),
          boundsheetPos[i] + 4);
 
-      wsheet = (WritableSheetImpl) getSheet(i);
+      wsheet = (WritableSheetImpl) sheets.get(i);
       wsheet.write();
     }
   }
 
+  /**
+   * Writes out the sheets using a pool of threads.  Each sheet is written
+   * out on its own, and is appended to the workbook once the sheets
+   * before it have been
+   *
+   * @param boundsheetPos the positions of the boundsheet records
+   * @exception IOException
+   */
+  private void writeSheets(int[] boundsheetPos) throws IOException
+  {
+    int numSheets = getNumberOfSheets();
+    ExecutorService executor = Executors.newFixedThreadPool
+      (Math.min(settings.getWriteThreads(), numSheets));
+    Future[] futures = new Future[numSheets];
+    boolean written = false;
+
+    // The styles are created when first used, so make sure this happens
+    // before the sheets are written out
+    styles.getNormalStyle();
+    styles.getDefaultDateFormat();
+
+    try
+    {
+      for (int i = 0; i < numSheets; i++)
+      {
+        final WritableSheetImpl wsheet = (WritableSheetImpl) sheets.get(i);
+        futures[i] = executor.submit(new Callable()
+        {
+          public Object call() throws IOException
+          {
+            wsheet.writeSheet();
+            return null;
+          }
+        });
+      }
+
+      for (int i = 0; i < numSheets; i++)
+      {
+        waitForSheet(futures[i]);
+
+        // first go back and modify the offset we wrote out for the
+        // boundsheet record
+        outputFile.setData
+          (IntegerHelper.getFourBytes(outputFile.getPos()),
+           boundsheetPos[i] + 4);
+
+        ((WritableSheetImpl) sheets.get(i)).appendSheet();
+      }
+
+      written = true;
+    }
+    finally
+    {
+      executor.shutdown();
+
+      if (!written)
+      {
+        discardSheets(futures);
+      }
+    }
+  }
+
+  /**
+   * Waits for a sheet to be written out, passing on anything thrown
+   * while writing it
+   *
+   * @param future the task writing out the sheet
+   * @exception IOException
+   */
+  private void waitForSheet(Future future) throws IOException
+  {
+    try
+    {
+      future.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (ExecutionException e)
+    {
+      Throwable t = e.getCause();
+      if (t instanceof IOException)
+      {
+        throw (IOException) t;
+      }
+      else if (t instanceof Error)
+      {
+        throw (Error) t;
+      }
+      throw (RuntimeException) t;
+    }
+  }
+
+  /**
+   * Discards the sheets written out by a pool of threads, after the
+   * workbook could not be written.  Sheets not yet started are cancelled,
+   * and the others are discarded once they finish
+   *
+   * @param futures the tasks writing out the sheets
+   */
+  private void discardSheets(Future[] futures)
+  {
+    for (int i = 0; i < futures.length; i++)
+    {
+      if (futures[i] != null)
+      {
+        futures[i].cancel(false);
+      }
+    }
+
+    try
+    {
+      for (int i = 0; i < futures.length; i++)
+      {
+        if (futures[i] != null && !futures[i].isCancelled())
+        {
+          try
+          {
+            futures[i].get();
+          }
+          catch (ExecutionException e)
+          {
+            // Already reported for the first sheet which failed
+          }
+        }
+
+        ((WritableSheetImpl) sheets.get(i)).discardSheet();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    catch (IOException e)
+    {
+      logger.warn("Could not discard sheet: " + e.getMessage());
+    }
+  }
+
   /**
    * Produces a writable copy of the workbook passed in by 
    * creating copies of each sheet in the specified workbook and adding 
@@ -964,8 +1184,32 @@ public class WritableWorkbookImpl extends WritableWorkbook
     wbProtected = w.isProtected();
     Sheet s = null;
     WritableSheetImpl ws = null;
+
+    // When passing sheets through unchanged, the strings of the workbook
+    // are added to the shared strings as they are found on each sheet
+    int[] stringMapping = null;
+    if (settings.getSheetPassthrough())
+    {
+      stringMapping = 
+        new int[((WorkbookParser) w).getNumberOfSharedStrings()];
+      Arrays.fill(stringMapping, -1);
+    }
+
     for (int i = 0 ; i < numSheets; i++)
     {
+      if (stringMapping != null)
+      {
+        RawSheetCopier rsc = new RawSheetCopier
+          ((WorkbookParser) w, i, sharedStrings, stringMapping);
+        ws = (WritableSheetImpl) createSheet(rsc.getName(), i, false);
+
+        if (!ws.copyRaw(rsc))
+        {
+          ws.copy(w.getSheet(i));
+        }
+        continue;
+      }
+
       s = w.getSheet(i);
       ws = (WritableSheetImpl) createSheet(s.getName(),i, false);
       ws.copy(s);
@@ -1069,7 +1313,7 @@ public class WritableWorkbookImpl extends WritableWorkbook
     if (sr.getType() == SupbookRecord.INTERNAL)
     {
       // It's an internal reference - get the name from the sheets list
-      WritableSheet ws = getSheet(firstTab);
+      WritableSheet ws = (WritableSheet) sheets.get(firstTab);
 
       return ws.getName();
     }
@@ -1100,7 +1344,7 @@ public class WritableWorkbookImpl extends WritableWorkbook
     if (sr.getType() == SupbookRecord.INTERNAL)
     {
       // It's an internal reference - get the name from the sheets list
-      WritableSheet ws = getSheet(lastTab);
+      WritableSheet ws = (WritableSheet) sheets.get(lastTab);
 
       return ws.getName();
     }
@@ -1172,7 +1416,7 @@ public class WritableWorkbookImpl extends WritableWorkbook
    * @param sheetName 
    * @return the sheet index or -1 if the sheet could not be found
    */
-  public int getExternalSheetIndex(String sheetName)
+  public synchronized int getExternalSheetIndex(String sheetName)
   {
     if (externSheet == null)
     {
@@ -1263,7 +1507,7 @@ public class WritableWorkbookImpl extends WritableWorkbook
    * @param sheetName 
    * @return the sheet index or -1 if the sheet could not be found
    */
-  public int getLastExternalSheetIndex(String sheetName)
+  public synchronized int getLastExternalSheetIndex(String sheetName)
   {
     if (externSheet == null)
     {
@@ -1319,6 +1563,16 @@ public class WritableWorkbookImpl extends WritableWorkbook
     formatRecords.setColourRGB(c,r,g,b);
   }
 
+  /**
+   * Gets the number of extended format (XF) records in this workbook
+   *
+   * @return the number of XF records
+   */
+  public int getNumberOfXFRecords()
+  {
+    return formatRecords.getNumberOfXFRecords();
+  }
+
   /**
    * Accessor for the RGB value for the specified colour
    *
@@ -1685,6 +1939,9 @@ public class WritableWorkbookImpl extends WritableWorkbook
       {
         logger.warn("Could not remove " + name + " from index lookups");
       }
+
+      // The indices of the names which follow have changed
+      formulaCache.clear();
     }
   }
 
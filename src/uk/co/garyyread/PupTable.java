@@ -0,0 +1,324 @@
+package uk.co.garyyread;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Earliest sighting of each pup for each age class, keyed by pup ID. Pups
+ * are held as records in parallel primitive arrays, found through an
+ * open-addressing hash table, so looking up and updating a pup allocates
+ * nothing.
+ *
+ * @version 3.1
+ * @author Gary Read
+ * @since 2015
+ */
+public class PupTable {
+
+    /**
+     * Number of age classes, C0 to C5.
+     */
+    public static final int AGE_CLASSES = 6;
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    //Hash table of record numbers, always at most half full
+    private int[] slots;
+    private int mask;
+
+    //Records, one per pup, dates and julian dates indexed by record * AGE_CLASSES + class
+    private int size;
+    private int[] ids;
+    private int[] beaches;
+    private int[] colours;
+    private int[] dates;
+    private double[] julianDates;
+    private byte[] sightings;
+    private byte[] julianSightings;
+
+    //Beach names, stored once and referred to by code
+    private final ArrayList<String> beachNames;
+    private final HashMap<String, Integer> beachCodes;
+
+    /**
+     * Public class constructor...
+     */
+    public PupTable() {
+        this.slots = new int[INITIAL_CAPACITY * 2];
+        this.mask = slots.length - 1;
+        Arrays.fill(slots, EMPTY);
+
+        this.size = 0;
+        this.ids = new int[INITIAL_CAPACITY];
+        this.beaches = new int[INITIAL_CAPACITY];
+        this.colours = new int[INITIAL_CAPACITY];
+        this.dates = new int[INITIAL_CAPACITY * AGE_CLASSES];
+        this.julianDates = new double[INITIAL_CAPACITY * AGE_CLASSES];
+        this.sightings = new byte[INITIAL_CAPACITY];
+        this.julianSightings = new byte[INITIAL_CAPACITY];
+
+        this.beachNames = new ArrayList<>();
+        this.beachCodes = new HashMap<>();
+    }
+
+    /**
+     * Convert a pup ID as written in the survey to a number. Only plain
+     * whole numbers are accepted, as written by Integer.toString, so each
+     * number stands for exactly one ID.
+     *
+     * @param idStr Pup ID from the survey.
+     * @return The ID, -1 if it is not a plain whole number.
+     */
+    public static int parseId(String idStr) {
+        int len = idStr.length();
+        if (len == 0 || len > 9 || (len > 1 && idStr.charAt(0) == '0')) {
+            return -1;
+        }
+
+        int id = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = idStr.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return -1;
+            }
+            id = id * 10 + (ch - '0');
+        }
+        return id;
+    }
+
+    /**
+     * Find the record of a pup.
+     *
+     * @param id Pup ID.
+     * @return Record number, -1 if the pup has not been seen.
+     */
+    public int find(int id) {
+        for (int s = hash(id) & mask; slots[s] != EMPTY; s = (s + 1) & mask) {
+            if (ids[slots[s]] == id) {
+                return slots[s];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add a record for a pup which has not been seen before.
+     *
+     * @param id Pup ID.
+     * @param beach Code of the beach the pup was seen on.
+     * @param colour Colour of the pup ID cell.
+     * @return Record number of the pup.
+     */
+    public int add(int id, int beach, int colour) {
+        if (size == ids.length) {
+            grow();
+        }
+
+        int rec = size++;
+        ids[rec] = id;
+        beaches[rec] = beach;
+        colours[rec] = colour;
+
+        int s = hash(id) & mask;
+        while (slots[s] != EMPTY) {
+            s = (s + 1) & mask;
+        }
+        slots[s] = rec;
+        return rec;
+    }
+
+    /**
+     * Record the beach and colour a pup was last seen with.
+     *
+     * @param rec Record number of the pup.
+     * @param beach Code of the beach the pup was seen on.
+     * @param colour Colour of the pup ID cell.
+     */
+    public void setBeachAndColour(int rec, int beach, int colour) {
+        beaches[rec] = beach;
+        colours[rec] = colour;
+    }
+
+    /**
+     * Record the sighting of a pup in an age class, replacing any earlier
+     * sighting in that class.
+     *
+     * @param rec Record number of the pup.
+     * @param ageClass Age class, 0 to 5.
+     * @param epochDay Date of the sighting, as days since 1970-01-01.
+     * @param julianStr Julian date of the sighting as written in the survey.
+     */
+    public void setSighting(int rec, int ageClass, int epochDay, String julianStr) {
+        int i = rec * AGE_CLASSES + ageClass;
+        dates[i] = epochDay;
+        sightings[rec] |= 1 << ageClass;
+
+        try {
+            julianDates[i] = Double.parseDouble(julianStr);
+            julianSightings[rec] |= 1 << ageClass;
+        } catch (NumberFormatException ex) {
+            julianSightings[rec] &= ~(1 << ageClass);
+        }
+    }
+
+    /**
+     * Check whether a pup has been seen in an age class.
+     *
+     * @param rec Record number of the pup.
+     * @param ageClass Age class, 0 to 5.
+     * @return True if a date is held for the class.
+     */
+    public boolean hasDate(int rec, int ageClass) {
+        return (sightings[rec] & (1 << ageClass)) != 0;
+    }
+
+    /**
+     * Get the earliest date a pup was seen in an age class.
+     *
+     * @param rec Record number of the pup.
+     * @param ageClass Age class, 0 to 5.
+     * @return Days since 1970-01-01, only meaningful when hasDate is true.
+     */
+    public int getDate(int rec, int ageClass) {
+        return dates[rec * AGE_CLASSES + ageClass];
+    }
+
+    /**
+     * Check whether a number is held for the julian date of an age class.
+     *
+     * @param rec Record number of the pup.
+     * @param ageClass Age class, 0 to 5.
+     * @return True if the julian date of the sighting was a number.
+     */
+    public boolean hasJulianDate(int rec, int ageClass) {
+        return (julianSightings[rec] & (1 << ageClass)) != 0;
+    }
+
+    /**
+     * Get the julian date of the earliest sighting in an age class.
+     *
+     * @param rec Record number of the pup.
+     * @param ageClass Age class, 0 to 5.
+     * @return Julian date, only meaningful when hasJulianDate is true.
+     */
+    public double getJulianDate(int rec, int ageClass) {
+        return julianDates[rec * AGE_CLASSES + ageClass];
+    }
+
+    /**
+     * Get the code of a beach, adding the beach if it is new.
+     *
+     * @param beach Beach name.
+     * @return Code of the beach.
+     */
+    public int beachCode(String beach) {
+        Integer code = beachCodes.get(beach);
+        if (code == null) {
+            code = beachNames.size();
+            beachNames.add(beach);
+            beachCodes.put(beach, code);
+        }
+        return code;
+    }
+
+    /**
+     * Get the name of the beach a pup was last seen on.
+     *
+     * @param rec Record number of the pup.
+     * @return Beach name.
+     */
+    public String getBeach(int rec) {
+        return beachNames.get(beaches[rec]);
+    }
+
+    /**
+     * Get the colour of the pup ID cell a pup was last seen with.
+     *
+     * @param rec Record number of the pup.
+     * @return Colour value.
+     */
+    public int getColour(int rec) {
+        return colours[rec];
+    }
+
+    /**
+     * Get the ID of a pup.
+     *
+     * @param rec Record number of the pup.
+     * @return Pup ID.
+     */
+    public int getId(int rec) {
+        return ids[rec];
+    }
+
+    /**
+     * Get the number of pups held.
+     *
+     * @return Number of records.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Describe a record for debugging, laid out as
+     * {BEACH,ID,COLOUR,C0D,C1D,C2D,C3D,C4D,C5D,C0J,C1J,C2J,C3J,C4J,C5J}.
+     *
+     * @param rec Record number of the pup, can be -1.
+     * @return Record as strings, null if rec is -1.
+     */
+    public String[] toArray(int rec) {
+        if (rec == -1) {
+            return null;
+        }
+
+        String[] arr = new String[3 + AGE_CLASSES * 2];
+        arr[0] = getBeach(rec);
+        arr[1] = "" + ids[rec];
+        arr[2] = "" + colours[rec];
+        for (int c = 0; c < AGE_CLASSES; c++) {
+            arr[3 + c] = hasDate(rec, c) ? LocalDate.ofEpochDay(getDate(rec, c)).toString() : "";
+            arr[3 + AGE_CLASSES + c] = hasJulianDate(rec, c) ? "" + getJulianDate(rec, c) : "";
+        }
+        return arr;
+    }
+
+    /**
+     * Spread pup IDs, which are mostly consecutive, across the hash table.
+     *
+     * @param id Pup ID.
+     * @return Hash of the ID.
+     */
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Double the room for records and rebuild the hash table.
+     */
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        beaches = Arrays.copyOf(beaches, capacity);
+        colours = Arrays.copyOf(colours, capacity);
+        dates = Arrays.copyOf(dates, capacity * AGE_CLASSES);
+        julianDates = Arrays.copyOf(julianDates, capacity * AGE_CLASSES);
+        sightings = Arrays.copyOf(sightings, capacity);
+        julianSightings = Arrays.copyOf(julianSightings, capacity);
+
+        slots = new int[capacity * 2];
+        mask = slots.length - 1;
+        Arrays.fill(slots, EMPTY);
+        for (int rec = 0; rec < size; rec++) {
+            int s = hash(ids[rec]) & mask;
+            while (slots[s] != EMPTY) {
+                s = (s + 1) & mask;
+            }
+            slots[s] = rec;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package uk.co.garyyread;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless batch runner for the survey processor. The sheets of many
+ * workbooks are processed together on a work-stealing pool, and the time
+ * taken and rows read are reported for each workbook. Swing is never used,
+ * all messages go to system out and system err.
+ *
+ * @version 3.1
+ * @author Gary Read
+ * @since 2015
+ */
+public class SurveyBatch {
+
+    private static final String USAGE
+            = "Usage: SurveyProcessor [-o dir] [-t threads] [-s sheet]... [-d] input...\n"
+            + "       SurveyProcessor workbook sheet...\n"
+            + "  input       workbook, directory of .xls workbooks or glob such as \"surveys/**/*.xls\"\n"
+            + "  -o dir      directory to write results to, default is the working directory\n"
+            + "  -t threads  number of sheets to process at once, default is one per processor\n"
+            + "  -s sheet    sheet to process, may be repeated, default is every sheet\n"
+            + "  -d          print debugging information\n"
+            + "Results are written as <workbook>_<sheet>_result.xls, or as <sheet>_result.xls\n"
+            + "when sheets are named after a single workbook with no options.";
+
+    //Exit statuses
+    private static final int OK = 0;
+    private static final int FAILED = 1;
+    private static final int BAD_ARGUMENTS = 2;
+
+    private final List<String> inputs;
+    private final List<String> sheets;
+    private File outputDir;
+    private int threads;
+    private boolean debug;
+
+    /**
+     * Public class constructor...
+     */
+    public SurveyBatch() {
+        this.inputs = new ArrayList<>();
+        this.sheets = new ArrayList<>();
+        this.outputDir = null;
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.debug = false;
+    }
+
+    /**
+     * Run a batch from command line arguments.
+     *
+     * @param args Options followed by inputs, see USAGE.
+     * @return Exit status, 0 when every sheet was processed.
+     */
+    public static int run(String[] args) {
+        SurveyBatch batch = new SurveyBatch();
+
+        try {
+            if (!batch.parseArguments(args)) {
+                System.out.println(USAGE);
+                return OK;
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            return BAD_ARGUMENTS;
+        }
+
+        return batch.process();
+    }
+
+    /**
+     * Read options and inputs.
+     *
+     * @param args Command line arguments.
+     * @return False if only help was asked for.
+     */
+    private boolean parseArguments(String[] args) {
+        boolean options = true;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+
+            if (!options || !arg.startsWith("-")) {
+                inputs.add(arg);
+            } else if (arg.equals("--")) {
+                options = false;
+            } else if (arg.equals("-h") || arg.equals("--help")) {
+                return false;
+            } else if (arg.equals("-d")) {
+                debug = true;
+            } else if (arg.equals("-o")) {
+                outputDir = new File(optionValue(args, i++));
+            } else if (arg.equals("-s")) {
+                sheets.add(optionValue(args, i++));
+            } else if (arg.equals("-t")) {
+                String value = optionValue(args, i++);
+                try {
+                    threads = Integer.parseInt(value);
+                } catch (NumberFormatException ex) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    throw new IllegalArgumentException("Thread count must be a positive number: \"" + value + "\"");
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input workbooks given.");
+        }
+        return true;
+    }
+
+    /**
+     * Get the value following an option.
+     *
+     * @param args Command line arguments.
+     * @param i Position of the option.
+     * @return Value of the option.
+     */
+    private static String optionValue(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            throw new IllegalArgumentException("Missing value for option " + args[i]);
+        }
+        return args[i + 1];
+    }
+
+    /**
+     * Process every sheet of every input, reporting each workbook in the
+     * order given.
+     *
+     * @return Exit status.
+     */
+    private int process() {
+        LinkedHashSet<Path> files = new LinkedHashSet<>();
+        boolean failed = false;
+        for (String input : inputs) {
+            try {
+                List<Path> found = expandInput(input);
+                if (found.isEmpty()) {
+                    System.err.println(input + ": no workbooks found");
+                    failed = true;
+                }
+                files.addAll(found);
+            } catch (IOException ex) {
+                System.err.println(input + ": " + ex);
+                failed = true;
+            }
+        }
+
+        if (outputDir != null && !outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println(outputDir + ": output directory could not be created");
+            return FAILED;
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long totalRows = 0;
+
+        try {
+            //Workbooks are submitted together, their sheets are forked from within
+            List<ForkJoinTask<FileResult>> results = new ArrayList<>();
+            for (Path file : files) {
+                results.add(pool.submit(() -> processFile(file)));
+            }
+
+            for (ForkJoinTask<FileResult> task : results) {
+                try {
+                    FileResult result = task.join();
+                    System.out.println(result);
+                    failed |= result.failures > 0;
+                    totalRows += result.rows;
+                } catch (RuntimeException ex) {
+                    System.err.println("Workbook failed: " + ex);
+                    failed = true;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        long millis = elapsedMillis(start);
+        System.out.println(String.format("%d workbooks, %d rows in %d ms (%s rows/s)",
+                files.size(), totalRows, millis, rate(totalRows, millis)));
+
+        return failed ? FAILED : OK;
+    }
+
+    /**
+     * Process the chosen sheets of a workbook, one task per sheet.
+     *
+     * @param file Workbook to read.
+     * @return Sheets processed, rows read and time taken.
+     */
+    private FileResult processFile(Path file) {
+        long start = System.nanoTime();
+        FileResult result = new FileResult(file);
+
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+
+        SurveyProcessor sp = new SurveyProcessor();
+        sp.setInteractive(false);
+        sp.setDebugging(debug);
+        sp.setOutput(outputDir, base + "_");
+
+        if (!sp.loadWorkbook(file.toFile())) {
+            System.err.println(file + ": workbook could not be read.");
+            result.failures++;
+            result.millis = elapsedMillis(start);
+            return result;
+        }
+
+        //Chosen sheets missing from this workbook are reported, not processed
+        List<String> names = Arrays.asList(sp.getSheetNames());
+        if (!sheets.isEmpty()) {
+            List<String> chosen = new ArrayList<>();
+            for (String sheet : sheets) {
+                if (names.contains(sheet)) {
+                    chosen.add(sheet);
+                } else {
+                    System.err.println(file + ": sheet " + sheet + " doesn't exist.");
+                    result.failures++;
+                }
+            }
+            names = chosen;
+        }
+
+        List<ForkJoinTask<Integer>> tasks = new ArrayList<>();
+        for (String name : names) {
+            tasks.add(ForkJoinTask.adapt(() -> sp.processSheet(name)).fork());
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                int rows = tasks.get(i).join();
+                if (rows < 0) {
+                    result.failures++;
+                } else {
+                    result.sheets++;
+                    result.rows += rows;
+                }
+            } catch (RuntimeException ex) {
+                //join may rethrow the task's own exception, which has no cause
+                String reason = ex.getCause() == null ? ex.toString() : ex + " caused by " + ex.getCause();
+                System.err.println(file + ": sheet " + names.get(i) + " failed: " + reason);
+                result.failures++;
+            }
+        }
+
+        sp.getWorkbook().close();
+        result.millis = elapsedMillis(start);
+        return result;
+    }
+
+    /**
+     * Find the workbooks an input stands for. A directory stands for the
+     * .xls workbooks within it, a glob for the files it matches, and
+     * anything else for a single workbook.
+     *
+     * @param input Command line input.
+     * @return Workbooks found, sorted by path.
+     * @throws IOException If a directory cannot be read.
+     */
+    static List<Path> expandInput(String input) throws IOException {
+        int glob = -1;
+        for (int i = 0; i < input.length() && glob == -1; i++) {
+            if ("*?[{".indexOf(input.charAt(i)) != -1) {
+                glob = i;
+            }
+        }
+
+        if (glob == -1) {
+            Path path = Paths.get(input);
+            if (!Files.isDirectory(path)) {
+                return Collections.singletonList(path);
+            }
+
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(path)) {
+                for (Path file : dir) {
+                    if (Files.isRegularFile(file) && file.getFileName().toString().toLowerCase().endsWith(".xls")) {
+                        files.add(file);
+                    }
+                }
+            }
+            Collections.sort(files);
+            return files;
+        }
+
+        //Match the glob against paths below the directory it starts from
+        int sep = Math.max(input.lastIndexOf('/', glob), input.lastIndexOf(File.separatorChar, glob));
+        Path base = Paths.get(sep == -1 ? "." : input.substring(0, sep + 1));
+        String pattern = input.substring(sep + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        //A leading **/ also matches files directly in the directory
+        PathMatcher topMatcher = pattern.startsWith("**/")
+                ? FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(3)) : matcher;
+
+        int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("/").length;
+        if (!Files.isDirectory(base)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(base.relativize(p)) || topMatcher.matches(base.relativize(p)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Milliseconds since a time from System.nanoTime.
+     *
+     * @param start Start time in nanoseconds.
+     * @return Elapsed milliseconds.
+     */
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Format a throughput for reporting.
+     *
+     * @param rows Rows read.
+     * @param millis Time taken in milliseconds.
+     * @return Rows per second.
+     */
+    private static String rate(long rows, long millis) {
+        return millis > 0 ? "" + rows * 1000 / millis : "-";
+    }
+
+    /**
+     * Outcome of processing one workbook.
+     */
+    private static class FileResult {
+        private final Path file;
+        private int sheets;
+        private int failures;
+        private long rows;
+        private long millis;
+
+        FileResult(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d sheets, %d rows in %d ms (%s rows/s)%s",
+                    file, sheets, rows, millis, rate(rows, millis),
+                    failures > 0 ? ", " + failures + " failed" : "");
+        }
+    }
+
+    //Main method
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+}
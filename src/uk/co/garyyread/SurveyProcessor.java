@@ -1,22 +1,35 @@
 package uk.co.garyyread;
 
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import jxl.Cell;
-import jxl.Sheet;
+import jxl.ColumnProjection;
+import jxl.RowHandler;
 import jxl.Workbook;
+import jxl.WorkbookSettings;
 import jxl.format.Border;
 import jxl.format.BorderLineStyle;
 import jxl.format.Colour;
 import jxl.read.biff.BiffException;
+import jxl.write.CellFormatCache;
 import jxl.write.Label;
 import jxl.write.WritableCellFormat;
 import jxl.write.WritableSheet;
@@ -31,11 +44,30 @@ import jxl.write.WriteException;
  * @since 2015
  */
 public class SurveyProcessor {
+    /**
+     * Result workbooks are written one at a time, as jxl re-initialises its
+     * shared default formats for every writable workbook it creates.
+     */
+    private static final Object WRITE_LOCK = new Object();
+
+    /**
+     * Format survey dates are written in, shared as it is immutable.
+     */
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yy");
+
+    /**
+     * Rows of a result sheet held in memory before being written out.
+     */
+    private static final int RESULT_ROW_WINDOW = 64;
+
     private boolean debug;
+    private boolean interactive;
 
     //Non-static vars
     private Workbook workBook;
     private WritableWorkbook resultBook;
+    private File outputDir;
+    private String resultPrefix;
     private final String TAB;
     private int ROW_START;
     private int BEACH; 
@@ -43,13 +75,15 @@ public class SurveyProcessor {
     private int DATE; 
     private int JULIAN_DATE; 
     private int AGE_CLASS; 
-    private Sheet workingSheet;
 
     /**
      * Public class constructor...
      */
     public SurveyProcessor() {
         this.debug = false;
+        this.interactive = true;
+        this.outputDir = null;
+        this.resultPrefix = "";
         this.TAB = "\t";
         this.ROW_START = 1;
         this.BEACH = 0;
@@ -59,6 +93,30 @@ public class SurveyProcessor {
         this.AGE_CLASS = 4;
     }
 
+    /**
+     * Settings for reading surveys. Only a few label columns are read, so
+     * shared strings such as field notes are decoded only when asked for.
+     *
+     * @return Workbook settings.
+     */
+    private static WorkbookSettings readSettings() {
+        WorkbookSettings ws = new WorkbookSettings();
+        ws.setLazySharedStrings(true);
+        return ws;
+    }
+
+    /**
+     * Settings for writing results. Rows are written in order of pup ID, so
+     * all but the last few are written out as they are added.
+     *
+     * @return Workbook settings.
+     */
+    private static WorkbookSettings writeSettings() {
+        WorkbookSettings ws = new WorkbookSettings();
+        ws.setStreamingWriteWindow(RESULT_ROW_WINDOW);
+        return ws;
+    }
+
     /**
      * Read and assign a workbook from a string file name
      *
@@ -69,7 +127,7 @@ public class SurveyProcessor {
         boolean result = false;
 
         try {
-            workBook = Workbook.getWorkbook(new File(loc));
+            workBook = Workbook.getWorkbook(new File(loc), readSettings());
 
             if (debug) {
                 debug("readWorkBook(" + loc + ")");
@@ -91,7 +149,7 @@ public class SurveyProcessor {
         boolean result = false;
 
         try {
-            workBook = Workbook.getWorkbook(file);
+            workBook = Workbook.getWorkbook(file, readSettings());
 
             if (debug) {
                 debug("readWorkBook(" + file.getAbsolutePath() + ")");
@@ -126,122 +184,268 @@ public class SurveyProcessor {
      * Business logic...
      *
      * @param name Sheet name from workbook to work from.
+     * @return Number of rows read, -1 if the sheet was not processed.
      */
-    public void processSheet(String name) throws WriteException, IOException {
-        //Get sheet
-        this.workingSheet = workBook.getSheet(name);
+    public int processSheet(String name) throws WriteException, IOException {
+        //Stream rows straight from the sheet, nothing but the pup table is held
+        SightingHandler handler = new SightingHandler(name);
+
+        //Only the survey columns are read, notes and anything else are skipped
+        ColumnProjection columns = new ColumnProjection(new int[]{BEACH, ID, DATE, JULIAN_DATE, AGE_CLASS});
 
         //Check sheet exists
-        if (workingSheet == null) {
+        if (!workBook.streamSheet(name, handler, columns)) {
             displayMessage("Sheet " + name + " doesn't exist.");
             if (debug) {
                 debug("EXCEPTION:processSheet(" + name + "),sheet does not exist.");
             }
+            return -1;
+        }
+
+        //Rows held back at the end of the sheet
+        handler.finish();
+
+        //Fatal error in the sheet, results are not written
+        if (handler.aborted) {
+            return -1;
         }
 
-        //Get columns from working sheet
-        int ID_POS = 0;
-        int BEACH_POS = 1;
-        int AGE_CLASS_POS = 2;
-        int DATE_POS = 3;
-        int JULIAN_DATE_POS = 4;
-        Cell[][] data = new Cell[5][];
-        data[ID_POS] = workingSheet.getColumn(ID);
-        data[BEACH_POS] = workingSheet.getColumn(BEACH);
-        data[AGE_CLASS_POS] = workingSheet.getColumn(AGE_CLASS);
-        data[DATE_POS] = workingSheet.getColumn(DATE);
-        data[JULIAN_DATE_POS] = workingSheet.getColumn(JULIAN_DATE);
-
-        //debugging info - print held data
+        PupTable pups = handler.pups;
+        int idCount = handler.idCount();
         if (debug) {
-            int i;
-            for (i = 0; i < data[0].length; i++) {
+            debug("processSheet(" + name + ")" + ",row count:" + handler.rowCount);
+        }
+
+        //debugging
+        int i = 1;
+        for (i = 1; i <= idCount + 1 && debug; i++) {
+            String[] arr = pups.toArray(pups.find(i));
+            debug("id:" + i + " " + Arrays.toString(arr));
+        }
+        
+        writeResultsToWorkbook(name, pups, idCount);
+        return handler.rowCount;
+    }
+
+    /**
+     * Business logic for several sheets at once. Each sheet is streamed by
+     * its own reader over the shared workbook data, on a bounded pool of
+     * worker threads, and written to its own result workbook.
+     *
+     * @param names Sheet names from workbook to work from.
+     * @param threads Maximum number of sheets to process at once.
+     */
+    public void processSheets(List<String> names, int threads) throws WriteException, IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, names.size())));
+        List<Future<Void>> results = new ArrayList<>();
+
+        try {
+            for (String name : names) {
+                results.add(pool.submit(() -> {
+                    processSheet(name);
+                    return null;
+                }));
+            }
+
+            //Wait for every sheet, then report the first failure
+            Exception failure = null;
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                    } else {
+                        Logger.getLogger(SurveyProcessor.class.getName()).log(Level.SEVERE, null, ex.getCause());
+                    }
+                }
+            }
+
+            if (failure instanceof WriteException) {
+                throw (WriteException) failure;
+            } else if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure != null) {
+                throw new IOException(failure);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing sheets.");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Receives the rows of a sheet as they are read and collects the
+     * earliest sighting of each pup for each age class.
+     */
+    private class SightingHandler implements RowHandler {
+        private final String name;
+
+        //Pups with plain whole number IDs, the only ones written out
+        private final PupTable pups;
+        //Any other IDs, only counted
+        private final HashSet<String> otherIds;
+        //Positions of the survey columns within a held row
+        private static final int ID_POS = 0;
+        private static final int BEACH_POS = 1;
+        private static final int AGE_CLASS_POS = 2;
+        private static final int DATE_POS = 3;
+        private static final int JULIAN_DATE_POS = 4;
+        private boolean aborted;
+        private int rowCount;
+        //Survey columns, in the order a row's cells are held
+        private final int[] columns;
+        //Rows with missing cells, waiting to find out if their columns carry on
+        private final ArrayDeque<HeldRow> heldRows;
+
+        SightingHandler(String name) {
+            this.name = name;
+            this.pups = new PupTable();
+            this.otherIds = new HashSet<>();
+            this.aborted = false;
+            this.rowCount = 0;
+            this.columns = new int[]{ID, BEACH, AGE_CLASS, DATE, JULIAN_DATE};
+            this.heldRows = new ArrayDeque<>();
+        }
+
+        /**
+         * Number of distinct pup IDs seen, of any form.
+         *
+         * @return Number of IDs.
+         */
+        int idCount() {
+            return pups.size() + otherIds.size();
+        }
+
+        @Override
+        public boolean handleRow(int i, Cell[] row, int numColumns) {
+            rowCount = i + 1;
+
+            //debugging info - print held data
+            if (debug) {
                 try {
-                    debug(i + TAB + data[0][i].getContents() + TAB + data[1][i].getContents() + TAB + data[1][i].getCellFormat().getBackgroundColour().getValue() + TAB + data[2][i].getContents() + TAB + data[3][i].getContents() + TAB + data[4][i].getContents());
+                    debug(i + TAB + getContents(row, numColumns, ID) + TAB + getContents(row, numColumns, BEACH) + TAB + getCell(row, numColumns, ID).getCellFormat().getBackgroundColour().getValue() + TAB + getContents(row, numColumns, AGE_CLASS) + TAB + getContents(row, numColumns, DATE) + TAB + getContents(row, numColumns, JULIAN_DATE));
                 } catch (NullPointerException ex) {
                     debug("EXCEPTION:processSheet(" + name + "),row:" + (i+1) + " is null");
-                } catch (ArrayIndexOutOfBoundsException ex) {
-                    debug("EXCEPTION:processSheet(" + name + "),array is out of bounds at " + i);
                 }
             }
-            debug("processSheet(" + name + ")" + ",row count:" + data[0].length);
+
+            if (i < ROW_START) {
+                return true;
+            }
+
+            //A missing cell reads as empty while its column carries on below it,
+            //but rows past the end of a column are skipped. Rows with missing
+            //cells are held until a later row shows which of the two they are.
+            Cell[] cells = new Cell[columns.length];
+            int missing = 0;
+            for (int c = 0; c < columns.length; c++) {
+                cells[c] = getCell(row, numColumns, columns[c]);
+                if (cells[c] == null) {
+                    missing |= 1 << c;
+                }
+            }
+
+            for (HeldRow held : heldRows) {
+                held.missing &= missing;
+            }
+            while (!heldRows.isEmpty() && heldRows.peekFirst().missing == 0) {
+                HeldRow held = heldRows.removeFirst();
+                if (!handleSighting(held.index, held.cells)) {
+                    return false;
+                }
+            }
+
+            //Keep the rows in order behind any that are still held
+            if (missing != 0 || !heldRows.isEmpty()) {
+                heldRows.addLast(new HeldRow(i, cells, missing));
+                return true;
+            }
+            return handleSighting(i, cells);
         }
 
-        //HashMap stored data as <KEY, String[] {BEACH,ID,COLOUR,C0D,C0J,C1D,C1J,C2D,C2J,C3D,C3J,C4D,C4J,C5D,C5J}>
-        HashMap<String, String[]> map = new HashMap<>();
-        int AGE_CLASS_OFFSET = 3; //array off-set for age class
-        int JULIAN_AGE_CLASS_OFFSET = 9; //array off-set for age class for julian date
-        for (int i = ROW_START; i < data[ID_POS].length; i++) {
+        /**
+         * Handle the rows still held once the whole sheet has been read. A
+         * row still missing a cell ran past the end of that column, so it is
+         * skipped.
+         */
+        void finish() {
+            for (HeldRow held : heldRows) {
+                if (aborted) {
+                    break;
+                } else if (held.missing != 0) {
+                    if (debug) {
+                        debug("EXCEPTION:processSheet(" + name + "),missing data from row... row skipped... Past the end of a column");
+                    }
+                } else {
+                    handleSighting(held.index, held.cells);
+                }
+            }
+            heldRows.clear();
+        }
 
+        /**
+         * Collect the sighting in a row of the sheet.
+         *
+         * @param i Row number.
+         * @param cells Cells of the survey columns, null where missing.
+         * @return False if the sheet has a fatal error.
+         */
+        private boolean handleSighting(int i, Cell[] cells) {
             //Collect row data
             try {
-                String idStr = data[ID_POS][i].getContents();
-                String idColourStr = "" + data[ID_POS][i].getCellFormat().getBackgroundColour().getValue();
-                String beachStr = data[BEACH_POS][i].getContents();
-                int ageClass = sanatizeAgeClassInput(data[AGE_CLASS_POS][i].getContents());
-                LocalDate date = convertStrToDate(data[DATE_POS][i].getContents(), i);
-                String julianDate = data[JULIAN_DATE_POS][i].getContents();
+                Cell idCell = cells[ID_POS];
+                String idStr = idCell.getContents();
+                int idColour = idCell.getCellFormat().getBackgroundColour().getValue();
+                String beachStr = getContents(cells[BEACH_POS]);
+                int ageClass = sanatizeAgeClassInput(getContents(cells[AGE_CLASS_POS]));
+                int date = (int) convertStrToDate(name, getContents(cells[DATE_POS]), i).toEpochDay();
+                int id = PupTable.parseId(idStr);
+                //Julian date is only read when a sighting is kept
 
                 //Anything greater than 5 is bad!
                 if (ageClass > 5) {
-                    displayMessage("FATAL ERROR in Sheet \"" + workingSheet.getName() + "\" at row[" + (i+1) + "]"
+                    displayMessage("FATAL ERROR in Sheet \"" + name + "\" at row[" + (i+1) + "]"
                             + "\n" + "Please fix error in Class column!"
                             + "\n" + "Failed to convert text to date: \"" + ageClass + "\"");
                     debug("processSheet failed as ageClass was out of range - EXIT");
-                    return;
-
-                    //Compare date if key exists (find eariest date) then add to HashMap
-                } else if (map.containsKey(idStr)) {
-                    String[] arrOld = map.get(idStr);
-                    String dateStrOld = arrOld[ageClass + AGE_CLASS_OFFSET];
-                    LocalDate dateOld = null;
-                    if (dateStrOld.length() > 0 && ageClass != -1) {
-                        dateOld = LocalDate.parse(dateStrOld);
-                    }
+                    aborted = true;
+                    return false;
 
-                    //update colour and beach
-                    String[] arrNew = arrOld.clone();
-                    arrNew[0] = beachStr;
-                    arrNew[2] = idColourStr;
-                    if (dateOld == null && ageClass > -1) {
-                        arrNew[ageClass + AGE_CLASS_OFFSET] = date.toString();
-                        arrNew[ageClass + JULIAN_AGE_CLASS_OFFSET] = julianDate;
+                    //IDs that are not plain numbers are never written, only counted
+                } else if (id == -1) {
+                    otherIds.add(idStr);
 
-                        //update map
-                        map.put(idStr, arrNew);
+                    //New item, add straight to the table
+                } else if (pups.find(id) == -1) {
+                    int rec = pups.add(id, pups.beachCode(beachStr), idColour);
+                    if (ageClass != -1) {
+                        pups.setSighting(rec, ageClass, date, getContents(cells[JULIAN_DATE_POS]));
+                    }
 
-                        if (debug) {
-                            debug("ADDED TO EXISTING" + TAB + Arrays.toString(arrOld) + " to " + Arrays.toString(arrNew));
-                        }
+                    if (debug) {
+                        debug("NEW" + TAB + Arrays.toString(pups.toArray(rec)));
+                    }
 
-                        //Compare dates and add the earliest occurance of the seal
-                    } else if (ageClass > -1) {
-                        //Replace date if we find an ealier one
-                        if (dateOld.compareTo(date) > 0) {
-                            arrNew[ageClass + AGE_CLASS_OFFSET] = date.toString();
-                            arrNew[ageClass + JULIAN_AGE_CLASS_OFFSET] = julianDate;
+                    //Compare date if pup exists, keeping the earliest occurance of the seal
+                } else if (ageClass > -1) {
+                    int rec = pups.find(id);
+                    boolean added = !pups.hasDate(rec, ageClass);
+                    if (added || pups.getDate(rec, ageClass) > date) {
+                        String[] arrOld = debug ? pups.toArray(rec) : null;
 
-                            //update map
-                            map.put(idStr, arrNew);
+                        //update colour, beach and date
+                        pups.setBeachAndColour(rec, pups.beachCode(beachStr), idColour);
+                        pups.setSighting(rec, ageClass, date, getContents(cells[JULIAN_DATE_POS]));
 
-                            if (debug) {
-                                debug("UPDATED" + TAB + Arrays.toString(arrOld) + " to " + Arrays.toString(arrNew));
-                            }
+                        if (debug) {
+                            debug((added ? "ADDED TO EXISTING" : "UPDATED") + TAB + Arrays.toString(arrOld) + " to " + Arrays.toString(pups.toArray(rec)));
                         }
                     }
-
-                    //New item, add straight to the array
-                } else {
-                    String[] arr = {beachStr, idStr, idColourStr, "", "", "", "", "", "", "", "", "", "", "", ""};
-                    if (ageClass != -1) {
-                        arr[ageClass + AGE_CLASS_OFFSET] = date.toString();
-                        arr[ageClass + JULIAN_AGE_CLASS_OFFSET] = julianDate;
-                    }
-                    map.put(idStr, arr);
-
-                    if (debug) {
-                        debug("NEW" + TAB + Arrays.toString(arr));
-                    }
                 }
             } catch (NullPointerException ex) {
                 if (debug) {
@@ -251,34 +455,99 @@ public class SurveyProcessor {
                 if (debug) {
                     debug("EXCEPTION:processSheet(" + name + "),missing data from row... row skipped... Date Format exception");
                 }
-                return;
+                aborted = true;
+                return false;
             } catch (ArrayIndexOutOfBoundsException ex) {
                 if (debug) {
                     debug("EXCEPTION:processSheet(" + name + "),missing data from row... row skipped... Array out of bounds exception");
                 }
             }
+
+            return true;
         }
+    }
 
-        //debugging
-        int i = 1;
-        for (i = 1; i <= map.size() + 1 && debug; i++) {
-            String[] arr = map.get(i + "");
-            debug("id:" + i + " " + Arrays.toString(arr));
+    /**
+     * A row of a sheet held back until it is known whether the columns it
+     * is missing cells from carry on below it.
+     */
+    private static class HeldRow {
+        private final int index;
+        private final Cell[] cells;
+        //Bit set for each survey column still missing a cell
+        private int missing;
+
+        HeldRow(int index, Cell[] cells, int missing) {
+            this.index = index;
+            this.cells = cells;
+            this.missing = missing;
         }
-        
-        writeResultsToWorkbook(name, map);
+    }
+
+    /**
+     * Get a cell from a streamed row.
+     *
+     * @param row Cells of the row, indexed on column.
+     * @param numColumns Number of columns in use in the row.
+     * @param col Column of the cell.
+     * @return The cell, null if the row has no cell in the column.
+     */
+    private Cell getCell(Cell[] row, int numColumns, int col) {
+        return col < numColumns ? row[col] : null;
+    }
+
+    /**
+     * Get the contents of a cell from a streamed row.
+     *
+     * @param row Cells of the row, indexed on column.
+     * @param numColumns Number of columns in use in the row.
+     * @param col Column of the cell.
+     * @return The cell contents, empty if the row has no cell in the column.
+     */
+    private String getContents(Cell[] row, int numColumns, int col) {
+        return getContents(getCell(row, numColumns, col));
+    }
+
+    /**
+     * Get the contents of a cell which may be missing.
+     *
+     * @param cell The cell, null if missing.
+     * @return The cell contents, empty if the cell is missing.
+     */
+    private String getContents(Cell cell) {
+        return cell == null ? "" : cell.getContents();
     }
 
     /**
      * Write data from processSheet to a WritableWorkbook
      *
      * @param name Name to call sheet in the working workbook
-     * @param map Data to write to the sheet
+     * @param pups Data to write to the sheet
+     * @param idCount Number of distinct pup IDs seen
+     */
+    private void writeResultsToWorkbook(String name, PupTable pups, int idCount) throws WriteException, IOException {
+        synchronized (WRITE_LOCK) {
+            //Create work sheet, one result workbook per sheet
+            WritableWorkbook book = Workbook.createWorkbook(new File(outputDir, resultPrefix + name + "_result.xls"), writeSettings());
+            writeResultsToSheet(book.createSheet(name, 0), pups, idCount);
+
+            //Write data and close workbook
+            book.write();
+            if (debug) {
+                debug("writeResultsToWorkbook(" + name + ") XF records: " + book.getNumberOfXFRecords());
+            }
+            book.close();
+        }
+    }
+
+    /**
+     * Write data from processSheet to a sheet of the result workbook
+     *
+     * @param ws Sheet to write to
+     * @param pups Data to write to the sheet
+     * @param idCount Number of distinct pup IDs seen
      */
-    private void writeResultsToWorkbook(String name, HashMap<String, String[]> map) throws WriteException, IOException {
-        //Create work sheet
-        createWritableWorkbook(name + "_result.xls");
-        WritableSheet ws = resultBook.createSheet(name, 0);
+    private void writeResultsToSheet(WritableSheet ws, PupTable pups, int idCount) throws WriteException {
         
         //Write column headers
         ws.addCell(new Label(0, 0, "Beach"));
@@ -296,70 +565,41 @@ public class SurveyProcessor {
         ws.addCell(new Label(12, 0, "C4"));
         ws.addCell(new Label(13, 0, "C5"));
 
-        //Loop tnough rows of data
-        for (int r = 1; r <= map.size() + 1; r++) {
-            String[] arr = map.get(r + "");
-
-            //Add each column of data from the row 'r'
-            for (int c = 0; arr != null && c < arr.length; c++) {
-                int altC = c - 1;
-                String cont = arr[c];
-
-                if (c == 1) {
-                    //Get cell colour and create cell format
-                    int colourValue = Integer.parseInt(arr[c + 1]);
-                    WritableCellFormat format = new WritableCellFormat();
-                    format.setBorder(Border.ALL, BorderLineStyle.THIN, Colour.GRAY_25);
-                    if (colourValue == 192) {
-                        format.setBackground(Colour.UNKNOWN);
-                    } else {
-                        format.setBackground(Colour.getInternalColour(colourValue));
-                    }
+        //ID cells share one format per colour
+        WritableCellFormat idFormat = new WritableCellFormat();
+        idFormat.setBorder(Border.ALL, BorderLineStyle.THIN, Colour.GRAY_25);
+        CellFormatCache idFormats = new CellFormatCache(idFormat);
 
-                    try {
-                        jxl.write.Number nc = new jxl.write.Number(c, r, Double.parseDouble(cont), format);
-                        ws.addCell(nc);
-                    } catch (NumberFormatException ex) {
-                        if (debug) {
-                            debug("EXCEPTION:method.1(),No age class found in data \"" + cont + "\"");
-                        }
-                    }
+        //Loop tnough rows of data, the row of each pup is its ID
+        for (int r = 1; r <= idCount + 1; r++) {
+            int rec = pups.find(r);
+            if (rec == -1) {
+                continue;
+            }
 
-                    //date cell
-                } else if (c > 2 && c < 9) {
-                    try {
-                        if (cont.length() > 0) {
-                            ws.addCell(new Label(altC, r, cont));
-                        }
-                    } catch (StringIndexOutOfBoundsException ex) {
-                        if (debug) {
-                            debug("EXCEPTION:method.2(),No date found in data \"" + cont + "\"");
-                        }
-                    }
+            ws.addCell(new Label(0, r, pups.getBeach(rec)));
 
-                    //Julian cell
-                } else if (c > 8) {
-                    try {
-                        jxl.write.Number nc = new jxl.write.Number(altC, r, Double.parseDouble(cont));
-                        ws.addCell(nc);
-                    } catch (NumberFormatException ex) {
-                        if (debug) {
-                            debug("EXCEPTION:method.3(),No julian date found in data \"" + cont + "\"");
-                        }
-                    }
+            //Get cell colour and its cell format
+            int colourValue = pups.getColour(rec);
+            Colour colour = colourValue == 192 ? Colour.UNKNOWN : Colour.getInternalColour(colourValue);
+            ws.addCell(new jxl.write.Number(1, r, r, idFormats.getFormat(colour)));
 
-                    //All other columns (minus colour information)
-                } else {
-                    if (c != 2) {
-                        ws.addCell(new Label(c, r, cont));
-                    }
+            //Date cells
+            for (int c = 0; c < PupTable.AGE_CLASSES; c++) {
+                if (pups.hasDate(rec, c)) {
+                    ws.addCell(new Label(2 + c, r, LocalDate.ofEpochDay(pups.getDate(rec, c)).toString()));
                 }
             }
-        }
 
-        //Write data and close workbook
-        resultBook.write();
-        resultBook.close();
+            //Julian cells
+            for (int c = 0; c < PupTable.AGE_CLASSES; c++) {
+                if (pups.hasJulianDate(rec, c)) {
+                    ws.addCell(new jxl.write.Number(2 + PupTable.AGE_CLASSES + c, r, pups.getJulianDate(rec, c)));
+                } else if (debug && pups.hasDate(rec, c)) {
+                    debug("EXCEPTION:method.3(),No julian date found in data for pup " + r);
+                }
+            }
+        }
     }
 
     /**
@@ -371,12 +611,12 @@ public class SurveyProcessor {
      */
     private int sanatizeAgeClassInput(String ageClassStr) {
         for (int i = 0; i < ageClassStr.length(); i++) {
-            try {
-                //return Integer.parseInt("" + ageClassStr.charAt(ageClassStr.length() - 1));
-                return Integer.parseInt(ageClassStr.substring(i,i+1));
-            } catch (Exception e) {
-                if (debug) debug("sanatizeAgeClassInput(" + ageClassStr + ") failed at least once.");
+            //Same digits Integer.parseInt accepts, without throwing for every letter
+            int digit = Character.digit(ageClassStr.charAt(i), 10);
+            if (digit >= 0) {
+                return digit;
             }
+            if (debug) debug("sanatizeAgeClassInput(" + ageClassStr + ") failed at least once.");
         }
         
         return -1;
@@ -385,21 +625,23 @@ public class SurveyProcessor {
     /**
      * Fix excel converting error (though JEXCEL).
      *
+     * @param name Sheet name the date was read from.
      * @param dateStr Date entered as a string.
      * @return LocalDate object representing the correct date from the survey.
      */
-    private LocalDate convertStrToDate(String dateStr, int row) {
+    private LocalDate convertStrToDate(String name, String dateStr, int row) {
         //convert date to working date type
         if (debug) {
             debug("convertStrToDate(" + dateStr + ")");
         }
-        DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd/MM/yy");
-        LocalDate date = null;
+        LocalDate date = parsePlainDate(dateStr);
 
         try {
-            date = LocalDate.parse(dateStr, dateFormat);
+            if (date == null) {
+                date = LocalDate.parse(dateStr, DATE_FORMAT);
+            }
         } catch (DateTimeException ex) {
-            displayMessage("FATAL ERROR in Sheet \"" + workingSheet.getName() + "\" at row[" + (row+1) + "]"
+            displayMessage("FATAL ERROR in Sheet \"" + name + "\" at row[" + (row+1) + "]"
                     + "\n" + "Please fix error in date column!"
                     + "\n" + "Failed to convert text to date: \"" + dateStr + "\"");
             debug("convertStrToDate Failed - EXIT");
@@ -415,6 +657,44 @@ public class SurveyProcessor {
         return date;
     }
 
+    /**
+     * Convert the common form of survey date directly, without the cost of
+     * a DateTimeFormatter. Only dates that DATE_FORMAT would read the same
+     * way are converted, so days past the 28th are left to the formatter.
+     *
+     * @param dateStr Date entered as a string.
+     * @return The date, null if it is not a plain dd/MM/yy date.
+     */
+    private static LocalDate parsePlainDate(String dateStr) {
+        if (dateStr.length() != 8 || dateStr.charAt(2) != '/' || dateStr.charAt(5) != '/') {
+            return null;
+        }
+
+        int day = parseTwoDigits(dateStr, 0);
+        int month = parseTwoDigits(dateStr, 3);
+        int year = parseTwoDigits(dateStr, 6);
+        if (day < 1 || day > 28 || month < 1 || month > 12 || year < 0) {
+            return null;
+        }
+        return LocalDate.of(2000 + year, month, day);
+    }
+
+    /**
+     * Read two decimal digits from a string.
+     *
+     * @param str String to read from.
+     * @param pos Position of the first digit.
+     * @return The number, -1 if either character is not a digit.
+     */
+    private static int parseTwoDigits(String str, int pos) {
+        char tens = str.charAt(pos);
+        char units = str.charAt(pos + 1);
+        if (tens < '0' || tens > '9' || units < '0' || units > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+
     /**
      * Method to flip debugging mode
      *
@@ -424,6 +704,29 @@ public class SurveyProcessor {
         debug = debugging;
     }
 
+    /**
+     * Method to choose between dialogs and plain messages. When not
+     * interactive, messages are printed to system err and Swing is never
+     * used.
+     *
+     * @param interactive True to show dialogs, false for plain messages.
+     */
+    public void setInteractive(boolean interactive) {
+        this.interactive = interactive;
+    }
+
+    /**
+     * Set where result workbooks are written, each is named
+     * prefix + sheet name + "_result.xls".
+     *
+     * @param dir Directory to write to, null for the working directory.
+     * @param prefix Prefix for result file names, can be empty.
+     */
+    public void setOutput(File dir, String prefix) {
+        this.outputDir = dir;
+        this.resultPrefix = prefix;
+    }
+
     /**
      * Return list of sheet names that can be worked on.
      *
@@ -451,12 +754,24 @@ public class SurveyProcessor {
     }
 
     /**
-     * JOption message dialog shown on main GUI thread.
+     * JOption message dialog shown on main GUI thread, printed to system err
+     * when not interactive or there is no display.
      *
      * @param msg String to display to user
      */
     public void displayMessage(String msg) {
-        JOptionPane.showMessageDialog(null, msg);
+        //No dialogs without a display
+        if (!interactive || GraphicsEnvironment.isHeadless()) {
+            System.err.println(msg);
+            return;
+        }
+
+        //Worker threads hand the dialog over to the GUI thread
+        if (SwingUtilities.isEventDispatchThread()) {
+            JOptionPane.showMessageDialog(null, msg);
+        } else {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, msg));
+        }
     }
 
     /**
@@ -468,19 +783,44 @@ public class SurveyProcessor {
         System.out.println(msg);
     }
 
+    /**
+     * Check if command line arguments can only be sheet names, as in the
+     * legacy form of a workbook followed by the sheets to process. Sheet
+     * names are never options or existing paths, and cannot hold the
+     * characters that paths and globs are made of.
+     *
+     * @param args Command line arguments after the workbook.
+     * @return True if every argument is a sheet name.
+     */
+    private static boolean areSheetNames(List<String> args) {
+        for (String arg : args) {
+            if (arg.startsWith("-") || new File(arg).exists() || arg.matches(".*[\\\\/:*?\\[\\]].*")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     //Main method
     public static void main(String[] args) {
-        SurveyProcessor sp = new SurveyProcessor();
-        
-        if (args.length != 2) {
+        List<String> names = Arrays.asList(args).subList(Math.min(1, args.length), args.length);
+
+        if (args.length == 0) {
             SurveyProcessorGUI gui = new SurveyProcessorGUI();
-        } else {
-            sp.loadWorkbook(args[0]);
+        } else if (!names.isEmpty() && !args[0].startsWith("-") && areSheetNames(names)) {
+            //All sheets named after the workbook are processed together
+            SurveyProcessor sp = new SurveyProcessor();
+            if (!sp.loadWorkbook(args[0])) {
+                return;
+            }
             try {
-                sp.processSheet(args[1]);
+                sp.processSheets(names, Runtime.getRuntime().availableProcessors());
             } catch (WriteException | IOException ex) {
                 Logger.getLogger(SurveyProcessor.class.getName()).log(Level.SEVERE, null, ex);
             }
+        } else {
+            //Inputs or options given, run as a headless batch
+            System.exit(SurveyBatch.run(args));
         }
     }
 }
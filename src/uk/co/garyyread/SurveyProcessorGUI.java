@@ -10,6 +10,7 @@ import java.awt.event.WindowListener;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.BoxLayout;
@@ -105,20 +106,34 @@ public class SurveyProcessorGUI extends JFrame {
         processButton = new JButton();
         processButton.setText(processButtonStr);
         processButton.addActionListener((ActionEvent e) -> {
-            boolean display = false;
+            List<String> names = new ArrayList<>();
             for (JCheckBox box : sheetCheckBoxArray) {
                 if (box.isSelected()) {
-                    try {
-                        sp.processSheet(box.getText());
-                        display = true;
-                    } catch (WriteException | IOException ex) {
-                        Logger.getLogger(SurveyProcessorGUI.class.getName()).log(Level.SEVERE, null, ex);
-                    }
+                    names.add(box.getText());
                 }
             }
-            if (display) {
-                sp.displayMessage("Finished!");
-            }
+
+            //Process the selected sheets together, off the GUI thread
+            processButton.setEnabled(false);
+            Thread worker = new Thread(() -> {
+                boolean display = false;
+                try {
+                    sp.processSheets(names, Runtime.getRuntime().availableProcessors());
+                    display = !names.isEmpty();
+                } catch (WriteException | IOException | RuntimeException ex) {
+                    Logger.getLogger(SurveyProcessorGUI.class.getName()).log(Level.SEVERE, null, ex);
+                } finally {
+                    //Always give the button back, whatever went wrong
+                    boolean finished = display;
+                    SwingUtilities.invokeLater(() -> {
+                        processButton.setEnabled(true);
+                        if (finished) {
+                            sp.displayMessage("Finished!");
+                        }
+                    });
+                }
+            });
+            worker.start();
         });
         
         processTab = new JPanel();